@@ -1,12 +1,49 @@
+import controller.DataController;
+import controller.MotoreAderenza;
+import controller.RegistroNotifiche;
+import controller.SalvataggioDifferito;
+import controller.ScritturaAtomica;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import model.AppState;
+import model.FilePathProvider;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class Main extends Application {
 
+    private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
+
+    private final MotoreAderenza motoreAderenza =
+            new MotoreAderenza(new DataController(), ForkJoinPool.getCommonPoolParallelism());
+
     @Override
     public void start(Stage stage) throws Exception {
+        // Notifiche ai diabetologi conservate anche dopo il riavvio; senza registro restano in memoria
+        try {
+            AppState.getInstance().setRegistroNotifiche(new RegistroNotifiche(new FilePathProvider()));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Registro notifiche non disponibile", e);
+        }
+
+        // Episodi già notificati prima del riavvio: il primo controllo non li notifica di nuovo
+        try {
+            MotoreAderenza.apriArchivioEpisodi(new FilePathProvider().getEpisodiNotificatiFile(), LocalDate.now());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Archivio degli episodi notificati non disponibile", e);
+        }
+
+        // Controllo periodico delle assunzioni di tutti i pazienti, anche di chi non apre la dashboard
+        motoreAderenza.avvia(() -> DataController.getRegistroPazienti().getPazienti(),
+                MotoreAderenza.RITARDO_INIZIALE_DEFAULT_MINUTI, MotoreAderenza.PERIODO_DEFAULT_MINUTI, TimeUnit.MINUTES);
+
         FXMLLoader loader = new FXMLLoader(getClass().getResource("view/LoginView.fxml"));
         Scene scene = new Scene(loader.load());
 
@@ -16,6 +53,16 @@ public class Main extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        // Scrive i salvataggi ancora in coda prima dell'uscita
+        SalvataggioDifferito.chiudiTutti();
+        MotoreAderenza.chiudiTutti();
+        RegistroNotifiche registro = AppState.getInstance().getRegistroNotifiche();
+        if (registro != null) registro.close();
+        ScritturaAtomica.sincronizzaInSospeso();
+    }
+
     /*@Override
     public void start(Stage primaryStage) throws Exception {
         FXMLLoader loader1 = new FXMLLoader(getClass().getResource("view/LoginView.fxml"));
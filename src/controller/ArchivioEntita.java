@@ -0,0 +1,41 @@
+package controller;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Archivio delle entità di un tipo (rilevazioni, terapie, ...) indipendente dal formato di
+ * memorizzazione. Le entità di un paziente sono mantenute nell'ordine di inserimento.
+ *
+ * @param <T> tipo di entità del modello
+ */
+public interface ArchivioEntita<T> {
+
+    /**
+     * Entità del paziente, nell'ordine in cui sono state salvate.
+     */
+    List<T> caricaPaziente(int pazienteId);
+
+    /**
+     * Entità del paziente con data compresa tra {@code da} e {@code a} (inclusi). Per le entità
+     * con un intervallo di validità (terapie) conta la sovrapposizione; quelle senza data
+     * (schede cliniche, terapie concomitanti) vengono restituite tutte.
+     */
+    List<T> caricaPeriodo(int pazienteId, LocalDate da, LocalDate a);
+
+    /**
+     * Accoda un'entità a quelle del paziente.
+     */
+    void aggiungi(int pazienteId, T entita);
+
+    /**
+     * Elimina la prima entità del paziente uguale a quella indicata (stessi valori).
+     */
+    void elimina(int pazienteId, T entita);
+
+    /**
+     * Sostituisce in blocco tutte le entità dei pazienti indicati; una lista vuota le elimina.
+     */
+    void salva(Map<Integer, List<T>> entitaPerPaziente);
+}
@@ -0,0 +1,225 @@
+package controller;
+
+import model.Rilevazione;
+import model.TipoPasto;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Archivio binario colonnare delle rilevazioni glicemiche.
+ * <p>
+ * Layout del file: header (magic, versione, numero di righe) seguito da una colonna per campo,
+ * ciascuna contigua: int pazienteId, int giorno (epoch day), byte codice pasto ({@link TipoPasto}),
+ * short valore (mg/dL). Ogni colonna è accessibile come buffer a sé sul file mappato in memoria,
+ * quindi una scansione su un solo campo legge solo le pagine di quella colonna.
+ */
+public final class ArchivioRilevazioniColonnare {
+
+    private static final Logger LOGGER = Logger.getLogger(ArchivioRilevazioniColonnare.class.getName());
+
+    public static final String ESTENSIONE = ".col";
+    private static final int MAGIC = 0x52494C31; // "RIL1"
+    private static final int VERSIONE = 1;
+    private static final int HEADER = 12;
+
+    private final ByteBuffer dati;
+    private final int righe;
+
+    private ArchivioRilevazioniColonnare(ByteBuffer dati, int righe) {
+        this.dati = dati;
+        this.righe = righe;
+    }
+
+    /**
+     * Mappa in sola lettura un archivio esistente.
+     *
+     * @throws IOException se il file non esiste o non è un archivio di rilevazioni valido
+     */
+    public static ArchivioRilevazioniColonnare apri(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            return verifica(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+        }
+    }
+
+    private static ArchivioRilevazioniColonnare verifica(ByteBuffer dati, String file) throws IOException {
+        if (dati.limit() < HEADER || dati.getInt(0) != MAGIC) {
+            throw new IOException("Formato archivio rilevazioni non valido: " + file);
+        }
+        if (dati.getInt(4) != VERSIONE) {
+            throw new IOException("Versione archivio rilevazioni non supportata: " + dati.getInt(4));
+        }
+        int righe = dati.getInt(8);
+        if (dati.limit() != HEADER + (long) righe * 11) {
+            throw new IOException("Archivio rilevazioni troncato: " + file);
+        }
+        return new ArchivioRilevazioniColonnare(dati, righe);
+    }
+
+    public static boolean isColonnare(String file) {
+        return file.endsWith(ESTENSIONE);
+    }
+
+    public int size() {
+        return righe;
+    }
+
+    // ============ COLONNE ============
+
+    public IntBuffer pazienti() {
+        return dati.slice(HEADER, righe * 4).asIntBuffer();
+    }
+
+    /**
+     * Date delle rilevazioni come epoch day ({@link LocalDate#toEpochDay()}).
+     */
+    public IntBuffer giorni() {
+        return dati.slice(HEADER + righe * 4, righe * 4).asIntBuffer();
+    }
+
+    public ByteBuffer codiciPasto() {
+        return dati.slice(HEADER + righe * 8, righe);
+    }
+
+    public ShortBuffer valori() {
+        return dati.slice(HEADER + righe * 9, righe * 2).asShortBuffer();
+    }
+
+    /**
+     * Ricostruisce la rilevazione della riga indicata leggendo le tre colonne dei dati.
+     */
+    public Rilevazione rilevazione(int riga) {
+        return new Rilevazione(
+                LocalDate.ofEpochDay(dati.getInt(HEADER + righe * 4 + riga * 4)),
+                TipoPasto.etichetta(dati.get(HEADER + righe * 8 + riga)),
+                dati.getShort(HEADER + righe * 9 + riga * 2)
+        );
+    }
+
+    // ============ SCRITTURA ============
+
+    /**
+     * Converte un file CSV di rilevazioni (journal incluso) in un archivio colonnare.
+     * Le righe non rappresentabili (tipo pasto sconosciuto, valore fuori dal range di uno short)
+     * vengono scartate con un warning.
+     *
+     * @return il numero di rilevazioni convertite
+     */
+    public static int converti(String csvFile, String colonnareFile) throws IOException {
+        Colonne colonne = new Colonne();
+        CsvFieldScanner scanner = new CsvFieldScanner();
+        CsvJournal.leggi(csvFile, line -> {
+            try {
+                scanner.reset(line);
+                int pazienteId = scanner.nextInt();
+                LocalDate data = scanner.nextDate();
+                String tipoPasto = scanner.nextString();
+                int valore = scanner.nextInt();
+                if (!colonne.aggiungi(pazienteId, data, tipoPasto, valore)) {
+                    LOGGER.log(Level.WARNING, "Rilevazione non rappresentabile, scartata: {0}", line);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Errore parsing rilevazione: " + line, e);
+            }
+        });
+
+        synchronized (CsvJournal.lock(colonnareFile)) {
+            scrivi(colonnareFile, colonne);
+        }
+        LOGGER.log(Level.INFO, "Convertite {0} rilevazioni in {1}", new Object[]{colonne.size, colonnareFile});
+        return colonne.size;
+    }
+
+    /**
+     * Riscrive l'archivio sostituendo le rilevazioni dei pazienti indicati con quelle fornite,
+     * accodate in fondo. Le righe degli altri pazienti vengono copiate colonna per colonna.
+     * Va chiamato tenendo il lock del file (CsvJournal.lock).
+     */
+    static void sostituisciPazienti(String file, int[] pazientiSostituiti, Colonne nuove) throws IOException {
+        Colonne colonne = new Colonne();
+        if (Files.exists(Paths.get(file))) {
+            // Letto in memoria e non mappato: il file viene sostituito subito dopo
+            ArchivioRilevazioniColonnare esistente = verifica(ByteBuffer.wrap(Files.readAllBytes(Paths.get(file))), file);
+            int[] sostituiti = pazientiSostituiti.clone();
+            Arrays.sort(sostituiti);
+
+            IntBuffer pazienti = esistente.pazienti();
+            IntBuffer giorni = esistente.giorni();
+            ByteBuffer pasti = esistente.codiciPasto();
+            ShortBuffer valori = esistente.valori();
+            for (int i = 0; i < esistente.righe; i++) {
+                int pazienteId = pazienti.get(i);
+                if (Arrays.binarySearch(sostituiti, pazienteId) < 0) {
+                    colonne.aggiungi(pazienteId, giorni.get(i), pasti.get(i), valori.get(i));
+                }
+            }
+        }
+        for (int i = 0; i < nuove.size; i++) {
+            colonne.aggiungi(nuove.pazienti[i], nuove.giorni[i], nuove.pasti[i], nuove.valori[i]);
+        }
+        scrivi(file, colonne);
+    }
+
+    private static void scrivi(String file, Colonne colonne) throws IOException {
+        Path path = Paths.get(file);
+        Path temporaneo = ScritturaAtomica.temporaneo(path);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaneo)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSIONE);
+            out.writeInt(colonne.size);
+            for (int i = 0; i < colonne.size; i++) out.writeInt(colonne.pazienti[i]);
+            for (int i = 0; i < colonne.size; i++) out.writeInt(colonne.giorni[i]);
+            out.write(colonne.pasti, 0, colonne.size);
+            for (int i = 0; i < colonne.size; i++) out.writeShort(colonne.valori[i]);
+        }
+        ScritturaAtomica.sostituisci(temporaneo, path);
+    }
+
+    /**
+     * Colonne in costruzione, in memoria, nell'ordine di inserimento.
+     */
+    static final class Colonne {
+        private int size;
+        private int[] pazienti = new int[256];
+        private int[] giorni = new int[256];
+        private byte[] pasti = new byte[256];
+        private short[] valori = new short[256];
+
+        /**
+         * @return false se la rilevazione non è rappresentabile nel formato colonnare
+         */
+        boolean aggiungi(int pazienteId, LocalDate data, String tipoPasto, int valore) {
+            byte codice = TipoPasto.codice(tipoPasto);
+            if (codice == TipoPasto.SCONOSCIUTO || valore < Short.MIN_VALUE || valore > Short.MAX_VALUE) {
+                return false;
+            }
+            aggiungi(pazienteId, (int) data.toEpochDay(), codice, (short) valore);
+            return true;
+        }
+
+        void aggiungi(int pazienteId, int giorno, byte codicePasto, short valore) {
+            if (size == pazienti.length) {
+                pazienti = Arrays.copyOf(pazienti, size * 2);
+                giorni = Arrays.copyOf(giorni, size * 2);
+                pasti = Arrays.copyOf(pasti, size * 2);
+                valori = Arrays.copyOf(valori, size * 2);
+            }
+            pazienti[size] = pazienteId;
+            giorni[size] = giorno;
+            pasti[size] = codicePasto;
+            valori[size] = valore;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package controller;
+
+import model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Backend di memorizzazione dei dati dei pazienti: un {@link ArchivioEntita} per tipo di entità.
+ * <p>
+ * Il backend si sceglie con il file {@code archiviazione.properties} nella cartella dati:
+ * <pre>
+ * backend=jdbc                          # csv (default) oppure jdbc
+ * jdbc.url=jdbc:h2:file:./src/resources/diabete
+ * jdbc.utente=...
+ * jdbc.password=...
+ * </pre>
+ * Senza file, o con {@code backend=csv}, DataController usa i CSV. Con {@code backend=jdbc}
+ * carica e salva i dati dei pazienti tramite {@link BackendJdbc}; gli utenti restano in utenti.csv.
+ */
+public interface BackendArchiviazione {
+
+    ArchivioEntita<Rilevazione> rilevazioni();
+
+    ArchivioEntita<Terapia> terapie();
+
+    ArchivioEntita<Assunzione> assunzioni();
+
+    ArchivioEntita<SchedaClinica> schedeCliniche();
+
+    ArchivioEntita<EventoClinico> eventiClinici();
+
+    ArchivioEntita<TerapiaConcomitante> terapieConcomitanti();
+
+    /**
+     * Backend configurato per la cartella dati: i CSV se non è configurato altro.
+     */
+    static BackendArchiviazione configurato(FilePathProvider filePathProvider) {
+        BackendArchiviazione esterno = esterno(filePathProvider);
+        return esterno != null ? esterno : new BackendCsv(filePathProvider);
+    }
+
+    /**
+     * Backend non CSV configurato per la cartella dati, null se si usano i CSV.
+     */
+    static BackendArchiviazione esterno(FilePathProvider filePathProvider) {
+        Path configurazione = Paths.get(filePathProvider.getConfigurazioneArchiviazione());
+        if (!Files.exists(configurazione)) return null;
+
+        Properties proprieta = new Properties();
+        try (InputStream in = Files.newInputStream(configurazione)) {
+            proprieta.load(in);
+        } catch (IOException e) {
+            Logger.getLogger(BackendArchiviazione.class.getName())
+                    .log(Level.WARNING, "Configurazione archiviazione non leggibile, uso dei CSV: " + configurazione, e);
+            return null;
+        }
+
+        String backend = proprieta.getProperty("backend", "csv").trim();
+        if (backend.equalsIgnoreCase("csv")) return null;
+        if (backend.equalsIgnoreCase("jdbc")) {
+            return BackendJdbc.per(proprieta.getProperty("jdbc.url"),
+                    proprieta.getProperty("jdbc.utente", ""), proprieta.getProperty("jdbc.password", ""));
+        }
+        throw new IllegalArgumentException("Backend di archiviazione sconosciuto: " + backend);
+    }
+
+    /**
+     * Copia tutti i dati dei pazienti indicati da un backend all'altro (es. da CSV a JDBC).
+     */
+    static void migra(BackendArchiviazione sorgente, BackendArchiviazione destinazione, List<Paziente> pazienti) {
+        copia(pazienti, sorgente.rilevazioni(), destinazione.rilevazioni());
+        copia(pazienti, sorgente.terapie(), destinazione.terapie());
+        copia(pazienti, sorgente.assunzioni(), destinazione.assunzioni());
+        copia(pazienti, sorgente.schedeCliniche(), destinazione.schedeCliniche());
+        copia(pazienti, sorgente.eventiClinici(), destinazione.eventiClinici());
+        copia(pazienti, sorgente.terapieConcomitanti(), destinazione.terapieConcomitanti());
+    }
+
+    private static <T> void copia(List<Paziente> pazienti, ArchivioEntita<T> sorgente, ArchivioEntita<T> destinazione) {
+        destinazione.salva(pazienti.stream().collect(Collectors.toMap(
+                Paziente::getId, p -> sorgente.caricaPaziente(p.getId()), (a, b) -> a, LinkedHashMap::new)));
+    }
+}
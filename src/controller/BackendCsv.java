@@ -0,0 +1,186 @@
+package controller;
+
+import controller.DataController.TipoEntita;
+import model.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Backend sui file CSV della cartella dati, gli stessi usati da DataController: le entità
+ * di un paziente vengono lette tramite l'indice per paziente e scritte con il merge per paziente
+ * (o accodate al journal, per rilevazioni e assunzioni in modalità JOURNAL).
+ */
+public class BackendCsv implements BackendArchiviazione {
+
+    private final DataController dataController;
+
+    private final ArchivioEntita<Rilevazione> rilevazioni;
+    private final ArchivioEntita<Terapia> terapie;
+    private final ArchivioEntita<Assunzione> assunzioni;
+    private final ArchivioEntita<SchedaClinica> schedeCliniche;
+    private final ArchivioEntita<EventoClinico> eventiClinici;
+    private final ArchivioEntita<TerapiaConcomitante> terapieConcomitanti;
+
+    public BackendCsv(FilePathProvider filePathProvider) {
+        this(filePathProvider, DataController.ModalitaPersistenza.RISCRITTURA);
+    }
+
+    public BackendCsv(FilePathProvider filePathProvider, DataController.ModalitaPersistenza modalitaPersistenza) {
+        // Sempre sui CSV, anche se la cartella è configurata per un altro backend
+        this.dataController = new DataController(filePathProvider, modalitaPersistenza, null);
+
+        // Rilevazioni e assunzioni per periodo leggono solo le partizioni mensili coinvolte
+        this.rilevazioni = new ArchivioCsv<>(TipoEntita.RILEVAZIONI, Paziente::getRilevazioni,
+                Paziente::aggiungiRilevazione, null, dataController::caricaRilevazioni);
+        this.terapie = new ArchivioCsv<>(TipoEntita.TERAPIE, Paziente::getTerapie,
+                Paziente::aggiungiTerapia, (t, da, a) -> !t.getDataFine().isBefore(da) && !t.getDataInizio().isAfter(a), null);
+        this.assunzioni = new ArchivioCsv<>(TipoEntita.ASSUNZIONI, Paziente::getAssunzioni,
+                Paziente::aggiungiAssunzione, null, dataController::caricaAssunzioni);
+        this.schedeCliniche = new ArchivioCsv<>(TipoEntita.SCHEDE_CLINICHE,
+                p -> p.getSchedaClinica() == null ? List.of() : List.of(p.getSchedaClinica()),
+                Paziente::setSchedaClinica, (s, da, a) -> true, null);
+        this.eventiClinici = new ArchivioCsv<>(TipoEntita.EVENTI_CLINICI, Paziente::getEventiClinici,
+                Paziente::aggiungiEventoClinico, (e, da, a) -> nelPeriodo(e.getData(), da, a), null);
+        this.terapieConcomitanti = new ArchivioCsv<>(TipoEntita.TERAPIE_CONCOMITANTI, Paziente::getTerapieConcomitanti,
+                Paziente::aggiungiTerapiaConcomitante, (t, da, a) -> true, null);
+    }
+
+    @Override
+    public ArchivioEntita<Rilevazione> rilevazioni() {
+        return rilevazioni;
+    }
+
+    @Override
+    public ArchivioEntita<Terapia> terapie() {
+        return terapie;
+    }
+
+    @Override
+    public ArchivioEntita<Assunzione> assunzioni() {
+        return assunzioni;
+    }
+
+    @Override
+    public ArchivioEntita<SchedaClinica> schedeCliniche() {
+        return schedeCliniche;
+    }
+
+    @Override
+    public ArchivioEntita<EventoClinico> eventiClinici() {
+        return eventiClinici;
+    }
+
+    @Override
+    public ArchivioEntita<TerapiaConcomitante> terapieConcomitanti() {
+        return terapieConcomitanti;
+    }
+
+    private static boolean nelPeriodo(LocalDate data, LocalDate da, LocalDate a) {
+        return data != null && !data.isBefore(da) && !data.isAfter(a);
+    }
+
+    /**
+     * Paziente di appoggio per leggere o serializzare le entità di un ID.
+     */
+    private static Paziente segnaposto(int pazienteId) {
+        return new Paziente(pazienteId, null, null, null, null);
+    }
+
+    @FunctionalInterface
+    private interface FiltroPeriodo<T> {
+        boolean accetta(T entita, LocalDate da, LocalDate a);
+    }
+
+    @FunctionalInterface
+    private interface LetturaPeriodo<T> {
+        List<T> carica(int pazienteId, LocalDate da, LocalDate a);
+    }
+
+    private final class ArchivioCsv<T> implements ArchivioEntita<T> {
+
+        private final TipoEntita tipo;
+        private final Function<Paziente, List<T>> entita;
+        private final BiConsumer<Paziente, T> aggiungiA;
+        private final FiltroPeriodo<T> filtro;
+        private final LetturaPeriodo<T> periodo;
+
+        /**
+         * @param filtro filtro per data applicato a tutte le entità del paziente, se manca la lettura per periodo
+         * @param periodo lettura diretta per periodo, null se non disponibile
+         */
+        ArchivioCsv(TipoEntita tipo, Function<Paziente, List<T>> entita, BiConsumer<Paziente, T> aggiungiA,
+                    FiltroPeriodo<T> filtro, LetturaPeriodo<T> periodo) {
+            this.tipo = tipo;
+            this.entita = entita;
+            this.aggiungiA = aggiungiA;
+            this.filtro = filtro;
+            this.periodo = periodo;
+        }
+
+        @Override
+        public List<T> caricaPaziente(int pazienteId) {
+            Paziente paziente = segnaposto(pazienteId);
+            dataController.caricaEntitaPaziente(tipo, paziente);
+            return new ArrayList<>(entita.apply(paziente));
+        }
+
+        @Override
+        public List<T> caricaPeriodo(int pazienteId, LocalDate da, LocalDate a) {
+            if (periodo != null) return periodo.carica(pazienteId, da, a);
+            List<T> risultato = new ArrayList<>();
+            for (T e : caricaPaziente(pazienteId)) {
+                if (filtro.accetta(e, da, a)) risultato.add(e);
+            }
+            return risultato;
+        }
+
+        @Override
+        public void aggiungi(int pazienteId, T nuova) {
+            if (dataController.usaJournal(tipo)) {
+                dataController.applicaJournal(tipo, true, riga(pazienteId, nuova));
+                return;
+            }
+            List<T> esistenti = caricaPaziente(pazienteId);
+            esistenti.add(nuova);
+            salva(Map.of(pazienteId, esistenti));
+        }
+
+        @Override
+        public void elimina(int pazienteId, T daEliminare) {
+            String riga = riga(pazienteId, daEliminare);
+            if (dataController.usaJournal(tipo)) {
+                dataController.applicaJournal(tipo, false, riga);
+                return;
+            }
+            Paziente paziente = segnaposto(pazienteId);
+            caricaPaziente(pazienteId).forEach(e -> aggiungiA.accept(paziente, e));
+            List<String> righe = new ArrayList<>(dataController.serializza(tipo, paziente));
+            if (righe.remove(riga)) {
+                dataController.salvaRighe(tipo, Map.of(pazienteId, righe));
+            }
+        }
+
+        @Override
+        public void salva(Map<Integer, List<T>> entitaPerPaziente) {
+            Map<Integer, List<String>> righe = new LinkedHashMap<>();
+            entitaPerPaziente.forEach((id, lista) -> {
+                Paziente paziente = segnaposto(id);
+                lista.forEach(e -> aggiungiA.accept(paziente, e));
+                righe.put(id, dataController.serializza(tipo, paziente));
+            });
+            dataController.salvaRighe(tipo, righe);
+        }
+
+        private String riga(int pazienteId, T e) {
+            Paziente paziente = segnaposto(pazienteId);
+            aggiungiA.accept(paziente, e);
+            return dataController.serializza(tipo, paziente).get(0);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package controller;
+
+import model.*;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Backend su database SQL tramite JDBC, pensato per un database embedded su file
+ * (es. {@code jdbc:h2:file:...}, con il driver H2 in lib/). Una tabella per tipo di entità con
+ * colonne pazienteId e ordine (posizione nella lista del paziente), create all'apertura se
+ * mancanti: l'esistenza si verifica con {@link DatabaseMetaData#getTables} e non con
+ * {@code CREATE TABLE IF NOT EXISTS}, che non tutti i database accettano. Usa solo SQL standard
+ * e i tipi java.time di JDBC 4.2.
+ */
+public class BackendJdbc implements BackendArchiviazione {
+
+    private static final Logger LOGGER = Logger.getLogger(BackendJdbc.class.getName());
+
+    private static final Map<String, BackendJdbc> ISTANZE = new ConcurrentHashMap<>();
+
+    private final String url;
+    private final String utente;
+    private final String password;
+
+    private final ArchivioEntita<Rilevazione> rilevazioni;
+    private final ArchivioEntita<Terapia> terapie;
+    private final ArchivioEntita<Assunzione> assunzioni;
+    private final ArchivioEntita<SchedaClinica> schedeCliniche;
+    private final ArchivioEntita<EventoClinico> eventiClinici;
+    private final ArchivioEntita<TerapiaConcomitante> terapieConcomitanti;
+
+    private BackendJdbc(String url, String utente, String password) {
+        this.url = url;
+        this.utente = utente;
+        this.password = password;
+
+        this.rilevazioni = new Tabella<>("rilevazioni",
+                List.of("data DATE", "tipo_pasto VARCHAR(64)", "valore INTEGER"),
+                "data BETWEEN ? AND ?",
+                r -> new Object[]{r.getData(), r.getTipoPasto(), r.getValore()},
+                rs -> new Rilevazione(rs.getObject("data", LocalDate.class), rs.getString("tipo_pasto"), rs.getInt("valore")));
+        this.terapie = new Tabella<>("terapie",
+                List.of("farmaco VARCHAR(255)", "assunzioni_giornaliere INTEGER", "quantita DOUBLE PRECISION",
+                        "indicazioni VARCHAR(2048)", "data_inizio DATE", "data_fine DATE", "stato VARCHAR(16)",
+                        "medico_id INTEGER"),
+                "data_fine >= ? AND data_inizio <= ?",
+                t -> new Object[]{t.getFarmaco(), t.getAssunzioniGiornaliere(), t.getQuantitaPerAssunzione(),
+                        t.getIndicazioni(), t.getDataInizio(), t.getDataFine(),
+                        t.getStato() == null ? null : t.getStato().name(), t.getMedicoId()},
+                rs -> new Terapia(rs.getString("farmaco"), rs.getInt("assunzioni_giornaliere"), rs.getDouble("quantita"),
+                        rs.getString("indicazioni"), rs.getObject("data_inizio", LocalDate.class),
+                        rs.getObject("data_fine", LocalDate.class),
+                        rs.getString("stato") == null ? null : Terapia.Stato.valueOf(rs.getString("stato")),
+                        rs.getInt("medico_id")));
+        this.assunzioni = new Tabella<>("assunzioni",
+                List.of("data DATE", "ora TIME", "farmaco VARCHAR(255)", "quantita DOUBLE PRECISION"),
+                "data BETWEEN ? AND ?",
+                a -> new Object[]{a.getData(), a.getOra(), a.getFarmaco(), a.getQuantita()},
+                rs -> new Assunzione(rs.getObject("data", LocalDate.class), rs.getObject("ora", LocalTime.class),
+                        rs.getString("farmaco"), rs.getDouble("quantita")));
+        this.schedeCliniche = new Tabella<>("schede_cliniche",
+                List.of("fattori_rischio VARCHAR(2048)", "pregresse_patologie VARCHAR(2048)", "comorbidita VARCHAR(2048)",
+                        "glicemia_prima_min INTEGER", "glicemia_prima_max INTEGER", "glicemia_dopo_max INTEGER"),
+                null,
+                s -> new Object[]{s.getFattoriRischio(), s.getPregressePatologie(), s.getComorbidita(),
+                        s.getSoglieGlicemiche().getMinimoPrimaPasto(), s.getSoglieGlicemiche().getMassimoPrimaPasto(),
+                        s.getSoglieGlicemiche().getMassimoDopoPasto()},
+                rs -> new SchedaClinica(rs.getString("fattori_rischio"), rs.getString("pregresse_patologie"),
+                        rs.getString("comorbidita"), new SoglieGlicemiche(rs.getInt("glicemia_prima_min"),
+                        rs.getInt("glicemia_prima_max"), rs.getInt("glicemia_dopo_max"))));
+        this.eventiClinici = new Tabella<>("eventi_clinici",
+                List.of("tipo VARCHAR(64)", "descrizione VARCHAR(2048)", "data DATE", "ora TIME", "note VARCHAR(2048)"),
+                "data BETWEEN ? AND ?",
+                e -> new Object[]{e.getTipo(), e.getDescrizione(), e.getData(), e.getOra(), e.getNote()},
+                rs -> new EventoClinico(rs.getString("tipo"), rs.getString("descrizione"),
+                        rs.getObject("data", LocalDate.class), rs.getObject("ora", LocalTime.class), rs.getString("note")));
+        this.terapieConcomitanti = new Tabella<>("terapie_concomitanti",
+                List.of("tipo_terapia VARCHAR(255)", "descrizione VARCHAR(2048)"),
+                null,
+                t -> new Object[]{t.getTipoTerapia(), t.getDescrizione()},
+                rs -> new TerapiaConcomitante(rs.getString("tipo_terapia"), rs.getString("descrizione")));
+    }
+
+    /**
+     * Backend condiviso per l'URL indicato; le tabelle vengono create alla prima apertura.
+     */
+    public static BackendJdbc per(String url, String utente, String password) {
+        if (url == null || url.isBlank()) {
+            throw new IllegalArgumentException("jdbc.url mancante nella configurazione dell'archiviazione");
+        }
+        return ISTANZE.computeIfAbsent(url, u -> {
+            BackendJdbc backend = new BackendJdbc(u, utente, password);
+            backend.creaTabelle();
+            return backend;
+        });
+    }
+
+    @Override
+    public ArchivioEntita<Rilevazione> rilevazioni() {
+        return rilevazioni;
+    }
+
+    @Override
+    public ArchivioEntita<Terapia> terapie() {
+        return terapie;
+    }
+
+    @Override
+    public ArchivioEntita<Assunzione> assunzioni() {
+        return assunzioni;
+    }
+
+    @Override
+    public ArchivioEntita<SchedaClinica> schedeCliniche() {
+        return schedeCliniche;
+    }
+
+    @Override
+    public ArchivioEntita<EventoClinico> eventiClinici() {
+        return eventiClinici;
+    }
+
+    @Override
+    public ArchivioEntita<TerapiaConcomitante> terapieConcomitanti() {
+        return terapieConcomitanti;
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private Connection connessione() throws SQLException {
+        return DriverManager.getConnection(url, utente, password);
+    }
+
+    private void creaTabelle() {
+        try (Connection connection = connessione(); Statement statement = connection.createStatement()) {
+            DatabaseMetaData metadati = connection.getMetaData();
+            for (ArchivioEntita<?> archivio : List.of(rilevazioni, terapie, assunzioni, schedeCliniche,
+                    eventiClinici, terapieConcomitanti)) {
+                Tabella<?> tabella = (Tabella<?>) archivio;
+                if (esisteTabella(metadati, tabella.nome)) continue;
+                statement.execute("CREATE TABLE " + tabella.nome + " (paziente_id INTEGER NOT NULL, "
+                        + "ordine INTEGER NOT NULL, " + String.join(", ", tabella.definizioni)
+                        + ", PRIMARY KEY (paziente_id, ordine))");
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Impossibile inizializzare il database: " + url, e);
+        }
+    }
+
+    /**
+     * I nomi non quotati vengono salvati in maiuscolo (H2, Derby) o così come sono scritti
+     * (altri database): si cercano tutte e due le forme.
+     */
+    private static boolean esisteTabella(DatabaseMetaData metadati, String nome) throws SQLException {
+        for (String forma : new LinkedHashSet<>(List.of(nome, nome.toUpperCase(Locale.ROOT), nome.toLowerCase(Locale.ROOT)))) {
+            try (ResultSet rs = metadati.getTables(null, null, forma, new String[]{"TABLE"})) {
+                if (rs.next()) return true;
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    private interface LettoreRiga<T> {
+        T leggi(ResultSet rs) throws SQLException;
+    }
+
+    private final class Tabella<T> implements ArchivioEntita<T> {
+
+        private final String nome;
+        private final List<String> definizioni;
+        private final List<String> colonne = new ArrayList<>();
+        private final String condizionePeriodo;
+        private final Function<T, Object[]> valori;
+        private final LettoreRiga<T> lettore;
+
+        /**
+         * @param condizionePeriodo condizione SQL con due parametri (da, a), null se l'entità non ha data
+         */
+        Tabella(String nome, List<String> definizioni, String condizionePeriodo,
+                Function<T, Object[]> valori, LettoreRiga<T> lettore) {
+            this.nome = nome;
+            this.definizioni = definizioni;
+            this.condizionePeriodo = condizionePeriodo;
+            this.valori = valori;
+            this.lettore = lettore;
+            for (String definizione : definizioni) {
+                colonne.add(definizione.substring(0, definizione.indexOf(' ')));
+            }
+        }
+
+        @Override
+        public List<T> caricaPaziente(int pazienteId) {
+            return seleziona("SELECT * FROM " + nome + " WHERE paziente_id = ? ORDER BY ordine",
+                    pazienteId);
+        }
+
+        @Override
+        public List<T> caricaPeriodo(int pazienteId, LocalDate da, LocalDate a) {
+            if (condizionePeriodo == null) return caricaPaziente(pazienteId);
+            return seleziona("SELECT * FROM " + nome + " WHERE paziente_id = ? AND " + condizionePeriodo
+                    + " ORDER BY ordine", pazienteId, da, a);
+        }
+
+        @Override
+        public void aggiungi(int pazienteId, T entita) {
+            try (Connection connection = connessione()) {
+                connection.setAutoCommit(false);
+                try {
+                    int ordine;
+                    try (PreparedStatement ps = connection.prepareStatement(
+                            "SELECT COALESCE(MAX(ordine), -1) + 1 FROM " + nome + " WHERE paziente_id = ?")) {
+                        ps.setInt(1, pazienteId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            rs.next();
+                            ordine = rs.getInt(1);
+                        }
+                    }
+                    try (PreparedStatement ps = connection.prepareStatement(insert())) {
+                        imposta(ps, pazienteId, ordine, entita);
+                        ps.executeUpdate();
+                    }
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                LOGGER.log(Level.SEVERE, "Errore inserimento in " + nome + " per paziente ID: " + pazienteId, e);
+            }
+        }
+
+        /**
+         * Il confronto dei valori avviene nel database: viene letto solo l'ordine della prima
+         * riga uguale, non tutte le righe del paziente.
+         */
+        @Override
+        public void elimina(int pazienteId, T entita) {
+            Object[] cercati = valori.apply(entita);
+            StringBuilder sql = new StringBuilder("SELECT MIN(ordine) FROM " + nome + " WHERE paziente_id = ?");
+            List<Object> parametri = new ArrayList<>();
+            for (int i = 0; i < colonne.size(); i++) {
+                if (cercati[i] == null) {
+                    sql.append(" AND ").append(colonne.get(i)).append(" IS NULL");
+                } else {
+                    sql.append(" AND ").append(colonne.get(i)).append(" = ?");
+                    parametri.add(cercati[i]);
+                }
+            }
+
+            try (Connection connection = connessione()) {
+                connection.setAutoCommit(false);
+                try {
+                    Integer ordine = null;
+                    try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+                        ps.setInt(1, pazienteId);
+                        for (int i = 0; i < parametri.size(); i++) {
+                            ps.setObject(i + 2, parametri.get(i));
+                        }
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (rs.next()) {
+                                int trovato = rs.getInt(1);
+                                if (!rs.wasNull()) ordine = trovato;
+                            }
+                        }
+                    }
+                    if (ordine == null) {
+                        connection.rollback();
+                        return;
+                    }
+                    try (PreparedStatement ps = connection.prepareStatement(
+                            "DELETE FROM " + nome + " WHERE paziente_id = ? AND ordine = ?")) {
+                        ps.setInt(1, pazienteId);
+                        ps.setInt(2, ordine);
+                        ps.executeUpdate();
+                    }
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                LOGGER.log(Level.SEVERE, "Errore eliminazione da " + nome + " per paziente ID: " + pazienteId, e);
+            }
+        }
+
+        @Override
+        public void salva(Map<Integer, List<T>> entitaPerPaziente) {
+            if (entitaPerPaziente.isEmpty()) return;
+            try (Connection connection = connessione()) {
+                connection.setAutoCommit(false);
+                try (PreparedStatement elimina = connection.prepareStatement("DELETE FROM " + nome + " WHERE paziente_id = ?");
+                     PreparedStatement inserisci = connection.prepareStatement(insert())) {
+                    for (Map.Entry<Integer, List<T>> entry : entitaPerPaziente.entrySet()) {
+                        elimina.setInt(1, entry.getKey());
+                        elimina.addBatch();
+                        List<T> lista = entry.getValue();
+                        for (int i = 0; i < lista.size(); i++) {
+                            imposta(inserisci, entry.getKey(), i, lista.get(i));
+                            inserisci.addBatch();
+                        }
+                    }
+                    elimina.executeBatch();
+                    inserisci.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+                LOGGER.log(Level.INFO, "Salvati {0} pazienti in {1}", new Object[]{entitaPerPaziente.size(), nome});
+            } catch (SQLException e) {
+                LOGGER.log(Level.SEVERE, "Errore salvataggio in " + nome, e);
+            }
+        }
+
+        private List<T> seleziona(String sql, Object... parametri) {
+            List<T> risultato = new ArrayList<>();
+            try (Connection connection = connessione(); PreparedStatement ps = connection.prepareStatement(sql)) {
+                for (int i = 0; i < parametri.length; i++) {
+                    ps.setObject(i + 1, parametri[i]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        risultato.add(lettore.leggi(rs));
+                    }
+                }
+            } catch (SQLException e) {
+                LOGGER.log(Level.SEVERE, "Errore lettura da " + nome, e);
+            }
+            return risultato;
+        }
+
+        private String insert() {
+            return "INSERT INTO " + nome + " (paziente_id, ordine, " + String.join(", ", colonne) + ") VALUES (?, ?"
+                    + ", ?".repeat(colonne.size()) + ")";
+        }
+
+        private void imposta(PreparedStatement ps, int pazienteId, int ordine, T entita) throws SQLException {
+            ps.setInt(1, pazienteId);
+            ps.setInt(2, ordine);
+            Object[] v = valori.apply(entita);
+            for (int i = 0; i < v.length; i++) {
+                ps.setObject(i + 3, v[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package controller;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.NoSuchElementException;
+
+/**
+ * Scanner riutilizzabile dei campi di una riga CSV.
+ * Interpreta int, double, date ISO (yyyy-MM-dd) e orari (HH:mm[:ss[.nnnnnnnnn]]) direttamente
+ * dai caratteri della riga, senza creare stringhe intermedie; solo i campi testuali vengono
+ * materializzati. I campi sono separati da virgola, con spazi iniziali e finali ignorati;
+ * un campo racchiuso tra virgolette può contenere virgole e virgolette raddoppiate ("").
+ * Ogni record occupa una sola riga. Non è thread-safe: usare un'istanza per thread.
+ */
+public final class CsvFieldScanner {
+
+    private static final char DELIMITER = ',';
+    private static final char QUOTE = '"';
+    private static final double[] POTENZE_DI_DIECI = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private CharSequence line;
+    private int pos;
+    private boolean finito;
+
+    // Limiti del campo corrente (contenuto senza virgolette e spazi esterni)
+    private int inizio;
+    private int fine;
+    private boolean conEscape;
+
+    public CsvFieldScanner reset(CharSequence line) {
+        this.line = line;
+        this.pos = 0;
+        this.finito = false;
+        return this;
+    }
+
+    public boolean hasNext() {
+        return !finito;
+    }
+
+    /**
+     * Conta i campi della riga corrente senza spostare la posizione di lettura.
+     */
+    public int contaCampi() {
+        int salvaPos = pos;
+        boolean salvaFinito = finito;
+        pos = 0;
+        finito = false;
+        int campi = 0;
+        while (!finito) {
+            avanza();
+            campi++;
+        }
+        pos = salvaPos;
+        finito = salvaFinito;
+        return campi;
+    }
+
+    public void skip() {
+        avanza();
+    }
+
+    public boolean nextIsEmpty() {
+        avanza();
+        return inizio == fine;
+    }
+
+    public String nextString() {
+        avanza();
+        if (!conEscape) {
+            return line.subSequence(inizio, fine).toString();
+        }
+        StringBuilder sb = new StringBuilder(fine - inizio);
+        for (int i = inizio; i < fine; i++) {
+            char c = line.charAt(i);
+            sb.append(c);
+            if (c == QUOTE) i++; // "" → "
+        }
+        return sb.toString();
+    }
+
+    public int nextInt() {
+        avanza();
+        return parseInt(inizio, fine);
+    }
+
+    public double nextDouble() {
+        avanza();
+        int i = inizio;
+        if (i == fine) throw new NumberFormatException("Campo numerico vuoto");
+
+        boolean negativo = false;
+        char c = line.charAt(i);
+        if (c == '-' || c == '+') {
+            negativo = c == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int cifreSignificative = 0;
+        int decimali = 0;
+        boolean punto = false;
+        boolean cifraLetta = false;
+        for (; i < fine; i++) {
+            c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0 && ++cifreSignificative > 15) return fallbackDouble();
+                if (punto) decimali++;
+                cifraLetta = true;
+            } else if (c == '.' && !punto) {
+                punto = true;
+            } else {
+                // Esponenti, NaN, Infinity e forme rare: parser standard
+                return fallbackDouble();
+            }
+        }
+        if (!cifraLetta) {
+            throw new NumberFormatException("Numero non valido: " + line.subSequence(inizio, fine));
+        }
+        if (decimali >= POTENZE_DI_DIECI.length) return fallbackDouble();
+
+        // mantissa < 2^53 e 10^decimali esatto: una sola divisione, risultato correttamente arrotondato
+        double valore = mantissa / POTENZE_DI_DIECI[decimali];
+        return negativo ? -valore : valore;
+    }
+
+    /**
+     * Data ISO yyyy-MM-dd.
+     */
+    public LocalDate nextDate() {
+        avanza();
+        if (fine - inizio == 10 && line.charAt(inizio + 4) == '-' && line.charAt(inizio + 7) == '-') {
+            return LocalDate.of(
+                    parseInt(inizio, inizio + 4),
+                    parseInt(inizio + 5, inizio + 7),
+                    parseInt(inizio + 8, inizio + 10));
+        }
+        return LocalDate.parse(line.subSequence(inizio, fine));
+    }
+
+    /**
+     * Orario HH:mm, HH:mm:ss o HH:mm:ss.nnnnnnnnn; null se il campo è vuoto.
+     */
+    public LocalTime nextTime() {
+        avanza();
+        int lunghezza = fine - inizio;
+        if (lunghezza == 0) return null;
+        if (lunghezza < 5 || line.charAt(inizio + 2) != ':') {
+            return LocalTime.parse(line.subSequence(inizio, fine));
+        }
+
+        int ore = parseInt(inizio, inizio + 2);
+        int minuti = parseInt(inizio + 3, inizio + 5);
+        if (lunghezza == 5) return LocalTime.of(ore, minuti);
+
+        if (lunghezza < 8 || line.charAt(inizio + 5) != ':') {
+            return LocalTime.parse(line.subSequence(inizio, fine));
+        }
+        int secondi = parseInt(inizio + 6, inizio + 8);
+        if (lunghezza == 8) return LocalTime.of(ore, minuti, secondi);
+
+        int cifreNano = lunghezza - 9;
+        if (line.charAt(inizio + 8) != '.' || cifreNano < 1 || cifreNano > 9) {
+            return LocalTime.parse(line.subSequence(inizio, fine));
+        }
+        int nano = parseInt(inizio + 9, fine);
+        for (int k = cifreNano; k < 9; k++) nano *= 10;
+        return LocalTime.of(ore, minuti, secondi, nano);
+    }
+
+    /**
+     * Legge il primo campo intero di una riga (tipicamente l'ID del paziente).
+     */
+    public int leggiIntIniziale(CharSequence line) {
+        return reset(line).nextInt();
+    }
+
+    /**
+     * Formatta un valore testuale come campo CSV, aggiungendo le virgolette solo se necessario.
+     * Le interruzioni di riga vengono sostituite da spazi perché ogni record occupa una riga.
+     */
+    public static String quote(String value) {
+        if (value == null || value.isEmpty()) return "";
+
+        String valore = value;
+        if (valore.indexOf('\n') >= 0 || valore.indexOf('\r') >= 0) {
+            valore = valore.replace("\r\n", " ").replace('\n', ' ').replace('\r', ' ');
+        }
+
+        boolean serveQuote = valore.indexOf(DELIMITER) >= 0 || valore.indexOf(QUOTE) >= 0
+                || valore.charAt(0) <= ' ' || valore.charAt(valore.length() - 1) <= ' ';
+        if (!serveQuote) return valore;
+
+        return QUOTE + valore.replace("\"", "\"\"") + QUOTE;
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private void avanza() {
+        if (finito) throw new NoSuchElementException("Campi insufficienti nella riga: " + line);
+
+        int lunghezza = line.length();
+        int i = pos;
+        while (i < lunghezza && line.charAt(i) <= ' ' && line.charAt(i) != DELIMITER) i++;
+
+        conEscape = false;
+        if (i < lunghezza && line.charAt(i) == QUOTE) {
+            inizio = i + 1;
+            i = inizio;
+            while (true) {
+                if (i >= lunghezza) {
+                    throw new IllegalArgumentException("Virgolette non chiuse nella riga: " + line);
+                }
+                if (line.charAt(i) == QUOTE) {
+                    if (i + 1 < lunghezza && line.charAt(i + 1) == QUOTE) {
+                        conEscape = true;
+                        i += 2;
+                        continue;
+                    }
+                    break;
+                }
+                i++;
+            }
+            fine = i;
+            i++; // virgolette di chiusura
+            while (i < lunghezza && line.charAt(i) != DELIMITER) i++;
+        } else {
+            inizio = i;
+            while (i < lunghezza && line.charAt(i) != DELIMITER) i++;
+            fine = i;
+            while (fine > inizio && line.charAt(fine - 1) <= ' ') fine--;
+        }
+
+        if (i < lunghezza) {
+            pos = i + 1;
+        } else {
+            pos = lunghezza;
+            finito = true;
+        }
+    }
+
+    private int parseInt(int da, int a) {
+        if (da >= a) throw new NumberFormatException("Campo numerico vuoto");
+
+        boolean negativo = false;
+        int i = da;
+        char c = line.charAt(i);
+        if (c == '-' || c == '+') {
+            negativo = c == '-';
+            if (++i == a) throw new NumberFormatException("Numero non valido: " + line.subSequence(da, a));
+        }
+
+        long valore = 0;
+        for (; i < a; i++) {
+            c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Numero non valido: " + line.subSequence(da, a));
+            }
+            valore = valore * 10 + (c - '0');
+            if (valore > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Numero fuori intervallo: " + line.subSequence(da, a));
+            }
+        }
+        valore = negativo ? -valore : valore;
+        if (valore > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Numero fuori intervallo: " + line.subSequence(da, a));
+        }
+        return (int) valore;
+    }
+
+    private double fallbackDouble() {
+        return Double.parseDouble(line.subSequence(inizio, fine).toString());
+    }
+}
@@ -0,0 +1,372 @@
+package controller;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Journal append-only affiancato ai file CSV canonici.
+ * Ogni riga del journal è un'operazione: "+" seguito dalla riga CSV aggiunta,
+ * "-" seguito dalla riga CSV eliminata (tombstone). Il contenuto effettivo di un file
+ * è il CSV canonico con le operazioni del journal applicate in ordine.
+ * La compattazione riporta periodicamente il journal nel CSV canonico.
+ * <p>
+ * I tombstone sono righe nella forma scritta dal programma, mentre il CSV canonico può contenere
+ * righe scritte a mano ("12" invece di "12.0", un tipo pasto in minuscolo). Per i file con una
+ * normalizzazione registrata ({@link #registraNormalizzazione}) una riga canonica che non
+ * corrisponde esattamente a un tombstone viene riportata alla forma del programma e confrontata
+ * di nuovo; solo per le righe dei pazienti che hanno tombstone.
+ */
+final class CsvJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(CsvJournal.class.getName());
+
+    static final String ESTENSIONE = ".journal";
+    private static final char OP_AGGIUNTA = '+';
+    private static final char OP_ELIMINAZIONE = '-';
+    private static final long INTERVALLO_COMPATTAZIONE_SECONDI = 60;
+
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    private static final Map<String, Runnable> COMPATTAZIONI = new ConcurrentHashMap<>();
+    private static final Map<String, UnaryOperator<String>> NORMALIZZAZIONI = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService COMPATTATORE = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "csv-journal-compattazione");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        COMPATTATORE.scheduleWithFixedDelay(CsvJournal::eseguiCompattazioni,
+                INTERVALLO_COMPATTAZIONE_SECONDI, INTERVALLO_COMPATTAZIONE_SECONDI, TimeUnit.SECONDS);
+    }
+
+    private CsvJournal() {}
+
+    /**
+     * Lock condiviso da tutte le istanze di DataController per lo stesso file CSV.
+     */
+    static Object lock(String csvFile) {
+        return LOCKS.computeIfAbsent(chiave(csvFile), k -> new Object());
+    }
+
+    /**
+     * Registra la forma canonica delle righe dei file con l'header indicato. La funzione può
+     * girare su più thread; se lancia un'eccezione la riga viene confrontata così com'è.
+     */
+    static void registraNormalizzazione(String header, UnaryOperator<String> normalizzazione) {
+        NORMALIZZAZIONI.put(header, normalizzazione);
+    }
+
+    static Path percorso(String csvFile) {
+        return Paths.get(csvFile + ESTENSIONE);
+    }
+
+    static boolean haOperazioniPendenti(String csvFile) {
+        try {
+            Path journal = percorso(csvFile);
+            return Files.exists(journal) && Files.size(journal) > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static void aggiungi(String csvFile, String riga) throws IOException {
+        scriviOperazione(csvFile, OP_AGGIUNTA, riga);
+    }
+
+    static void elimina(String csvFile, String riga) throws IOException {
+        scriviOperazione(csvFile, OP_ELIMINAZIONE, riga);
+    }
+
+    private static void scriviOperazione(String csvFile, char operazione, String riga) throws IOException {
+        synchronized (lock(csvFile)) {
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(percorso(csvFile).toFile(), StandardCharsets.UTF_8, true))) {
+                bw.write(operazione);
+                bw.write(riga);
+                bw.newLine();
+            }
+        }
+    }
+
+    /**
+     * Legge il CSV canonico applicando le operazioni del journal e passa ogni riga
+     * effettiva (header escluso) al consumer.
+     *
+     * @return l'header del file canonico, null se il file è vuoto
+     * @throws FileNotFoundException se il file canonico non esiste
+     */
+    static String leggi(String csvFile, Consumer<String> consumer) throws IOException {
+        synchronized (lock(csvFile)) {
+            OperazioniJournal operazioni = caricaOperazioni(csvFile);
+
+            String header;
+            try (BufferedReader br = new BufferedReader(new FileReader(csvFile, StandardCharsets.UTF_8))) {
+                header = br.readLine();
+                operazioni.normalizzaCon(header);
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.trim().isEmpty()) continue;
+                    if (!operazioni.consumaTombstone(line)) {
+                        consumer.accept(line);
+                    }
+                }
+            }
+
+            operazioni.aggiunte.forEach(consumer);
+            return header;
+        }
+    }
+
+    /**
+     * Variante di {@link #leggi} per file di grandi dimensioni: il CSV canonico viene letto con
+     * {@link CsvMappedReader} e il mapper gira in parallelo, mentre il consumer riceve i risultati
+     * nell'ordine del file sul thread chiamante. Le righe colpite da un tombstone vengono
+     * rimandate alla fase sequenziale, dove il tombstone viene consumato.
+     *
+     * @return l'header del file canonico, null se il file è vuoto
+     * @throws java.nio.file.NoSuchFileException se il file canonico non esiste
+     */
+    static <R> String leggiInParallelo(String csvFile, Function<String, R> mapper, Consumer<R> consumer)
+            throws IOException {
+        synchronized (lock(csvFile)) {
+            OperazioniJournal operazioni = caricaOperazioni(csvFile);
+            if (operazioni.haTombstone()) operazioni.normalizzaCon(leggiHeader(csvFile));
+            // I thread del mapper leggono una copia immutabile: la mappa dei tombstone viene
+            // modificata solo dal thread chiamante, mentre consuma i blocchi già pronti
+            Predicate<String> conTombstone = operazioni.confrontoTombstone();
+
+            String header = CsvMappedReader.leggi(Paths.get(csvFile),
+                    line -> conTombstone.test(line) ? new RigaRimandata(line) : mapper.apply(line),
+                    risultato -> {
+                        if (risultato instanceof RigaRimandata rimandata) {
+                            if (operazioni.consumaTombstone(rimandata.riga())) return;
+                            risultato = mapper.apply(rimandata.riga());
+                            if (risultato == null) return;
+                        }
+                        @SuppressWarnings("unchecked")
+                        R valore = (R) risultato;
+                        consumer.accept(valore);
+                    });
+
+            for (String riga : operazioni.aggiunte) {
+                R risultato = mapper.apply(riga);
+                if (risultato != null) consumer.accept(risultato);
+            }
+            return header;
+        }
+    }
+
+    /**
+     * Legge le sole righe effettive del paziente: quelle del CSV canonico tramite
+     * {@link IndiceCsvPazienti}, con tombstone e aggiunte del journal applicati.
+     *
+     * @throws java.nio.file.NoSuchFileException se il file canonico non esiste
+     */
+    static void leggiPaziente(String csvFile, int pazienteId, Consumer<String> consumer) throws IOException {
+        synchronized (lock(csvFile)) {
+            OperazioniJournal operazioni = caricaOperazioni(csvFile);
+            if (operazioni.haTombstone()) operazioni.normalizzaCon(leggiHeader(csvFile));
+
+            IndiceCsvPazienti.di(csvFile).leggi(csvFile, pazienteId, line -> {
+                if (!operazioni.consumaTombstone(line)) {
+                    consumer.accept(line);
+                }
+            });
+
+            CsvFieldScanner scanner = new CsvFieldScanner();
+            for (String riga : operazioni.aggiunte) {
+                try {
+                    if (scanner.leggiIntIniziale(riga) == pazienteId) consumer.accept(riga);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Riga del journal senza ID paziente: {0}", riga);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indica se il file (journal incluso) può contenere righe del paziente: vero anche se tutte
+     * le sue righe canoniche sono state eliminate con un tombstone.
+     *
+     * @throws java.nio.file.NoSuchFileException se il file canonico non esiste
+     */
+    static boolean contienePaziente(String csvFile, int pazienteId) throws IOException {
+        synchronized (lock(csvFile)) {
+            if (IndiceCsvPazienti.di(csvFile).contiene(pazienteId)) return true;
+
+            CsvFieldScanner scanner = new CsvFieldScanner();
+            for (String riga : caricaOperazioni(csvFile).aggiunte) {
+                try {
+                    if (scanner.leggiIntIniziale(riga) == pazienteId) return true;
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Riga del journal senza ID paziente: {0}", riga);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Elimina il journal; da chiamare quando il contenuto effettivo è stato riscritto nel CSV canonico.
+     */
+    static void svuota(String csvFile) {
+        synchronized (lock(csvFile)) {
+            try {
+                Files.deleteIfExists(percorso(csvFile));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Impossibile eliminare il journal di: " + csvFile, e);
+            }
+        }
+    }
+
+    /**
+     * Registra la compattazione periodica in background per il file indicato.
+     * La compattazione viene eseguita solo quando il journal contiene operazioni.
+     */
+    static void pianificaCompattazione(String csvFile, Runnable compattazione) {
+        COMPATTAZIONI.putIfAbsent(chiave(csvFile), compattazione);
+    }
+
+    private static void eseguiCompattazioni() {
+        COMPATTAZIONI.forEach((file, compattazione) -> {
+            if (!haOperazioniPendenti(file)) return;
+            try {
+                compattazione.run();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Errore durante la compattazione del journal: " + file, e);
+            }
+        });
+    }
+
+    private static OperazioniJournal caricaOperazioni(String csvFile) throws IOException {
+        OperazioniJournal operazioni = new OperazioniJournal();
+        Path journal = percorso(csvFile);
+        if (!Files.exists(journal)) return operazioni;
+
+        try (BufferedReader br = new BufferedReader(new FileReader(journal.toFile(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.length() < 2) continue;
+                String riga = line.substring(1);
+                switch (line.charAt(0)) {
+                    case OP_AGGIUNTA -> operazioni.aggiunte.add(riga);
+                    case OP_ELIMINAZIONE -> operazioni.registraEliminazione(riga);
+                    default -> LOGGER.log(Level.WARNING, "Operazione journal sconosciuta: {0}", line);
+                }
+            }
+        }
+        return operazioni;
+    }
+
+    private static String leggiHeader(String csvFile) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(csvFile, StandardCharsets.UTF_8))) {
+            return br.readLine();
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static String chiave(String csvFile) {
+        return Paths.get(csvFile).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Riga del file canonico con un tombstone: viene valutata nella fase sequenziale.
+     */
+    private record RigaRimandata(String riga) {}
+
+    /**
+     * Operazioni del journal ridotte a: righe aggiunte ancora presenti e tombstone
+     * da applicare alle righe del file canonico.
+     */
+    private static final class OperazioniJournal {
+        private final List<String> aggiunte = new ArrayList<>();
+        private final Map<String, Integer> tombstone = new HashMap<>();
+        // Può contenere pazienti i cui tombstone sono già stati consumati
+        private final Set<Integer> pazientiConTombstone = new HashSet<>();
+        private UnaryOperator<String> normalizzazione;
+
+        void registraEliminazione(String riga) {
+            int indice = aggiunte.lastIndexOf(riga);
+            if (indice >= 0) {
+                aggiunte.remove(indice);
+            } else {
+                tombstone.merge(riga, 1, Integer::sum);
+                pazientiConTombstone.add(pazienteDi(riga));
+            }
+        }
+
+        boolean haTombstone() {
+            return !tombstone.isEmpty();
+        }
+
+        void normalizzaCon(String header) {
+            normalizzazione = header == null ? null : NORMALIZZAZIONI.get(header.trim());
+        }
+
+        /**
+         * Confronto con i tombstone su copie immutabili, utilizzabile da più thread.
+         */
+        Predicate<String> confrontoTombstone() {
+            Set<String> righe = Set.copyOf(tombstone.keySet());
+            if (righe.isEmpty()) return riga -> false;
+            Set<Integer> pazienti = Set.copyOf(pazientiConTombstone);
+            UnaryOperator<String> normalizza = normalizzazione;
+            return riga -> {
+                if (righe.contains(riga)) return true;
+                String canonica = formaCanonica(riga, pazienti, normalizza);
+                return canonica != null && righe.contains(canonica);
+            };
+        }
+
+        boolean consumaTombstone(String riga) {
+            if (tombstone.isEmpty()) return false;
+            if (consuma(riga)) return true;
+            String canonica = formaCanonica(riga, pazientiConTombstone, normalizzazione);
+            return canonica != null && consuma(canonica);
+        }
+
+        private boolean consuma(String riga) {
+            Integer count = tombstone.get(riga);
+            if (count == null) return false;
+            if (count == 1) tombstone.remove(riga);
+            else tombstone.put(riga, count - 1);
+            return true;
+        }
+
+        /**
+         * @return la riga nella forma del programma, null se non serve o non è possibile
+         */
+        private static String formaCanonica(String riga, Set<Integer> pazienti, UnaryOperator<String> normalizza) {
+            if (normalizza == null || !pazienti.contains(pazienteDi(riga))) return null;
+            try {
+                String canonica = normalizza.apply(riga);
+                return riga.equals(canonica) ? null : canonica;
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        private static int pazienteDi(String riga) {
+            int virgola = riga.indexOf(',');
+            try {
+                return Integer.parseInt((virgola < 0 ? riga : riga.substring(0, virgola)).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Lettore di file CSV di grandi dimensioni tramite FileChannel e MappedByteBuffer.
+ * Il file viene diviso in blocchi allineati ai ritorni a capo; ogni blocco viene mappato
+ * e convertito in parallelo dalla funzione di mapping, mentre i risultati vengono consegnati
+ * al consumer sul thread chiamante nell'ordine del file.
+ * Il file è letto come UTF-8.
+ */
+final class CsvMappedReader {
+
+    /** Sotto questa dimensione la lettura sequenziale con BufferedReader è più conveniente. */
+    static final long SOGLIA_MAPPATURA = 8L * 1024 * 1024;
+
+    private static final int BLOCCO_MINIMO = 1024 * 1024;
+    private static final int BLOCCO_MASSIMO = 64 * 1024 * 1024;
+    private static final int BLOCCHI_PER_THREAD = 4;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService PARSER = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread thread = new Thread(r, "csv-parsing-parallelo");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CsvMappedReader() {}
+
+    /**
+     * Legge il file applicando il mapper in parallelo a ogni riga non vuota (header escluso)
+     * e passa i risultati non null al consumer, in ordine, sul thread chiamante.
+     *
+     * @return l'header del file, null se il file è vuoto
+     */
+    static <R> String leggi(Path file, Function<String, R> mapper, Consumer<R> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long dimensione = channel.size();
+            long fineHeader = cercaFineRiga(channel, 0, dimensione);
+            if (dimensione == 0) return null;
+
+            String header = decodifica(mappa(channel, 0, fineHeader), 0, (int) fineHeader);
+            List<Future<List<R>>> blocchi = new ArrayList<>();
+            for (long[] blocco : dividiInBlocchi(channel, fineHeader + 1, dimensione)) {
+                long inizio = blocco[0];
+                long fine = blocco[1];
+                blocchi.add(PARSER.submit(() -> elaboraBlocco(channel, inizio, fine, mapper)));
+            }
+
+            // I blocchi vengono consegnati appena pronti, senza attendere la fine degli altri
+            for (Future<List<R>> blocco : blocchi) {
+                attendi(blocco).forEach(consumer);
+            }
+            return header;
+        }
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private static List<long[]> dividiInBlocchi(FileChannel channel, long inizio, long dimensione) throws IOException {
+        long dimensioneBlocco = Math.max(BLOCCO_MINIMO,
+                Math.min(BLOCCO_MASSIMO, (dimensione - inizio) / ((long) THREADS * BLOCCHI_PER_THREAD) + 1));
+
+        List<long[]> blocchi = new ArrayList<>();
+        long posizione = inizio;
+        while (posizione < dimensione) {
+            long fine = Math.min(dimensione, posizione + dimensioneBlocco);
+            if (fine < dimensione) {
+                // Il blocco termina sul primo ritorno a capo successivo, incluso
+                fine = Math.min(dimensione, cercaFineRiga(channel, fine, dimensione) + 1);
+            }
+            blocchi.add(new long[]{posizione, fine});
+            posizione = fine;
+        }
+        return blocchi;
+    }
+
+    private static <R> List<R> elaboraBlocco(FileChannel channel, long inizio, long fine,
+                                             Function<String, R> mapper) throws IOException {
+        int lunghezza = (int) (fine - inizio);
+        MappedByteBuffer buffer = mappa(channel, inizio, lunghezza);
+        List<R> risultati = new ArrayList<>();
+
+        int inizioRiga = 0;
+        for (int i = 0; i <= lunghezza; i++) {
+            if (i < lunghezza && buffer.get(i) != '\n') continue;
+
+            String riga = decodifica(buffer, inizioRiga, i);
+            inizioRiga = i + 1;
+            if (riga.trim().isEmpty()) continue;
+
+            R risultato = mapper.apply(riga);
+            if (risultato != null) risultati.add(risultato);
+        }
+        return risultati;
+    }
+
+    /**
+     * Posizione del primo '\n' a partire da {@code da}, oppure la fine del file.
+     */
+    private static long cercaFineRiga(FileChannel channel, long da, long dimensione) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long posizione = da;
+        while (posizione < dimensione) {
+            buffer.clear();
+            int letti = channel.read(buffer, posizione);
+            if (letti <= 0) break;
+            for (int i = 0; i < letti; i++) {
+                if (buffer.get(i) == '\n') return posizione + i;
+            }
+            posizione += letti;
+        }
+        return dimensione;
+    }
+
+    private static MappedByteBuffer mappa(FileChannel channel, long inizio, long lunghezza) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, inizio, lunghezza);
+    }
+
+    private static String decodifica(ByteBuffer buffer, int da, int a) {
+        if (a > da && buffer.get(a - 1) == '\r') a--;
+        byte[] bytes = new byte[a - da];
+        buffer.get(da, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static <R> List<R> attendi(Future<List<R>> blocco) throws IOException {
+        try {
+            return blocco.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Lettura interrotta", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Errore nella lettura parallela", e.getCause());
+        }
+    }
+}
@@ -2,11 +2,19 @@ package controller;
 
 import model.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 import java.util.logging.Logger;
 import java.util.logging.Level;
@@ -19,18 +27,90 @@ public class DataController extends BaseController {
 
     private static final Logger LOGGER = Logger.getLogger(DataController.class.getName());
     private static final String CSV_DELIMITER = ",";
-    private static final int CSV_SPLIT_LIMIT = -1;
+
+    /**
+     * Strategia di persistenza per le singole aggiunte/eliminazioni.
+     * RISCRITTURA riscrive l'intero file a ogni salvataggio, JOURNAL accoda le modifiche
+     * in un journal append-only che viene compattato periodicamente nel CSV canonico.
+     */
+    public enum ModalitaPersistenza { RISCRITTURA, JOURNAL }
+
+    /**
+     * File dati per tipo di entità, usato da chi serializza e salva in momenti diversi
+     * (es. SalvataggioDifferito).
+     */
+    public enum TipoEntita {
+        RILEVAZIONI, TERAPIE, ASSUNZIONI, SCHEDE_CLINICHE, EVENTI_CLINICI, TERAPIE_CONCOMITANTI
+    }
+
+    /**
+     * Registro dei pazienti condiviso da tutte le istanze: costruito una sola volta da
+     * caricaUtenti e sostituito in blocco (copy-on-write) a ogni aggiornamento.
+     */
+    private static volatile RegistroPazienti registroPazienti = new RegistroPazienti();
+    private static volatile List<Utente> utentiRegistrati = List.of();
 
     private final FilePathProvider filePathProvider;
+    private final ModalitaPersistenza modalitaPersistenza;
     private final CsvProcessor csvProcessor;
     private final EntityParsers entityParsers;
     private final EntitySerializers entitySerializers;
+    private final SnapshotModello snapshot;
+    private final BackendArchiviazione backend; // null: file CSV della cartella dati
+
+    static {
+        // I tombstone del journal sono righe serializzate da EntitySerializers: le righe del CSV
+        // canonico scritte in altra forma vi vengono riportate prima del confronto
+        EntitySerializers serializzatori = new EntitySerializers();
+        CsvJournal.registraNormalizzazione(CsvHeaders.RILEVAZIONI, riga -> {
+            CsvFieldScanner scanner = new CsvFieldScanner().reset(riga);
+            int pazienteId = scanner.nextInt();
+            return serializzatori.serializeRilevazione(pazienteId,
+                    new Rilevazione(scanner.nextDate(), scanner.nextString(), scanner.nextInt()));
+        });
+        CsvJournal.registraNormalizzazione(CsvHeaders.ASSUNZIONI, riga -> {
+            CsvFieldScanner scanner = new CsvFieldScanner().reset(riga);
+            int pazienteId = scanner.nextInt();
+            return serializzatori.serializeAssunzione(pazienteId, new Assunzione(
+                    scanner.nextDate(), scanner.nextTime(), scanner.nextString(), scanner.nextDouble()));
+        });
+    }
 
     public DataController() {
-        this.filePathProvider = new FilePathProvider();
+        this(new FilePathProvider(), ModalitaPersistenza.RISCRITTURA);
+    }
+
+    public DataController(ModalitaPersistenza modalitaPersistenza) {
+        this(new FilePathProvider(), modalitaPersistenza);
+    }
+
+    /**
+     * Crea il controller sulla cartella dati indicata, con il backend configurato nel suo
+     * archiviazione.properties (vedi {@link BackendArchiviazione}).
+     */
+    public DataController(FilePathProvider filePathProvider, ModalitaPersistenza modalitaPersistenza) {
+        this(filePathProvider, modalitaPersistenza, BackendArchiviazione.esterno(filePathProvider));
+    }
+
+    /**
+     * @param backend backend dei dati dei pazienti, null per i file CSV
+     */
+    DataController(FilePathProvider filePathProvider, ModalitaPersistenza modalitaPersistenza,
+                   BackendArchiviazione backend) {
+        this.filePathProvider = filePathProvider;
+        this.backend = backend;
+        this.modalitaPersistenza = modalitaPersistenza;
         this.csvProcessor = new CsvProcessor();
         this.entityParsers = new EntityParsers();
         this.entitySerializers = new EntitySerializers();
+        this.snapshot = SnapshotModello.per(filePathProvider);
+
+        if (modalitaPersistenza == ModalitaPersistenza.JOURNAL && backend == null) {
+            if (!rilevazioniColonnari()) {
+                pianificaCompattazioni(TipoEntita.RILEVAZIONI);
+            }
+            pianificaCompattazioni(TipoEntita.ASSUNZIONI);
+        }
     }
 
     // ============ PUBLIC API ============
@@ -39,6 +119,7 @@ public class DataController extends BaseController {
         try {
             List<Utente> utenti = csvProcessor.loadEntities(utentiFile, entityParsers::parseUtente);
             associaPazientiAiMedici(utenti);
+            pubblicaRegistro(utenti);
             LOGGER.log(Level.INFO, "Caricati {0} utenti", utenti.size());
             return utenti;
         } catch (DataProcessingException e) {
@@ -47,110 +128,744 @@ public class DataController extends BaseController {
         }
     }
 
-    public void caricaRilevazioni(String file, List<Utente> utenti) {
-        Map<Integer, Paziente> pazientiMap = createPazientiMap(utenti);
-        int loaded = csvProcessor.loadAndProcessEntities(file,
-                line -> entityParsers.parseRilevazione(line, pazientiMap));
+    public int caricaRilevazioni(String file, List<Utente> utenti) {
+        RegistroPazienti registro = risolviRegistro(utenti);
+        int loaded = ArchivioRilevazioniColonnare.isColonnare(file)
+                ? caricaRilevazioniColonnari(file, registro, null)
+                : perPartizione(file, partizione -> csvProcessor.loadAndProcessEntitiesInParallel(partizione,
+                        line -> entityParsers.preparaRilevazione(line, registro)));
         LOGGER.log(Level.INFO, "Caricate {0} rilevazioni", loaded);
+        return loaded;
     }
 
-    public void caricaTerapie(String file, List<Utente> utenti) {
-        Map<Integer, Paziente> pazientiMap = createPazientiMap(utenti);
+    public int caricaTerapie(String file, List<Utente> utenti) {
+        RegistroPazienti registro = risolviRegistro(utenti);
         int loaded = csvProcessor.loadAndProcessEntities(file,
-                line -> entityParsers.parseTerapia(line, pazientiMap));
+                line -> entityParsers.parseTerapia(line, registro));
         LOGGER.log(Level.INFO, "Caricate {0} terapie", loaded);
+        return loaded;
     }
 
-    public void caricaAssunzioni(String file, List<Utente> utenti) {
-        Map<Integer, Paziente> pazientiMap = createPazientiMap(utenti);
-        int loaded = csvProcessor.loadAndProcessEntities(file,
-                line -> entityParsers.parseAssunzione(line, pazientiMap));
+    public int caricaAssunzioni(String file, List<Utente> utenti) {
+        RegistroPazienti registro = risolviRegistro(utenti);
+        int loaded = perPartizione(file, partizione -> csvProcessor.loadAndProcessEntitiesInParallel(partizione,
+                line -> entityParsers.preparaAssunzione(line, registro)));
         LOGGER.log(Level.INFO, "Caricate {0} assunzioni", loaded);
+        return loaded;
     }
 
-    public void caricaSchedeCliniche(String file, List<Utente> utenti) {
-        Map<Integer, Paziente> pazientiMap = createPazientiMap(utenti);
+    public int caricaSchedeCliniche(String file, List<Utente> utenti) {
+        RegistroPazienti registro = risolviRegistro(utenti);
         int loaded = csvProcessor.loadAndProcessEntities(file,
-                line -> entityParsers.parseSchedaClinica(line, pazientiMap));
+                line -> entityParsers.parseSchedaClinica(line, registro));
         LOGGER.log(Level.INFO, "Caricate {0} schede cliniche", loaded);
+        return loaded;
     }
 
-    public void caricaEventiClinici(String file, List<Utente> utenti) {
-        Map<Integer, Paziente> pazientiMap = createPazientiMap(utenti);
+    public int caricaEventiClinici(String file, List<Utente> utenti) {
+        RegistroPazienti registro = risolviRegistro(utenti);
         int loaded = csvProcessor.loadAndProcessEntities(file,
-                line -> entityParsers.parseEventoClinico(line, pazientiMap));
+                line -> entityParsers.parseEventoClinico(line, registro));
         LOGGER.log(Level.INFO, "Caricati {0} eventi clinici", loaded);
+        return loaded;
     }
 
-    public void caricaTerapieConcomitanti(String file, List<Utente> utenti) {
-        Map<Integer, Paziente> pazientiMap = createPazientiMap(utenti);
+    public int caricaTerapieConcomitanti(String file, List<Utente> utenti) {
+        RegistroPazienti registro = risolviRegistro(utenti);
         int loaded = csvProcessor.loadAndProcessEntities(file,
-                line -> entityParsers.parseTerapiaConcomitante(line, pazientiMap));
+                line -> entityParsers.parseTerapiaConcomitante(line, registro));
         LOGGER.log(Level.INFO, "Caricate {0} terapie concomitanti", loaded);
+        return loaded;
+    }
+
+    /**
+     * Carica i soli dati del paziente (rilevazioni, terapie, assunzioni, scheda clinica, eventi
+     * clinici e terapie concomitanti) sostituendo quelli già presenti. Le righe vengono lette
+     * tramite un indice pazienteId → offset per file, costruito alla prima richiesta e
+     * riutilizzato finché il file non cambia, invece di scandire ogni file per intero.
+     *
+     * @return il numero di entità caricate
+     */
+    public int caricaDatiPaziente(Paziente paziente) {
+        int loaded = 0;
+        for (TipoEntita tipo : TipoEntita.values()) {
+            loaded += caricaEntitaPaziente(tipo, paziente);
+        }
+        LOGGER.log(Level.INFO, "Caricate {0} entità per il paziente ID: {1}", new Object[]{loaded, paziente.getId()});
+        return loaded;
+    }
+
+    /**
+     * Sostituisce le entità del tipo indicato del paziente con quelle memorizzate.
+     */
+    int caricaEntitaPaziente(TipoEntita tipo, Paziente paziente) {
+        svuota(tipo, paziente);
+        if (backend != null) {
+            return caricaDaBackend(tipo, paziente);
+        }
+
+        RegistroPazienti registro = RegistroPazienti.da(List.of(paziente));
+        int id = paziente.getId();
+        return switch (tipo) {
+            case RILEVAZIONI -> rilevazioniColonnari()
+                    ? caricaRilevazioniColonnari(filePathProvider.getRilevazioniFile(), registro, paziente)
+                    : perPartizione(filePathProvider.getRilevazioniFile(), partizione -> csvProcessor.loadPatientEntities(
+                            partizione, id, line -> entityParsers.parseRilevazione(line, registro)));
+            case TERAPIE -> csvProcessor.loadPatientEntities(filePathProvider.getTerapieFile(), id,
+                    line -> entityParsers.parseTerapia(line, registro));
+            case ASSUNZIONI -> perPartizione(filePathProvider.getAssunzioniFile(), partizione -> csvProcessor.loadPatientEntities(
+                    partizione, id, line -> entityParsers.parseAssunzione(line, registro)));
+            case SCHEDE_CLINICHE -> csvProcessor.loadPatientEntities(filePathProvider.getSchedeClinicheFile(), id,
+                    line -> entityParsers.parseSchedaClinica(line, registro));
+            case EVENTI_CLINICI -> csvProcessor.loadPatientEntities(filePathProvider.getEventiCliniciFile(), id,
+                    line -> entityParsers.parseEventoClinico(line, registro));
+            case TERAPIE_CONCOMITANTI -> csvProcessor.loadPatientEntities(filePathProvider.getTerapieConcomitantiFile(), id,
+                    line -> entityParsers.parseTerapiaConcomitante(line, registro));
+        };
+    }
+
+    /**
+     * Rilevazioni del paziente con data compresa tra {@code da} e {@code a} (inclusi).
+     * Con le partizioni mensili vengono lette solo quelle dei mesi dell'intervallo.
+     */
+    public List<Rilevazione> caricaRilevazioni(int pazienteId, LocalDate da, LocalDate a) {
+        if (backend != null) return backend.rilevazioni().caricaPeriodo(pazienteId, da, a);
+        Paziente paziente = new Paziente(pazienteId, null, null, null, null);
+        caricaPeriodo(TipoEntita.RILEVAZIONI, paziente, da, a);
+        return paziente.getRilevazioni().stream()
+                .filter(r -> !r.getData().isBefore(da) && !r.getData().isAfter(a))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Assunzioni del paziente con data compresa tra {@code da} e {@code a} (inclusi).
+     * Con le partizioni mensili vengono lette solo quelle dei mesi dell'intervallo.
+     */
+    public List<Assunzione> caricaAssunzioni(int pazienteId, LocalDate da, LocalDate a) {
+        if (backend != null) return backend.assunzioni().caricaPeriodo(pazienteId, da, a);
+        Paziente paziente = new Paziente(pazienteId, null, null, null, null);
+        caricaPeriodo(TipoEntita.ASSUNZIONI, paziente, da, a);
+        return paziente.getAssunzioni().stream()
+                .filter(as -> !as.getData().isBefore(da) && !as.getData().isAfter(a))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Divide rilevazioni (se in CSV) e assunzioni in un file per mese, journal inclusi.
+     * Da quel momento caricamenti e salvataggi usano le partizioni; l'operazione va fatta una volta
+     * sola, a dati fermi, e non cambia il contenuto dei dati.
+     *
+     * @return il numero di partizioni create
+     */
+    public int partizionaPerMese() {
+        int create = 0;
+        for (TipoEntita tipo : List.of(TipoEntita.RILEVAZIONI, TipoEntita.ASSUNZIONI)) {
+            if (tipo == TipoEntita.RILEVAZIONI && rilevazioniColonnari()) continue;
+            String file = fileDi(tipo);
+            synchronized (CsvJournal.lock(file)) {
+                try {
+                    create += PartizioniMensili.partiziona(file, headerDi(tipo));
+                    snapshot.registraAllineamento(tipo);
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "Errore partizionamento: " + file, e);
+                }
+            }
+            if (modalitaPersistenza == ModalitaPersistenza.JOURNAL) pianificaCompattazioni(tipo);
+        }
+        return create;
+    }
+
+    /**
+     * Indica se i dati dei pazienti sono su un backend diverso dai CSV: in quel caso vanno
+     * caricati per paziente con {@link #caricaDatiPaziente} e non con i metodi carica* per file.
+     */
+    public boolean isBackendEsterno() {
+        return backend != null;
     }
 
     // Save methods
     public void salvaRilevazioni(List<Paziente> pazienti) {
-        csvProcessor.saveWithMerge(
-                filePathProvider.getRilevazioniFile(),
-                pazienti,
-                CsvHeaders.RILEVAZIONI,
-                entitySerializers::serializeRilevazioni
-        );
+        salvaPazienti(TipoEntita.RILEVAZIONI, pazienti);
     }
 
     public void salvaTerapie(List<Paziente> pazienti) {
-        csvProcessor.saveWithMerge(
-                filePathProvider.getTerapieFile(),
-                pazienti,
-                CsvHeaders.TERAPIE,
-                entitySerializers::serializeTerapie
-        );
+        salvaPazienti(TipoEntita.TERAPIE, pazienti);
     }
 
     public void salvaAssunzioni(List<Paziente> pazienti) {
-        csvProcessor.saveWithMerge(
-                filePathProvider.getAssunzioniFile(),
-                pazienti,
-                CsvHeaders.ASSUNZIONI,
-                entitySerializers::serializeAssunzioni
-        );
+        salvaPazienti(TipoEntita.ASSUNZIONI, pazienti);
     }
 
     public void salvaSchedeCliniche(List<Paziente> pazienti) {
-        csvProcessor.saveWithMerge(
-                filePathProvider.getSchedeFile(),
-                pazienti,
-                CsvHeaders.SCHEDE_CLINICHE,
-                entitySerializers::serializeSchedeCliniche
-        );
+        salvaPazienti(TipoEntita.SCHEDE_CLINICHE, pazienti);
     }
 
     public void salvaEventiClinici(List<Paziente> pazienti) {
-        csvProcessor.saveWithMerge(
-                filePathProvider.getEventiCliniciFile(),
-                pazienti,
-                CsvHeaders.EVENTI_CLINICI,
-                entitySerializers::serializeEventiClinici
-        );
+        salvaPazienti(TipoEntita.EVENTI_CLINICI, pazienti);
     }
 
     public void salvaTerapieConcomitanti(List<Paziente> pazienti) {
-        csvProcessor.saveWithMerge(
-                filePathProvider.getTerapieConcomitantiFile(),
-                pazienti,
-                CsvHeaders.TERAPIE_CONCOMITANTI,
-                entitySerializers::serializeTerapieConcomitanti
-        );
+        salvaPazienti(TipoEntita.TERAPIE_CONCOMITANTI, pazienti);
+    }
+
+    // Incremental persistence (journal)
+
+    /**
+     * Persiste una rilevazione già aggiunta al paziente.
+     * In modalità JOURNAL la riga viene solo accodata al journal, senza riscrivere il file.
+     */
+    public void registraRilevazione(Paziente paziente, Rilevazione rilevazione) {
+        if (backend != null) {
+            backend.rilevazioni().aggiungi(paziente.getId(), rilevazione);
+            return;
+        }
+        if (!usaJournal(TipoEntita.RILEVAZIONI)) {
+            salvaRilevazioni(List.of(paziente));
+            return;
+        }
+        applicaJournal(TipoEntita.RILEVAZIONI, true, serializzaRilevazione(paziente, rilevazione));
+    }
+
+    /**
+     * Persiste l'eliminazione di una rilevazione già rimossa dal paziente.
+     * In modalità JOURNAL viene accodato un tombstone per la riga corrispondente.
+     */
+    public void eliminaRilevazione(Paziente paziente, Rilevazione rilevazione) {
+        if (backend != null) {
+            backend.rilevazioni().elimina(paziente.getId(), rilevazione);
+            return;
+        }
+        if (!usaJournal(TipoEntita.RILEVAZIONI)) {
+            salvaRilevazioni(List.of(paziente));
+            return;
+        }
+        applicaJournal(TipoEntita.RILEVAZIONI, false, serializzaRilevazione(paziente, rilevazione));
+    }
+
+    public void registraAssunzione(Paziente paziente, Assunzione assunzione) {
+        if (backend != null) {
+            backend.assunzioni().aggiungi(paziente.getId(), assunzione);
+            return;
+        }
+        if (!usaJournal(TipoEntita.ASSUNZIONI)) {
+            salvaAssunzioni(List.of(paziente));
+            return;
+        }
+        applicaJournal(TipoEntita.ASSUNZIONI, true, serializzaAssunzione(paziente, assunzione));
+    }
+
+    public void eliminaAssunzione(Paziente paziente, Assunzione assunzione) {
+        if (backend != null) {
+            backend.assunzioni().elimina(paziente.getId(), assunzione);
+            return;
+        }
+        if (!usaJournal(TipoEntita.ASSUNZIONI)) {
+            salvaAssunzioni(List.of(paziente));
+            return;
+        }
+        applicaJournal(TipoEntita.ASSUNZIONI, false, serializzaAssunzione(paziente, assunzione));
+    }
+
+    /**
+     * Riporta immediatamente nei CSV canonici le operazioni accodate nei journal.
+     */
+    public void compattaJournal() {
+        if (!rilevazioniColonnari()) {
+            perPartizione(filePathProvider.getRilevazioniFile(), partizione -> {
+                csvProcessor.compact(TipoEntita.RILEVAZIONI, partizione);
+                return 0;
+            });
+        }
+        perPartizione(filePathProvider.getAssunzioniFile(), partizione -> {
+            csvProcessor.compact(TipoEntita.ASSUNZIONI, partizione);
+            return 0;
+        });
+    }
+
+    // Deferred persistence: serializzazione e scrittura separate
+
+    /**
+     * Serializza le righe del paziente per il tipo indicato, senza scrivere su disco.
+     * Le righe possono poi essere salvate da un altro thread con {@link #salvaRighe}.
+     */
+    public List<String> serializza(TipoEntita tipo, Paziente paziente) {
+        return switch (tipo) {
+            case RILEVAZIONI -> entitySerializers.serializeRilevazioni(paziente);
+            case TERAPIE -> entitySerializers.serializeTerapie(paziente);
+            case ASSUNZIONI -> entitySerializers.serializeAssunzioni(paziente);
+            case SCHEDE_CLINICHE -> entitySerializers.serializeSchedeCliniche(paziente);
+            case EVENTI_CLINICI -> entitySerializers.serializeEventiClinici(paziente);
+            case TERAPIE_CONCOMITANTI -> entitySerializers.serializeTerapieConcomitanti(paziente);
+        };
+    }
+
+    public String serializzaRilevazione(Paziente paziente, Rilevazione rilevazione) {
+        return entitySerializers.serializeRilevazione(paziente.getId(), rilevazione);
+    }
+
+    public String serializzaAssunzione(Paziente paziente, Assunzione assunzione) {
+        return entitySerializers.serializeAssunzione(paziente.getId(), assunzione);
+    }
+
+    /**
+     * Indica se le singole aggiunte/eliminazioni del tipo vengono accodate nel journal.
+     */
+    public boolean usaJournal(TipoEntita tipo) {
+        if (modalitaPersistenza != ModalitaPersistenza.JOURNAL || backend != null) return false;
+        return tipo == TipoEntita.ASSUNZIONI || (tipo == TipoEntita.RILEVAZIONI && !rilevazioniColonnari());
+    }
+
+    /**
+     * Sostituisce nel file del tipo indicato le righe dei pazienti con quelle già serializzate.
+     *
+     * @param righePerPaziente righe serializzate per ID paziente (lista vuota = nessuna riga)
+     * @return false se il file non è stato scritto
+     */
+    public boolean salvaRighe(TipoEntita tipo, Map<Integer, List<String>> righePerPaziente) {
+        if (righePerPaziente.isEmpty()) return true;
+        if (backend != null) {
+            List<Paziente> pazienti = new ArrayList<>();
+            righePerPaziente.forEach((id, righe) -> {
+                Paziente paziente = new Paziente(id, null, null, null, null);
+                applicaRighe(tipo, paziente, righe);
+                pazienti.add(paziente);
+            });
+            salvaSuBackend(tipo, pazienti);
+            return true;
+        }
+        synchronized (CsvJournal.lock(fileDi(tipo))) {
+            boolean salvato;
+            if (tipo == TipoEntita.RILEVAZIONI && rilevazioniColonnari()) {
+                salvato = salvaRigheRilevazioniColonnari(righePerPaziente);
+            } else if (partizionate(tipo)) {
+                salvato = salvaRighePartizionate(tipo, righePerPaziente);
+            } else {
+                salvato = csvProcessor.saveLinesWithMerge(fileDi(tipo), righePerPaziente, headerDi(tipo));
+            }
+            if (salvato) snapshot.registraRighe(tipo, righePerPaziente);
+            return salvato;
+        }
+    }
+
+    /**
+     * Accoda al journal del tipo indicato un'aggiunta o un tombstone già serializzati.
+     *
+     * @return false se l'operazione non è stata registrata
+     */
+    public boolean applicaJournal(TipoEntita tipo, boolean aggiunta, String riga) {
+        synchronized (CsvJournal.lock(fileDi(tipo))) {
+            String file = fileDi(tipo);
+            if (partizionate(tipo)) {
+                try {
+                    file = PartizioniMensili.partizione(file, PartizioniMensili.mese(riga, new CsvFieldScanner()));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.log(Level.SEVERE, "Operazione non registrata, " + file + ": " + e.getMessage(), e);
+                    return false;
+                }
+                pianificaCompattazione(tipo, file);
+            }
+            boolean salvato = aggiunta
+                    ? csvProcessor.appendToJournal(file, headerDi(tipo), riga)
+                    : csvProcessor.tombstoneInJournal(file, riga);
+            if (salvato) snapshot.registraOperazione(tipo, aggiunta, riga);
+            return salvato;
+        }
+    }
+
+    // Snapshot del modello
+
+    /**
+     * Ricostruisce utenti e dati dei pazienti dallo snapshot binario e dal suo journal,
+     * pubblicando il registro dei pazienti come {@link #caricaUtenti}.
+     *
+     * @return null se lo snapshot manca o non corrisponde più ai file dati
+     */
+    public List<Utente> caricaDaSnapshot() {
+        // Le scritture su un backend esterno non passano dal journal dello snapshot
+        if (backend != null) return null;
+        List<Utente> utenti = snapshot.carica(this);
+        if (utenti == null) return null;
+        associaPazientiAiMedici(utenti);
+        pubblicaRegistro(utenti);
+        return utenti;
+    }
+
+    /**
+     * Scrive lo snapshot di un modello appena caricato dai file dati. Da quel momento
+     * le scritture di ogni DataController sulla stessa cartella vengono registrate nel journal.
+     */
+    public void scriviSnapshot(List<Utente> utenti) {
+        snapshot.scrivi(utenti);
+    }
+
+    /**
+     * Sostituisce le entità del tipo indicato del paziente con quelle delle righe (replay del journal).
+     */
+    void applicaRighe(TipoEntita tipo, Paziente paziente, List<String> righe) {
+        RegistroPazienti registro = RegistroPazienti.da(List.of(paziente));
+        svuota(tipo, paziente);
+        for (String riga : righe) {
+            applicaRiga(tipo, riga, registro);
+        }
+    }
+
+    /**
+     * Applica un'aggiunta o un'eliminazione del journal (replay). L'eliminazione rimuove la prima
+     * entità del paziente la cui riga serializzata coincide, come i tombstone del CsvJournal.
+     */
+    void applicaOperazione(TipoEntita tipo, RegistroPazienti registro, boolean aggiunta, String riga) {
+        if (aggiunta) {
+            applicaRiga(tipo, riga, registro);
+            return;
+        }
+        Paziente paziente = registro.get(new CsvFieldScanner().leggiIntIniziale(riga));
+        if (paziente == null) return;
+        int indice = serializza(tipo, paziente).indexOf(riga);
+        if (indice < 0) return;
+        switch (tipo) {
+            case RILEVAZIONI -> paziente.getSerieGlicemica().rimuovi(indice);
+            case TERAPIE -> paziente.getTerapie().remove(indice);
+            case ASSUNZIONI -> paziente.getAssunzioni().remove(indice);
+            case SCHEDE_CLINICHE -> paziente.setSchedaClinica(new SchedaClinica());
+            case EVENTI_CLINICI -> paziente.getEventiClinici().remove(indice);
+            case TERAPIE_CONCOMITANTI -> paziente.getTerapieConcomitanti().remove(indice);
+        }
+    }
+
+    // Patient registry
+
+    /**
+     * Registro condiviso dei pazienti caricati da caricaUtenti, indicizzato per ID.
+     * Il registro restituito non va modificato: usare registraPaziente/rimuoviPaziente.
+     */
+    public static RegistroPazienti getRegistroPazienti() {
+        return registroPazienti;
+    }
+
+    public static Paziente trovaPaziente(int id) {
+        return registroPazienti.get(id);
+    }
+
+    public static synchronized void registraPaziente(Paziente paziente) {
+        RegistroPazienti aggiornato = registroPazienti.copia();
+        aggiornato.registra(paziente);
+        registroPazienti = aggiornato;
+    }
+
+    public static synchronized void rimuoviPaziente(int id) {
+        RegistroPazienti aggiornato = registroPazienti.copia();
+        aggiornato.rimuovi(id);
+        registroPazienti = aggiornato;
+    }
+
+    public ModalitaPersistenza getModalitaPersistenza() {
+        return modalitaPersistenza;
     }
 
     // ============ PRIVATE HELPERS ============
 
-    private Map<Integer, Paziente> createPazientiMap(List<Utente> utenti) {
-        return utenti.stream()
-                .filter(u -> u instanceof Paziente)
-                .map(u -> (Paziente) u)
-                .collect(Collectors.toMap(Paziente::getId, p -> p));
+    private void salvaPazienti(TipoEntita tipo, List<Paziente> pazienti) {
+        if (pazienti == null || pazienti.isEmpty()) {
+            LOGGER.log(Level.WARNING, "Nessun paziente da salvare per: {0}", fileDi(tipo));
+            return;
+        }
+        if (backend != null) {
+            salvaSuBackend(tipo, pazienti);
+            return;
+        }
+        if (tipo == TipoEntita.RILEVAZIONI && rilevazioniColonnari() && !snapshot.isAttivo()) {
+            // Scrittura diretta dalla serie, senza passare dalle righe CSV
+            salvaRilevazioniColonnari(pazienti);
+            return;
+        }
+
+        Map<Integer, List<String>> righePerPaziente = new LinkedHashMap<>();
+        for (Paziente paziente : pazienti) {
+            try {
+                righePerPaziente.put(paziente.getId(), serializza(tipo, paziente));
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Errore serializzazione paziente ID: " + paziente.getId(), e);
+                righePerPaziente.put(paziente.getId(), List.of());
+            }
+        }
+        salvaRighe(tipo, righePerPaziente);
+    }
+
+    private void svuota(TipoEntita tipo, Paziente paziente) {
+        switch (tipo) {
+            case RILEVAZIONI -> paziente.getSerieGlicemica().svuota();
+            case TERAPIE -> paziente.getTerapie().clear();
+            case ASSUNZIONI -> paziente.getAssunzioni().clear();
+            case SCHEDE_CLINICHE -> paziente.setSchedaClinica(new SchedaClinica());
+            case EVENTI_CLINICI -> paziente.getEventiClinici().clear();
+            case TERAPIE_CONCOMITANTI -> paziente.getTerapieConcomitanti().clear();
+        }
+    }
+
+    private int caricaDaBackend(TipoEntita tipo, Paziente paziente) {
+        int id = paziente.getId();
+        return switch (tipo) {
+            case RILEVAZIONI -> aggiungiTutte(backend.rilevazioni().caricaPaziente(id), paziente::aggiungiRilevazione);
+            case TERAPIE -> aggiungiTutte(backend.terapie().caricaPaziente(id), paziente::aggiungiTerapia);
+            case ASSUNZIONI -> aggiungiTutte(backend.assunzioni().caricaPaziente(id), paziente::aggiungiAssunzione);
+            case SCHEDE_CLINICHE -> aggiungiTutte(backend.schedeCliniche().caricaPaziente(id), paziente::setSchedaClinica);
+            case EVENTI_CLINICI -> aggiungiTutte(backend.eventiClinici().caricaPaziente(id), paziente::aggiungiEventoClinico);
+            case TERAPIE_CONCOMITANTI -> aggiungiTutte(backend.terapieConcomitanti().caricaPaziente(id),
+                    paziente::aggiungiTerapiaConcomitante);
+        };
+    }
+
+    private static <T> int aggiungiTutte(List<T> entita, Consumer<T> destinazione) {
+        entita.forEach(destinazione);
+        return entita.size();
+    }
+
+    private void salvaSuBackend(TipoEntita tipo, List<Paziente> pazienti) {
+        switch (tipo) {
+            case RILEVAZIONI -> backend.rilevazioni().salva(perPaziente(pazienti, Paziente::getRilevazioni));
+            case TERAPIE -> backend.terapie().salva(perPaziente(pazienti, Paziente::getTerapie));
+            case ASSUNZIONI -> backend.assunzioni().salva(perPaziente(pazienti, Paziente::getAssunzioni));
+            case SCHEDE_CLINICHE -> backend.schedeCliniche().salva(perPaziente(pazienti,
+                    p -> p.getSchedaClinica() == null ? List.of() : List.of(p.getSchedaClinica())));
+            case EVENTI_CLINICI -> backend.eventiClinici().salva(perPaziente(pazienti, Paziente::getEventiClinici));
+            case TERAPIE_CONCOMITANTI -> backend.terapieConcomitanti().salva(
+                    perPaziente(pazienti, Paziente::getTerapieConcomitanti));
+        }
+    }
+
+    private static <T> Map<Integer, List<T>> perPaziente(List<Paziente> pazienti, Function<Paziente, List<T>> entita) {
+        Map<Integer, List<T>> risultato = new LinkedHashMap<>();
+        for (Paziente paziente : pazienti) {
+            risultato.put(paziente.getId(), new ArrayList<>(entita.apply(paziente)));
+        }
+        return risultato;
+    }
+
+    private void applicaRiga(TipoEntita tipo, String riga, RegistroPazienti registro) {
+        switch (tipo) {
+            case RILEVAZIONI -> entityParsers.parseRilevazione(riga, registro);
+            case TERAPIE -> entityParsers.parseTerapia(riga, registro);
+            case ASSUNZIONI -> entityParsers.parseAssunzione(riga, registro);
+            case SCHEDE_CLINICHE -> entityParsers.parseSchedaClinica(riga, registro);
+            case EVENTI_CLINICI -> entityParsers.parseEventoClinico(riga, registro);
+            case TERAPIE_CONCOMITANTI -> entityParsers.parseTerapiaConcomitante(riga, registro);
+        }
+    }
+
+    private String fileDi(TipoEntita tipo) {
+        return switch (tipo) {
+            case RILEVAZIONI -> filePathProvider.getRilevazioniFile();
+            case TERAPIE -> filePathProvider.getTerapieFile();
+            case ASSUNZIONI -> filePathProvider.getAssunzioniFile();
+            case SCHEDE_CLINICHE -> filePathProvider.getSchedeFile();
+            case EVENTI_CLINICI -> filePathProvider.getEventiCliniciFile();
+            case TERAPIE_CONCOMITANTI -> filePathProvider.getTerapieConcomitantiFile();
+        };
+    }
+
+    private static String headerDi(TipoEntita tipo) {
+        return switch (tipo) {
+            case RILEVAZIONI -> CsvHeaders.RILEVAZIONI;
+            case TERAPIE -> CsvHeaders.TERAPIE;
+            case ASSUNZIONI -> CsvHeaders.ASSUNZIONI;
+            case SCHEDE_CLINICHE -> CsvHeaders.SCHEDE_CLINICHE;
+            case EVENTI_CLINICI -> CsvHeaders.EVENTI_CLINICI;
+            case TERAPIE_CONCOMITANTI -> CsvHeaders.TERAPIE_CONCOMITANTI;
+        };
+    }
+
+    /**
+     * Nel formato colonnare le rilevazioni non passano dal journal: ogni modifica riscrive l'archivio.
+     */
+    private boolean rilevazioniColonnari() {
+        return filePathProvider.getFormatoRilevazioni() == FilePathProvider.FormatoRilevazioni.COLONNARE;
+    }
+
+    /**
+     * Carica le rilevazioni da un archivio colonnare. Se è indicato un paziente viene
+     * scandita solo la colonna degli ID e decodificate le sole righe del paziente.
+     */
+    private int caricaRilevazioniColonnari(String file, RegistroPazienti registro, Paziente soloPaziente) {
+        if (!new File(file).exists()) {
+            LOGGER.log(Level.WARNING, "File non trovato: {0}", file);
+            return 0;
+        }
+
+        int loaded = 0;
+        try {
+            ArchivioRilevazioniColonnare archivio;
+            synchronized (CsvJournal.lock(file)) {
+                archivio = ArchivioRilevazioniColonnare.apri(file);
+            }
+            IntBuffer pazienti = archivio.pazienti();
+            IntBuffer giorni = archivio.giorni();
+            ByteBuffer pasti = archivio.codiciPasto();
+            ShortBuffer valori = archivio.valori();
+            for (int i = 0; i < archivio.size(); i++) {
+                int pazienteId = pazienti.get(i);
+                if (soloPaziente != null && pazienteId != soloPaziente.getId()) continue;
+
+                // Copia diretta nella serie del paziente, senza creare oggetti Rilevazione
+                Paziente paziente = registro.get(pazienteId);
+                if (paziente != null) {
+                    paziente.getSerieGlicemica().aggiungi(giorni.get(i), pasti.get(i), valori.get(i));
+                    loaded++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Errore caricamento da: " + file, e);
+        }
+        return loaded;
+    }
+
+    private void salvaRilevazioniColonnari(List<Paziente> pazienti) {
+        if (pazienti == null || pazienti.isEmpty()) return;
+
+        ArchivioRilevazioniColonnare.Colonne nuove = new ArchivioRilevazioniColonnare.Colonne();
+        int[] ids = new int[pazienti.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Paziente paziente = pazienti.get(i);
+            ids[i] = paziente.getId();
+            SerieGlicemica serie = paziente.getSerieGlicemica();
+            for (int r = 0; r < serie.size(); r++) {
+                if (!nuove.aggiungi(paziente.getId(), serie.data(r), serie.tipoPasto(r), serie.valore(r))) {
+                    LOGGER.log(Level.WARNING, "Rilevazione non rappresentabile, non salvata: {0}", serie.rilevazione(r));
+                }
+            }
+        }
+        scriviRilevazioniColonnari(ids, nuove);
+    }
+
+    private boolean salvaRigheRilevazioniColonnari(Map<Integer, List<String>> righePerPaziente) {
+        ArchivioRilevazioniColonnare.Colonne nuove = new ArchivioRilevazioniColonnare.Colonne();
+        CsvFieldScanner scanner = new CsvFieldScanner();
+        righePerPaziente.forEach((id, righe) -> {
+            for (String riga : righe) {
+                try {
+                    scanner.reset(riga);
+                    int pazienteId = scanner.nextInt();
+                    if (!nuove.aggiungi(pazienteId, scanner.nextDate(), scanner.nextString(), scanner.nextInt())) {
+                        LOGGER.log(Level.WARNING, "Rilevazione non rappresentabile, non salvata: {0}", riga);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Errore parsing rilevazione: " + riga, e);
+                }
+            }
+        });
+        return scriviRilevazioniColonnari(righePerPaziente.keySet().stream().mapToInt(Integer::intValue).toArray(), nuove);
+    }
+
+    private boolean scriviRilevazioniColonnari(int[] ids, ArchivioRilevazioniColonnare.Colonne nuove) {
+        String file = filePathProvider.getRilevazioniFile();
+        synchronized (CsvJournal.lock(file)) {
+            try {
+                ArchivioRilevazioniColonnare.sostituisciPazienti(file, ids, nuove);
+                LOGGER.log(Level.INFO, "File salvato: {0}", file);
+                return true;
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Errore scrittura file: " + file, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Rilevazioni (in CSV) e assunzioni possono essere divise in partizioni mensili.
+     */
+    private boolean partizionate(TipoEntita tipo) {
+        if (tipo != TipoEntita.ASSUNZIONI && (tipo != TipoEntita.RILEVAZIONI || rilevazioniColonnari())) return false;
+        return PartizioniMensili.attive(fileDi(tipo));
+    }
+
+    /**
+     * Applica l'operazione a ogni partizione mensile del file, o al file stesso se non è partizionato.
+     *
+     * @return la somma dei risultati
+     */
+    private int perPartizione(String file, ToIntFunction<String> operazione) {
+        if (!PartizioniMensili.attive(file)) return operazione.applyAsInt(file);
+        synchronized (CsvJournal.lock(file)) {
+            int totale = 0;
+            for (String partizione : PartizioniMensili.partizioni(file)) {
+                totale += operazione.applyAsInt(partizione);
+            }
+            return totale;
+        }
+    }
+
+    /**
+     * Carica nel paziente le entità del tipo leggendo, se il file è partizionato, solo i mesi
+     * dell'intervallo; le entità vanno poi filtrate per data dal chiamante.
+     */
+    private void caricaPeriodo(TipoEntita tipo, Paziente paziente, LocalDate da, LocalDate a) {
+        if (!partizionate(tipo)) {
+            caricaEntitaPaziente(tipo, paziente);
+            return;
+        }
+        RegistroPazienti registro = RegistroPazienti.da(List.of(paziente));
+        Function<String, Boolean> parser = tipo == TipoEntita.RILEVAZIONI
+                ? line -> entityParsers.parseRilevazione(line, registro)
+                : line -> entityParsers.parseAssunzione(line, registro);
+        synchronized (CsvJournal.lock(fileDi(tipo))) {
+            for (String partizione : PartizioniMensili.partizioni(fileDi(tipo), da, a)) {
+                csvProcessor.loadPatientEntities(partizione, paziente.getId(), parser);
+            }
+        }
+    }
+
+    /**
+     * Sostituisce le righe dei pazienti nelle sole partizioni dei mesi in cui hanno righe,
+     * prima o dopo il salvataggio. Va chiamato tenendo il lock del file logico.
+     */
+    private boolean salvaRighePartizionate(TipoEntita tipo, Map<Integer, List<String>> righePerPaziente) {
+        String file = fileDi(tipo);
+        Map<Integer, Set<YearMonth>> mesiPrecedenti = new HashMap<>();
+        for (int id : righePerPaziente.keySet()) {
+            mesiPrecedenti.put(id, PartizioniMensili.mesiDelPaziente(file, id));
+        }
+
+        SortedMap<YearMonth, Map<Integer, List<String>>> perMese;
+        try {
+            perMese = PartizioniMensili.perMese(righePerPaziente, mesiPrecedenti);
+        } catch (IllegalArgumentException e) {
+            // Nessuna partizione viene toccata: le righe dei pazienti restano quelle precedenti
+            LOGGER.log(Level.SEVERE, "Salvataggio annullato, " + file + ": " + e.getMessage(), e);
+            return false;
+        }
+
+        boolean salvato = true;
+        for (Map.Entry<YearMonth, Map<Integer, List<String>>> mese : perMese.entrySet()) {
+            salvato &= csvProcessor.saveLinesWithMerge(PartizioniMensili.partizione(file, mese.getKey()),
+                    mese.getValue(), headerDi(tipo));
+        }
+        return salvato;
+    }
+
+    private void pianificaCompattazioni(TipoEntita tipo) {
+        perPartizione(fileDi(tipo), partizione -> {
+            pianificaCompattazione(tipo, partizione);
+            return 0;
+        });
+    }
+
+    private void pianificaCompattazione(TipoEntita tipo, String filePath) {
+        CsvJournal.pianificaCompattazione(filePath, () -> csvProcessor.compact(tipo, filePath));
+    }
+
+    /**
+     * Restituisce il registro condiviso se la lista è quella caricata da caricaUtenti,
+     * altrimenti un registro limitato agli utenti indicati (es. List.of(paziente)).
+     */
+    private RegistroPazienti risolviRegistro(List<Utente> utenti) {
+        if (utenti == utentiRegistrati) {
+            return registroPazienti;
+        }
+        return RegistroPazienti.da(utenti);
+    }
+
+    private static synchronized void pubblicaRegistro(List<Utente> utenti) {
+        registroPazienti = RegistroPazienti.da(utenti);
+        utentiRegistrati = utenti;
     }
 
     private void associaPazientiAiMedici(List<Utente> utenti) {
@@ -185,19 +900,25 @@ public class DataController extends BaseController {
         static final String RILEVAZIONI = "pazienteId,data,tipoPasto,valore";
         static final String TERAPIE = "pazienteId,farmaco,assunzioniGiornaliere,quantitaPerAssunzione,indicazioni,dataInizio,dataFine,stato,medicoId";
         static final String ASSUNZIONI = "pazienteId,data,ora,farmaco,quantita";
-        static final String SCHEDE_CLINICHE = "pazienteId,fattoriRischio,pregressePatologie,comorbidita";
+        static final String SCHEDE_CLINICHE = "pazienteId,fattoriRischio,pregressePatologie,comorbidita,"
+                + "glicemiaPrimaPastoMin,glicemiaPrimaPastoMax,glicemiaDopoPastoMax";
         static final String EVENTI_CLINICI = "pazienteId,tipo,descrizione,data,ora,note";
         static final String TERAPIE_CONCOMITANTI = "pazienteId,tipoTerapia,descrizione";
     }
 
-    private static final class ColumnIndex {
-        static final int UTENTE_ID = 0;
-        static final int UTENTE_TYPE = 1;
-        static final int UTENTE_NOME = 2;
-        static final int UTENTE_COGNOME = 3;
-        static final int UTENTE_EMAIL = 4;
-        static final int UTENTE_PASSWORD = 5;
-        static final int PAZIENTE_MEDICO_ID = 6;
+    /**
+     * Numero minimo di campi per riga di ciascun tipo di entità.
+     */
+    private static final class CampiMinimi {
+        static final int UTENTE = 6;
+        static final int PAZIENTE = 7;
+        static final int RILEVAZIONE = 4;
+        static final int TERAPIA = 9;
+        static final int ASSUNZIONE = 5;
+        static final int SCHEDA_CLINICA = 4;
+        static final int SCHEDA_CLINICA_CON_SOGLIE = 7;
+        static final int EVENTO_CLINICO = 6;
+        static final int TERAPIA_CONCOMITANTE = 3;
     }
 
     /**
@@ -208,7 +929,7 @@ public class DataController extends BaseController {
         public <T> List<T> loadEntities(String filePath, Function<String, T> parser) {
             List<T> entities = new ArrayList<>();
 
-            try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
+            try (BufferedReader br = new BufferedReader(new FileReader(filePath, StandardCharsets.UTF_8))) {
                 String header = br.readLine();
                 if (header == null) {
                     LOGGER.log(Level.WARNING, "File vuoto: {0}", filePath);
@@ -236,134 +957,268 @@ public class DataController extends BaseController {
         }
 
         public int loadAndProcessEntities(String filePath, Function<String, Boolean> processor) {
-            int processedCount = 0;
-
-            try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-                br.readLine(); // Skip header
-                String line;
-
-                while ((line = br.readLine()) != null) {
-                    if (line.trim().isEmpty()) continue;
+            int[] processedCount = {0};
 
+            try {
+                // Il journal (se presente) viene applicato sopra il file canonico
+                CsvJournal.leggi(filePath, line -> {
                     try {
                         if (processor.apply(line)) {
-                            processedCount++;
+                            processedCount[0]++;
                         }
                     } catch (Exception e) {
                         LOGGER.log(Level.WARNING, "Errore processing linea: " + line, e);
                     }
-                }
+                });
             } catch (IOException e) {
                 LOGGER.log(Level.SEVERE, "Errore caricamento da: " + filePath, e);
             }
 
-            return processedCount;
+            return processedCount[0];
         }
 
-        public void saveWithMerge(String filePath, List<Paziente> pazientiModificati,
-                                  String header, Function<Paziente, List<String>> serializer) {
-            if (pazientiModificati == null || pazientiModificati.isEmpty()) {
-                LOGGER.log(Level.WARNING, "Nessun paziente da salvare per: {0}", filePath);
-                return;
+        /**
+         * Come loadAndProcessEntities, ma il parsing è separato dall'aggancio al modello:
+         * il preparatore restituisce l'azione da eseguire (null se la riga va scartata).
+         * Oltre {@link CsvMappedReader#SOGLIA_MAPPATURA} il file viene mappato in memoria e
+         * analizzato in parallelo; le azioni vengono comunque eseguite in ordine sul thread chiamante.
+         */
+        public int loadAndProcessEntitiesInParallel(String filePath, Function<String, Runnable> preparer) {
+            if (new File(filePath).length() < CsvMappedReader.SOGLIA_MAPPATURA) {
+                return loadAndProcessEntities(filePath, line -> applica(preparer.apply(line)));
             }
 
-            List<String> lines = new ArrayList<>();
-            Set<String> modifiedPatientIds = pazientiModificati.stream()
-                    .map(p -> String.valueOf(p.getId()))
-                    .collect(Collectors.toSet());
-
-            // Merge existing data
+            int[] processedCount = {0};
             try {
-                mergeExistingData(filePath, lines, modifiedPatientIds);
+                CsvJournal.leggiInParallelo(filePath, line -> {
+                    try {
+                        return preparer.apply(line);
+                    } catch (Exception e) {
+                        LOGGER.log(Level.WARNING, "Errore processing linea: " + line, e);
+                        return null;
+                    }
+                }, azione -> {
+                    azione.run();
+                    processedCount[0]++;
+                });
             } catch (IOException e) {
-                LOGGER.log(Level.INFO, "File non esistente, verrà creato: {0}", filePath);
-                lines.add(header);
+                LOGGER.log(Level.SEVERE, "Errore caricamento da: " + filePath, e);
             }
 
-            // Add modified patient data
-            for (Paziente paziente : pazientiModificati) {
-                try {
-                    lines.addAll(serializer.apply(paziente));
-                } catch (Exception e) {
-                    LOGGER.log(Level.SEVERE, "Errore serializzazione paziente ID: " + paziente.getId(), e);
-                }
+            return processedCount[0];
+        }
+
+        private boolean applica(Runnable azione) {
+            if (azione == null) return false;
+            azione.run();
+            return true;
+        }
+
+        /**
+         * Elabora le sole righe del paziente, tramite l'indice degli offset del file.
+         */
+        public int loadPatientEntities(String filePath, int pazienteId, Function<String, Boolean> processor) {
+            int[] processedCount = {0};
+
+            try {
+                CsvJournal.leggiPaziente(filePath, pazienteId, line -> {
+                    try {
+                        if (processor.apply(line)) {
+                            processedCount[0]++;
+                        }
+                    } catch (Exception e) {
+                        LOGGER.log(Level.WARNING, "Errore processing linea: " + line, e);
+                    }
+                });
+            } catch (NoSuchFileException e) {
+                LOGGER.log(Level.WARNING, "File non trovato: {0}", filePath);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Errore caricamento da: " + filePath, e);
             }
 
-            // Write file
-            writeFile(filePath, lines);
+            return processedCount[0];
         }
 
-        private void mergeExistingData(String filePath, List<String> lines, Set<String> excludePatientIds)
-                throws IOException {
-            try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-                String header = br.readLine();
-                if (header != null) {
+        /**
+         * Sostituisce nel file le righe dei pazienti indicati con quelle già serializzate.
+         *
+         * @return false se il file non è stato scritto
+         */
+        public boolean saveLinesWithMerge(String filePath, Map<Integer, List<String>> linesByPatient, String header) {
+            int[] modifiedPatients = linesByPatient.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            List<String> modifiedLines = new ArrayList<>();
+            linesByPatient.values().forEach(modifiedLines::addAll);
+
+            synchronized (CsvJournal.lock(filePath)) {
+                // Senza journal pendente le righe degli altri pazienti vengono copiate tramite l'indice
+                if (new File(filePath).exists() && !CsvJournal.haOperazioniPendenti(filePath)) {
+                    try {
+                        IndiceCsvPazienti.sostituisciPazienti(filePath, modifiedPatients, modifiedLines);
+                        LOGGER.log(Level.INFO, "File salvato: {0}", filePath);
+                        return true;
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Merge tramite indice fallito, riscrittura completa: " + filePath, e);
+                    }
+                }
+
+                // Merge existing data (journal incluso, che viene così compattato)
+                List<String> lines = new ArrayList<>();
+                try {
+                    mergeExistingData(filePath, lines, modifiedPatients, header);
+                } catch (IOException e) {
+                    LOGGER.log(Level.INFO, "File non esistente, verrà creato: {0}", filePath);
+                    lines.clear();
                     lines.add(header);
                 }
+                lines.addAll(modifiedLines);
 
-                String line;
-                while ((line = br.readLine()) != null) {
-                    if (line.trim().isEmpty()) continue;
+                // Write file
+                if (!writeFile(filePath, lines)) return false;
+                CsvJournal.svuota(filePath);
+                return true;
+            }
+        }
 
+        /**
+         * Riporta il journal nel CSV canonico riscrivendo il file una sola volta.
+         * Per una partizione tiene anche il lock del file base, come ogni altra scrittura del tipo:
+         * i timbri registrati nel journal dello snapshot non possono così includere una scrittura
+         * del tipo non ancora registrata.
+         */
+        public void compact(TipoEntita tipo, String filePath) {
+            String header = headerDi(tipo);
+            synchronized (CsvJournal.lock(fileDi(tipo))) {
+                synchronized (CsvJournal.lock(filePath)) {
+                    if (!CsvJournal.haOperazioniPendenti(filePath)) return;
+
+                    ensureFileExists(filePath, header);
+                    List<String> lines = new ArrayList<>();
                     try {
-                        String patientId = line.split(CSV_DELIMITER)[0];
-                        if (!excludePatientIds.contains(patientId)) {
-                            lines.add(line);
-                        }
-                    } catch (Exception e) {
-                        LOGGER.log(Level.WARNING, "Errore processing existing line: " + line, e);
+                        mergeExistingData(filePath, lines, new int[0], header);
+                    } catch (IOException e) {
+                        LOGGER.log(Level.SEVERE, "Errore compattazione journal: " + filePath, e);
+                        return;
+                    }
+
+                    if (writeFile(filePath, lines)) {
+                        CsvJournal.svuota(filePath);
+                        snapshot.registraAllineamento(tipo);
+                        LOGGER.log(Level.INFO, "Journal compattato in: {0}", filePath);
                     }
                 }
             }
         }
 
-        private void writeFile(String filePath, List<String> lines) {
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath, false))) {
-                for (String line : lines) {
-                    bw.write(line);
-                    bw.newLine();
+        public boolean appendToJournal(String filePath, String header, String line) {
+            try {
+                ensureFileExists(filePath, header);
+                CsvJournal.aggiungi(filePath, line);
+                return true;
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Errore scrittura journal: " + filePath, e);
+                return false;
+            }
+        }
+
+        public boolean tombstoneInJournal(String filePath, String line) {
+            try {
+                CsvJournal.elimina(filePath, line);
+                return true;
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Errore scrittura journal: " + filePath, e);
+                return false;
+            }
+        }
+
+        private void ensureFileExists(String filePath, String header) {
+            synchronized (CsvJournal.lock(filePath)) {
+                if (new File(filePath).exists()) return;
+                writeFile(filePath, List.of(header));
+            }
+        }
+
+        /**
+         * @param excludedPatients ID dei pazienti da escludere, ordinati
+         */
+        private void mergeExistingData(String filePath, List<String> lines, int[] excludedPatients,
+                                       String defaultHeader) throws IOException {
+            List<String> righe = new ArrayList<>();
+            CsvFieldScanner scanner = new CsvFieldScanner();
+            String header = CsvJournal.leggi(filePath, line -> {
+                try {
+                    int patientId = scanner.leggiIntIniziale(line);
+                    if (Arrays.binarySearch(excludedPatients, patientId) < 0) {
+                        righe.add(line);
+                    }
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Errore processing existing line: " + line, e);
                 }
+            });
+
+            lines.add(header != null ? header : defaultHeader);
+            lines.addAll(righe);
+        }
+
+        /**
+         * Sostituisce il file tramite un temporaneo rinominato sopra l'originale (vedi ScritturaAtomica):
+         * in caso di errore il file esistente resta invariato.
+         */
+        private boolean writeFile(String filePath, List<String> lines) {
+            try {
+                IndiceCsvPazienti.invalida(filePath);
+                ScritturaAtomica.scriviRighe(new File(filePath).toPath(), lines);
                 LOGGER.log(Level.INFO, "File salvato: {0}", filePath);
+                return true;
             } catch (IOException e) {
                 LOGGER.log(Level.SEVERE, "Errore scrittura file: " + filePath, e);
+                return false;
             }
         }
     }
 
     /**
      * Handles parsing of different entity types from CSV lines.
+     * I campi vengono letti con un CsvFieldScanner per thread, senza split né stringhe intermedie.
      */
     private class EntityParsers {
 
+        private final ThreadLocal<CsvFieldScanner> scanners = ThreadLocal.withInitial(CsvFieldScanner::new);
+
+        private CsvFieldScanner scanner(String line) {
+            return scanners.get().reset(line);
+        }
+
         public Utente parseUtente(String line) {
-            String[] fields = line.split(CSV_DELIMITER);
-            if (fields.length < 6) {
+            CsvFieldScanner scanner = scanner(line);
+            int campi = scanner.contaCampi();
+            if (campi < CampiMinimi.UTENTE) {
                 LOGGER.log(Level.WARNING, "Campi insufficienti per utente: {0}", line);
                 return null;
             }
 
             try {
-                int id = Integer.parseInt(fields[ColumnIndex.UTENTE_ID].trim());
-                String type = fields[ColumnIndex.UTENTE_TYPE].trim();
-                String nome = fields[ColumnIndex.UTENTE_NOME].trim();
-                String cognome = fields[ColumnIndex.UTENTE_COGNOME].trim();
-                String email = fields[ColumnIndex.UTENTE_EMAIL].trim();
-                String password = fields[ColumnIndex.UTENTE_PASSWORD].trim();
-
-                return createUtente(type, id, nome, cognome, email, password, fields);
+                int id = scanner.nextInt();
+                String type = scanner.nextString();
+                String nome = scanner.nextString();
+                String cognome = scanner.nextString();
+                String email = scanner.nextString();
+                String password = scanner.nextString();
+
+                return createUtente(type, id, nome, cognome, email, password, scanner, campi);
             } catch (NumberFormatException e) {
                 LOGGER.log(Level.WARNING, "Errore parsing numeri in: " + line, e);
                 return null;
             }
         }
 
-        private Utente createUtente(String type, int id, String nome, String cognome,String email, String password, String[] fields) {
+        private Utente createUtente(String type, int id, String nome, String cognome, String email, String password,
+                                    CsvFieldScanner scanner, int campi) {
             if (type.equalsIgnoreCase("Paziente")) {
-                if (fields.length <= ColumnIndex.PAZIENTE_MEDICO_ID) {
+                if (campi < CampiMinimi.PAZIENTE) {
                     LOGGER.log(Level.WARNING, "Paziente senza medico ID");
                     return null;
                 }
-                int medicoId = Integer.parseInt(fields[ColumnIndex.PAZIENTE_MEDICO_ID].trim());
+                int medicoId = scanner.nextInt();
                 return new Paziente(id, nome, cognome, email, password, medicoId);
             } else if (type.equalsIgnoreCase("Diabetologo")) {
                 return new Diabetologo(id, nome, cognome, email, password);
@@ -373,47 +1228,55 @@ public class DataController extends BaseController {
             }
         }
 
-        public Boolean parseRilevazione(String line, Map<Integer, Paziente> pazientiMap) {
-            String[] fields = line.split(CSV_DELIMITER);
-            if (fields.length < 4) return false;
+        public Boolean parseRilevazione(String line, RegistroPazienti registro) {
+            Runnable aggancio = preparaRilevazione(line, registro);
+            if (aggancio == null) return false;
+            aggancio.run();
+            return true;
+        }
+
+        /**
+         * Analizza la riga senza toccare il paziente; può girare su qualunque thread.
+         * L'azione restituita aggiunge la rilevazione al paziente (null se la riga va scartata).
+         */
+        public Runnable preparaRilevazione(String line, RegistroPazienti registro) {
+            CsvFieldScanner scanner = scanner(line);
+            if (scanner.contaCampi() < CampiMinimi.RILEVAZIONE) return null;
 
             try {
-                int pazienteId = Integer.parseInt(fields[0].trim());
-                Paziente paziente = pazientiMap.get(pazienteId);
+                Paziente paziente = registro.get(scanner.nextInt());
 
                 if (paziente != null) {
                     Rilevazione rilevazione = new Rilevazione(
-                            LocalDate.parse(fields[1].trim()),
-                            fields[2].trim(),
-                            Integer.parseInt(fields[3].trim())
+                            scanner.nextDate(),
+                            scanner.nextString(),
+                            scanner.nextInt()
                     );
-                    paziente.aggiungiRilevazione(rilevazione);
-                    return true;
+                    return () -> paziente.aggiungiRilevazione(rilevazione);
                 }
             } catch (Exception e) {
                 LOGGER.log(Level.WARNING, "Errore parsing rilevazione: " + line, e);
             }
-            return false;
+            return null;
         }
 
-        public Boolean parseTerapia(String line, Map<Integer, Paziente> pazientiMap) {
-            String[] fields = line.split(CSV_DELIMITER);
-            if (fields.length < 9) return false;
+        public Boolean parseTerapia(String line, RegistroPazienti registro) {
+            CsvFieldScanner scanner = scanner(line);
+            if (scanner.contaCampi() < CampiMinimi.TERAPIA) return false;
 
             try {
-                int pazienteId = Integer.parseInt(fields[0].trim());
-                Paziente paziente = pazientiMap.get(pazienteId);
+                Paziente paziente = registro.get(scanner.nextInt());
 
                 if (paziente != null) {
                     Terapia terapia = new Terapia(
-                            fields[1].trim(),
-                            Integer.parseInt(fields[2].trim()),
-                            Double.parseDouble(fields[3].trim()),
-                            fields[4].trim(),
-                            LocalDate.parse(fields[5].trim()),
-                            LocalDate.parse(fields[6].trim()),
-                            Terapia.Stato.valueOf(fields[7].trim()),
-                            Integer.parseInt(fields[8].trim())
+                            scanner.nextString(),
+                            scanner.nextInt(),
+                            scanner.nextDouble(),
+                            scanner.nextString(),
+                            scanner.nextDate(),
+                            scanner.nextDate(),
+                            Terapia.Stato.valueOf(scanner.nextString()),
+                            scanner.nextInt()
                     );
                     paziente.aggiungiTerapia(terapia);
                     return true;
@@ -424,43 +1287,52 @@ public class DataController extends BaseController {
             return false;
         }
 
-        public Boolean parseAssunzione(String line, Map<Integer, Paziente> pazientiMap) {
-            String[] fields = line.split(CSV_DELIMITER);
-            if (fields.length < 5) return false;
+        public Boolean parseAssunzione(String line, RegistroPazienti registro) {
+            Runnable aggancio = preparaAssunzione(line, registro);
+            if (aggancio == null) return false;
+            aggancio.run();
+            return true;
+        }
+
+        public Runnable preparaAssunzione(String line, RegistroPazienti registro) {
+            CsvFieldScanner scanner = scanner(line);
+            if (scanner.contaCampi() < CampiMinimi.ASSUNZIONE) return null;
 
             try {
-                int pazienteId = Integer.parseInt(fields[0].trim());
-                Paziente paziente = pazientiMap.get(pazienteId);
+                Paziente paziente = registro.get(scanner.nextInt());
 
                 if (paziente != null) {
                     Assunzione assunzione = new Assunzione(
-                            LocalDate.parse(fields[1].trim()),
-                            LocalTime.parse(fields[2].trim()),
-                            fields[3].trim(),
-                            Double.parseDouble(fields[4].trim())
+                            scanner.nextDate(),
+                            scanner.nextTime(),
+                            scanner.nextString(),
+                            scanner.nextDouble()
                     );
-                    paziente.aggiungiAssunzione(assunzione);
-                    return true;
+                    return () -> paziente.aggiungiAssunzione(assunzione);
                 }
             } catch (Exception e) {
                 LOGGER.log(Level.WARNING, "Errore parsing assunzione: " + line, e);
             }
-            return false;
+            return null;
         }
 
-        public Boolean parseSchedaClinica(String line, Map<Integer, Paziente> pazientiMap) {
-            String[] fields = line.split(CSV_DELIMITER, CSV_SPLIT_LIMIT);
-            if (fields.length < 4) return false;
+        public Boolean parseSchedaClinica(String line, RegistroPazienti registro) {
+            CsvFieldScanner scanner = scanner(line);
+            if (scanner.contaCampi() < CampiMinimi.SCHEDA_CLINICA) return false;
 
             try {
-                int pazienteId = Integer.parseInt(fields[0].trim());
-                Paziente paziente = pazientiMap.get(pazienteId);
+                Paziente paziente = registro.get(scanner.nextInt());
 
                 if (paziente != null) {
+                    // Le righe scritte prima degli obiettivi glicemici usano le soglie predefinite
+                    boolean conSoglie = scanner.contaCampi() >= CampiMinimi.SCHEDA_CLINICA_CON_SOGLIE;
                     SchedaClinica scheda = new SchedaClinica(
-                            fields[1].trim(),
-                            fields[2].trim(),
-                            fields[3].trim()
+                            scanner.nextString(),
+                            scanner.nextString(),
+                            scanner.nextString(),
+                            conSoglie
+                                    ? new SoglieGlicemiche(scanner.nextInt(), scanner.nextInt(), scanner.nextInt())
+                                    : SoglieGlicemiche.PREDEFINITE
                     );
                     paziente.setSchedaClinica(scheda);
                     return true;
@@ -471,21 +1343,20 @@ public class DataController extends BaseController {
             return false;
         }
 
-        public Boolean parseEventoClinico(String line, Map<Integer, Paziente> pazientiMap) {
-            String[] fields = line.split(CSV_DELIMITER, CSV_SPLIT_LIMIT);
-            if (fields.length < 6) return false;
+        public Boolean parseEventoClinico(String line, RegistroPazienti registro) {
+            CsvFieldScanner scanner = scanner(line);
+            if (scanner.contaCampi() < CampiMinimi.EVENTO_CLINICO) return false;
 
             try {
-                int pazienteId = Integer.parseInt(fields[0].trim());
-                Paziente paziente = pazientiMap.get(pazienteId);
+                Paziente paziente = registro.get(scanner.nextInt());
 
                 if (paziente != null) {
                     EventoClinico evento = new EventoClinico(
-                            fields[1].trim(),
-                            fields[2].trim(),
-                            LocalDate.parse(fields[3].trim()),
-                            fields[4].trim().isEmpty() ? null : LocalTime.parse(fields[4].trim()),
-                            fields[5].trim()
+                            scanner.nextString(),
+                            scanner.nextString(),
+                            scanner.nextDate(),
+                            scanner.nextTime(),
+                            scanner.nextString()
                     );
                     paziente.aggiungiEventoClinico(evento);
                     return true;
@@ -496,18 +1367,17 @@ public class DataController extends BaseController {
             return false;
         }
 
-        public Boolean parseTerapiaConcomitante(String line, Map<Integer, Paziente> pazientiMap) {
-            String[] fields = line.split(CSV_DELIMITER, CSV_SPLIT_LIMIT);
-            if (fields.length < 3) return false;
+        public Boolean parseTerapiaConcomitante(String line, RegistroPazienti registro) {
+            CsvFieldScanner scanner = scanner(line);
+            if (scanner.contaCampi() < CampiMinimi.TERAPIA_CONCOMITANTE) return false;
 
             try {
-                int pazienteId = Integer.parseInt(fields[0].trim());
-                Paziente paziente = pazientiMap.get(pazienteId);
+                Paziente paziente = registro.get(scanner.nextInt());
 
                 if (paziente != null) {
                     TerapiaConcomitante terapia = new TerapiaConcomitante(
-                            fields[1].trim(),
-                            fields[2].trim()
+                            scanner.nextString(),
+                            scanner.nextString()
                     );
                     paziente.aggiungiTerapiaConcomitante(terapia);
                     return true;
@@ -522,26 +1392,38 @@ public class DataController extends BaseController {
     /**
      * Handles serialization of different entity types to CSV format.
      */
-    private class EntitySerializers {
+    private static class EntitySerializers {
 
         public List<String> serializeRilevazioni(Paziente paziente) {
-            return paziente.getRilevazioni().stream()
-                    .map(r -> String.join(CSV_DELIMITER,
-                            String.valueOf(paziente.getId()),
-                            r.getData().toString(),
-                            r.getTipoPasto(),
-                            String.valueOf(r.getValore())))
-                    .toList();
+            SerieGlicemica serie = paziente.getSerieGlicemica();
+            List<String> lines = new ArrayList<>(serie.size());
+            for (int i = 0; i < serie.size(); i++) {
+                lines.add(String.join(CSV_DELIMITER,
+                        String.valueOf(paziente.getId()),
+                        serie.data(i).toString(),
+                        quote(serie.tipoPasto(i)),
+                        String.valueOf(serie.valore(i))
+                ));
+            }
+            return lines;
+        }
+
+        public String serializeRilevazione(int pazienteId, Rilevazione r) {
+            return String.join(CSV_DELIMITER,
+                    String.valueOf(pazienteId),
+                    r.getData().toString(),
+                    quote(r.getTipoPasto()),
+                    String.valueOf(r.getValore()));
         }
 
         public List<String> serializeTerapie(Paziente paziente) {
             return paziente.getTerapie().stream()
                     .map(t -> String.join(CSV_DELIMITER,
                             String.valueOf(paziente.getId()),
-                            t.getFarmaco(),
+                            quote(t.getFarmaco()),
                             String.valueOf(t.getAssunzioniGiornaliere()),
                             String.valueOf(t.getQuantitaPerAssunzione()),
-                            t.getIndicazioni(),
+                            quote(t.getIndicazioni()),
                             t.getDataInizio().toString(),
                             t.getDataFine().toString(),
                             t.getStato().toString(),
@@ -551,24 +1433,31 @@ public class DataController extends BaseController {
 
         public List<String> serializeAssunzioni(Paziente paziente) {
             return paziente.getAssunzioni().stream()
-                    .map(a -> String.join(CSV_DELIMITER,
-                            String.valueOf(paziente.getId()),
-                            a.getData().toString(),
-                            a.getOra().toString(),
-                            a.getFarmaco(),
-                            String.valueOf(a.getQuantita())))
+                    .map(a -> serializeAssunzione(paziente.getId(), a))
                     .toList();
         }
 
+        public String serializeAssunzione(int pazienteId, Assunzione a) {
+            return String.join(CSV_DELIMITER,
+                    String.valueOf(pazienteId),
+                    a.getData().toString(),
+                    a.getOra().toString(),
+                    quote(a.getFarmaco()),
+                    String.valueOf(a.getQuantita()));
+        }
+
         public List<String> serializeSchedeCliniche(Paziente paziente) {
             SchedaClinica scheda = paziente.getSchedaClinica();
             if (scheda == null) scheda = new SchedaClinica();
 
             return List.of(String.join(CSV_DELIMITER,
                     String.valueOf(paziente.getId()),
-                    nullSafe(scheda.getFattoriRischio()),
-                    nullSafe(scheda.getPregressePatologie()),
-                    nullSafe(scheda.getComorbidita())));
+                    quote(scheda.getFattoriRischio()),
+                    quote(scheda.getPregressePatologie()),
+                    quote(scheda.getComorbidita()),
+                    String.valueOf(scheda.getSoglieGlicemiche().getMinimoPrimaPasto()),
+                    String.valueOf(scheda.getSoglieGlicemiche().getMassimoPrimaPasto()),
+                    String.valueOf(scheda.getSoglieGlicemiche().getMassimoDopoPasto())));
         }
 
         public List<String> serializeEventiClinici(Paziente paziente) {
@@ -577,11 +1466,11 @@ public class DataController extends BaseController {
             return paziente.getEventiClinici().stream()
                     .map(e -> String.join(CSV_DELIMITER,
                             String.valueOf(paziente.getId()),
-                            e.getTipo(),
-                            e.getDescrizione(),
+                            quote(e.getTipo()),
+                            quote(e.getDescrizione()),
                             e.getData().toString(),
                             e.getOra() != null ? e.getOra().format(formatter) : "",
-                            nullSafe(e.getNote())))
+                            quote(e.getNote())))
                     .toList();
         }
 
@@ -589,13 +1478,16 @@ public class DataController extends BaseController {
             return paziente.getTerapieConcomitanti().stream()
                     .map(t -> String.join(CSV_DELIMITER,
                             String.valueOf(paziente.getId()),
-                            t.getTipoTerapia(),
-                            nullSafe(t.getDescrizione())))
+                            quote(t.getTipoTerapia()),
+                            quote(t.getDescrizione())))
                     .toList();
         }
 
-        private String nullSafe(String value) {
-            return value != null ? value : "";
+        /**
+         * Campo testuale con le virgolette necessarie a preservare virgole e spazi; null diventa vuoto.
+         */
+        private String quote(String value) {
+            return CsvFieldScanner.quote(value);
         }
     }
 
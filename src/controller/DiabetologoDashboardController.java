@@ -1,5 +1,6 @@
 package controller;
 
+import javafx.application.Platform;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
@@ -9,16 +10,27 @@ import javafx.fxml.FXML;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.ComboBoxTableCell;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
 import javafx.stage.Stage;
 import javafx.fxml.FXMLLoader;
 import model.*;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Comparator;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class DiabetologoDashboardController extends BaseController {
 
@@ -40,6 +52,7 @@ public class DiabetologoDashboardController extends BaseController {
     @FXML private TableColumn<Terapia, String> dataInizioColumn;
     @FXML private TableColumn<Terapia, String> dataFineColumn;
     @FXML private TableColumn<Terapia, Terapia.Stato> statoColumn;
+    @FXML private TableColumn<Terapia, Terapia> aderenzaColumn;
 
     // ---------- Assunzioni ----------
     @FXML private TableView<Assunzione> assunzioniTable;
@@ -52,6 +65,9 @@ public class DiabetologoDashboardController extends BaseController {
     @FXML private TextArea fattoriRischioArea;
     @FXML private TextArea patologieArea;
     @FXML private TextArea comorbiditaArea;
+    @FXML private TextField minimoPrimaPastoField;
+    @FXML private TextField massimoPrimaPastoField;
+    @FXML private TextField massimoDopoPastoField;
     @FXML private Button salvaSchedaBtn;
 
     // ---------- Eventi clinici ----------
@@ -67,23 +83,23 @@ public class DiabetologoDashboardController extends BaseController {
     @FXML private VBox pagina1;
     @FXML private VBox pagina2;
 
-    private static final Map<String, Integer> ORDINE_PASTI = Map.of(
-            "Dopo cena", 1,
-            "Prima cena", 2,
-            "Dopo pranzo", 3,
-            "Prima pranzo", 4,
-            "Dopo colazione", 5,
-            "Prima colazione", 6
-    );
+    private static final Logger LOGGER = Logger.getLogger(DiabetologoDashboardController.class.getName());
+
+    private static final int GIORNI_ADERENZA = 30;
+    private static final int NOTIFICHE_PER_PAGINA = 10;
+    private static final DateTimeFormatter FORMATO_ISTANTE_NOTIFICA =
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm").withZone(ZoneId.systemDefault());
 
     private Diabetologo diabetologo;
     private final DataController dataController = new DataController();
-    private final FilePathProvider filePathProvider = new FilePathProvider();
+    private final SalvataggioDifferito salvataggio = new SalvataggioDifferito(dataController);
+    private final Set<Integer> pazientiCaricati = new HashSet<>();
+    private BusNotifiche.Sottoscrizione sottoscrizioneNotifiche;
+    // Ogni finestra ha il proprio cursore nel registro delle notifiche
+    private String lettoreNotifiche;
 
     @FXML
     public void initialize() {
-        AppState.getInstance().setDiabetologoDashboardController(this);
-
         initializeTableColumns();
         initializeRowFactories();
         initializeEditableColumns();
@@ -103,6 +119,8 @@ public class DiabetologoDashboardController extends BaseController {
         dataInizioColumn.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().getDataInizio().toString()));
         dataFineColumn.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().getDataFine().toString()));
         statoColumn.setCellValueFactory(c -> new SimpleObjectProperty<>(c.getValue().getStato()));
+        aderenzaColumn.setCellValueFactory(c -> new SimpleObjectProperty<>(c.getValue()));
+        aderenzaColumn.setCellFactory(tc -> new AderenzaCell());
 
         // Assunzioni columns
         dataAssunzioneColumn.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().getData().toString()));
@@ -142,8 +160,7 @@ public class DiabetologoDashboardController extends BaseController {
                 if (item == null || empty) {
                     setStyle("");
                 } else {
-                    String colore = determinaColore(item.getTipoPasto(), item.getValore());
-                    setStyle("-fx-background-color: " + colore + "; -fx-text-fill: black;");
+                    setStyle("-fx-background-color: " + item.getFascia().getColore() + "; -fx-text-fill: black;");
                 }
             }
         });
@@ -155,8 +172,9 @@ public class DiabetologoDashboardController extends BaseController {
 
     public void setUtente(Diabetologo diabetologo) {
         this.diabetologo = diabetologo;
+        apriLettoreNotifiche();
         initializeUserInterface();
-        loadPatientsData();
+        subscribeToNotifications();
         setupPatientSelectionListener();
         selectFirstPatient();
     }
@@ -167,32 +185,20 @@ public class DiabetologoDashboardController extends BaseController {
         mostraNotifichePendenti();
     }
 
-    private void loadPatientsData() {
-        for (Paziente paziente : diabetologo.getPazienti()) {
-            loadPatientData(paziente);
+    /**
+     * I dati di un paziente vengono letti alla prima selezione nella lista e non a ogni login
+     * per tutti i pazienti: la lettura usa l'indice per paziente di DataController.
+     */
+    private void loadPatientDataIfNeeded(Paziente paziente) {
+        if (pazientiCaricati.add(paziente.getId())) {
+            dataController.caricaDatiPaziente(paziente);
         }
     }
 
-    private void loadPatientData(Paziente paziente) {
-        paziente.getRilevazioni().clear();
-        dataController.caricaRilevazioni(filePathProvider.getRilevazioniFile(), List.of(paziente));
-
-        paziente.getTerapie().clear();
-        dataController.caricaTerapie(filePathProvider.getTerapieFile(), List.of(paziente));
-
-        paziente.getAssunzioni().clear();
-        dataController.caricaAssunzioni(filePathProvider.getAssunzioniFile(), List.of(paziente));
-
-        paziente.getEventiClinici().clear();
-        dataController.caricaEventiClinici(filePathProvider.getEventiCliniciFile(), List.of(paziente));
-
-        paziente.getTerapieConcomitanti().clear();
-        dataController.caricaTerapieConcomitanti(filePathProvider.getTerapieConcomitantiFile(), List.of(paziente));
-    }
-
     private void setupPatientSelectionListener() {
         pazientiList.getSelectionModel().selectedItemProperty().addListener((obs, oldP, newP) -> {
             if (newP != null) {
+                loadPatientDataIfNeeded(newP);
                 updatePatientViews(newP);
             }
         });
@@ -216,33 +222,13 @@ public class DiabetologoDashboardController extends BaseController {
     // ---------- Display Methods ----------
 
     private void mostraRilevazioni(Paziente paziente) {
-        ObservableList<Rilevazione> lista = FXCollections.observableArrayList(paziente.getRilevazioni());
-        lista.sort(Comparator
-                .comparing(Rilevazione::getData).reversed()
-                .thenComparing(r -> ORDINE_PASTI.getOrDefault(r.getTipoPasto(), Integer.MAX_VALUE))
-        );
-        rilevazioniTable.setItems(lista);
-    }
-
-    private String determinaColore(String tipoPasto, int valore) {
-        if (tipoPasto.toLowerCase().contains("prima")) {
-            return determineColorForPreMeal(valore);
-        } else {
-            return determineColorForPostMeal(valore);
+        // Dalla più recente, nello stesso giorno dall'ultimo pasto: ordinamento sulle chiavi della serie
+        SerieGlicemica serie = paziente.getSerieGlicemica();
+        ObservableList<Rilevazione> lista = FXCollections.observableArrayList();
+        for (int indice : serie.indiciPiuRecenti()) {
+            lista.add(serie.rilevazione(indice));
         }
-    }
-
-    private String determineColorForPreMeal(int valore) {
-        if (valore < 80) return "deepskyblue";
-        else if (valore <= 130) return "lightgreen";
-        else if (valore <= 180) return "khaki";
-        else return "orange";
-    }
-
-    private String determineColorForPostMeal(int valore) {
-        if (valore < 180) return "lightgreen";
-        else if (valore <= 250) return "orange";
-        else return "tomato";
+        rilevazioniTable.setItems(lista);
     }
 
     private void mostraTerapie(Paziente paziente) {
@@ -288,12 +274,20 @@ public class DiabetologoDashboardController extends BaseController {
         fattoriRischioArea.setText(scheda.getFattoriRischio());
         patologieArea.setText(scheda.getPregressePatologie());
         comorbiditaArea.setText(scheda.getComorbidita());
+        populateSoglieFields(scheda.getSoglieGlicemiche());
     }
 
     private void clearSchedaClinicaFields() {
         fattoriRischioArea.clear();
         patologieArea.clear();
         comorbiditaArea.clear();
+        populateSoglieFields(SoglieGlicemiche.PREDEFINITE);
+    }
+
+    private void populateSoglieFields(SoglieGlicemiche soglie) {
+        minimoPrimaPastoField.setText(String.valueOf(soglie.getMinimoPrimaPasto()));
+        massimoPrimaPastoField.setText(String.valueOf(soglie.getMassimoPrimaPasto()));
+        massimoDopoPastoField.setText(String.valueOf(soglie.getMassimoDopoPasto()));
     }
 
     private void mostraEventi(Paziente paziente) {
@@ -311,6 +305,10 @@ public class DiabetologoDashboardController extends BaseController {
 
     @FXML
     private void handleLogout() {
+        if (sottoscrizioneNotifiche != null) sottoscrizioneNotifiche.annulla();
+        RegistroNotifiche registro = AppState.getInstance().getRegistroNotifiche();
+        if (registro != null && lettoreNotifiche != null) registro.chiudiLettore(lettoreNotifiche);
+        salvataggio.chiudi();
         navigateToLogin(welcomeLabel.getScene().getWindow(), "/view/LoginView.fxml");
     }
 
@@ -341,7 +339,7 @@ public class DiabetologoDashboardController extends BaseController {
         if (nuovaTerapia != null) {
             paziente.aggiungiTerapia(nuovaTerapia);
             mostraTerapie(paziente);
-            dataController.salvaTerapie(List.of(paziente));
+            salvataggio.salva(DataController.TipoEntita.TERAPIE, paziente);
         }
     }
 
@@ -378,7 +376,7 @@ public class DiabetologoDashboardController extends BaseController {
 
     private void updateTerapiaStatus(Terapia terapia, Terapia.Stato nuovoStato, Paziente paziente) {
         terapia.setStato(nuovoStato);
-        dataController.salvaTerapie(List.of(paziente));
+        salvataggio.salva(DataController.TipoEntita.TERAPIE, paziente);
         mostraTerapie(paziente);
     }
 
@@ -390,10 +388,21 @@ public class DiabetologoDashboardController extends BaseController {
             return;
         }
 
-        SchedaClinica scheda = createSchedaClinica();
+        SchedaClinica scheda;
+        try {
+            scheda = createSchedaClinica();
+        } catch (NumberFormatException e) {
+            showAlert("Errore", "Gli obiettivi glicemici devono essere numeri interi in mg/dL.", Alert.AlertType.ERROR);
+            return;
+        } catch (IllegalArgumentException e) {
+            showAlert("Errore", e.getMessage(), Alert.AlertType.ERROR);
+            return;
+        }
         selectedPaziente.setSchedaClinica(scheda);
 
-        dataController.salvaSchedeCliniche(List.of(selectedPaziente));
+        salvataggio.salva(DataController.TipoEntita.SCHEDE_CLINICHE, selectedPaziente);
+        // Le righe vengono ricolorate con i nuovi obiettivi
+        mostraRilevazioni(selectedPaziente);
         showAlert("Successo", "Scheda clinica salvata correttamente.", Alert.AlertType.INFORMATION);
     }
 
@@ -401,7 +410,11 @@ public class DiabetologoDashboardController extends BaseController {
         return new SchedaClinica(
                 fattoriRischioArea.getText(),
                 patologieArea.getText(),
-                comorbiditaArea.getText()
+                comorbiditaArea.getText(),
+                new SoglieGlicemiche(
+                        Integer.parseInt(minimoPrimaPastoField.getText().trim()),
+                        Integer.parseInt(massimoPrimaPastoField.getText().trim()),
+                        Integer.parseInt(massimoDopoPastoField.getText().trim()))
         );
     }
 
@@ -425,21 +438,163 @@ public class DiabetologoDashboardController extends BaseController {
     }
 
     public void mostraNotifichePendenti() {
-        showPendingAssunzioniNotifications();
-        showPendingGlicemiaNotifications();
+        RegistroNotifiche registro = AppState.getInstance().getRegistroNotifiche();
+        if (registro == null) {
+            showPendingAssunzioniNotifications();
+            showPendingGlicemiaNotifications();
+            showPendingAndamentoNotifications();
+            return;
+        }
+
+        // Con il registro persistente le notifiche in memoria sono già state salvate
+        String diabetologoId = Integer.toString(diabetologo.getId());
+        AppState.getInstance().prelevaAssunzioniMancanti(diabetologoId);
+        AppState.getInstance().prelevaGlicemieFuoriRange(diabetologoId);
+        AppState.getInstance().prelevaAndamentiGlicemici(diabetologoId);
+        showUnreadNotifications(registro, diabetologoId);
+    }
+
+    /**
+     * Le notifiche pubblicate mentre la dashboard è aperta arrivano a blocchi sul thread JavaFX.
+     */
+    private void subscribeToNotifications() {
+        sottoscrizioneNotifiche = AppState.getInstance().getBusNotifiche()
+                .sottoscrivi(Integer.toString(diabetologo.getId()), Platform::runLater, this::showIncomingNotifications);
+    }
+
+    /**
+     * Un solo avviso per blocco di notifiche, che vengono poi considerate lette: sono tolte dalle
+     * code in memoria oppure, con il registro, il cursore avanza fino all'ultima notifica.
+     */
+    private void showIncomingNotifications(List<Notifica> notifiche) {
+        String diabetologoId = Integer.toString(diabetologo.getId());
+        AppState.getInstance().prelevaAssunzioniMancanti(diabetologoId);
+        AppState.getInstance().prelevaGlicemieFuoriRange(diabetologoId);
+        AppState.getInstance().prelevaAndamentiGlicemici(diabetologoId);
+        RegistroNotifiche registro = AppState.getInstance().getRegistroNotifiche();
+        if (registro != null) {
+            try {
+                long ultimo = registro.ultimoOffset(diabetologoId);
+                if (ultimo >= 0) registro.segnaLette(lettoreNotifiche, ultimo);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cursore delle notifiche non aggiornato", e);
+            }
+        }
+
+        StringBuilder testo = new StringBuilder();
+        boolean glicemia = false;
+        for (Notifica notifica : notifiche) {
+            testo.append(notifica.messaggio()).append('\n');
+            glicemia |= !(notifica instanceof Notifica.AssunzioniMancanti);
+        }
+        Alert alert = new Alert(glicemia ? Alert.AlertType.ERROR : Alert.AlertType.WARNING);
+        alert.setTitle(notifiche.size() == 1 ? "Nuova notifica" : notifiche.size() + " nuove notifiche");
+        alert.setHeaderText(null);
+        alert.setContentText(testo.toString());
+        alert.show();
+    }
+
+    /**
+     * Mostra a pagine le notifiche non ancora lette, avanzando il cursore a ogni pagina mostrata.
+     */
+    private void showUnreadNotifications(RegistroNotifiche registro, String diabetologoId) {
+        String lettore = lettoreNotifiche;
+        try {
+            List<RegistroNotifiche.Voce> pagina;
+            while (!(pagina = registro.nonLette(lettore, diabetologoId, NOTIFICHE_PER_PAGINA)).isEmpty()) {
+                int successive = registro.contaNonLette(lettore, diabetologoId) - pagina.size();
+                registro.segnaLette(lettore, pagina.get(pagina.size() - 1).offset());
+                if (!showNotificationPage("Notifiche non lette", pagina, successive > 0 ? "Successive (" + successive + ")" : null)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Errore lettura registro notifiche", e);
+            showAlert("Errore", "Impossibile leggere le notifiche.", Alert.AlertType.ERROR);
+        }
+    }
+
+    @FXML
+    private void handleStoricoNotifiche() {
+        RegistroNotifiche registro = AppState.getInstance().getRegistroNotifiche();
+        if (registro == null) {
+            showAlert("Notifiche", "Lo storico delle notifiche non è disponibile.", Alert.AlertType.INFORMATION);
+            return;
+        }
+
+        // Dalla più recente, una pagina alla volta all'indietro
+        String diabetologoId = Integer.toString(diabetologo.getId());
+        try {
+            long primaDi = Long.MAX_VALUE;
+            List<RegistroNotifiche.Voce> pagina = registro.storico(diabetologoId, primaDi, NOTIFICHE_PER_PAGINA);
+            if (pagina.isEmpty()) {
+                showAlert("Notifiche", "Nessuna notifica ricevuta.", Alert.AlertType.INFORMATION);
+                return;
+            }
+            while (!pagina.isEmpty()) {
+                primaDi = pagina.get(pagina.size() - 1).offset();
+                List<RegistroNotifiche.Voce> precedenti = registro.storico(diabetologoId, primaDi, NOTIFICHE_PER_PAGINA);
+                if (!showNotificationPage("Storico notifiche", pagina, precedenti.isEmpty() ? null : "Precedenti")) break;
+                pagina = precedenti;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Errore lettura registro notifiche", e);
+            showAlert("Errore", "Impossibile leggere lo storico delle notifiche.", Alert.AlertType.ERROR);
+        }
+    }
+
+    /**
+     * @param pulsanteAvanti testo del pulsante per la pagina seguente, null se non ce ne sono altre
+     * @return true se è stata richiesta la pagina seguente
+     */
+    private boolean showNotificationPage(String title, List<RegistroNotifiche.Voce> voci, String pulsanteAvanti) {
+        StringBuilder testo = new StringBuilder();
+        for (RegistroNotifiche.Voce voce : voci) {
+            testo.append(FORMATO_ISTANTE_NOTIFICA.format(voce.istante())).append("  ")
+                    .append(voce.notifica().messaggio()).append('\n');
+        }
+
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(testo.toString());
+        ButtonType avanti = pulsanteAvanti != null ? new ButtonType(pulsanteAvanti, ButtonBar.ButtonData.NEXT_FORWARD) : null;
+        if (avanti != null) {
+            alert.getButtonTypes().setAll(avanti, ButtonType.CLOSE);
+        } else {
+            alert.getButtonTypes().setAll(ButtonType.CLOSE);
+        }
+        return avanti != null && alert.showAndWait().orElse(ButtonType.CLOSE) == avanti;
+    }
+
+    /**
+     * Il cursore della finestra parte da quello persistente del diabetologo, che conserva le
+     * notifiche già lette tra un avvio e l'altro.
+     */
+    private void apriLettoreNotifiche() {
+        String persistente = "diabetologo-" + diabetologo.getId();
+        lettoreNotifiche = persistente + "-" + UUID.randomUUID();
+        RegistroNotifiche registro = AppState.getInstance().getRegistroNotifiche();
+        if (registro != null) registro.apriLettore(lettoreNotifiche, persistente);
     }
 
     private void showPendingAssunzioniNotifications() {
         // Filtra per il diabetologo corrente
-        for (String msg : AppState.getInstance().prelevaNotificheAssunzioni(Integer.toString(diabetologo.getId()))) {
-            showNotificationAlert("Assunzioni non registrate", null, msg, Alert.AlertType.WARNING);
+        for (Notifica notifica : AppState.getInstance().prelevaAssunzioniMancanti(Integer.toString(diabetologo.getId()))) {
+            showNotificationAlert("Assunzioni non registrate", null, notifica.messaggio(), Alert.AlertType.WARNING);
         }
     }
 
     private void showPendingGlicemiaNotifications() {
         // Filtra per il diabetologo corrente
-        for (String msg : AppState.getInstance().prelevaNotificheGlicemia(Integer.toString(diabetologo.getId()))) {
-            showNotificationAlert("Glicemia fuori range", null, msg, Alert.AlertType.ERROR);
+        for (Notifica notifica : AppState.getInstance().prelevaGlicemieFuoriRange(Integer.toString(diabetologo.getId()))) {
+            showNotificationAlert("Glicemia fuori range", null, notifica.messaggio(), Alert.AlertType.ERROR);
+        }
+    }
+
+    private void showPendingAndamentoNotifications() {
+        for (Notifica notifica : AppState.getInstance().prelevaAndamentiGlicemici(Integer.toString(diabetologo.getId()))) {
+            showNotificationAlert("Andamento glicemico", null, notifica.messaggio(), Alert.AlertType.ERROR);
         }
     }
 
@@ -470,4 +625,37 @@ public class DiabetologoDashboardController extends BaseController {
         pageToHide.setManaged(false);
     }
 
-}
\ No newline at end of file
+
+    /**
+     * Percentuale di aderenza e mappa degli ultimi {@value #GIORNI_ADERENZA} giorni (verde completo,
+     * rosso incompleto, grigio fuori terapia), dallo storico di aderenza del paziente selezionato.
+     */
+    private final class AderenzaCell extends TableCell<Terapia, Terapia> {
+        @Override
+        protected void updateItem(Terapia terapia, boolean empty) {
+            super.updateItem(terapia, empty);
+            Paziente paziente = pazientiList.getSelectionModel().getSelectedItem();
+            if (empty || terapia == null || paziente == null) {
+                setText(null);
+                setGraphic(null);
+                return;
+            }
+
+            LocalDate oggi = LocalDate.now();
+            LocalDate da = oggi.minusDays(GIORNI_ADERENZA - 1);
+            StoricoAderenza storico = paziente.getStoricoAderenza(terapia);
+            BitSet completi = storico.mappa(da, oggi);
+
+            HBox mappa = new HBox(1);
+            for (int i = 0; i < GIORNI_ADERENZA; i++) {
+                LocalDate giorno = da.plusDays(i);
+                Color colore = giorno.isBefore(terapia.getDataInizio()) || giorno.isAfter(terapia.getDataFine())
+                        ? Color.LIGHTGRAY
+                        : completi.get(i) ? Color.LIMEGREEN : Color.TOMATO;
+                mappa.getChildren().add(new Rectangle(4, 12, colore));
+            }
+            setText(String.format("%.0f%%", storico.percentuale(da, oggi)));
+            setGraphic(mappa);
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package controller;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Indice pazienteId → posizioni delle righe in un file CSV il cui primo campo è l'ID del paziente.
+ * Permette di leggere le sole righe di un paziente senza scandire l'intero file.
+ * Le righe sono memorizzate raggruppate per paziente (ID ordinati, ricerca binaria),
+ * mantenendo per ciascun paziente l'ordine del file.
+ * <p>
+ * L'indice viene salvato in un file affiancato al CSV ({@code <csv>.idx}) insieme a dimensione
+ * e data di modifica del CSV: se non corrispondono più, l'indice viene ricostruito con una scansione.
+ * L'indice copre solo il file canonico: il journal va applicato a parte (vedi CsvJournal).
+ * Tutti i metodi vanno chiamati tenendo il lock del file (CsvJournal.lock).
+ */
+final class IndiceCsvPazienti {
+
+    private static final Logger LOGGER = Logger.getLogger(IndiceCsvPazienti.class.getName());
+
+    static final String ESTENSIONE = ".idx";
+    private static final int MAGIC = 0x49445831; // "IDX1"
+    private static final int DIMENSIONE_BUFFER = 64 * 1024;
+    private static final byte[] FINE_RIGA = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final Map<String, IndiceCsvPazienti> CACHE = new ConcurrentHashMap<>();
+
+    private final long dimensioneFile;
+    private final long ultimaModifica;
+    private final int[] pazienti;   // ID distinti, ordinati
+    private final int[] primaRiga;  // righe del paziente i: [primaRiga[i], primaRiga[i + 1])
+    private final long[] offset;
+    private final int[] lunghezza;  // fine riga inclusa
+
+    private IndiceCsvPazienti(long dimensioneFile, long ultimaModifica,
+                              int[] pazienti, int[] primaRiga, long[] offset, int[] lunghezza) {
+        this.dimensioneFile = dimensioneFile;
+        this.ultimaModifica = ultimaModifica;
+        this.pazienti = pazienti;
+        this.primaRiga = primaRiga;
+        this.offset = offset;
+        this.lunghezza = lunghezza;
+    }
+
+    /**
+     * Restituisce l'indice del file: dalla memoria, dal file .idx oppure ricostruito con una
+     * scansione se il CSV è cambiato dall'ultima indicizzazione.
+     */
+    static IndiceCsvPazienti di(String csvFile) throws IOException {
+        Path path = Paths.get(csvFile);
+        String chiave = chiave(path);
+        long dimensione = Files.size(path);
+        long modifica = Files.getLastModifiedTime(path).toMillis();
+
+        IndiceCsvPazienti indice = CACHE.get(chiave);
+        if (indice != null && indice.valido(dimensione, modifica)) return indice;
+
+        indice = leggiSidecar(sidecar(path));
+        if (indice == null || !indice.valido(dimensione, modifica)) {
+            long inizio = System.nanoTime();
+            indice = costruisci(path, dimensione, modifica);
+            LOGGER.log(Level.INFO, "Indice di {0}: {1} righe per {2} pazienti in {3} ms", new Object[]{
+                    csvFile, indice.offset.length, indice.pazienti.length, (System.nanoTime() - inizio) / 1_000_000});
+            scriviSidecar(sidecar(path), indice);
+        }
+        CACHE.put(chiave, indice);
+        return indice;
+    }
+
+    /**
+     * Scarta l'indice del file (in memoria e su disco); da chiamare dopo ogni riscrittura
+     * del CSV canonico che non passa da {@link #sostituisciPazienti}.
+     */
+    static void invalida(String csvFile) {
+        Path path = Paths.get(csvFile);
+        CACHE.remove(chiave(path));
+        try {
+            Files.deleteIfExists(sidecar(path));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Impossibile eliminare l'indice di: " + csvFile, e);
+        }
+    }
+
+    /**
+     * Riscrive il CSV sostituendo le righe dei pazienti indicati con le nuove righe, accodate
+     * in fondo come nel merge classico. Le righe degli altri pazienti vengono copiate per
+     * intervalli di byte, senza essere lette né analizzate, e l'indice viene aggiornato
+     * spostando gli offset invece di riscandire il file.
+     *
+     * @param pazientiSostituiti ID dei pazienti le cui righe vanno rimosse
+     * @param nuoveRighe righe da accodare; il primo campo deve essere l'ID del paziente
+     */
+    static void sostituisciPazienti(String csvFile, int[] pazientiSostituiti, List<String> nuoveRighe)
+            throws IOException {
+        Path path = Paths.get(csvFile);
+        IndiceCsvPazienti vecchio = di(csvFile);
+
+        // Intervalli da rimuovere, ordinati per offset
+        List<Integer> daRimuovere = new ArrayList<>();
+        for (int id : pazientiSostituiti) {
+            int posizione = Arrays.binarySearch(vecchio.pazienti, id);
+            if (posizione < 0) continue;
+            for (int i = vecchio.primaRiga[posizione]; i < vecchio.primaRiga[posizione + 1]; i++) {
+                daRimuovere.add(i);
+            }
+        }
+        daRimuovere.sort(Comparator.comparingLong(i -> vecchio.offset[i]));
+        int rimossi = daRimuovere.size();
+        long[] inizioRimosso = new long[rimossi];
+        long[] fineRimosso = new long[rimossi];
+        for (int i = 0; i < rimossi; i++) {
+            int riga = daRimuovere.get(i);
+            inizioRimosso[i] = vecchio.offset[riga];
+            fineRimosso[i] = vecchio.offset[riga] + vecchio.lunghezza[riga];
+        }
+        // Byte rimossi prima di ciascun intervallo, per spostare gli offset delle righe mantenute
+        long[] rimossiPrima = new long[rimossi + 1];
+        for (int i = 0; i < rimossi; i++) {
+            rimossiPrima[i + 1] = rimossiPrima[i] + (fineRimosso[i] - inizioRimosso[i]);
+        }
+
+        Path temporaneo = ScritturaAtomica.temporaneo(path);
+        Righe righe = new Righe();
+        try (FileChannel sorgente = FileChannel.open(path, StandardOpenOption.READ);
+             FileChannel destinazione = FileChannel.open(temporaneo, StandardOpenOption.CREATE,
+                     StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            long posizione = 0;
+            for (int i = 0; i < rimossi; i++) {
+                copia(sorgente, destinazione, posizione, inizioRimosso[i]);
+                posizione = fineRimosso[i];
+            }
+            copia(sorgente, destinazione, posizione, vecchio.dimensioneFile);
+
+            // Righe mantenute: stesso ordine, offset spostati dei byte rimossi che le precedono
+            int[] sostituiti = pazientiSostituiti.clone();
+            Arrays.sort(sostituiti);
+            for (int p = 0; p < vecchio.pazienti.length; p++) {
+                if (Arrays.binarySearch(sostituiti, vecchio.pazienti[p]) >= 0) continue;
+                for (int i = vecchio.primaRiga[p]; i < vecchio.primaRiga[p + 1]; i++) {
+                    int precedenti = -Arrays.binarySearch(inizioRimosso, vecchio.offset[i]) - 1;
+                    righe.aggiungi(vecchio.pazienti[p], vecchio.offset[i] - rimossiPrima[precedenti], vecchio.lunghezza[i]);
+                }
+            }
+
+            long fine = destinazione.size();
+            if (fine > 0 && !terminaConFineRiga(destinazione, fine)) {
+                fine += scrivi(destinazione, fine, FINE_RIGA);
+            }
+
+            CsvFieldScanner scanner = new CsvFieldScanner();
+            for (String riga : nuoveRighe) {
+                byte[] bytes = (riga + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+                righe.aggiungi(scanner.leggiIntIniziale(riga), fine, bytes.length);
+                fine += scrivi(destinazione, fine, bytes);
+            }
+        }
+
+        CACHE.remove(chiave(path));
+        ScritturaAtomica.sostituisci(temporaneo, path);
+
+        IndiceCsvPazienti nuovo = righe.raggruppa(Files.size(path), Files.getLastModifiedTime(path).toMillis());
+        CACHE.put(chiave(path), nuovo);
+        scriviSidecar(sidecar(path), nuovo);
+    }
+
+    /**
+     * Passa al consumer le righe del paziente, nell'ordine del file.
+     *
+     * @return il numero di righe lette
+     */
+    int leggi(String csvFile, int pazienteId, Consumer<String> consumer) throws IOException {
+        int posizione = Arrays.binarySearch(pazienti, pazienteId);
+        if (posizione < 0) return 0;
+
+        int da = primaRiga[posizione];
+        int a = primaRiga[posizione + 1];
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFile), StandardOpenOption.READ)) {
+            for (int i = da; i < a; i++) {
+                ByteBuffer buffer = ByteBuffer.allocate(lunghezza[i]);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset[i] + buffer.position()) < 0) {
+                        throw new IOException("File troncato durante la lettura: " + csvFile);
+                    }
+                }
+                int fine = buffer.limit();
+                while (fine > 0 && (buffer.get(fine - 1) == '\n' || buffer.get(fine - 1) == '\r')) fine--;
+                consumer.accept(new String(buffer.array(), 0, fine, StandardCharsets.UTF_8));
+            }
+        }
+        return a - da;
+    }
+
+    boolean contiene(int pazienteId) {
+        return Arrays.binarySearch(pazienti, pazienteId) >= 0;
+    }
+
+    private boolean valido(long dimensione, long modifica) {
+        return dimensioneFile == dimensione && ultimaModifica == modifica;
+    }
+
+    // ============ SIDECAR ============
+
+    private static Path sidecar(Path csv) {
+        return csv.resolveSibling(csv.getFileName() + ESTENSIONE);
+    }
+
+    private static IndiceCsvPazienti leggiSidecar(Path file) {
+        if (!Files.exists(file)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) return null;
+            long dimensione = in.readLong();
+            long modifica = in.readLong();
+            int numeroPazienti = in.readInt();
+            int numeroRighe = in.readInt();
+
+            int[] pazienti = new int[numeroPazienti];
+            int[] primaRiga = new int[numeroPazienti + 1];
+            long[] offset = new long[numeroRighe];
+            int[] lunghezza = new int[numeroRighe];
+            for (int i = 0; i < numeroPazienti; i++) pazienti[i] = in.readInt();
+            for (int i = 0; i <= numeroPazienti; i++) primaRiga[i] = in.readInt();
+            for (int i = 0; i < numeroRighe; i++) offset[i] = in.readLong();
+            for (int i = 0; i < numeroRighe; i++) lunghezza[i] = in.readInt();
+            return new IndiceCsvPazienti(dimensione, modifica, pazienti, primaRiga, offset, lunghezza);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Indice non leggibile, verrà ricostruito: " + file, e);
+            return null;
+        }
+    }
+
+    private static void scriviSidecar(Path file, IndiceCsvPazienti indice) {
+        Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaneo)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(indice.dimensioneFile);
+                out.writeLong(indice.ultimaModifica);
+                out.writeInt(indice.pazienti.length);
+                out.writeInt(indice.offset.length);
+                for (int id : indice.pazienti) out.writeInt(id);
+                for (int riga : indice.primaRiga) out.writeInt(riga);
+                for (long o : indice.offset) out.writeLong(o);
+                for (int l : indice.lunghezza) out.writeInt(l);
+            }
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // L'indice su disco è solo una cache: in caso di errore verrà ricostruito
+            LOGGER.log(Level.WARNING, "Impossibile salvare l'indice: " + file, e);
+        }
+    }
+
+    // ============ COSTRUZIONE ============
+
+    private static IndiceCsvPazienti costruisci(Path path, long dimensione, long modifica) throws IOException {
+        Righe righe = new Righe();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(DIMENSIONE_BUFFER);
+            ScansioneRiga riga = new ScansioneRiga();
+            boolean header = true;
+            long posizione = 0;
+
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    riga.aggiungi(b);
+                    posizione++;
+                    if (b == '\n') {
+                        if (!header) riga.registra(righe);
+                        header = false;
+                        riga.reset(posizione);
+                    }
+                }
+                buffer.clear();
+            }
+            if (!header) riga.registra(righe);
+        }
+        return righe.raggruppa(dimensione, modifica);
+    }
+
+    private static void copia(FileChannel sorgente, FileChannel destinazione, long da, long a) throws IOException {
+        long posizione = da;
+        while (posizione < a) {
+            posizione += sorgente.transferTo(posizione, a - posizione, destinazione);
+        }
+    }
+
+    private static int scrivi(FileChannel channel, long posizione, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, posizione + buffer.position());
+        }
+        return bytes.length;
+    }
+
+    private static boolean terminaConFineRiga(FileChannel channel, long dimensione) throws IOException {
+        ByteBuffer ultimo = ByteBuffer.allocate(1);
+        channel.read(ultimo, dimensione - 1);
+        return ultimo.get(0) == '\n';
+    }
+
+    private static String chiave(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Stato della riga in scansione: estrae l'ID iniziale direttamente dai byte.
+     */
+    private static final class ScansioneRiga {
+        private long inizio;
+        private int lunghezza;
+        private long id;
+        private int cifre;
+        private boolean negativo;
+        private boolean idConcluso;
+        private boolean idValido = true;
+        private boolean vuota = true;
+
+        void reset(long inizio) {
+            this.inizio = inizio;
+            lunghezza = 0;
+            id = 0;
+            cifre = 0;
+            negativo = false;
+            idConcluso = false;
+            idValido = true;
+            vuota = true;
+        }
+
+        void aggiungi(byte b) {
+            lunghezza++;
+            if (b > ' ') vuota = false;
+            if (idConcluso) return;
+
+            if (b >= '0' && b <= '9') {
+                id = id * 10 + (b - '0');
+                if (++cifre > 10) idValido = false;
+            } else if (b == ',') {
+                idConcluso = true;
+            } else if (b == '-' && cifre == 0 && !negativo) {
+                negativo = true;
+            } else if (b != ' ' && b != '\t') {
+                idValido = false;
+            }
+        }
+
+        void registra(Righe righe) {
+            if (vuota) return;
+            long valore = negativo ? -id : id;
+            if (!idValido || cifre == 0 || valore < Integer.MIN_VALUE || valore > Integer.MAX_VALUE) {
+                LOGGER.log(Level.FINE, "Riga senza ID paziente valido all'offset {0}", inizio);
+                return;
+            }
+            righe.aggiungi((int) valore, inizio, lunghezza);
+        }
+    }
+
+    /**
+     * Righe raccolte nell'ordine del file, poi raggruppate per paziente.
+     */
+    private static final class Righe {
+        private int size;
+        private int[] ids = new int[1024];
+        private long[] offsets = new long[1024];
+        private int[] lunghezze = new int[1024];
+
+        void aggiungi(int id, long offset, int lunghezza) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lunghezze = Arrays.copyOf(lunghezze, size * 2);
+            }
+            ids[size] = id;
+            offsets[size] = offset;
+            lunghezze[size] = lunghezza;
+            size++;
+        }
+
+        IndiceCsvPazienti raggruppa(long dimensione, long modifica) {
+            // Chiave (id, ordine di inserimento): l'ordinamento raggruppa per paziente senza perdere l'ordine
+            long[] chiavi = new long[size];
+            for (int i = 0; i < size; i++) {
+                chiavi[i] = ((long) ids[i] << 32) | i;
+            }
+            Arrays.sort(chiavi);
+
+            int distinti = 0;
+            int[] pazienti = new int[size];
+            int[] primaRiga = new int[size + 1];
+            long[] offset = new long[size];
+            int[] lunghezza = new int[size];
+            for (int i = 0; i < size; i++) {
+                int id = (int) (chiavi[i] >> 32);
+                int riga = (int) chiavi[i];
+                if (distinti == 0 || pazienti[distinti - 1] != id) {
+                    pazienti[distinti] = id;
+                    primaRiga[distinti] = i;
+                    distinti++;
+                }
+                offset[i] = offsets[riga];
+                lunghezza[i] = lunghezze[riga];
+            }
+            primaRiga[distinti] = size;
+
+            return new IndiceCsvPazienti(dimensione, modifica, Arrays.copyOf(pazienti, distinti),
+                    Arrays.copyOf(primaRiga, distinti + 1), offset, lunghezza);
+        }
+    }
+}
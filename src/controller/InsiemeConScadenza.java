@@ -0,0 +1,127 @@
+package controller;
+
+/**
+ * Insieme compatto di chiavi long con scadenza espressa in giorni (epoch day): tabella a
+ * indirizzamento aperto su due array paralleli, senza oggetti per elemento.
+ * <p>
+ * Le chiavi scadute contano come assenti; i loro posti vengono riusati dagli inserimenti e
+ * rimossi alla successiva ridimensione. La chiave 0 è riservata ai posti vuoti e viene
+ * rimappata. Thread-safe.
+ */
+final class InsiemeConScadenza {
+
+    private static final int CAPACITA_INIZIALE = 64;
+
+    private long[] chiavi = new long[CAPACITA_INIZIALE];
+    private long[] scadenze = new long[CAPACITA_INIZIALE];
+    private int occupati;
+
+    /**
+     * Registra la chiave fino al giorno di scadenza (incluso), prorogandola se già presente.
+     *
+     * @return true se la chiave non era presente o era scaduta
+     */
+    synchronized boolean aggiungi(long chiave, long oggi, long scadenza) {
+        return aggiungi(chiave, oggi, oggi, scadenza);
+    }
+
+    /**
+     * Come {@link #aggiungi(long, long, long)}, ma una chiave presente con scadenza anteriore a
+     * {@code validaDa} conta come assente e viene sostituita.
+     *
+     * @return true se la chiave non era presente o aveva scadenza anteriore a {@code validaDa}
+     */
+    synchronized boolean aggiungi(long chiave, long oggi, long validaDa, long scadenza) {
+        long k = chiave == 0 ? 1 : chiave;
+        int maschera = chiavi.length - 1;
+        int scaduto = -1;
+        for (int i = indice(k, maschera); ; i = (i + 1) & maschera) {
+            if (chiavi[i] == 0) {
+                if (scaduto >= 0) {
+                    // La chiave non c'è: si riusa il primo posto scaduto incontrato
+                    chiavi[scaduto] = k;
+                    scadenze[scaduto] = scadenza;
+                    return true;
+                }
+                chiavi[i] = k;
+                scadenze[i] = scadenza;
+                if (++occupati * 2 > chiavi.length) ridimensiona(oggi);
+                return true;
+            }
+            if (chiavi[i] == k) {
+                boolean nuova = scadenze[i] < Math.max(oggi, validaDa);
+                scadenze[i] = Math.max(scadenze[i], scadenza);
+                return nuova;
+            }
+            if (scaduto < 0 && scadenze[i] < oggi) scaduto = i;
+        }
+    }
+
+    synchronized boolean contiene(long chiave, long oggi) {
+        long k = chiave == 0 ? 1 : chiave;
+        int maschera = chiavi.length - 1;
+        for (int i = indice(k, maschera); chiavi[i] != 0; i = (i + 1) & maschera) {
+            if (chiavi[i] == k) return scadenze[i] >= oggi;
+        }
+        return false;
+    }
+
+    /**
+     * Giorno di scadenza registrato per la chiave, anche se già passato; Long.MIN_VALUE se assente.
+     */
+    synchronized long scadenza(long chiave) {
+        long k = chiave == 0 ? 1 : chiave;
+        int maschera = chiavi.length - 1;
+        for (int i = indice(k, maschera); chiavi[i] != 0; i = (i + 1) & maschera) {
+            if (chiavi[i] == k) return scadenze[i];
+        }
+        return Long.MIN_VALUE;
+    }
+
+    synchronized void svuota() {
+        chiavi = new long[CAPACITA_INIZIALE];
+        scadenze = new long[CAPACITA_INIZIALE];
+        occupati = 0;
+    }
+
+    /**
+     * Numero di posti occupati, chiavi scadute non ancora rimosse comprese.
+     */
+    synchronized int dimensione() {
+        return occupati;
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    /**
+     * Ricostruisce la tabella con le sole chiavi valide, raddoppiandola se restano oltre metà piena.
+     */
+    private void ridimensiona(long oggi) {
+        long[] vecchieChiavi = chiavi;
+        long[] vecchieScadenze = scadenze;
+        int valide = 0;
+        for (int i = 0; i < vecchieChiavi.length; i++) {
+            if (vecchieChiavi[i] != 0 && vecchieScadenze[i] >= oggi) valide++;
+        }
+        int capacita = vecchieChiavi.length;
+        while (valide * 4 > capacita) capacita *= 2;
+
+        chiavi = new long[capacita];
+        scadenze = new long[capacita];
+        occupati = 0;
+        int maschera = capacita - 1;
+        for (int i = 0; i < vecchieChiavi.length; i++) {
+            if (vecchieChiavi[i] == 0 || vecchieScadenze[i] < oggi) continue;
+            int j = indice(vecchieChiavi[i], maschera);
+            while (chiavi[j] != 0) j = (j + 1) & maschera;
+            chiavi[j] = vecchieChiavi[i];
+            scadenze[j] = vecchieScadenze[i];
+            occupati++;
+        }
+    }
+
+    private static int indice(long chiave, int maschera) {
+        long h = chiave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & maschera;
+    }
+}
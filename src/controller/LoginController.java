@@ -1,8 +1,19 @@
 package controller;
 
 import model.FilePathProvider;
+import model.Paziente;
 import model.Utente;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -15,21 +26,91 @@ public class LoginController {
     private static final Logger LOGGER = Logger.getLogger(LoginController.class.getName());
 
 
-    private FilePathProvider filePaths= new FilePathProvider();
+    private final FilePathProvider filePaths;
     private final List<Utente> utenti;
+    private final Map<String, Utente> utentiPerEmail = new ConcurrentHashMap<>();
     private final DataController dataController;
+    private final boolean caricamentoParallelo;
+    private final boolean caricamentoLazy;
+    private final boolean usaSnapshot;
+    private final List<MetricaCaricamento> metricheCaricamento = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Tempo di caricamento di un singolo file dati.
+     */
+    public record MetricaCaricamento(String file, int entitaCaricate, long millisecondi) {
+        @Override
+        public String toString() {
+            return String.format("%s: %d entità in %d ms", file, entitaCaricate, millisecondi);
+        }
+    }
+
+    /**
+     * Inizializza il controller caricando tutti i dati del sistema, con i file dei
+     * pazienti caricati in parallelo.
+     */
+    public LoginController() {
+        this(true);
+    }
 
     /**
      * Inizializza il controller caricando tutti i dati del sistema.
      * L'ordine di caricamento è importante: prima gli utenti, poi i loro dati associati.
+     *
+     * @param caricamentoParallelo se true i file dei pazienti vengono caricati in parallelo
      */
-    public LoginController() {
+    public LoginController(boolean caricamentoParallelo) {
+        this(caricamentoParallelo, false);
+    }
+
+    /**
+     * Inizializza il controller caricando gli utenti e, se non è richiesto il caricamento lazy,
+     * tutti i dati dei pazienti.
+     *
+     * @param caricamentoParallelo se true i file dei pazienti vengono caricati in parallelo
+     * @param caricamentoLazy se true viene caricata solo la lista degli utenti: i dati di ogni
+     *                        paziente vanno letti su richiesta con {@link DataController#caricaDatiPaziente}
+     */
+    public LoginController(boolean caricamentoParallelo, boolean caricamentoLazy) {
+        this(caricamentoParallelo, caricamentoLazy, false);
+    }
+
+    /**
+     * Inizializza il controller come {@link #LoginController(boolean, boolean)}, con in più
+     * l'avvio da snapshot: se lo snapshot binario del modello è allineato ai file dati, utenti e
+     * dati dei pazienti vengono ricostruiti da snapshot e journal senza leggere i CSV; altrimenti
+     * i CSV vengono letti per intero e lo snapshot riscritto. Ignorato con il caricamento lazy.
+     *
+     * @param usaSnapshot se true all'avvio viene usato (e mantenuto) lo snapshot del modello
+     */
+    public LoginController(boolean caricamentoParallelo, boolean caricamentoLazy, boolean usaSnapshot) {
+        this(new FilePathProvider(), caricamentoParallelo, caricamentoLazy, usaSnapshot);
+    }
+
+    /**
+     * Inizializza il controller come {@link #LoginController(boolean, boolean, boolean)} sui file
+     * dati della cartella indicata.
+     */
+    public LoginController(FilePathProvider filePaths, boolean caricamentoParallelo, boolean caricamentoLazy, boolean usaSnapshot) {
         LOGGER.info("Inizializzazione LoginController...");
 
-        this.dataController = new DataController();
+        this.filePaths = filePaths;
+        this.caricamentoParallelo = caricamentoParallelo;
+        this.caricamentoLazy = caricamentoLazy;
+        this.usaSnapshot = usaSnapshot && !caricamentoLazy;
+        this.dataController = new DataController(filePaths, DataController.ModalitaPersistenza.RISCRITTURA);
+
+        List<Utente> daSnapshot = this.usaSnapshot ? dataController.caricaDaSnapshot() : null;
+        if (daSnapshot != null) {
+            this.utenti = daSnapshot;
+            indicizzaUtenti();
+            LOGGER.info("Inizializzazione LoginController completata da snapshot");
+            return;
+        }
 
         // Carica utenti (base del sistema)
         this.utenti = dataController.caricaUtenti(filePaths.getUtenti());
+        indicizzaUtenti();
 
         if (utenti.isEmpty()) {
             LOGGER.warning("Nessun utente caricato. Verificare il file utenti.csv");
@@ -37,11 +118,59 @@ public class LoginController {
         }
 
         // Carica tutti i dati associati ai pazienti
-        caricaDatiPazienti();
+        if (caricamentoLazy) {
+            LOGGER.info("Caricamento lazy: i dati dei pazienti verranno letti su richiesta");
+        } else if (dataController.isBackendEsterno()) {
+            caricaDatiPazientiDaBackend();
+        } else {
+            caricaDatiPazienti();
+            if (this.usaSnapshot) {
+                dataController.scriviSnapshot(utenti);
+            }
+        }
 
         LOGGER.info("Inizializzazione LoginController completata");
     }
 
+    /**
+     * Crea il controller su utenti già caricati, senza leggere i file dati.
+     * Utile per test e benchmark dell'autenticazione.
+     *
+     * @param utenti Utenti registrati nel sistema
+     */
+    public LoginController(List<Utente> utenti) {
+        this.filePaths = new FilePathProvider();
+        this.caricamentoParallelo = false;
+        this.caricamentoLazy = true;
+        this.usaSnapshot = false;
+        this.dataController = new DataController();
+        this.utenti = new ArrayList<>(utenti);
+        indicizzaUtenti();
+    }
+
+    /**
+     * Costruisce l'indice email normalizzata → utente. A parità di email vale il primo utente,
+     * come nella precedente ricerca lineare.
+     */
+    private void indicizzaUtenti() {
+        for (Utente utente : utenti) {
+            indicizzaUtente(utente);
+        }
+        LOGGER.log(Level.INFO, "Indicizzate {0} email utente", utentiPerEmail.size());
+    }
+
+    private void indicizzaUtente(Utente utente) {
+        if (utente.getEmail() == null) return;
+        Utente precedente = utentiPerEmail.putIfAbsent(normalizzaEmail(utente.getEmail()), utente);
+        if (precedente != null && precedente != utente) {
+            LOGGER.log(Level.WARNING, "Email duplicata ignorata per utente ID: {0}", utente.getId());
+        }
+    }
+
+    private static String normalizzaEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
     /**
      * Carica tutti i tipi di dati associati ai pazienti.
      * Questo metodo centralizza il caricamento per una migliore gestione degli errori.
@@ -49,16 +178,26 @@ public class LoginController {
     private void caricaDatiPazienti() {
         try {
             LOGGER.info("Caricamento dati pazienti in corso...");
+            long inizio = System.nanoTime();
 
             // Carica dati clinici
-            dataController.caricaRilevazioni(filePaths.getRilevazioniFile(), utenti);
-            dataController.caricaTerapie(filePaths.getTerapieFile(), utenti);
-            dataController.caricaAssunzioni(filePaths.getAssunzioniFile(), utenti);
-            dataController.caricaSchedeCliniche(filePaths.getSchedeClinicheFile(), utenti);
-            dataController.caricaEventiClinici(filePaths.getEventiCliniciFile(), utenti);
-            dataController.caricaTerapieConcomitanti(filePaths.getTerapieConcomitantiFile(), utenti);
+            List<CaricamentoFile> caricamenti = List.of(
+                    new CaricamentoFile(filePaths.getRilevazioniFile(), dataController::caricaRilevazioni),
+                    new CaricamentoFile(filePaths.getTerapieFile(), dataController::caricaTerapie),
+                    new CaricamentoFile(filePaths.getAssunzioniFile(), dataController::caricaAssunzioni),
+                    new CaricamentoFile(filePaths.getSchedeClinicheFile(), dataController::caricaSchedeCliniche),
+                    new CaricamentoFile(filePaths.getEventiCliniciFile(), dataController::caricaEventiClinici),
+                    new CaricamentoFile(filePaths.getTerapieConcomitantiFile(), dataController::caricaTerapieConcomitanti)
+            );
 
-            LOGGER.info("Caricamento dati pazienti completato");
+            if (caricamentoParallelo) {
+                caricaInParallelo(caricamenti);
+            } else {
+                caricamenti.forEach(this::eseguiCaricamento);
+            }
+
+            LOGGER.log(Level.INFO, "Caricamento dati pazienti completato in {0} ms",
+                    (System.nanoTime() - inizio) / 1_000_000);
 
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Errore durante il caricamento dei dati pazienti", e);
@@ -66,6 +205,61 @@ public class LoginController {
         }
     }
 
+    /**
+     * Con un backend diverso dai CSV i dati vengono letti paziente per paziente.
+     */
+    private void caricaDatiPazientiDaBackend() {
+        long inizio = System.nanoTime();
+        int caricate = 0;
+        for (Utente utente : utenti) {
+            if (utente instanceof Paziente paziente) {
+                caricate += dataController.caricaDatiPaziente(paziente);
+            }
+        }
+        LOGGER.log(Level.INFO, "Caricate {0} entità dal backend in {1} ms",
+                new Object[]{caricate, (System.nanoTime() - inizio) / 1_000_000});
+    }
+
+    /**
+     * Carica i file in parallelo. I file sono indipendenti una volta costruita la mappa
+     * dei pazienti: ogni caricamento popola una lista diversa di ciascun Paziente
+     * (rilevazioni, terapie, ...), quindi nessuna lista è condivisa tra i thread. Le assunzioni
+     * non toccano le terapie finché non viene richiesto uno storico dell'aderenza.
+     * L'attesa dei Future garantisce la visibilità dei dati al thread chiamante.
+     */
+    private void caricaInParallelo(List<CaricamentoFile> caricamenti) throws InterruptedException, ExecutionException {
+        int threads = Math.min(caricamenti.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "caricamento-dati");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (CaricamentoFile caricamento : caricamenti) {
+                futures.add(executor.submit(() -> eseguiCaricamento(caricamento)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void eseguiCaricamento(CaricamentoFile caricamento) {
+        long inizio = System.nanoTime();
+        int caricate = caricamento.loader().apply(caricamento.file(), utenti);
+        MetricaCaricamento metrica = new MetricaCaricamento(
+                caricamento.file(), caricate, (System.nanoTime() - inizio) / 1_000_000);
+        metricheCaricamento.add(metrica);
+        LOGGER.log(Level.INFO, "Caricamento {0}", metrica);
+    }
+
+    private record CaricamentoFile(String file, BiFunction<String, List<Utente>, Integer> loader) {
+    }
+
     /**
      * Autentica un utente con email e password.
      *
@@ -84,16 +278,13 @@ public class LoginController {
             return null;
         }
 
-        String emailNormalized = email.trim().toLowerCase();
+        String emailNormalized = normalizzaEmail(email);
 
-        for (Utente utente : utenti) {
-            if (utente.getEmail().toLowerCase().equals(emailNormalized) &&
-                    utente.getPassword().equals(password)) {
-
-                LOGGER.log(Level.INFO, "Login successful per utente: {0} (ID: {1})",
-                        new Object[]{utente.getEmail(), utente.getId()});
-                return utente;
-            }
+        Utente utente = utentiPerEmail.get(emailNormalized);
+        if (utente != null && utente.getPassword().equals(password)) {
+            LOGGER.log(Level.INFO, "Login successful per utente: {0} (ID: {1})",
+                    new Object[]{utente.getEmail(), utente.getId()});
+            return utente;
         }
 
         LOGGER.log(Level.WARNING, "Login fallito per email: {0}", emailNormalized);
@@ -111,9 +302,27 @@ public class LoginController {
             return false;
         }
 
-        String emailNormalized = email.trim().toLowerCase();
-        return utenti.stream()
-                .anyMatch(u -> u.getEmail().toLowerCase().equals(emailNormalized));
+        return utentiPerEmail.containsKey(normalizzaEmail(email));
+    }
+
+    /**
+     * Registra un nuovo utente, aggiornando l'indice delle email e il registro dei pazienti.
+     *
+     * @param utente Utente da aggiungere
+     * @return false se esiste già un utente con la stessa email
+     */
+    public synchronized boolean registraUtente(Utente utente) {
+        if (utente == null || utente.getEmail() == null || esisteUtente(utente.getEmail())) {
+            return false;
+        }
+
+        utenti.add(utente);
+        indicizzaUtente(utente);
+        if (utente instanceof Paziente paziente) {
+            DataController.registraPaziente(paziente);
+        }
+        LOGGER.log(Level.INFO, "Registrato utente: {0} (ID: {1})", new Object[]{utente.getEmail(), utente.getId()});
+        return true;
     }
 
     /**
@@ -122,13 +331,23 @@ public class LoginController {
      * @return Stringa con informazioni statistiche
      */
     public String getStatisticheSistema() {
-        long pazienti = utenti.stream().filter(u -> u.getClass().getSimpleName().equals("Paziente")).count();
+        long pazienti = utenti.stream().filter(u -> u instanceof Paziente).count();
         long diabetologi = utenti.stream().filter(u -> u.getClass().getSimpleName().equals("Diabetologo")).count();
 
         return String.format("Sistema caricato con %d utenti totali (%d pazienti, %d diabetologi)",
                 utenti.size(), pazienti, diabetologi);
     }
 
+    /**
+     * Cerca un paziente per ID nel registro condiviso costruito al caricamento degli utenti.
+     *
+     * @param id ID del paziente
+     * @return Il paziente, null se non esiste
+     */
+    public Paziente trovaPaziente(int id) {
+        return DataController.trovaPaziente(id);
+    }
+
     // ============ GETTERS ============
 
     /**
@@ -136,10 +355,28 @@ public class LoginController {
      *
      * @return Lista immutabile degli utenti
      */
-    public List<Utente> getUtenti() {
+    public synchronized List<Utente> getUtenti() {
         return List.copyOf(utenti); // Restituisce copia immutabile per sicurezza
     }
 
+    /**
+     * Indica se i dati dei pazienti vengono letti su richiesta invece che all'avvio.
+     */
+    public boolean isCaricamentoLazy() {
+        return caricamentoLazy;
+    }
+
+    /**
+     * Restituisce i tempi di caricamento dei singoli file dati, nell'ordine di completamento.
+     *
+     * @return Lista immutabile delle metriche di caricamento
+     */
+    public List<MetricaCaricamento> getMetricheCaricamento() {
+        synchronized (metricheCaricamento) {
+            return List.copyOf(metricheCaricamento);
+        }
+    }
+
     /**
      * Restituisce il controller per la gestione dei dati.
      *
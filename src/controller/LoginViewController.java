@@ -60,7 +60,8 @@ public class LoginViewController {
         Task<LoginController> initTask = new Task<LoginController>() {
             @Override
             protected LoginController call() throws Exception {
-                return new LoginController();
+                // Dati dei pazienti letti su richiesta dalle dashboard
+                return new LoginController(true, true);
             }
 
             @Override
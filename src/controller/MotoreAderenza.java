@@ -0,0 +1,383 @@
+package controller;
+
+import model.AppState;
+import model.Assunzione;
+import model.Notifica;
+import model.Paziente;
+import model.Terapia;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controllo dell'aderenza alle terapie senza interfaccia: per ogni terapia attiva verifica le
+ * assunzioni di oggi e i giorni consecutivi senza assunzioni complete, gli stessi controlli fatti
+ * dalla dashboard del paziente all'apertura.
+ * <p>
+ * {@link #controllaTutti} valuta l'intera popolazione in parallelo (fork-join sui pazienti) e
+ * accoda in {@link AppState} le notifiche per i medici; {@link #avvia} lo ripete periodicamente,
+ * così anche i pazienti che non aprono la dashboard generano la notifica dei giorni mancanti.
+ * Con un DataController i dati vengono riletti dall'archivio (terapie e assunzioni degli ultimi
+ * giorni) in pazienti separati, senza toccare il modello usato dall'interfaccia. Senza DataController
+ * i pazienti vengono valutati direttamente, costruendone gli storici di aderenza: non vanno
+ * modificati durante il controllo.
+ * <p>
+ * Ogni episodio di giorni mancanti viene notificato una sola volta, qualunque sia il numero di
+ * controlli e il percorso (dashboard o controllo periodico): per ogni paziente e terapia resta in
+ * memoria il giorno in cui l'episodio è stato osservato l'ultima volta, per
+ * {@value #SCADENZA_EPISODIO_GIORNI} giorni. Un episodio è nuovo se inizia dopo quel giorno, cioè
+ * se nel frattempo c'è stata una giornata di assunzioni complete. Il primo giorno dell'episodio
+ * non fa parte della chiave: il controllo periodico rilegge solo gli ultimi giorni e non vede
+ * l'inizio degli episodi più lunghi.
+ * <p>
+ * Con {@link #apriArchivioEpisodi} gli episodi notificati vengono anche salvati su file, così un
+ * riavvio (e il primo controllo periodico che lo segue) non notifica di nuovo gli episodi aperti.
+ */
+public class MotoreAderenza {
+
+    private static final Logger LOGGER = Logger.getLogger(MotoreAderenza.class.getName());
+
+    public static final int GIORNI_CONSECUTIVI_MANCANTI = 3;
+    public static final long PERIODO_DEFAULT_MINUTI = 24 * 60;
+    /** Attesa prima del primo controllo, per lasciare completare il caricamento degli utenti. */
+    public static final long RITARDO_INIZIALE_DEFAULT_MINUTI = 1;
+
+    /** Giorni dopo l'ultima osservazione di un episodio oltre i quali può essere notificato di nuovo. */
+    public static final int SCADENZA_EPISODIO_GIORNI = 7;
+
+    /**
+     * Giorni di assunzioni riletti dall'archivio: gli episodi iniziati prima risultano iniziati
+     * con la terapia, in assenza di assunzioni precedenti.
+     */
+    private static final int FINESTRA_ARCHIVIO_GIORNI = 31;
+
+    /** Pazienti valutati da un singolo task prima di dividere ulteriormente. */
+    private static final int SOGLIA_TASK = 256;
+
+    private static final Set<MotoreAderenza> AVVIATI = ConcurrentHashMap.newKeySet();
+
+    // Condiviso tra controllo periodico e dashboard dei pazienti
+    private static final InsiemeConScadenza EPISODI_NOTIFICATI = new InsiemeConScadenza();
+
+    // File degli episodi notificati, null se restano solo in memoria; protetto dal lock della classe
+    private static Path archivioEpisodi;
+
+    /**
+     * Esito del controllo di una terapia attiva.
+     *
+     * @param assunzioniOggi assunzioni del farmaco registrate oggi
+     * @param giorniMancanti  true se negli ultimi {@link #GIORNI_CONSECUTIVI_MANCANTI} giorni di
+     *                        terapia le assunzioni non sono mai state complete
+     * @param inizioEpisodio  primo giorno della sequenza di giorni incompleti, null se giorniMancanti è falso;
+     *                        con i dati dell'archivio, al più {@value #FINESTRA_ARCHIVIO_GIORNI} giorni fa
+     *                        o l'inizio della terapia
+     */
+    public record Esito(Paziente paziente, Terapia terapia, int assunzioniOggi, boolean giorniMancanti,
+                        LocalDate inizioEpisodio) {
+        public boolean incompletaOggi() {
+            return assunzioniOggi < terapia.getAssunzioniGiornaliere();
+        }
+    }
+
+    /**
+     * Metriche di un controllo dell'intera popolazione.
+     */
+    public record Metriche(int pazienti, int terapieAttive, int notifiche, long millisecondi) {
+        public double pazientiAlSecondo() {
+            return millisecondi == 0 ? pazienti * 1000.0 : pazienti * 1000.0 / millisecondi;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d pazienti, %d terapie attive, %d notifiche in %d ms (%.0f pazienti/s)",
+                    pazienti, terapieAttive, notifiche, millisecondi, pazientiAlSecondo());
+        }
+    }
+
+    private final DataController dataController;
+    private final ForkJoinPool pool;
+    private ScheduledExecutorService pianificatore;
+    private volatile Metriche ultimeMetriche;
+
+    /**
+     * Motore sui pazienti in memoria, con il parallelismo di default.
+     */
+    public MotoreAderenza() {
+        this(null, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * @param dataController se non null, terapie e assunzioni recenti vengono rilette dall'archivio
+     * @param parallelismo   numero di thread del pool fork-join
+     */
+    public MotoreAderenza(DataController dataController, int parallelismo) {
+        this.dataController = dataController;
+        this.pool = new ForkJoinPool(Math.max(1, parallelismo));
+    }
+
+    // ============ CONTROLLI ============
+
+    /**
+     * Valuta le terapie attive del paziente alla data indicata.
+     */
+    public static List<Esito> valuta(Paziente paziente, LocalDate oggi) {
+        return valuta(paziente, oggi, GIORNI_CONSECUTIVI_MANCANTI);
+    }
+
+    /**
+     * Come {@link #valuta(Paziente, LocalDate)}, con giorniMancanti vero dopo il numero indicato
+     * di giorni di terapia consecutivi senza assunzioni complete (fino a ieri).
+     */
+    public static List<Esito> valuta(Paziente paziente, LocalDate oggi, int giorniConsecutivi) {
+        List<Esito> esiti = new ArrayList<>();
+        for (Terapia terapia : paziente.getTerapie()) {
+            if (terapia.getStato() != Terapia.Stato.ATTIVA) continue;
+            int consecutivi = paziente.getStoricoAderenza(terapia).mancantiConsecutivi(oggi.minusDays(1));
+            boolean mancanti = consecutivi >= giorniConsecutivi;
+            esiti.add(new Esito(paziente, terapia, paziente.contaAssunzioni(terapia.getFarmaco(), oggi), mancanti,
+                    mancanti ? oggi.minusDays(consecutivi) : null));
+        }
+        return esiti;
+    }
+
+    public static Notifica.AssunzioniMancanti notificaMedico(Paziente paziente, Terapia terapia) {
+        return new Notifica.AssunzioniMancanti(paziente.getId(), paziente.getNome(), paziente.getCognome(),
+                terapia.getFarmaco(), GIORNI_CONSECUTIVI_MANCANTI);
+    }
+
+    /**
+     * True se l'esito ha giorni mancanti e il suo episodio non è già stato notificato; in tal caso
+     * l'episodio viene registrato come notificato. Ogni chiamata con lo stesso episodio ne proroga
+     * la scadenza.
+     */
+    public static boolean daNotificare(Esito esito, LocalDate oggi) {
+        if (!esito.giorniMancanti()) return false;
+        long giorno = oggi.toEpochDay();
+        // Ultima osservazione = scadenza - SCADENZA_EPISODIO_GIORNI: l'episodio registrato è lo
+        // stesso solo se era già in corso il giorno di inizio di questo
+        long validaDa = esito.inizioEpisodio().toEpochDay() + 1 + SCADENZA_EPISODIO_GIORNI;
+        long chiave = chiaveEpisodio(esito);
+        long scadenza = giorno + SCADENZA_EPISODIO_GIORNI;
+        // Al più una riga al giorno per episodio: solo quando la scadenza si sposta
+        boolean prorogato = EPISODI_NOTIFICATI.scadenza(chiave) < scadenza;
+        boolean nuovo = EPISODI_NOTIFICATI.aggiungi(chiave, giorno, validaDa, scadenza);
+        if (prorogato) registraEpisodio(chiave, scadenza);
+        return nuovo;
+    }
+
+    /**
+     * Sostituisce gli episodi notificati in memoria con quelli del file non ancora scaduti e, da
+     * quel momento, vi accoda chiave e scadenza di ogni episodio nuovo o prorogato. Il file viene
+     * riscritto con le sole voci valide. Da chiamare all'avvio, prima dei controlli.
+     *
+     * @throws IOException se il file non può essere letto o riscritto; gli episodi restano in memoria
+     */
+    public static synchronized void apriArchivioEpisodi(String file, LocalDate oggi) throws IOException {
+        Path percorso = Paths.get(file);
+        long giorno = oggi.toEpochDay();
+        Map<Long, Long> valide = new LinkedHashMap<>();
+        if (Files.exists(percorso)) {
+            for (String riga : Files.readAllLines(percorso, StandardCharsets.UTF_8)) {
+                int virgola = riga.indexOf(',');
+                try {
+                    long scadenza = Long.parseLong(riga.substring(virgola + 1));
+                    if (scadenza >= giorno) valide.merge(Long.parseLong(riga.substring(0, virgola)), scadenza, Math::max);
+                } catch (RuntimeException e) {
+                    // Riga troncata da un'interruzione durante l'accodamento
+                    LOGGER.log(Level.WARNING, "Riga non valida ignorata in {0}: {1}", new Object[]{percorso, riga});
+                }
+            }
+        }
+
+        List<String> righe = new ArrayList<>(valide.size());
+        valide.forEach((chiave, scadenza) -> righe.add(chiave + "," + scadenza));
+        ScritturaAtomica.scriviRighe(percorso, righe);
+        EPISODI_NOTIFICATI.svuota();
+        valide.forEach((chiave, scadenza) -> EPISODI_NOTIFICATI.aggiungi(chiave, giorno, scadenza));
+        archivioEpisodi = percorso;
+        LOGGER.log(Level.INFO, "Caricati {0} episodi notificati da: {1}", new Object[]{valide.size(), percorso});
+    }
+
+    /**
+     * Controlla tutti i pazienti in parallelo e accoda in AppState una notifica al medico per
+     * ogni episodio di giorni consecutivi mancanti non ancora notificato. Le notifiche vengono
+     * accodate dal thread chiamante, nell'ordine dei pazienti.
+     */
+    public Metriche controllaTutti(List<Paziente> pazienti, LocalDate oggi) {
+        long inizio = System.nanoTime();
+        Risultato risultato = pool.invoke(new Controllo(dataController, pazienti, 0, pazienti.size(), oggi));
+
+        int notifiche = 0;
+        for (Esito esito : risultato.segnalazioni) {
+            if (!daNotificare(esito, oggi)) continue;
+            AppState.getInstance().aggiungiNotificaAssunzione(
+                    Integer.toString(esito.paziente().getMedicoId()), notificaMedico(esito.paziente(), esito.terapia()));
+            notifiche++;
+        }
+
+        Metriche metriche = new Metriche(pazienti.size(), risultato.terapieAttive, notifiche,
+                (System.nanoTime() - inizio) / 1_000_000);
+        ultimeMetriche = metriche;
+        LOGGER.log(Level.INFO, "Controllo aderenza: {0}", metriche);
+        return metriche;
+    }
+
+    // ============ PIANIFICAZIONE ============
+
+    /**
+     * Ripete {@link #controllaTutti} sui pazienti forniti, alla data del giorno di ogni esecuzione.
+     */
+    public synchronized void avvia(Supplier<List<Paziente>> pazienti, long ritardoIniziale, long periodo, TimeUnit unita) {
+        if (pianificatore != null) return;
+        pianificatore = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "motore-aderenza");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pianificatore.scheduleWithFixedDelay(() -> {
+            try {
+                controllaTutti(pazienti.get(), LocalDate.now());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Errore durante il controllo dell'aderenza", e);
+            }
+        }, ritardoIniziale, periodo, unita);
+        AVVIATI.add(this);
+    }
+
+    /**
+     * Metriche dell'ultimo controllo completato, null se non ne è stato eseguito nessuno.
+     */
+    public Metriche getUltimeMetriche() {
+        return ultimeMetriche;
+    }
+
+    public synchronized void chiudi() {
+        if (pianificatore != null) {
+            pianificatore.shutdownNow();
+            pianificatore = null;
+        }
+        pool.shutdown();
+        AVVIATI.remove(this);
+    }
+
+    /**
+     * Ferma i motori avviati e smette di salvare gli episodi notificati, all'uscita dell'applicazione.
+     */
+    public static void chiudiTutti() {
+        for (MotoreAderenza motore : List.copyOf(AVVIATI)) {
+            motore.chiudi();
+        }
+        synchronized (MotoreAderenza.class) {
+            archivioEpisodi = null;
+        }
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private static synchronized void registraEpisodio(long chiave, long scadenza) {
+        if (archivioEpisodi == null) return;
+        try {
+            Files.writeString(archivioEpisodi, chiave + "," + scadenza + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Episodio notificato non salvato in: " + archivioEpisodi, e);
+        }
+    }
+
+    // Stabile tra esecuzioni diverse (String.hashCode è definito dalla specifica): la chiave può essere salvata
+    private static long chiaveEpisodio(Esito esito) {
+        long chiave = mescola(((long) esito.paziente().getId() << 32) ^ (Objects.hashCode(esito.terapia().getFarmaco()) & 0xFFFFFFFFL));
+        return mescola(chiave ^ esito.terapia().getDataInizio().toEpochDay());
+    }
+
+    // Finalizzatore di SplitMix64
+    private static long mescola(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * Copia del paziente con le sole terapie e le assunzioni degli ultimi giorni lette dall'archivio.
+     */
+    private static Paziente daArchivio(DataController dataController, Paziente paziente, LocalDate oggi) {
+        Paziente copia = new Paziente(paziente.getId(), paziente.getNome(), paziente.getCognome(),
+                null, null, paziente.getMedicoId());
+        dataController.caricaEntitaPaziente(DataController.TipoEntita.TERAPIE, copia);
+        if (copia.getTerapie().stream().noneMatch(t -> t.getStato() == Terapia.Stato.ATTIVA)) return copia;
+        for (Assunzione assunzione : dataController.caricaAssunzioni(paziente.getId(),
+                oggi.minusDays(FINESTRA_ARCHIVIO_GIORNI), oggi)) {
+            copia.aggiungiAssunzione(assunzione);
+        }
+        return copia;
+    }
+
+    private static final class Risultato {
+        int terapieAttive;
+        final List<Esito> segnalazioni = new ArrayList<>();
+
+        Risultato unisci(Risultato altro) {
+            terapieAttive += altro.terapieAttive;
+            segnalazioni.addAll(altro.segnalazioni);
+            return this;
+        }
+    }
+
+    /**
+     * Valutazione di un intervallo di pazienti; con dataController null i pazienti vengono
+     * valutati direttamente.
+     */
+    private static final class Controllo extends RecursiveTask<Risultato> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient DataController dataController;
+        private final transient List<Paziente> pazienti;
+        private final int da;
+        private final int a;
+        private final LocalDate oggi;
+
+        Controllo(DataController dataController, List<Paziente> pazienti, int da, int a, LocalDate oggi) {
+            this.dataController = dataController;
+            this.pazienti = pazienti;
+            this.da = da;
+            this.a = a;
+            this.oggi = oggi;
+        }
+
+        @Override
+        protected Risultato compute() {
+            if (a - da > SOGLIA_TASK) {
+                int meta = (da + a) >>> 1;
+                Controllo sinistra = new Controllo(dataController, pazienti, da, meta, oggi);
+                sinistra.fork();
+                Risultato destra = new Controllo(dataController, pazienti, meta, a, oggi).compute();
+                return sinistra.join().unisci(destra);
+            }
+
+            Risultato risultato = new Risultato();
+            for (int i = da; i < a; i++) {
+                Paziente paziente = pazienti.get(i);
+                try {
+                    Paziente valutato = dataController != null ? daArchivio(dataController, paziente, oggi) : paziente;
+                    for (Esito esito : valuta(valutato, oggi)) {
+                        risultato.terapieAttive++;
+                        if (esito.giorniMancanti()) risultato.segnalazioni.add(esito);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Controllo aderenza fallito per il paziente ID: " + paziente.getId(), e);
+                }
+            }
+            return risultato;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package controller;
+
+import model.AppState;
+import model.Notifica;
+import model.Notifica.AndamentoGlicemico.Regola;
+import model.Paziente;
+import model.Rilevazione;
+import model.TipoPasto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Regole sulle rilevazioni di glicemia valutate in streaming: ogni nuova rilevazione aggiorna lo
+ * stato del paziente in tempo costante e può far scattare, oltre alla notifica della singola
+ * rilevazione fuori range, le regole su finestre scorrevoli:
+ * <ul>
+ *   <li>{@link Regola#IPOGLICEMIE_RIPETUTE}: {@value #IPOGLICEMIE_IN_FINESTRA} rilevazioni sotto
+ *       {@value #SOGLIA_IPOGLICEMIA} mg/dL entro 24 ore;</li>
+ *   <li>{@link Regola#IPERGLICEMIE_POST_PASTO}: {@value #IPERGLICEMIE_CONSECUTIVE} rilevazioni
+ *       post-prandiali fuori range consecutive;</li>
+ *   <li>{@link Regola#RIALZO_PROGRESSIVO}: {@value #RIALZI_CONSECUTIVI} aumenti consecutivi del
+ *       valore rilevato allo stesso pasto.</li>
+ * </ul>
+ * Le rilevazioni hanno solo data e pasto: il tempo è misurato in pasti (sei al giorno, nell'ordine
+ * di {@link TipoPasto}), e 24 ore sono gli ultimi sei pasti. Dopo un allarme la regola riparte da
+ * zero, così lo stesso episodio non viene segnalato a ogni rilevazione.
+ * <p>
+ * Lo stato di un paziente viene creato alla prima rilevazione rigiocandone lo storico. Una
+ * rilevazione precedente all'ultima valutata (inserita in ritardo) produce solo la notifica
+ * della singola rilevazione; {@link #rigioca} valuta l'intero storico in ordine, per verificare
+ * le regole sui dati passati.
+ */
+public class MotoreRegoleGlicemia {
+
+    private static final Logger LOGGER = Logger.getLogger(MotoreRegoleGlicemia.class.getName());
+
+    public static final int SOGLIA_IPOGLICEMIA = 70;
+    public static final int IPOGLICEMIE_IN_FINESTRA = 3;
+    public static final int IPERGLICEMIE_CONSECUTIVE = 5;
+    public static final int RIALZI_CONSECUTIVI = 3;
+
+    private static final int PASTI_AL_GIORNO = TipoPasto.values().length;
+
+    private final ConcurrentMap<Integer, Stato> stati = new ConcurrentHashMap<>();
+
+    /**
+     * Valuta la nuova rilevazione del paziente e accoda in AppState le notifiche per il suo medico.
+     *
+     * @return le notifiche prodotte
+     */
+    public List<Notifica> pubblica(Paziente paziente, Rilevazione rilevazione) {
+        List<Notifica> notifiche = valuta(paziente, rilevazione);
+        String medicoId = Integer.toString(paziente.getMedicoId());
+        for (Notifica notifica : notifiche) {
+            if (notifica instanceof Notifica.GlicemiaFuoriRange g) {
+                AppState.getInstance().aggiungiNotificaGlicemia(medicoId, g);
+            } else if (notifica instanceof Notifica.AndamentoGlicemico a) {
+                AppState.getInstance().aggiungiNotificaAndamento(medicoId, a);
+            }
+        }
+        return notifiche;
+    }
+
+    /**
+     * Valuta la nuova rilevazione del paziente senza accodare notifiche. La rilevazione può
+     * essere già presente nelle rilevazioni del paziente.
+     */
+    public List<Notifica> valuta(Paziente paziente, Rilevazione rilevazione) {
+        Stato stato = stati.computeIfAbsent(paziente.getId(), id -> riscalda(paziente, rilevazione));
+        List<Notifica> notifiche = new ArrayList<>();
+        synchronized (stato) {
+            stato.applica(paziente, rilevazione, notifiche);
+        }
+        return notifiche;
+    }
+
+    /**
+     * Valuta tutte le rilevazioni del paziente in ordine di data e pasto, con uno stato nuovo
+     * e senza toccare quello usato per le rilevazioni in arrivo.
+     */
+    public static List<Notifica> rigioca(Paziente paziente) {
+        Stato stato = new Stato();
+        List<Notifica> notifiche = new ArrayList<>();
+        for (Rilevazione rilevazione : inOrdine(paziente.getRilevazioni())) {
+            stato.applica(paziente, rilevazione, notifiche);
+        }
+        return notifiche;
+    }
+
+    /**
+     * Dimentica lo stato del paziente, ricostruito dallo storico alla rilevazione successiva.
+     */
+    public void dimentica(int pazienteId) {
+        stati.remove(pazienteId);
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    /**
+     * Stato ricostruito dallo storico del paziente, esclusa la rilevazione da valutare. Le
+     * rilevazioni della serie glicemica vengono create a ogni lettura, quindi il confronto è per valore.
+     */
+    private static Stato riscalda(Paziente paziente, Rilevazione esclusa) {
+        Stato stato = new Stato();
+        List<Notifica> scartate = new ArrayList<>();
+        boolean esclusaTrovata = false;
+        for (Rilevazione rilevazione : inOrdine(paziente.getRilevazioni())) {
+            if (!esclusaTrovata && rilevazione.equals(esclusa)) {
+                esclusaTrovata = true;
+                continue;
+            }
+            stato.applica(paziente, rilevazione, scartate);
+        }
+        LOGGER.log(Level.FINE, "Stato regole glicemia del paziente {0} ricostruito da {1} rilevazioni",
+                new Object[]{paziente.getId(), paziente.getRilevazioni().size()});
+        return stato;
+    }
+
+    private static List<Rilevazione> inOrdine(List<Rilevazione> rilevazioni) {
+        List<Rilevazione> ordinate = new ArrayList<>(rilevazioni);
+        ordinate.sort(Comparator.comparingLong(Rilevazione::getChiaveOrdinamento));
+        return ordinate;
+    }
+
+    /**
+     * Posizione del pasto nella sequenza dei pasti; un tipo non previsto conta come primo del giorno.
+     */
+    private static long pasto(Rilevazione rilevazione) {
+        TipoPasto tipo = rilevazione.getTipo();
+        return (tipo != null ? tipo : TipoPasto.PRIMA_COLAZIONE).progressivo(rilevazione.getData().toEpochDay());
+    }
+
+    /**
+     * Classificazione con gli obiettivi attuali del paziente, anche per rilevazioni create senza.
+     */
+    private static boolean fuoriRange(Paziente paziente, Rilevazione rilevazione) {
+        return paziente.getSoglieGlicemiche().isFuoriRange(rilevazione.getCodicePasto(), rilevazione.getValore());
+    }
+
+    private static boolean isPostPrandiale(Rilevazione rilevazione) {
+        TipoPasto tipo = rilevazione.getTipo();
+        return tipo != null && !tipo.isPrimaPasto();
+    }
+
+    /**
+     * Stato di un paziente, di dimensione fissa.
+     */
+    private static final class Stato {
+        private long ultimoPasto = Long.MIN_VALUE;
+
+        // Pasti delle ultime ipoglicemie, buffer circolare
+        private final long[] ipoglicemie = new long[IPOGLICEMIE_IN_FINESTRA];
+        private int numeroIpoglicemie;
+        private int prossimaIpoglicemia;
+
+        private int iperglicemieConsecutive;
+
+        // Per tipo di pasto (codice): ultimo valore e aumenti consecutivi
+        private final int[] ultimoValore = new int[PASTI_AL_GIORNO + 1];
+        private final int[] rialzi = new int[PASTI_AL_GIORNO + 1];
+
+        void applica(Paziente paziente, Rilevazione rilevazione, List<Notifica> notifiche) {
+            if (fuoriRange(paziente, rilevazione)) {
+                notifiche.add(new Notifica.GlicemiaFuoriRange(paziente.getId(), paziente.getNome(), paziente.getCognome(),
+                        rilevazione.getValore(), rilevazione.getTipoPasto(), rilevazione.getData()));
+            }
+
+            long pasto = pasto(rilevazione);
+            if (pasto < ultimoPasto) {
+                LOGGER.log(Level.FINE, "Rilevazione fuori ordine esclusa dalle regole: {0}", rilevazione);
+                return;
+            }
+            ultimoPasto = pasto;
+
+            if (ipoglicemieRipetute(pasto, rilevazione.getValore())) {
+                notifiche.add(andamento(paziente, rilevazione, Regola.IPOGLICEMIE_RIPETUTE));
+            }
+            if (iperglicemiePostPasto(paziente, rilevazione)) {
+                notifiche.add(andamento(paziente, rilevazione, Regola.IPERGLICEMIE_POST_PASTO));
+            }
+            if (rialzoProgressivo(rilevazione)) {
+                notifiche.add(andamento(paziente, rilevazione, Regola.RIALZO_PROGRESSIVO));
+            }
+        }
+
+        private boolean ipoglicemieRipetute(long pasto, int valore) {
+            if (valore >= SOGLIA_IPOGLICEMIA) return false;
+            ipoglicemie[prossimaIpoglicemia] = pasto;
+            prossimaIpoglicemia = (prossimaIpoglicemia + 1) % IPOGLICEMIE_IN_FINESTRA;
+            numeroIpoglicemie = Math.min(numeroIpoglicemie + 1, IPOGLICEMIE_IN_FINESTRA);
+
+            // Con il buffer pieno, la prossima da sovrascrivere è la più vecchia
+            if (numeroIpoglicemie < IPOGLICEMIE_IN_FINESTRA || pasto - ipoglicemie[prossimaIpoglicemia] >= PASTI_AL_GIORNO) {
+                return false;
+            }
+            numeroIpoglicemie = 0;
+            return true;
+        }
+
+        private boolean iperglicemiePostPasto(Paziente paziente, Rilevazione rilevazione) {
+            if (!isPostPrandiale(rilevazione)) return false;
+            if (!fuoriRange(paziente, rilevazione)) {
+                iperglicemieConsecutive = 0;
+                return false;
+            }
+            if (++iperglicemieConsecutive < IPERGLICEMIE_CONSECUTIVE) return false;
+            iperglicemieConsecutive = 0;
+            return true;
+        }
+
+        private boolean rialzoProgressivo(Rilevazione rilevazione) {
+            int codice = rilevazione.getCodicePasto();
+            int precedente = ultimoValore[codice];
+            ultimoValore[codice] = rilevazione.getValore();
+            if (precedente == 0 || rilevazione.getValore() <= precedente) {
+                rialzi[codice] = 0;
+                return false;
+            }
+            if (++rialzi[codice] < RIALZI_CONSECUTIVI) return false;
+            rialzi[codice] = 0;
+            return true;
+        }
+
+        private static Notifica.AndamentoGlicemico andamento(Paziente paziente, Rilevazione rilevazione, Regola regola) {
+            return new Notifica.AndamentoGlicemico(paziente.getId(), paziente.getNome(), paziente.getCognome(),
+                    regola, rilevazione.getValore(), rilevazione.getTipoPasto(), rilevazione.getData());
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Partizionamento mensile di un file CSV con la data nel secondo campo (rilevazioni, assunzioni).
+ * <p>
+ * Il file {@code rilevazioni.csv} partizionato diventa la cartella {@code rilevazioni/} con un CSV
+ * per mese ({@code 2024-01.csv}, ...), ciascuno con lo stesso header, il proprio journal e il
+ * proprio indice per paziente. Una lettura per intervallo di date apre solo i mesi coinvolti.
+ * Il partizionamento è attivo quando la cartella esiste; si crea una volta con {@link #partiziona}.
+ * Tutti i metodi vanno chiamati tenendo il lock del file logico (CsvJournal.lock).
+ */
+final class PartizioniMensili {
+
+    private static final Logger LOGGER = Logger.getLogger(PartizioniMensili.class.getName());
+
+    private static final String ESTENSIONE = ".csv";
+    private static final String SUFFISSO_TEMPORANEO = ".partizionamento";
+
+    private PartizioniMensili() {}
+
+    static Path cartella(String csvFile) {
+        String nome = csvFile.endsWith(ESTENSIONE) ? csvFile.substring(0, csvFile.length() - ESTENSIONE.length()) : csvFile;
+        return Paths.get(nome);
+    }
+
+    static boolean attive(String csvFile) {
+        return Files.isDirectory(cartella(csvFile));
+    }
+
+    /**
+     * File della partizione del mese indicato (può non esistere ancora).
+     */
+    static String partizione(String csvFile, YearMonth mese) {
+        return cartella(csvFile).resolve(mese + ESTENSIONE).toString();
+    }
+
+    /**
+     * Mese della riga, dal campo data che segue l'ID del paziente.
+     *
+     * @throws IllegalArgumentException se la riga non ha una data valida
+     */
+    static YearMonth mese(String riga, CsvFieldScanner scanner) {
+        try {
+            scanner.reset(riga);
+            scanner.skip();
+            return YearMonth.from(scanner.nextDate());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Riga senza data valida: " + riga, e);
+        }
+    }
+
+    /**
+     * Partizioni esistenti, in ordine di mese.
+     */
+    static List<String> partizioni(String csvFile) {
+        return new ArrayList<>(mesiEsistenti(csvFile).values());
+    }
+
+    /**
+     * Partizioni esistenti dei mesi che intersecano l'intervallo [da, a].
+     */
+    static List<String> partizioni(String csvFile, LocalDate da, LocalDate a) {
+        return new ArrayList<>(mesiEsistenti(csvFile).subMap(YearMonth.from(da), true, YearMonth.from(a), true).values());
+    }
+
+    /**
+     * Raggruppa per mese le righe dei pazienti. Ogni paziente compare in ogni mese restituito
+     * (eventualmente con lista vuota), così da sostituirne le righe in tutte le partizioni toccate.
+     *
+     * @param mesiPrecedenti mesi in cui i pazienti hanno già righe, da svuotare se non ne hanno più
+     * @throws IllegalArgumentException se una riga non ha una data valida
+     */
+    static SortedMap<YearMonth, Map<Integer, List<String>>> perMese(Map<Integer, List<String>> righePerPaziente,
+                                                                     Map<Integer, Set<YearMonth>> mesiPrecedenti) {
+        SortedMap<YearMonth, Map<Integer, List<String>>> perMese = new TreeMap<>();
+        CsvFieldScanner scanner = new CsvFieldScanner();
+        righePerPaziente.forEach((id, righe) -> {
+            for (YearMonth mese : mesiPrecedenti.getOrDefault(id, Set.of())) {
+                perMese.computeIfAbsent(mese, m -> new LinkedHashMap<>()).computeIfAbsent(id, k -> new ArrayList<>());
+            }
+            for (String riga : righe) {
+                perMese.computeIfAbsent(mese(riga, scanner), m -> new LinkedHashMap<>())
+                        .computeIfAbsent(id, k -> new ArrayList<>()).add(riga);
+            }
+        });
+        return perMese;
+    }
+
+    /**
+     * Mesi in cui il paziente ha righe effettive (file canonico o aggiunte del journal).
+     */
+    static Set<YearMonth> mesiDelPaziente(String csvFile, int pazienteId) {
+        Set<YearMonth> mesi = new TreeSet<>();
+        mesiEsistenti(csvFile).forEach((mese, partizione) -> {
+            try {
+                if (CsvJournal.contienePaziente(partizione, pazienteId)) mesi.add(mese);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Partizione non leggibile: " + partizione, e);
+            }
+        });
+        return mesi;
+    }
+
+    /**
+     * Divide il file (journal incluso) in partizioni mensili. Le partizioni vengono scritte in una
+     * cartella temporanea rinominata alla fine, poi il file originale viene eliminato: un'interruzione
+     * lascia il file originale oppure le partizioni complete. Se una riga non ha una data valida il
+     * partizionamento non avviene e il file resta com'è, perché quella riga andrebbe persa.
+     *
+     * @return il numero di partizioni create, 0 se il file era già partizionato o non esiste
+     * @throws IOException anche se una riga non può essere assegnata a un mese
+     */
+    static int partiziona(String csvFile, String defaultHeader) throws IOException {
+        Path cartella = cartella(csvFile);
+        if (Files.isDirectory(cartella)) {
+            eliminaOriginale(csvFile);
+            return 0;
+        }
+        if (!Files.exists(Paths.get(csvFile))) return 0;
+
+        SortedMap<YearMonth, List<String>> righePerMese = new TreeMap<>();
+        CsvFieldScanner scanner = new CsvFieldScanner();
+        String letto;
+        try {
+            letto = CsvJournal.leggi(csvFile, riga ->
+                    righePerMese.computeIfAbsent(mese(riga, scanner), m -> new ArrayList<>()).add(riga));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Partizionamento annullato, " + csvFile + ": " + e.getMessage(), e);
+        }
+        String header = letto != null ? letto : defaultHeader;
+
+        Path temporanea = Paths.get(cartella + SUFFISSO_TEMPORANEO);
+        eliminaCartella(temporanea);
+        Files.createDirectories(temporanea);
+        for (Map.Entry<YearMonth, List<String>> entry : righePerMese.entrySet()) {
+            List<String> righe = new ArrayList<>(entry.getValue().size() + 1);
+            righe.add(header);
+            righe.addAll(entry.getValue());
+            ScritturaAtomica.scriviRighe(temporanea.resolve(entry.getKey() + ESTENSIONE), righe);
+        }
+        try {
+            Files.move(temporanea, cartella, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temporanea, cartella);
+        }
+        eliminaOriginale(csvFile);
+
+        LOGGER.log(Level.INFO, "File {0} diviso in {1} partizioni mensili", new Object[]{csvFile, righePerMese.size()});
+        return righePerMese.size();
+    }
+
+    /**
+     * Dimensione totale e ultima modifica dei file della cartella (CSV e journal, non gli indici),
+     * per verificare se le partizioni sono cambiate.
+     *
+     * @return {dimensione, modifica}, {-1, -1} se la cartella non esiste
+     */
+    static long[] timbro(Path cartella) {
+        if (!Files.isDirectory(cartella)) return new long[]{-1, -1};
+        long dimensione = 0;
+        long modifica = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cartella,
+                f -> f.toString().endsWith(ESTENSIONE) || f.toString().endsWith(CsvJournal.ESTENSIONE))) {
+            for (Path file : files) {
+                dimensione += Files.size(file);
+                modifica = Math.max(modifica, Files.getLastModifiedTime(file).toMillis());
+            }
+        } catch (IOException e) {
+            return new long[]{-1, -1};
+        }
+        return new long[]{dimensione, modifica};
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private static NavigableMap<YearMonth, String> mesiEsistenti(String csvFile) {
+        NavigableMap<YearMonth, String> mesi = new TreeMap<>();
+        Path cartella = cartella(csvFile);
+        if (!Files.isDirectory(cartella)) return mesi;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cartella, "*" + ESTENSIONE)) {
+            for (Path file : files) {
+                String nome = file.getFileName().toString();
+                try {
+                    mesi.put(YearMonth.parse(nome.substring(0, nome.length() - ESTENSIONE.length())), file.toString());
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "File estraneo nella cartella delle partizioni: {0}", file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Errore lettura partizioni: " + cartella, e);
+        }
+        return mesi;
+    }
+
+    private static void eliminaOriginale(String csvFile) throws IOException {
+        IndiceCsvPazienti.invalida(csvFile);
+        CsvJournal.svuota(csvFile);
+        Files.deleteIfExists(Paths.get(csvFile));
+    }
+
+    private static void eliminaCartella(Path cartella) throws IOException {
+        if (!Files.isDirectory(cartella)) return;
+        try (Stream<Path> files = Files.list(cartella)) {
+            for (Path file : files.toList()) Files.delete(file);
+        }
+        Files.delete(cartella);
+    }
+}
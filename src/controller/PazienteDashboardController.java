@@ -115,19 +115,23 @@ public class PazienteDashboardController extends BaseController {
     @FXML
     private HBox pagina2;
 
-    private static final List<String> TIPI_PASTO = Arrays.asList(
-            "Prima colazione", "Dopo colazione",
-            "Prima pranzo", "Dopo pranzo",
-            "Prima cena", "Dopo cena"
-    );
+    private static final List<String> TIPI_PASTO = TipoPasto.ETICHETTE;
 
     private static final List<String> TIPI_EVENTO = Arrays.asList("Sintomo", "Patologia");
 
-    private static final int GIORNI_CONSECUTIVI_MANCANTI = 3;
-
     private Paziente paziente;
-    private final DataController dataController = new DataController();
-    private final FilePathProvider filePathProvider = new FilePathProvider();
+    private final DataController dataController;
+    private final SalvataggioDifferito salvataggio;
+    private final MotoreRegoleGlicemia regoleGlicemia = new MotoreRegoleGlicemia();
+
+    public PazienteDashboardController() {
+        this(new DataController(DataController.ModalitaPersistenza.JOURNAL));
+    }
+
+    public PazienteDashboardController(DataController dataController) {
+        this.dataController = dataController;
+        this.salvataggio = new SalvataggioDifferito(dataController);
+    }
 
     @FXML
     public void initialize() {
@@ -173,6 +177,19 @@ public class PazienteDashboardController extends BaseController {
     }
 
     private void initializeRowFactories() {
+        // Stessi colori della dashboard del medico, con gli obiettivi glicemici del paziente
+        rilevazioniTable.setRowFactory(tv -> new TableRow<Rilevazione>() {
+            @Override
+            protected void updateItem(Rilevazione item, boolean empty) {
+                super.updateItem(item, empty);
+                if (item == null || empty) {
+                    setStyle("");
+                } else {
+                    setStyle("-fx-background-color: " + item.getFascia().getColore() + "; -fx-text-fill: black;");
+                }
+            }
+        });
+
         terapieTable.setRowFactory(tv -> new TableRow<Terapia>() {
             @Override
             protected void updateItem(Terapia item, boolean empty) {
@@ -209,41 +226,21 @@ public class PazienteDashboardController extends BaseController {
     }
 
     private void loadPatientData() {
-        loadRilevazioni();
-        loadTerapie();
-        loadAssunzioni();
-        loadEventiClinici();
-        loadTerapieConcomitanti();
-    }
-
-    private void loadRilevazioni() {
-        paziente.getRilevazioni().clear();
-        dataController.caricaRilevazioni(filePathProvider.getRilevazioniFile(), List.of(paziente));
+        caricaDatiPaziente(paziente);
         aggiornaListaRilevazioni();
-    }
-
-    private void loadTerapie() {
-        paziente.getTerapie().clear();
-        dataController.caricaTerapie(filePathProvider.getTerapieFile(), List.of(paziente));
         aggiornaListaTerapie();
-    }
-
-    private void loadAssunzioni() {
-        paziente.getAssunzioni().clear();
-        dataController.caricaAssunzioni(filePathProvider.getAssunzioniFile(), List.of(paziente));
         aggiornaListaAssunzioni();
-    }
-
-    private void loadEventiClinici() {
-        paziente.getEventiClinici().clear();
-        dataController.caricaEventiClinici(filePathProvider.getEventiCliniciFile(), List.of(paziente));
         aggiornaListaEventi();
+        aggiornaListaTerapieConcomitanti();
     }
 
-    private void loadTerapieConcomitanti() {
-        paziente.getTerapieConcomitanti().clear();
-        dataController.caricaTerapieConcomitanti(filePathProvider.getTerapieConcomitantiFile(), List.of(paziente));
-        aggiornaListaTerapieConcomitanti();
+    /**
+     * Carica i dati del paziente per la sessione, scheda clinica compresa: gli obiettivi
+     * glicemici impostati dal medico classificano le rilevazioni come nella sua dashboard.
+     */
+    public void caricaDatiPaziente(Paziente paziente) {
+        this.paziente = paziente;
+        dataController.caricaDatiPaziente(paziente);
     }
 
     private void performInitialChecks() {
@@ -267,7 +264,7 @@ public class PazienteDashboardController extends BaseController {
             Rilevazione rilevazione = createRilevazione(input);
             paziente.aggiungiRilevazione(rilevazione);
 
-            saveRilevazioni();
+            salvataggio.registraRilevazione(paziente, rilevazione);
             aggiornaListaRilevazioni();
             clearRilevazioneFields();
 
@@ -304,30 +301,16 @@ public class PazienteDashboardController extends BaseController {
 
     private Rilevazione createRilevazione(RilevazioneInput input) {
         int valore = Integer.parseInt(input.valoreStr());
-        return new Rilevazione(input.data(), input.tipoPasto(), valore);
-    }
-
-    private void saveRilevazioni() {
-        dataController.salvaRilevazioni(List.of(paziente));
+        return new Rilevazione(input.data(), input.tipoPasto(), valore, paziente.getSoglieGlicemiche());
     }
 
     private void clearRilevazioneFields() {
         valoreField.clear();
     }
 
+    // Singola rilevazione fuori range e andamenti sulle ultime rilevazioni
     private void checkGlicemiaRange(Rilevazione rilevazione) {
-        if (rilevazione.isFuoriRange()) {
-            String msg = createGlicemiaNotificationMessage(rilevazione);
-            AppState.getInstance().aggiungiNotificaGlicemia(Integer.toString(paziente.getMedicoId()),msg);
-        }
-    }
-
-    private String createGlicemiaNotificationMessage(Rilevazione rilevazione) {
-        return String.format(
-                "Il paziente %s %s ha registrato un valore di glicemia %d mg/dL (%s) il %s.",
-                paziente.getNome(), paziente.getCognome(), rilevazione.getValore(),
-                rilevazione.getTipoPasto(), rilevazione.getData()
-        );
+        regoleGlicemia.pubblica(paziente, rilevazione);
     }
 
     @FXML
@@ -340,7 +323,8 @@ public class PazienteDashboardController extends BaseController {
 
         if (confirmDeletion("Vuoi davvero eliminare questa rilevazione?")) {
             paziente.getRilevazioni().remove(selezionata);
-            saveRilevazioni();
+            salvataggio.eliminaRilevazione(paziente, selezionata);
+            regoleGlicemia.dimentica(paziente.getId());
             aggiornaListaRilevazioni();
         }
     }
@@ -397,7 +381,7 @@ public class PazienteDashboardController extends BaseController {
             Assunzione assunzione = new Assunzione(input.data(), ora, input.farmaco(), quantita);
             paziente.aggiungiAssunzione(assunzione);
 
-            saveAssunzioni();
+            salvataggio.registraAssunzione(paziente, assunzione);
             aggiornaListaAssunzioni();
             clearAssunzioneFields();
             controllaAssunzioni(paziente);
@@ -437,10 +421,6 @@ public class PazienteDashboardController extends BaseController {
         );
     }
 
-    private void saveAssunzioni() {
-        dataController.salvaAssunzioni(List.of(paziente));
-    }
-
     private void clearAssunzioneFields() {
         oraField.clear();
         quantitaField.clear();
@@ -456,7 +436,7 @@ public class PazienteDashboardController extends BaseController {
 
         if (confirmDeletion("Vuoi davvero eliminare questa assunzione?")) {
             paziente.getAssunzioni().remove(selezionata);
-            saveAssunzioni();
+            salvataggio.eliminaAssunzione(paziente, selezionata);
             aggiornaListaAssunzioni();
         }
     }
@@ -515,7 +495,7 @@ public class PazienteDashboardController extends BaseController {
     }
 
     private void saveEventiClinici() {
-        dataController.salvaEventiClinici(List.of(paziente));
+        salvataggio.salva(DataController.TipoEntita.EVENTI_CLINICI, paziente);
     }
 
     private void clearEventoFields() {
@@ -567,7 +547,7 @@ public class PazienteDashboardController extends BaseController {
     }
 
     private void saveTerapieConcomitanti() {
-        dataController.salvaTerapieConcomitanti(List.of(paziente));
+        salvataggio.salva(DataController.TipoEntita.TERAPIE_CONCOMITANTI, paziente);
     }
 
     private void clearTerapiaConcomitanteFields() {
@@ -586,52 +566,15 @@ public class PazienteDashboardController extends BaseController {
 
     public void controllaAssunzioni(Paziente paziente) {
         LocalDate oggi = LocalDate.now();
-
-        for (Terapia terapia : paziente.getTerapie()) {
-            if (terapia.getStato() != Terapia.Stato.ATTIVA) continue;
-
-            checkDailyAssunzioni(paziente, terapia, oggi);
-            checkConsecutiveMissingAssunzioni(paziente, terapia, oggi);
-        }
-    }
-
-    private void checkDailyAssunzioni(Paziente paziente, Terapia terapia, LocalDate oggi) {
-        long assunzioniOggi = countAssunzioniForDate(paziente, terapia.getFarmaco(), oggi);
-        if (assunzioniOggi < terapia.getAssunzioniGiornaliere()) {
-            mostraAlertPaziente(terapia, assunzioniOggi);
-        }
-    }
-
-    private void checkConsecutiveMissingAssunzioni(Paziente paziente, Terapia terapia, LocalDate oggi) {
-        boolean treGiorniMancanti = true;
-        LocalDate inizio = terapia.getDataInizio();
-        LocalDate fine = terapia.getDataFine();
-
-        for (int i = 1; i <= GIORNI_CONSECUTIVI_MANCANTI; i++) {
-            LocalDate giorno = oggi.minusDays(i);
-
-            if (giorno.isBefore(inizio) || giorno.isAfter(fine)) {
-                treGiorniMancanti = false;
-                break;
+        for (MotoreAderenza.Esito esito : MotoreAderenza.valuta(paziente, oggi)) {
+            if (esito.incompletaOggi()) {
+                mostraAlertPaziente(esito.terapia(), esito.assunzioniOggi());
             }
-
-            long assunzioniGiorno = countAssunzioniForDate(paziente, terapia.getFarmaco(), giorno);
-            if (assunzioniGiorno >= terapia.getAssunzioniGiornaliere()) {
-                treGiorniMancanti = false;
-                break;
+            // Una sola notifica per episodio, anche se la dashboard viene riaperta
+            if (MotoreAderenza.daNotificare(esito, oggi)) {
+                notificaMedico(paziente, esito.terapia());
             }
         }
-
-        if (treGiorniMancanti) {
-            notificaMedico(paziente, terapia);
-        }
-    }
-
-    private long countAssunzioniForDate(Paziente paziente, String farmaco, LocalDate data) {
-        return paziente.getAssunzioni().stream()
-                .filter(a -> a.getFarmaco().equals(farmaco))
-                .filter(a -> a.getData().equals(data))
-                .count();
     }
 
     private void mostraAlertPaziente(Terapia terapia, long assunzioniRegistrate) {
@@ -641,17 +584,15 @@ public class PazienteDashboardController extends BaseController {
     }
 
     private void notificaMedico(Paziente paziente, Terapia terapia) {
-        String msg = String.format(
-                "Il paziente %s %s non ha registrato le assunzioni del farmaco \"%s\" per %d giorni consecutivi.",
-                paziente.getNome(), paziente.getCognome(), terapia.getFarmaco(), GIORNI_CONSECUTIVI_MANCANTI
-        );
-        AppState.getInstance().aggiungiNotificaAssunzione(Integer.toString(paziente.getMedicoId()),msg);
+        AppState.getInstance().aggiungiNotificaAssunzione(Integer.toString(paziente.getMedicoId()),
+                MotoreAderenza.notificaMedico(paziente, terapia));
     }
 
     // ---------- Navigation and UI ----------
 
     @FXML
     private void handleLogout() {
+        salvataggio.chiudi();
         navigateToLogin(welcomeLabel.getScene().getWindow(), "/view/LoginView.fxml");
     }
 
@@ -0,0 +1,361 @@
+package controller;
+
+import model.FilePathProvider;
+import model.Notifica;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registro persistente delle notifiche ai diabetologi: un file di sola aggiunta, una notifica
+ * per riga, in cui l'offset di una notifica è la sua posizione nel registro (0, 1, 2, ...).
+ * <p>
+ * Leggere non cancella nulla: ogni lettore ha un cursore con il primo offset non ancora letto,
+ * così più lettori procedono ciascuno al proprio passo. I cursori dei lettori sono persistenti e
+ * sopravvivono al riavvio; quelli aperti con {@link #apriLettore} (ad esempio una finestra della
+ * dashboard) restano in memoria, partono da un cursore persistente e lo fanno avanzare a loro
+ * volta. Lo storico si scorre a pagine.
+ * <p>
+ * All'apertura il registro viene letto una volta per costruire l'indice per diabetologo
+ * (offset e posizione nel file); le pagine vengono poi lette dal file con accessi posizionali.
+ * Un'ultima riga troncata da un'interruzione viene scartata. Thread-safe.
+ */
+public class RegistroNotifiche implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(RegistroNotifiche.class.getName());
+
+    private static final String TIPO_ASSUNZIONI = "A";
+    private static final String TIPO_GLICEMIA = "G";
+    private static final String TIPO_ANDAMENTO = "P";
+
+    /**
+     * Notifica letta dal registro.
+     */
+    public record Voce(long offset, Instant istante, Notifica notifica) {}
+
+    private final Path logFile;
+    private final Path cursoriFile;
+    private final FileChannel canale;
+
+    // Stato protetto dal lock dell'istanza
+    private final Map<String, Indice> indici = new HashMap<>();
+    private final Map<String, Long> cursori = new TreeMap<>();
+    private final Map<String, LettoreInMemoria> lettoriInMemoria = new HashMap<>();
+    private long prossimoOffset;
+    private long dimensione;
+
+    public RegistroNotifiche(FilePathProvider filePathProvider) throws IOException {
+        this(filePathProvider.getRegistroNotificheFile(), filePathProvider.getCursoriNotificheFile());
+    }
+
+    public RegistroNotifiche(String logFile, String cursoriFile) throws IOException {
+        this.logFile = Paths.get(logFile);
+        this.cursoriFile = Paths.get(cursoriFile);
+        Path cartella = this.logFile.toAbsolutePath().getParent();
+        if (cartella != null) Files.createDirectories(cartella);
+
+        this.canale = FileChannel.open(this.logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            indicizza();
+            caricaCursori();
+        } catch (IOException | RuntimeException e) {
+            canale.close();
+            throw e;
+        }
+    }
+
+    // ============ SCRITTURA ============
+
+    /**
+     * Aggiunge la notifica in fondo al registro.
+     *
+     * @return l'offset assegnato
+     */
+    public synchronized long aggiungi(String diabetologoId, Notifica notifica) throws IOException {
+        byte[] riga = (formatta(diabetologoId, Instant.now(), notifica) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(riga);
+        long posizione = dimensione;
+        while (buffer.hasRemaining()) {
+            posizione += canale.write(buffer, posizione);
+        }
+        if (ScritturaAtomica.getDurabilita() != ScritturaAtomica.Durabilita.NESSUNA) {
+            canale.force(false);
+        }
+
+        long offset = prossimoOffset++;
+        indici.computeIfAbsent(diabetologoId, k -> new Indice()).aggiungi(offset, dimensione, riga.length - 1);
+        dimensione = posizione;
+        return offset;
+    }
+
+    // ============ LETTURA ============
+
+    /**
+     * Notifiche del diabetologo con offset maggiore o uguale a quello indicato, in ordine.
+     */
+    public List<Voce> pagina(String diabetologoId, long daOffset, int limite) throws IOException {
+        long[][] righe;
+        synchronized (this) {
+            Indice indice = indici.get(diabetologoId);
+            if (indice == null) return new ArrayList<>();
+            int da = indice.primoDa(daOffset);
+            righe = indice.intervallo(da, Math.min(indice.n, da + limite));
+        }
+        return leggi(righe);
+    }
+
+    /**
+     * Notifiche del diabetologo con offset minore di quello indicato, dalla più recente:
+     * per scorrere lo storico all'indietro si passa l'offset dell'ultima voce ricevuta.
+     */
+    public List<Voce> storico(String diabetologoId, long primaDi, int limite) throws IOException {
+        long[][] righe;
+        synchronized (this) {
+            Indice indice = indici.get(diabetologoId);
+            if (indice == null) return new ArrayList<>();
+            int a = indice.primoDa(primaDi);
+            righe = indice.intervallo(Math.max(0, a - limite), a);
+        }
+        List<Voce> voci = leggi(righe);
+        Collections.reverse(voci);
+        return voci;
+    }
+
+    /**
+     * Offset dell'ultima notifica del diabetologo, -1 se non ne ha.
+     */
+    public synchronized long ultimoOffset(String diabetologoId) {
+        Indice indice = indici.get(diabetologoId);
+        return indice == null || indice.n == 0 ? -1 : indice.offset[indice.n - 1];
+    }
+
+    public synchronized int conta(String diabetologoId) {
+        Indice indice = indici.get(diabetologoId);
+        return indice == null ? 0 : indice.n;
+    }
+
+    // ============ CURSORI ============
+
+    /**
+     * Apre un lettore in memoria che parte dal cursore del lettore persistente indicato. Il suo
+     * cursore non viene salvato; segnare lette le notifiche fa avanzare anche quello persistente,
+     * così una finestra aperta in seguito, anche dopo un riavvio, parte da lì.
+     */
+    public synchronized void apriLettore(String lettore, String persistente) {
+        lettoriInMemoria.put(lettore, new LettoreInMemoria(persistente, getCursore(persistente)));
+    }
+
+    public synchronized void chiudiLettore(String lettore) {
+        lettoriInMemoria.remove(lettore);
+    }
+
+    /**
+     * Primo offset non ancora letto dal lettore (0 per un lettore nuovo).
+     */
+    public synchronized long getCursore(String lettore) {
+        LettoreInMemoria inMemoria = lettoriInMemoria.get(lettore);
+        return inMemoria != null ? inMemoria.cursore : cursori.getOrDefault(lettore, 0L);
+    }
+
+    /**
+     * Prima pagina di notifiche del diabetologo non ancora lette dal lettore. Il cursore non
+     * avanza finché le notifiche non vengono confermate con {@link #segnaLette}.
+     */
+    public List<Voce> nonLette(String lettore, String diabetologoId, int limite) throws IOException {
+        return pagina(diabetologoId, getCursore(lettore), limite);
+    }
+
+    public synchronized int contaNonLette(String lettore, String diabetologoId) {
+        Indice indice = indici.get(diabetologoId);
+        return indice == null ? 0 : indice.n - indice.primoDa(getCursore(lettore));
+    }
+
+    /**
+     * Segna come lette le notifiche fino all'offset indicato compreso; il cursore non torna indietro.
+     */
+    public synchronized void segnaLette(String lettore, long finoA) throws IOException {
+        LettoreInMemoria inMemoria = lettoriInMemoria.get(lettore);
+        if (inMemoria != null) {
+            inMemoria.cursore = Math.max(inMemoria.cursore, finoA + 1);
+            lettore = inMemoria.persistente;
+        }
+        if (finoA + 1 <= getCursore(lettore)) return;
+        cursori.put(lettore, finoA + 1);
+
+        List<String> righe = new ArrayList<>(cursori.size());
+        cursori.forEach((nome, cursore) -> righe.add(CsvFieldScanner.quote(nome) + "," + cursore));
+        ScritturaAtomica.scriviRighe(cursoriFile, righe);
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            canale.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Errore chiusura registro notifiche: " + logFile, e);
+        }
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private static final class LettoreInMemoria {
+        final String persistente;
+        long cursore;
+
+        LettoreInMemoria(String persistente, long cursore) {
+            this.persistente = persistente;
+            this.cursore = cursore;
+        }
+    }
+
+    /**
+     * Legge il registro riga per riga registrando offset e posizione di ogni notifica; una
+     * riga finale senza terminatore viene troncata.
+     */
+    private void indicizza() throws IOException {
+        CsvFieldScanner scanner = new CsvFieldScanner();
+        long posizione = 0;
+        long inizioRiga = 0;
+        ByteArrayOutputStream riga = new ByteArrayOutputStream(128);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(logFile))) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                posizione++;
+                if (b != '\n') {
+                    riga.write(b);
+                    continue;
+                }
+                String testo = riga.toString(StandardCharsets.UTF_8);
+                String diabetologoId = scanner.reset(testo).nextString();
+                indici.computeIfAbsent(diabetologoId, k -> new Indice())
+                        .aggiungi(prossimoOffset++, inizioRiga, (int) (posizione - 1 - inizioRiga));
+                riga.reset();
+                inizioRiga = posizione;
+            }
+        }
+        if (inizioRiga < posizione) {
+            LOGGER.log(Level.WARNING, "Ultima riga del registro notifiche incompleta, scartata: {0}", logFile);
+            canale.truncate(inizioRiga);
+        }
+        dimensione = inizioRiga;
+    }
+
+    private void caricaCursori() throws IOException {
+        if (!Files.exists(cursoriFile)) return;
+        CsvFieldScanner scanner = new CsvFieldScanner();
+        for (String riga : Files.readAllLines(cursoriFile, StandardCharsets.UTF_8)) {
+            if (riga.isBlank()) continue;
+            scanner.reset(riga);
+            String lettore = scanner.nextString();
+            cursori.put(lettore, Long.parseLong(scanner.nextString()));
+        }
+    }
+
+    private List<Voce> leggi(long[][] righe) throws IOException {
+        List<Voce> voci = new ArrayList<>(righe.length);
+        CsvFieldScanner scanner = new CsvFieldScanner();
+        for (long[] riga : righe) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) riga[2]);
+            long posizione = riga[1];
+            while (buffer.hasRemaining()) {
+                int letti = canale.read(buffer, posizione + buffer.position());
+                if (letti < 0) throw new IOException("Registro notifiche troncato: " + logFile);
+            }
+            voci.add(interpreta(riga[0], new String(buffer.array(), StandardCharsets.UTF_8), scanner));
+        }
+        return voci;
+    }
+
+    private static String formatta(String diabetologoId, Instant istante, Notifica notifica) {
+        StringJoiner riga = new StringJoiner(",");
+        riga.add(CsvFieldScanner.quote(diabetologoId)).add(Long.toString(istante.toEpochMilli()));
+        if (notifica instanceof Notifica.AssunzioniMancanti a) {
+            riga.add(TIPO_ASSUNZIONI).add(Integer.toString(a.pazienteId()))
+                    .add(CsvFieldScanner.quote(a.nome())).add(CsvFieldScanner.quote(a.cognome()))
+                    .add(CsvFieldScanner.quote(a.farmaco())).add(Integer.toString(a.giorni()));
+        } else if (notifica instanceof Notifica.GlicemiaFuoriRange g) {
+            riga.add(TIPO_GLICEMIA).add(Integer.toString(g.pazienteId()))
+                    .add(CsvFieldScanner.quote(g.nome())).add(CsvFieldScanner.quote(g.cognome()))
+                    .add(Integer.toString(g.valore())).add(CsvFieldScanner.quote(g.tipoPasto()))
+                    .add(g.data().toString());
+        } else if (notifica instanceof Notifica.AndamentoGlicemico p) {
+            riga.add(TIPO_ANDAMENTO).add(Integer.toString(p.pazienteId()))
+                    .add(CsvFieldScanner.quote(p.nome())).add(CsvFieldScanner.quote(p.cognome()))
+                    .add(p.regola().name()).add(Integer.toString(p.valore()))
+                    .add(CsvFieldScanner.quote(p.tipoPasto())).add(p.data().toString());
+        }
+        return riga.toString();
+    }
+
+    private static Voce interpreta(long offset, String riga, CsvFieldScanner scanner) {
+        scanner.reset(riga);
+        scanner.skip();
+        Instant istante = Instant.ofEpochMilli(Long.parseLong(scanner.nextString()));
+        String tipo = scanner.nextString();
+        int pazienteId = scanner.nextInt();
+        String nome = scanner.nextString();
+        String cognome = scanner.nextString();
+
+        Notifica notifica = switch (tipo) {
+            case TIPO_ASSUNZIONI -> new Notifica.AssunzioniMancanti(pazienteId, nome, cognome,
+                    scanner.nextString(), scanner.nextInt());
+            case TIPO_GLICEMIA -> new Notifica.GlicemiaFuoriRange(pazienteId, nome, cognome,
+                    scanner.nextInt(), scanner.nextString(), scanner.nextDate());
+            case TIPO_ANDAMENTO -> new Notifica.AndamentoGlicemico(pazienteId, nome, cognome,
+                    Notifica.AndamentoGlicemico.Regola.valueOf(scanner.nextString()), scanner.nextInt(),
+                    scanner.nextString(), scanner.nextDate());
+            default -> throw new IllegalStateException("Tipo di notifica sconosciuto nel registro: " + tipo);
+        };
+        return new Voce(offset, istante, notifica);
+    }
+
+    /**
+     * Offset, posizione e lunghezza (terminatore escluso) delle righe di un diabetologo,
+     * in ordine di offset.
+     */
+    private static final class Indice {
+        long[] offset = new long[16];
+        long[] posizione = new long[16];
+        int[] lunghezza = new int[16];
+        int n;
+
+        void aggiungi(long offsetRiga, long posizioneRiga, int lunghezzaRiga) {
+            if (n == offset.length) {
+                offset = Arrays.copyOf(offset, n * 2);
+                posizione = Arrays.copyOf(posizione, n * 2);
+                lunghezza = Arrays.copyOf(lunghezza, n * 2);
+            }
+            offset[n] = offsetRiga;
+            posizione[n] = posizioneRiga;
+            lunghezza[n] = lunghezzaRiga;
+            n++;
+        }
+
+        /** Indice della prima riga con offset maggiore o uguale a quello indicato. */
+        int primoDa(long daOffset) {
+            int i = Arrays.binarySearch(offset, 0, n, daOffset);
+            return i >= 0 ? i : -i - 1;
+        }
+
+        long[][] intervallo(int da, int a) {
+            long[][] righe = new long[Math.max(0, a - da)][];
+            for (int i = da; i < a; i++) {
+                righe[i - da] = new long[]{offset[i], posizione[i], lunghezza[i]};
+            }
+            return righe;
+        }
+    }
+}
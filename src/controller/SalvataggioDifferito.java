@@ -0,0 +1,294 @@
+package controller;
+
+import controller.DataController.TipoEntita;
+import model.Assunzione;
+import model.Paziente;
+import model.Rilevazione;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Coda di salvataggio write-behind: i salvataggi richiesti dalle dashboard vengono serializzati
+ * sul thread chiamante (il modello non è thread-safe) e scritti su disco da un thread dedicato,
+ * lasciando libero il thread JavaFX.
+ * <p>
+ * Le richieste sono raggruppate per file: più salvataggi dello stesso paziente nella stessa
+ * finestra temporale producono una sola riscrittura, e le aggiunte/eliminazioni da journal di un
+ * paziente già in coda vengono applicate direttamente alle sue righe. Le scritture in sospeso
+ * vanno svuotate con {@link #flush()} o {@link #chiudi()} prima del logout; all'uscita
+ * dell'applicazione {@link #chiudiTutti()} chiude le code ancora aperte.
+ * <p>
+ * Una scrittura non riuscita rimette in coda le sue richieste e viene ritentata alla finestra
+ * successiva; le richieste arrivate nel frattempo per lo stesso paziente restano più recenti.
+ * {@link #getScrittureFallite()} conta i tentativi falliti, per segnalarli all'utente.
+ */
+public class SalvataggioDifferito {
+
+    private static final Logger LOGGER = Logger.getLogger(SalvataggioDifferito.class.getName());
+
+    public static final long FINESTRA_DEFAULT_MS = 500;
+
+    private static final Set<SalvataggioDifferito> APERTI = ConcurrentHashMap.newKeySet();
+
+    private final DataController dataController;
+    private final long finestraMs;
+    private final ScheduledExecutorService scrittore;
+
+    // Stato protetto dal lock dell'istanza
+    private final Map<TipoEntita, Coda> code = new EnumMap<>(TipoEntita.class);
+    private boolean scritturaProgrammata;
+    private int inScrittura;
+    private int scrittureFallite;
+    private boolean chiuso;
+
+    public SalvataggioDifferito(DataController dataController) {
+        this(dataController, FINESTRA_DEFAULT_MS);
+    }
+
+    public SalvataggioDifferito(DataController dataController, long finestraMs) {
+        this.dataController = dataController;
+        this.finestraMs = finestraMs;
+        this.scrittore = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "salvataggio-differito");
+            thread.setDaemon(true);
+            return thread;
+        });
+        APERTI.add(this);
+    }
+
+    // ============ RICHIESTE ============
+
+    /**
+     * Accoda la riscrittura di tutte le righe del paziente per il tipo indicato.
+     */
+    public void salva(TipoEntita tipo, Paziente paziente) {
+        List<String> righe = new ArrayList<>(dataController.serializza(tipo, paziente));
+        synchronized (this) {
+            Coda coda = coda(tipo);
+            coda.righePerPaziente.put(paziente.getId(), righe);
+            // Lo snapshot include già le operazioni accodate prima
+            coda.operazioni.removeIf(op -> op.pazienteId() == paziente.getId());
+            programma();
+        }
+    }
+
+    public void registraRilevazione(Paziente paziente, Rilevazione rilevazione) {
+        if (!dataController.usaJournal(TipoEntita.RILEVAZIONI)) {
+            salva(TipoEntita.RILEVAZIONI, paziente);
+            return;
+        }
+        accoda(TipoEntita.RILEVAZIONI, paziente.getId(), true, dataController.serializzaRilevazione(paziente, rilevazione));
+    }
+
+    public void eliminaRilevazione(Paziente paziente, Rilevazione rilevazione) {
+        if (!dataController.usaJournal(TipoEntita.RILEVAZIONI)) {
+            salva(TipoEntita.RILEVAZIONI, paziente);
+            return;
+        }
+        accoda(TipoEntita.RILEVAZIONI, paziente.getId(), false, dataController.serializzaRilevazione(paziente, rilevazione));
+    }
+
+    public void registraAssunzione(Paziente paziente, Assunzione assunzione) {
+        if (!dataController.usaJournal(TipoEntita.ASSUNZIONI)) {
+            salva(TipoEntita.ASSUNZIONI, paziente);
+            return;
+        }
+        accoda(TipoEntita.ASSUNZIONI, paziente.getId(), true, dataController.serializzaAssunzione(paziente, assunzione));
+    }
+
+    public void eliminaAssunzione(Paziente paziente, Assunzione assunzione) {
+        if (!dataController.usaJournal(TipoEntita.ASSUNZIONI)) {
+            salva(TipoEntita.ASSUNZIONI, paziente);
+            return;
+        }
+        accoda(TipoEntita.ASSUNZIONI, paziente.getId(), false, dataController.serializzaAssunzione(paziente, assunzione));
+    }
+
+    // ============ SVUOTAMENTO ============
+
+    /**
+     * Scrive subito tutte le richieste in coda e attende il completamento.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (chiuso) return;
+        }
+        try {
+            scrittore.submit(this::scrivi).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(Level.WARNING, "Flush interrotto, scritture in sospeso: {0}", getScrittureInSospeso());
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.SEVERE, "Errore durante il flush dei salvataggi", e.getCause());
+        }
+    }
+
+    /**
+     * Svuota la coda e ferma il thread di scrittura. Le richieste successive vengono scritte
+     * in modo sincrono sul thread chiamante.
+     */
+    public void chiudi() {
+        flush();
+        synchronized (this) {
+            chiuso = true;
+        }
+        scrittore.shutdown();
+        APERTI.remove(this);
+    }
+
+    /**
+     * Chiude tutte le code aperte; da chiamare all'uscita dell'applicazione.
+     */
+    public static void chiudiTutti() {
+        for (SalvataggioDifferito salvataggio : new ArrayList<>(APERTI)) {
+            salvataggio.chiudi();
+        }
+    }
+
+    /**
+     * Numero di scritture non ancora completate: righe di pazienti e operazioni di journal
+     * in coda più quelle in corso di scrittura.
+     */
+    public synchronized int getScrittureInSospeso() {
+        int totale = inScrittura;
+        for (Coda coda : code.values()) {
+            totale += coda.righePerPaziente.size() + coda.operazioni.size();
+        }
+        return totale;
+    }
+
+    /**
+     * Numero di scritture su file non riuscite dalla creazione della coda; le loro richieste
+     * sono state rimesse in coda.
+     */
+    public synchronized int getScrittureFallite() {
+        return scrittureFallite;
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private void accoda(TipoEntita tipo, int pazienteId, boolean aggiunta, String riga) {
+        synchronized (this) {
+            Coda coda = coda(tipo);
+            List<String> righe = coda.righePerPaziente.get(pazienteId);
+            if (righe != null) {
+                if (aggiunta) {
+                    righe.add(riga);
+                } else {
+                    righe.remove(riga);
+                }
+            } else {
+                coda.operazioni.add(new Operazione(pazienteId, aggiunta, riga));
+            }
+            programma();
+        }
+    }
+
+    private Coda coda(TipoEntita tipo) {
+        return code.computeIfAbsent(tipo, t -> new Coda());
+    }
+
+    /**
+     * Programma una scrittura alla fine della finestra, se non ce n'è già una.
+     * Va chiamato tenendo il lock dell'istanza.
+     */
+    private void programma() {
+        if (chiuso) {
+            scrivi();
+        } else if (!scritturaProgrammata) {
+            scritturaProgrammata = true;
+            scrittore.schedule(this::scrivi, finestraMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scrivi() {
+        Map<TipoEntita, Coda> daScrivere;
+        synchronized (this) {
+            scritturaProgrammata = false;
+            if (code.isEmpty()) return;
+            daScrivere = new EnumMap<>(code);
+            code.clear();
+            for (Coda coda : daScrivere.values()) {
+                inScrittura += coda.righePerPaziente.size() + coda.operazioni.size();
+            }
+        }
+
+        try {
+            daScrivere.forEach(this::scriviCoda);
+        } finally {
+            synchronized (this) {
+                inScrittura = 0;
+            }
+        }
+    }
+
+    private void scriviCoda(TipoEntita tipo, Coda coda) {
+        int applicate = 0;
+        boolean righeSalvate = false;
+        try {
+            // Le operazioni riguardano solo pazienti senza righe in coda: l'ordine tra i due è indifferente
+            for (Operazione op : coda.operazioni) {
+                if (!dataController.applicaJournal(tipo, op.aggiunta(), op.riga())) break;
+                applicate++;
+            }
+            righeSalvate = dataController.salvaRighe(tipo, coda.righePerPaziente);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Errore nel salvataggio differito di " + tipo, e);
+        }
+        if (applicate < coda.operazioni.size() || !righeSalvate) {
+            rimetti(tipo, coda.operazioni.subList(applicate, coda.operazioni.size()),
+                    righeSalvate ? Map.of() : coda.righePerPaziente);
+        }
+    }
+
+    /**
+     * Rimette in coda le richieste di una scrittura non riuscita, davanti a quelle arrivate nel
+     * frattempo, e programma un nuovo tentativo. Le righe in coda di un paziente prevalgono su
+     * quelle fallite; le operazioni di journal successive vengono applicate alle righe fallite,
+     * come in {@link #accoda}.
+     */
+    private synchronized void rimetti(TipoEntita tipo, List<Operazione> operazioni, Map<Integer, List<String>> righe) {
+        scrittureFallite++;
+        Coda coda = coda(tipo);
+        righe.forEach((id, righeFallite) -> {
+            if (coda.righePerPaziente.containsKey(id)) return;
+            List<String> aggiornate = new ArrayList<>(righeFallite);
+            coda.operazioni.removeIf(op -> {
+                if (op.pazienteId() != id) return false;
+                if (op.aggiunta()) {
+                    aggiornate.add(op.riga());
+                } else {
+                    aggiornate.remove(op.riga());
+                }
+                return true;
+            });
+            coda.righePerPaziente.put(id, aggiornate);
+        });
+        List<Operazione> residue = new ArrayList<>();
+        for (Operazione op : operazioni) {
+            if (!coda.righePerPaziente.containsKey(op.pazienteId())) residue.add(op);
+        }
+        coda.operazioni.addAll(0, residue);
+        LOGGER.log(Level.WARNING, "Salvataggio differito di {0} non riuscito, {1} richieste rimesse in coda",
+                new Object[]{tipo, righe.size() + residue.size()});
+
+        // A coda chiusa le richieste restano in sospeso: riscriverle qui ripeterebbe l'errore all'infinito
+        if (!chiuso && !scritturaProgrammata) {
+            scritturaProgrammata = true;
+            scrittore.schedule(this::scrivi, finestraMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Richieste in attesa per un file: righe complete per paziente e operazioni di journal.
+     */
+    private static final class Coda {
+        final Map<Integer, List<String>> righePerPaziente = new LinkedHashMap<>();
+        final List<Operazione> operazioni = new ArrayList<>();
+    }
+
+    private record Operazione(int pazienteId, boolean aggiunta, String riga) {}
+}
@@ -0,0 +1,185 @@
+package controller;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sostituzione atomica dei file dati: il contenuto viene scritto in un file temporaneo accanto
+ * all'originale e poi rinominato sopra di esso, così un'interruzione a metà scrittura lascia
+ * intatta la versione precedente.
+ * <p>
+ * La durabilità su disco è configurabile con {@link #configura}:
+ * <ul>
+ *   <li>{@link Durabilita#NESSUNA}: nessun fsync, i dati restano nella cache del sistema operativo;</li>
+ *   <li>{@link Durabilita#FSYNC}: fsync del file temporaneo prima della rinomina e della cartella dopo,
+ *       a ogni salvataggio;</li>
+ *   <li>{@link Durabilita#FSYNC_RAGGRUPPATO}: fsync del file temporaneo prima della rinomina come
+ *       con FSYNC, mentre l'fsync delle cartelle che rendono durevoli le rinomine viene eseguito
+ *       insieme ogni N millisecondi. Dopo un crash ogni file è nella versione precedente o in
+ *       quella nuova, mai troncato; si possono perdere le rinomine degli ultimi N millisecondi.</li>
+ * </ul>
+ */
+public final class ScritturaAtomica {
+
+    private static final Logger LOGGER = Logger.getLogger(ScritturaAtomica.class.getName());
+
+    public enum Durabilita { NESSUNA, FSYNC, FSYNC_RAGGRUPPATO }
+
+    public static final long INTERVALLO_DEFAULT_MS = 200;
+
+    private static final String ESTENSIONE_TEMPORANEO = ".tmp";
+
+    private static final ScheduledExecutorService SINCRONIZZATORE = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "fsync-raggruppato");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile Durabilita durabilita = Durabilita.NESSUNA;
+
+    // Cartelle con rinomine non ancora sincronizzate, protetto da IN_SOSPESO
+    private static final Set<Path> IN_SOSPESO = new LinkedHashSet<>();
+    private static ScheduledFuture<?> sincronizzazione;
+
+    private ScritturaAtomica() {}
+
+    // ============ CONFIGURAZIONE ============
+
+    public static void configura(Durabilita nuova) {
+        configura(nuova, INTERVALLO_DEFAULT_MS);
+    }
+
+    /**
+     * Imposta la politica di durabilità per tutte le scritture successive.
+     *
+     * @param intervalloMs periodo dell'fsync raggruppato, ignorato per le altre politiche
+     */
+    public static void configura(Durabilita nuova, long intervalloMs) {
+        synchronized (IN_SOSPESO) {
+            if (sincronizzazione != null) {
+                sincronizzazione.cancel(false);
+                sincronizzazione = null;
+            }
+            if (nuova == Durabilita.FSYNC_RAGGRUPPATO) {
+                sincronizzazione = SINCRONIZZATORE.scheduleWithFixedDelay(ScritturaAtomica::sincronizzaInSospeso,
+                        intervalloMs, intervalloMs, TimeUnit.MILLISECONDS);
+            }
+            durabilita = nuova;
+        }
+        // Le rinomine in attesa della politica precedente non vanno perse
+        sincronizzaInSospeso();
+    }
+
+    public static Durabilita getDurabilita() {
+        return durabilita;
+    }
+
+    // ============ SCRITTURA ============
+
+    /**
+     * Sostituisce il file con le righe indicate (UTF-8, un terminatore di riga ciascuna).
+     */
+    static void scriviRighe(Path file, List<String> righe) throws IOException {
+        Path temporaneo = temporaneo(file);
+        try (BufferedWriter bw = Files.newBufferedWriter(temporaneo, StandardCharsets.UTF_8)) {
+            for (String riga : righe) {
+                bw.write(riga);
+                bw.newLine();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaneo);
+            throw e;
+        }
+        sostituisci(temporaneo, file);
+    }
+
+    /**
+     * File temporaneo da usare per preparare il nuovo contenuto di {@code file}.
+     */
+    static Path temporaneo(Path file) {
+        return file.resolveSibling(file.getFileName() + ESTENSIONE_TEMPORANEO);
+    }
+
+    /**
+     * Rinomina il temporaneo sopra il file, applicando la politica di durabilità corrente.
+     * Con entrambe le politiche di fsync il contenuto del temporaneo è su disco prima della
+     * rinomina: dopo un crash il file non può risultare vuoto o troncato.
+     * Va chiamato tenendo il lock del file (CsvJournal.lock).
+     */
+    static void sostituisci(Path temporaneo, Path file) throws IOException {
+        Durabilita corrente = durabilita;
+        if (corrente != Durabilita.NESSUNA) {
+            forza(temporaneo);
+        }
+
+        try {
+            Files.move(temporaneo, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            LOGGER.log(Level.FINE, "Rinomina atomica non supportata: {0}", file);
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (corrente == Durabilita.FSYNC) {
+            forzaCartella(file.toAbsolutePath().getParent());
+        } else if (corrente == Durabilita.FSYNC_RAGGRUPPATO) {
+            synchronized (IN_SOSPESO) {
+                IN_SOSPESO.add(file.toAbsolutePath().getParent());
+            }
+        }
+    }
+
+    /**
+     * Rende subito durevoli le rinomine eseguite in modalità raggruppata e non ancora
+     * sincronizzate, con un fsync per cartella.
+     */
+    public static void sincronizzaInSospeso() {
+        Path[] cartelle;
+        synchronized (IN_SOSPESO) {
+            if (IN_SOSPESO.isEmpty()) return;
+            cartelle = IN_SOSPESO.toArray(new Path[0]);
+            IN_SOSPESO.clear();
+        }
+
+        for (Path cartella : cartelle) {
+            forzaCartella(cartella);
+        }
+        LOGGER.log(Level.FINE, "Fsync raggruppato di {0} cartelle", cartelle.length);
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private static void forza(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Rende durevole la rinomina sincronizzando la cartella che contiene il file.
+     * Non tutti i sistemi permettono di aprire una cartella: in quel caso si prosegue.
+     */
+    private static void forzaCartella(Path cartella) {
+        if (cartella == null) return;
+        try (FileChannel channel = FileChannel.open(cartella, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Fsync della cartella non supportato: {0}", cartella);
+        }
+    }
+}
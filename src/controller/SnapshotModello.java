@@ -0,0 +1,602 @@
+package controller;
+
+import controller.DataController.TipoEntita;
+import model.*;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot binario dell'intero modello (utenti e dati dei pazienti) più un journal delle
+ * modifiche successive, per avviare l'applicazione senza rileggere i CSV.
+ * <p>
+ * I CSV restano la fonte di verità: ogni scrittura fatta tramite DataController, a snapshot
+ * presente, accoda al journal le stesse righe scritte nel file e la dimensione/data di modifica
+ * dei soli file dati del tipo scritto, rilevate tenendo il lock del file base del tipo: una
+ * scrittura di un altro tipo non ancora registrata resta così fuori dai timbri. All'avvio lo snapshot viene mappato in memoria e il journal
+ * rieseguito; se i file dati non corrispondono all'ultimo stato registrato (modifiche esterne,
+ * crash tra scrittura e journal) lo snapshot viene ignorato e i CSV riletti.
+ * La compattazione riporta il journal in un nuovo snapshot quando supera {@link #SOGLIA_COMPATTAZIONE}.
+ */
+public final class SnapshotModello {
+
+    private static final Logger LOGGER = Logger.getLogger(SnapshotModello.class.getName());
+
+    private static final int MAGIC = 0x534E5031; // "SNP1"
+    private static final int VERSIONE = 3;
+
+    /** Dimensione del journal oltre la quale viene pianificata la compattazione. */
+    static final long SOGLIA_COMPATTAZIONE = 4L * 1024 * 1024;
+
+    private static final byte RECORD_RIGHE = 1;
+    private static final byte RECORD_OPERAZIONE = 2;
+    private static final byte RECORD_ALLINEAMENTO = 3;
+
+    private static final byte UTENTE_DIABETOLOGO = 1;
+    private static final byte UTENTE_PAZIENTE = 2;
+
+    private static final long NESSUN_VALORE = Long.MIN_VALUE;
+
+    private static final Map<String, SnapshotModello> ISTANZE = new ConcurrentHashMap<>();
+    private static final ExecutorService COMPATTATORE = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "snapshot-compattazione");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FilePathProvider filePathProvider;
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final List<Path> fileDati;
+    private final Map<TipoEntita, int[]> fileDelTipo = new EnumMap<>(TipoEntita.class);
+    private final AtomicBoolean compattazionePianificata = new AtomicBoolean();
+    private volatile boolean attivo;
+
+    private SnapshotModello(FilePathProvider filePathProvider) {
+        this.filePathProvider = filePathProvider;
+        this.snapshotFile = Paths.get(filePathProvider.getSnapshotFile());
+        this.journalFile = Paths.get(filePathProvider.getJournalSnapshotFile());
+        String rilevazioni = filePathProvider.getRilevazioniFile();
+        String assunzioni = filePathProvider.getAssunzioniFile();
+        List<Path> file = new ArrayList<>();
+        file.add(Paths.get(filePathProvider.getUtenti()));
+        aggiungiFile(file, TipoEntita.RILEVAZIONI, Paths.get(rilevazioni), CsvJournal.percorso(rilevazioni),
+                PartizioniMensili.cartella(filePathProvider.getRilevazioniFile(FilePathProvider.FormatoRilevazioni.CSV)));
+        aggiungiFile(file, TipoEntita.TERAPIE, Paths.get(filePathProvider.getTerapieFile()));
+        aggiungiFile(file, TipoEntita.ASSUNZIONI, Paths.get(assunzioni), CsvJournal.percorso(assunzioni),
+                PartizioniMensili.cartella(assunzioni));
+        aggiungiFile(file, TipoEntita.SCHEDE_CLINICHE, Paths.get(filePathProvider.getSchedeClinicheFile()));
+        aggiungiFile(file, TipoEntita.EVENTI_CLINICI, Paths.get(filePathProvider.getEventiCliniciFile()));
+        aggiungiFile(file, TipoEntita.TERAPIE_CONCOMITANTI, Paths.get(filePathProvider.getTerapieConcomitantiFile()));
+        this.fileDati = List.copyOf(file);
+        this.attivo = Files.exists(snapshotFile);
+    }
+
+    /**
+     * Istanza condivisa per la cartella dati (e il formato delle rilevazioni) del provider.
+     */
+    public static SnapshotModello per(FilePathProvider filePathProvider) {
+        String chiave = Paths.get(filePathProvider.getSnapshotFile()).toAbsolutePath().normalize()
+                + ":" + filePathProvider.getFormatoRilevazioni();
+        return ISTANZE.computeIfAbsent(chiave, k -> new SnapshotModello(filePathProvider));
+    }
+
+    /**
+     * Indica se esiste uno snapshot: solo in quel caso le scritture vengono registrate nel journal.
+     */
+    public boolean isAttivo() {
+        return attivo;
+    }
+
+    // ============ CARICAMENTO ============
+
+    /**
+     * Ricostruisce il modello da snapshot e journal.
+     *
+     * @return gli utenti con i dati dei pazienti, null se lo snapshot manca, è illeggibile
+     *         o non corrisponde più ai file dati
+     */
+    List<Utente> carica(DataController dataController) {
+        Stato stato;
+        synchronized (this) {
+            stato = leggi(dataController);
+        }
+        if (stato == null) return null;
+
+        if (!Arrays.equals(stato.timbri, timbri())) {
+            LOGGER.info("Snapshot non allineato ai file dati: verranno riletti i CSV");
+            return null;
+        }
+        if (stato.dimensioneJournal > SOGLIA_COMPATTAZIONE) {
+            pianificaCompattazione();
+        }
+        LOGGER.log(Level.INFO, "Modello caricato da snapshot ({0} utenti, {1} record di journal)",
+                new Object[]{stato.utenti.size(), stato.recordJournal});
+        return stato.utenti;
+    }
+
+    /**
+     * Scrive un nuovo snapshot del modello e svuota il journal. Il modello deve corrispondere
+     * al contenuto attuale dei file dati (es. appena caricato dai CSV).
+     */
+    synchronized void scrivi(List<Utente> utenti) {
+        try {
+            scriviSnapshot(utenti, timbri());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Errore scrittura snapshot: " + snapshotFile, e);
+        }
+    }
+
+    /**
+     * Riporta il journal in un nuovo snapshot, ricostruendo il modello da snapshot e journal
+     * correnti (indipendente dal modello in uso nell'interfaccia).
+     *
+     * @return false se lo snapshot non esiste o non è leggibile
+     */
+    public synchronized boolean compatta() {
+        Stato stato = leggi(new DataController(filePathProvider, DataController.ModalitaPersistenza.RISCRITTURA, null));
+        if (stato == null) return false;
+        try {
+            scriviSnapshot(stato.utenti, stato.timbri);
+            LOGGER.log(Level.INFO, "Compattati {0} record di journal in: {1}",
+                    new Object[]{stato.recordJournal, snapshotFile});
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Errore compattazione snapshot: " + snapshotFile, e);
+            return false;
+        }
+    }
+
+    // ============ JOURNAL ============
+    // Chiamati da DataController dopo la scrittura, tenendo il lock del file base del tipo
+
+    void registraRighe(TipoEntita tipo, Map<Integer, List<String>> righePerPaziente) {
+        if (!attivo) return;
+        accoda(tipo, out -> {
+            out.writeByte(RECORD_RIGHE);
+            out.writeByte(tipo.ordinal());
+            out.writeInt(righePerPaziente.size());
+            for (Map.Entry<Integer, List<String>> entry : righePerPaziente.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String riga : entry.getValue()) scriviStringa(out, riga);
+            }
+        });
+    }
+
+    void registraOperazione(TipoEntita tipo, boolean aggiunta, String riga) {
+        if (!attivo) return;
+        accoda(tipo, out -> {
+            out.writeByte(RECORD_OPERAZIONE);
+            out.writeByte(tipo.ordinal());
+            out.writeBoolean(aggiunta);
+            scriviStringa(out, riga);
+        });
+    }
+
+    /**
+     * Registra solo il nuovo stato dei file dati del tipo, per scritture che non cambiano il
+     * contenuto effettivo (es. compattazione del journal CSV).
+     */
+    void registraAllineamento(TipoEntita tipo) {
+        if (!attivo) return;
+        accoda(tipo, out -> out.writeByte(RECORD_ALLINEAMENTO));
+    }
+
+    /**
+     * Accoda un record con i timbri dei soli file del tipo: quelli degli altri tipi possono
+     * riflettere scritture concorrenti non ancora registrate, e se finissero nel record un crash
+     * prima della loro registrazione lascerebbe accettare uno snapshot che non le contiene.
+     */
+    private synchronized void accoda(TipoEntita tipo, ScritturaRecord contenuto) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(buffer);
+            contenuto.scrivi(out);
+            int[] indici = fileDelTipo.get(tipo);
+            out.writeInt(indici.length);
+            for (int indice : indici) {
+                long[] timbro = timbro(fileDati.get(indice));
+                out.writeInt(indice);
+                out.writeLong(timbro[0]);
+                out.writeLong(timbro[1]);
+            }
+            byte[] dati = buffer.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(dati);
+            ByteBuffer record = ByteBuffer.allocate(8 + dati.length);
+            record.putInt(dati.length).putInt((int) crc.getValue()).put(dati).flip();
+
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (record.hasRemaining()) channel.write(record);
+                if (ScritturaAtomica.getDurabilita() == ScritturaAtomica.Durabilita.FSYNC) {
+                    channel.force(false);
+                }
+                if (channel.size() > SOGLIA_COMPATTAZIONE) {
+                    pianificaCompattazione();
+                }
+            }
+        } catch (IOException e) {
+            // Senza il record lo snapshot non corrisponde più ai file: al prossimo avvio si rileggono i CSV
+            LOGGER.log(Level.WARNING, "Impossibile aggiornare il journal dello snapshot: " + journalFile, e);
+        }
+    }
+
+    private void pianificaCompattazione() {
+        if (compattazionePianificata.compareAndSet(false, true)) {
+            COMPATTATORE.execute(() -> {
+                try {
+                    compatta();
+                } finally {
+                    compattazionePianificata.set(false);
+                }
+            });
+        }
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private void aggiungiFile(List<Path> file, TipoEntita tipo, Path... delTipo) {
+        int[] indici = new int[delTipo.length];
+        for (int i = 0; i < delTipo.length; i++) {
+            indici[i] = file.size();
+            file.add(delTipo[i]);
+        }
+        fileDelTipo.put(tipo, indici);
+    }
+
+    /**
+     * Dimensione e data di modifica di ciascun file dati, -1 se il file non esiste.
+     * Per le cartelle delle partizioni mensili: dimensione totale e ultima modifica dei file.
+     */
+    private long[] timbri() {
+        long[] timbri = new long[fileDati.size() * 2];
+        for (int i = 0; i < fileDati.size(); i++) {
+            long[] timbro = timbro(fileDati.get(i));
+            timbri[i * 2] = timbro[0];
+            timbri[i * 2 + 1] = timbro[1];
+        }
+        return timbri;
+    }
+
+    private static long[] timbro(Path file) {
+        if (Files.isDirectory(file)) return PartizioniMensili.timbro(file);
+        try {
+            return new long[]{Files.size(file), Files.getLastModifiedTime(file).toMillis()};
+        } catch (IOException e) {
+            return new long[]{-1, -1};
+        }
+    }
+
+    private Stato leggi(DataController dataController) {
+        if (!Files.exists(snapshotFile)) return null;
+        try {
+            ByteBuffer dati;
+            try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+                dati = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (dati.remaining() < 8 || dati.getInt() != MAGIC || dati.getInt() != VERSIONE) {
+                throw new IOException("Formato snapshot non valido: " + snapshotFile);
+            }
+            Stato stato = new Stato();
+            stato.timbri = leggiTimbri(dati);
+            stato.utenti = leggiUtenti(dati);
+            riapplicaJournal(stato, dataController);
+            return stato;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Snapshot non leggibile, verranno riletti i CSV: " + snapshotFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Riesegue i record del journal sul modello letto dallo snapshot. Un record incompleto o
+     * con checksum errato (scrittura interrotta) chiude il journal: per ogni file i timbri restano
+     * quelli dell'ultimo record valido che lo riguarda.
+     */
+    private void riapplicaJournal(Stato stato, DataController dataController) throws IOException {
+        if (!Files.exists(journalFile)) return;
+        ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(journalFile));
+        stato.dimensioneJournal = journal.limit();
+
+        RegistroPazienti registro = RegistroPazienti.da(stato.utenti);
+        CRC32 crc = new CRC32();
+        while (journal.remaining() >= 8) {
+            int lunghezza = journal.getInt();
+            int atteso = journal.getInt();
+            if (lunghezza < 0 || lunghezza > journal.remaining()) {
+                LOGGER.log(Level.WARNING, "Record incompleto in coda al journal: {0}", journalFile);
+                return;
+            }
+            ByteBuffer record = journal.slice(journal.position(), lunghezza);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != atteso) {
+                LOGGER.log(Level.WARNING, "Checksum errato nel journal: {0}", journalFile);
+                return;
+            }
+            journal.position(journal.position() + lunghezza);
+
+            applicaRecord(record, registro, dataController);
+            for (int i = record.getInt(); i > 0; i--) {
+                int indice = record.getInt();
+                stato.timbri[indice * 2] = record.getLong();
+                stato.timbri[indice * 2 + 1] = record.getLong();
+            }
+            stato.recordJournal++;
+        }
+    }
+
+    private static void applicaRecord(ByteBuffer record, RegistroPazienti registro, DataController dataController) {
+        byte tipoRecord = record.get();
+        switch (tipoRecord) {
+            case RECORD_RIGHE -> {
+                TipoEntita tipo = TipoEntita.values()[record.get()];
+                int pazienti = record.getInt();
+                for (int p = 0; p < pazienti; p++) {
+                    int id = record.getInt();
+                    int numeroRighe = record.getInt();
+                    List<String> righe = new ArrayList<>(numeroRighe);
+                    for (int r = 0; r < numeroRighe; r++) righe.add(leggiStringa(record));
+                    Paziente paziente = registro.get(id);
+                    if (paziente != null) dataController.applicaRighe(tipo, paziente, righe);
+                }
+            }
+            case RECORD_OPERAZIONE -> {
+                TipoEntita tipo = TipoEntita.values()[record.get()];
+                boolean aggiunta = record.get() != 0;
+                dataController.applicaOperazione(tipo, registro, aggiunta, leggiStringa(record));
+            }
+            case RECORD_ALLINEAMENTO -> {
+                // Nessuna modifica al modello
+            }
+            default -> throw new IllegalArgumentException("Tipo di record sconosciuto: " + tipoRecord);
+        }
+    }
+
+    private void scriviSnapshot(List<Utente> utenti, long[] timbri) throws IOException {
+        Path temporaneo = ScritturaAtomica.temporaneo(snapshotFile);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaneo)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSIONE);
+            scriviTimbri(out, timbri);
+            scriviUtenti(out, utenti);
+        }
+        ScritturaAtomica.sostituisci(temporaneo, snapshotFile);
+        Files.deleteIfExists(journalFile);
+        attivo = true;
+        LOGGER.log(Level.INFO, "Snapshot salvato: {0}", snapshotFile);
+    }
+
+    private static void scriviTimbri(DataOutputStream out, long[] timbri) throws IOException {
+        out.writeInt(timbri.length);
+        for (long timbro : timbri) out.writeLong(timbro);
+    }
+
+    private static long[] leggiTimbri(ByteBuffer in) {
+        long[] timbri = new long[in.getInt()];
+        for (int i = 0; i < timbri.length; i++) timbri[i] = in.getLong();
+        return timbri;
+    }
+
+    // ============ FORMATO DEL MODELLO ============
+
+    private static void scriviUtenti(DataOutputStream out, List<Utente> utenti) throws IOException {
+        out.writeInt(utenti.size());
+        for (Utente utente : utenti) {
+            out.writeByte(utente instanceof Paziente ? UTENTE_PAZIENTE : UTENTE_DIABETOLOGO);
+            out.writeInt(utente.getId());
+            scriviStringa(out, utente.getNome());
+            scriviStringa(out, utente.getCognome());
+            scriviStringa(out, utente.getEmail());
+            scriviStringa(out, utente.getPassword());
+            if (utente instanceof Paziente paziente) {
+                out.writeInt(paziente.getMedicoId());
+                scriviDatiPaziente(out, paziente);
+            }
+        }
+    }
+
+    private static List<Utente> leggiUtenti(ByteBuffer in) {
+        int numero = in.getInt();
+        List<Utente> utenti = new ArrayList<>(numero);
+        for (int i = 0; i < numero; i++) {
+            byte tipo = in.get();
+            int id = in.getInt();
+            String nome = leggiStringa(in);
+            String cognome = leggiStringa(in);
+            String email = leggiStringa(in);
+            String password = leggiStringa(in);
+            if (tipo == UTENTE_PAZIENTE) {
+                Paziente paziente = new Paziente(id, nome, cognome, email, password, in.getInt());
+                leggiDatiPaziente(in, paziente);
+                utenti.add(paziente);
+            } else {
+                utenti.add(new Diabetologo(id, nome, cognome, email, password));
+            }
+        }
+        return utenti;
+    }
+
+    private static void scriviDatiPaziente(DataOutputStream out, Paziente paziente) throws IOException {
+        // Rilevazioni: etichette standard come codice, le altre per esteso
+        SerieGlicemica serie = paziente.getSerieGlicemica();
+        out.writeInt(serie.size());
+        for (int i = 0; i < serie.size(); i++) {
+            byte codice = serie.codicePasto(i);
+            boolean standard = codice > TipoPasto.SCONOSCIUTO && codice <= TipoPasto.ETICHETTE.size();
+            out.writeInt(serie.giorno(i));
+            out.writeByte(standard ? codice : TipoPasto.SCONOSCIUTO);
+            if (!standard) scriviStringa(out, serie.tipoPasto(i));
+            out.writeInt(serie.valore(i));
+        }
+
+        out.writeInt(paziente.getTerapie().size());
+        for (Terapia terapia : paziente.getTerapie()) {
+            scriviStringa(out, terapia.getFarmaco());
+            out.writeInt(terapia.getAssunzioniGiornaliere());
+            out.writeDouble(terapia.getQuantitaPerAssunzione());
+            scriviStringa(out, terapia.getIndicazioni());
+            scriviData(out, terapia.getDataInizio());
+            scriviData(out, terapia.getDataFine());
+            out.writeByte(terapia.getStato() == null ? -1 : terapia.getStato().ordinal());
+            out.writeInt(terapia.getMedicoId());
+        }
+
+        out.writeInt(paziente.getAssunzioni().size());
+        for (Assunzione assunzione : paziente.getAssunzioni()) {
+            scriviData(out, assunzione.getData());
+            scriviOra(out, assunzione.getOra());
+            scriviStringa(out, assunzione.getFarmaco());
+            out.writeDouble(assunzione.getQuantita());
+        }
+
+        SchedaClinica scheda = paziente.getSchedaClinica();
+        out.writeBoolean(scheda != null);
+        if (scheda != null) {
+            scriviStringa(out, scheda.getFattoriRischio());
+            scriviStringa(out, scheda.getPregressePatologie());
+            scriviStringa(out, scheda.getComorbidita());
+            SoglieGlicemiche soglie = scheda.getSoglieGlicemiche();
+            out.writeShort(soglie.getMinimoPrimaPasto());
+            out.writeShort(soglie.getMassimoPrimaPasto());
+            out.writeShort(soglie.getMassimoDopoPasto());
+        }
+
+        out.writeInt(paziente.getEventiClinici().size());
+        for (EventoClinico evento : paziente.getEventiClinici()) {
+            scriviStringa(out, evento.getTipo());
+            scriviStringa(out, evento.getDescrizione());
+            scriviData(out, evento.getData());
+            scriviOra(out, evento.getOra());
+            scriviStringa(out, evento.getNote());
+        }
+
+        out.writeInt(paziente.getTerapieConcomitanti().size());
+        for (TerapiaConcomitante terapia : paziente.getTerapieConcomitanti()) {
+            scriviStringa(out, terapia.getTipoTerapia());
+            scriviStringa(out, terapia.getDescrizione());
+        }
+    }
+
+    private static void leggiDatiPaziente(ByteBuffer in, Paziente paziente) {
+        SerieGlicemica serie = paziente.getSerieGlicemica();
+        int rilevazioni = in.getInt();
+        for (int i = 0; i < rilevazioni; i++) {
+            int giorno = in.getInt();
+            byte codice = in.get();
+            if (codice == TipoPasto.SCONOSCIUTO) {
+                String tipoPasto = leggiStringa(in);
+                serie.aggiungi(new Rilevazione(LocalDate.ofEpochDay(giorno), tipoPasto, in.getInt()));
+            } else {
+                serie.aggiungi(giorno, codice, (short) in.getInt());
+            }
+        }
+
+        int terapie = in.getInt();
+        for (int i = 0; i < terapie; i++) {
+            String farmaco = leggiStringa(in);
+            int assunzioniGiornaliere = in.getInt();
+            double quantita = in.getDouble();
+            String indicazioni = leggiStringa(in);
+            LocalDate inizio = leggiData(in);
+            LocalDate fine = leggiData(in);
+            byte stato = in.get();
+            paziente.aggiungiTerapia(new Terapia(farmaco, assunzioniGiornaliere, quantita, indicazioni, inizio, fine,
+                    stato < 0 ? null : Terapia.Stato.values()[stato], in.getInt()));
+        }
+
+        int assunzioni = in.getInt();
+        for (int i = 0; i < assunzioni; i++) {
+            LocalDate data = leggiData(in);
+            LocalTime ora = leggiOra(in);
+            paziente.aggiungiAssunzione(new Assunzione(data, ora, leggiStringa(in), in.getDouble()));
+        }
+
+        if (in.get() != 0) {
+            paziente.setSchedaClinica(new SchedaClinica(leggiStringa(in), leggiStringa(in), leggiStringa(in),
+                    new SoglieGlicemiche(in.getShort(), in.getShort(), in.getShort())));
+        }
+
+        int eventi = in.getInt();
+        for (int i = 0; i < eventi; i++) {
+            String tipo = leggiStringa(in);
+            String descrizione = leggiStringa(in);
+            LocalDate data = leggiData(in);
+            LocalTime ora = leggiOra(in);
+            paziente.aggiungiEventoClinico(new EventoClinico(tipo, descrizione, data, ora, leggiStringa(in)));
+        }
+
+        int terapieConcomitanti = in.getInt();
+        for (int i = 0; i < terapieConcomitanti; i++) {
+            paziente.aggiungiTerapiaConcomitante(new TerapiaConcomitante(leggiStringa(in), leggiStringa(in)));
+        }
+    }
+
+    private static void scriviStringa(DataOutputStream out, String valore) throws IOException {
+        if (valore == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = valore.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String leggiStringa(ByteBuffer in) {
+        int lunghezza = in.getInt();
+        if (lunghezza < 0) return null;
+        byte[] bytes = new byte[lunghezza];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void scriviData(DataOutputStream out, LocalDate data) throws IOException {
+        out.writeLong(data == null ? NESSUN_VALORE : data.toEpochDay());
+    }
+
+    private static LocalDate leggiData(ByteBuffer in) {
+        long giorno = in.getLong();
+        return giorno == NESSUN_VALORE ? null : LocalDate.ofEpochDay(giorno);
+    }
+
+    private static void scriviOra(DataOutputStream out, LocalTime ora) throws IOException {
+        out.writeLong(ora == null ? NESSUN_VALORE : ora.toNanoOfDay());
+    }
+
+    private static LocalTime leggiOra(ByteBuffer in) {
+        long nano = in.getLong();
+        return nano == NESSUN_VALORE ? null : LocalTime.ofNanoOfDay(nano);
+    }
+
+    private static final class Stato {
+        List<Utente> utenti;
+        long[] timbri;
+        long dimensioneJournal;
+        int recordJournal;
+    }
+
+    @FunctionalInterface
+    private interface ScritturaRecord {
+        void scrivi(DataOutputStream out) throws IOException;
+    }
+}
@@ -1,63 +1,183 @@
 package model;
 
 import controller.DiabetologoDashboardController;
+import controller.RegistroNotifiche;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stato condiviso dell'applicazione e smistamento delle notifiche ai diabetologi.
+ * <p>
+ * Le notifiche vengono prodotte dalle sessioni dei pazienti e dal controllo periodico
+ * dell'aderenza, anche fuori dal thread JavaFX, e consumate dalla dashboard del diabetologo:
+ * ogni diabetologo ha una coda limitata per tipo di notifica, senza lock (vedi CodaNotifiche).
+ * Se è configurato un {@link RegistroNotifiche}, ogni notifica viene anche aggiunta al registro
+ * persistente, da cui la dashboard la legge con il proprio cursore. Le dashboard aperte la
+ * ricevono subito tramite il {@link BusNotifiche}.
+ */
 public class AppState {
 
-    private static AppState instance;
-    private DiabetologoDashboardController diabetologoDashboardController;
+    /** Notifiche trattenute per diabetologo e tipo; oltre, si scartano le più vecchie. */
+    public static final int CAPACITA_CODA = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(AppState.class.getName());
+
+    private volatile DiabetologoDashboardController diabetologoDashboardController;
+    private volatile RegistroNotifiche registroNotifiche;
+    private final BusNotifiche busNotifiche = new BusNotifiche();
 
     // Notifiche associate per diabetologo ID
-    private Map<String, List<String>> notificheAssunzioniPerDiabetologo = new HashMap<>();
-    private Map<String, List<String>> notificheGlicemiaPerDiabetologo = new HashMap<>();
+    private final ConcurrentMap<String, CodaNotifiche<Notifica.AssunzioniMancanti>> notificheAssunzioniPerDiabetologo = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CodaNotifiche<Notifica.GlicemiaFuoriRange>> notificheGlicemiaPerDiabetologo = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CodaNotifiche<Notifica.AndamentoGlicemico>> notificheAndamentoPerDiabetologo = new ConcurrentHashMap<>();
+
+    private final LongAdder notificheAccodate = new LongAdder();
+    private final LongAdder notificheScartate = new LongAdder();
 
     private AppState() {}
 
+    // Inizializzazione lazy e thread-safe demandata al caricamento della classe
+    private static final class Holder {
+        private static final AppState INSTANCE = new AppState();
+    }
+
     public static AppState getInstance() {
-        if (instance == null) instance = new AppState();
-        return instance;
+        return Holder.INSTANCE;
     }
 
     // --- Dashboard del medico ---
+    /** @deprecated le dashboard si iscrivono al {@link #getBusNotifiche() bus delle notifiche} */
+    @Deprecated
     public void setDiabetologoDashboardController(DiabetologoDashboardController controller) {
         this.diabetologoDashboardController = controller;
     }
 
+    /** @deprecated le dashboard si iscrivono al {@link #getBusNotifiche() bus delle notifiche} */
+    @Deprecated
     public DiabetologoDashboardController getDiabetologoDashboardController() {
         return diabetologoDashboardController;
     }
 
+    // --- Consegna alle dashboard aperte ---
+    public BusNotifiche getBusNotifiche() {
+        return busNotifiche;
+    }
+
+    // --- Registro persistente ---
+    public void setRegistroNotifiche(RegistroNotifiche registroNotifiche) {
+        this.registroNotifiche = registroNotifiche;
+    }
+
+    /**
+     * Registro persistente delle notifiche, null se le notifiche restano solo in memoria.
+     */
+    public RegistroNotifiche getRegistroNotifiche() {
+        return registroNotifiche;
+    }
+
     // --- Notifiche assunzioni mancanti ---
-    public void aggiungiNotificaAssunzione(String diabetologoId, String messaggio) {
-        notificheAssunzioniPerDiabetologo
-                .computeIfAbsent(diabetologoId, k -> new ArrayList<>())
-                .add(messaggio);
+    public void aggiungiNotificaAssunzione(String diabetologoId, Notifica.AssunzioniMancanti notifica) {
+        accoda(notificheAssunzioniPerDiabetologo, diabetologoId, notifica);
     }
 
+    public List<Notifica.AssunzioniMancanti> prelevaAssunzioniMancanti(String diabetologoId) {
+        return preleva(notificheAssunzioniPerDiabetologo, diabetologoId);
+    }
+
+    /**
+     * Testi delle notifiche prelevate, vedi {@link #prelevaAssunzioniMancanti}.
+     */
     public List<String> prelevaNotificheAssunzioni(String diabetologoId) {
-        List<String> notifiche = notificheAssunzioniPerDiabetologo.getOrDefault(diabetologoId, new ArrayList<>());
-        List<String> copy = new ArrayList<>(notifiche);
-        notifiche.clear();
-        return copy;
+        return messaggi(prelevaAssunzioniMancanti(diabetologoId));
     }
 
     // --- Notifiche glicemia fuori range ---
-    public void aggiungiNotificaGlicemia(String diabetologoId, String messaggio) {
-        notificheGlicemiaPerDiabetologo
-                .computeIfAbsent(diabetologoId, k -> new ArrayList<>())
-                .add(messaggio);
+    public void aggiungiNotificaGlicemia(String diabetologoId, Notifica.GlicemiaFuoriRange notifica) {
+        accoda(notificheGlicemiaPerDiabetologo, diabetologoId, notifica);
+    }
+
+    public List<Notifica.GlicemiaFuoriRange> prelevaGlicemieFuoriRange(String diabetologoId) {
+        return preleva(notificheGlicemiaPerDiabetologo, diabetologoId);
     }
 
+    /**
+     * Testi delle notifiche prelevate, vedi {@link #prelevaGlicemieFuoriRange}.
+     */
     public List<String> prelevaNotificheGlicemia(String diabetologoId) {
-        List<String> notifiche = notificheGlicemiaPerDiabetologo.getOrDefault(diabetologoId, new ArrayList<>());
-        List<String> copy = new ArrayList<>(notifiche);
-        notifiche.clear();
-        return copy;
+        return messaggi(prelevaGlicemieFuoriRange(diabetologoId));
+    }
+
+    // --- Andamenti glicemici anomali ---
+    public void aggiungiNotificaAndamento(String diabetologoId, Notifica.AndamentoGlicemico notifica) {
+        accoda(notificheAndamentoPerDiabetologo, diabetologoId, notifica);
+    }
+
+    public List<Notifica.AndamentoGlicemico> prelevaAndamentiGlicemici(String diabetologoId) {
+        return preleva(notificheAndamentoPerDiabetologo, diabetologoId);
+    }
+
+    // --- Contatori ---
+    public int contaNotifichePendenti(String diabetologoId) {
+        return dimensione(notificheAssunzioniPerDiabetologo.get(diabetologoId))
+                + dimensione(notificheGlicemiaPerDiabetologo.get(diabetologoId))
+                + dimensione(notificheAndamentoPerDiabetologo.get(diabetologoId));
+    }
+
+    public long getNotifichePendenti() {
+        long pendenti = 0;
+        for (CodaNotifiche<?> coda : notificheAssunzioniPerDiabetologo.values()) pendenti += coda.dimensione();
+        for (CodaNotifiche<?> coda : notificheGlicemiaPerDiabetologo.values()) pendenti += coda.dimensione();
+        for (CodaNotifiche<?> coda : notificheAndamentoPerDiabetologo.values()) pendenti += coda.dimensione();
+        return pendenti;
+    }
+
+    /** Notifiche accodate dall'avvio, comprese quelle poi scartate. */
+    public long getNotificheAccodate() {
+        return notificheAccodate.sum();
+    }
+
+    /** Notifiche scartate dall'avvio perché la coda del diabetologo era piena. */
+    public long getNotificheScartate() {
+        return notificheScartate.sum();
+    }
+
+    // --- Private helpers ---
+    private <T extends Notifica> void accoda(ConcurrentMap<String, CodaNotifiche<T>> code, String diabetologoId, T notifica) {
+        CodaNotifiche<T> coda = code.computeIfAbsent(diabetologoId, k -> new CodaNotifiche<>(CAPACITA_CODA));
+        notificheAccodate.increment();
+        if (coda.aggiungi(notifica) > 0) notificheScartate.increment();
+
+        RegistroNotifiche registro = registroNotifiche;
+        if (registro != null) {
+            try {
+                registro.aggiungi(diabetologoId, notifica);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Notifica non salvata nel registro per il diabetologo ID: " + diabetologoId, e);
+            }
+        }
+        busNotifiche.pubblica(diabetologoId, notifica);
+    }
+
+    private static <T extends Notifica> List<T> preleva(ConcurrentMap<String, CodaNotifiche<T>> code, String diabetologoId) {
+        CodaNotifiche<T> coda = code.get(diabetologoId);
+        return coda == null ? new ArrayList<>() : coda.preleva();
+    }
+
+    private static List<String> messaggi(List<? extends Notifica> notifiche) {
+        List<String> messaggi = new ArrayList<>(notifiche.size());
+        for (Notifica notifica : notifiche) messaggi.add(notifica.messaggio());
+        return messaggi;
+    }
+
+    private static int dimensione(CodaNotifiche<?> coda) {
+        return coda == null ? 0 : coda.dimensione();
     }
 
     // --- Metodi di compatibilità (deprecated) ---
@@ -0,0 +1,107 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pubblicazione/sottoscrizione in-process delle notifiche: le dashboard aperte si iscrivono con
+ * l'ID del diabetologo e ricevono le notifiche appena vengono pubblicate.
+ * <p>
+ * Le notifiche di un iscritto vengono raccolte e consegnate a blocchi tramite il suo Executor:
+ * una consegna viene programmata solo se non ce n'è già una in attesa, e porta tutte le notifiche
+ * arrivate nel frattempo. Con {@code Platform::runLater} si ha al più una consegna per frame del
+ * thread JavaFX, qualunque sia il numero di notifiche pubblicate.
+ */
+public class BusNotifiche {
+
+    private static final Logger LOGGER = Logger.getLogger(BusNotifiche.class.getName());
+
+    /**
+     * Iscrizione attiva; dopo {@link #annulla()} non vengono consegnate altre notifiche.
+     */
+    public interface Sottoscrizione {
+        void annulla();
+    }
+
+    private final ConcurrentMap<String, List<Iscritto>> iscritti = new ConcurrentHashMap<>();
+
+    /**
+     * @param consegna   executor su cui viene chiamato il ricevitore (ad esempio Platform::runLater)
+     * @param ricevitore riceve le notifiche accumulate dall'ultima consegna, in ordine di pubblicazione
+     */
+    public Sottoscrizione sottoscrivi(String diabetologoId, Executor consegna, Consumer<List<Notifica>> ricevitore) {
+        Iscritto iscritto = new Iscritto(consegna, ricevitore);
+        iscritti.computeIfAbsent(diabetologoId, k -> new CopyOnWriteArrayList<>()).add(iscritto);
+        return () -> {
+            iscritto.annullato = true;
+            iscritti.computeIfPresent(diabetologoId, (k, lista) -> {
+                lista.remove(iscritto);
+                return lista.isEmpty() ? null : lista;
+            });
+        };
+    }
+
+    /**
+     * Inoltra la notifica agli iscritti del diabetologo senza bloccare il chiamante.
+     *
+     * @return true se almeno una dashboard era iscritta
+     */
+    public boolean pubblica(String diabetologoId, Notifica notifica) {
+        List<Iscritto> lista = iscritti.get(diabetologoId);
+        if (lista == null || lista.isEmpty()) return false;
+        for (Iscritto iscritto : lista) {
+            iscritto.accoda(notifica);
+        }
+        return true;
+    }
+
+    public boolean haIscritti(String diabetologoId) {
+        List<Iscritto> lista = iscritti.get(diabetologoId);
+        return lista != null && !lista.isEmpty();
+    }
+
+    private static final class Iscritto {
+        private final Executor consegna;
+        private final Consumer<List<Notifica>> ricevitore;
+        private final ConcurrentLinkedQueue<Notifica> inAttesa = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean programmata = new AtomicBoolean();
+        private volatile boolean annullato;
+
+        Iscritto(Executor consegna, Consumer<List<Notifica>> ricevitore) {
+            this.consegna = consegna;
+            this.ricevitore = ricevitore;
+        }
+
+        void accoda(Notifica notifica) {
+            inAttesa.offer(notifica);
+            if (programmata.compareAndSet(false, true)) {
+                consegna.execute(this::consegna);
+            }
+        }
+
+        private void consegna() {
+            // Prima di svuotare, così una notifica arrivata durante la consegna ne programma un'altra
+            programmata.set(false);
+            List<Notifica> blocco = new ArrayList<>();
+            Notifica notifica;
+            while ((notifica = inAttesa.poll()) != null) {
+                blocco.add(notifica);
+            }
+            if (blocco.isEmpty() || annullato) return;
+            try {
+                ricevitore.accept(blocco);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Errore nella consegna di " + blocco.size() + " notifiche", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coda limitata senza lock di un diabetologo: più produttori (sessioni dei pazienti, controllo
+ * periodico) e un consumatore (la sua dashboard). Oltre la capacità la notifica più vecchia viene
+ * scartata, così una dashboard rimasta chiusa a lungo trova le notifiche più recenti.
+ * La dimensione è mantenuta a parte perché {@code ConcurrentLinkedQueue.size()} è lineare.
+ */
+final class CodaNotifiche<T extends Notifica> {
+
+    private final ConcurrentLinkedQueue<T> coda = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger dimensione = new AtomicInteger();
+    private final int capacita;
+
+    CodaNotifiche(int capacita) {
+        this.capacita = capacita;
+    }
+
+    /**
+     * @return il numero di notifiche scartate per fare posto (0 o 1)
+     */
+    int aggiungi(T notifica) {
+        int scartate = 0;
+        if (dimensione.incrementAndGet() > capacita) {
+            if (coda.poll() != null) {
+                dimensione.decrementAndGet();
+                scartate = 1;
+            }
+        }
+        coda.offer(notifica);
+        return scartate;
+    }
+
+    /**
+     * Preleva le notifiche presenti senza bloccare; quelle aggiunte durante il prelievo
+     * possono finire in questo prelievo o nel successivo.
+     */
+    List<T> preleva() {
+        List<T> prelevate = new ArrayList<>();
+        T notifica;
+        while ((notifica = coda.poll()) != null) {
+            dimensione.decrementAndGet();
+            prelevate.add(notifica);
+        }
+        return prelevate;
+    }
+
+    int dimensione() {
+        return Math.max(0, dimensione.get());
+    }
+}
@@ -0,0 +1,131 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Assunzioni di un paziente con un indice (farmaco, giorno) → numero di assunzioni, aggiornato
+ * a ogni aggiunta, sostituzione o rimozione fatta tramite la lista. Il conteggio delle assunzioni
+ * di un farmaco in un giorno è così una ricerca invece di una scansione di tutte le assunzioni.
+ * <p>
+ * Per ogni farmaco i conteggi sono tenuti in blocchi di {@value #GIORNI_PER_BLOCCO} giorni
+ * consecutivi (epoch day), creati solo per i periodi con assunzioni.
+ * Le Assunzioni sono immutabili, quindi l'indice resta valido finché si passa dalla lista.
+ * Un {@link Osservatore} opzionale riceve ogni variazione dei conteggi.
+ * Non è thread-safe.
+ */
+public class ElencoAssunzioni extends AbstractList<Assunzione> implements RandomAccess {
+
+    private static final int BIT_BLOCCO = 7;
+    private static final int GIORNI_PER_BLOCCO = 1 << BIT_BLOCCO;
+
+    /**
+     * Riceve le variazioni del numero di assunzioni di un farmaco in un giorno.
+     */
+    public interface Osservatore {
+        void conteggioCambiato(String farmaco, long giorno, int conteggio);
+
+        /** Tutte le assunzioni sono state rimosse. */
+        void svuotato();
+    }
+
+    private final List<Assunzione> assunzioni = new ArrayList<>();
+    private final Map<String, Map<Long, int[]>> conteggi = new HashMap<>();
+    private final Osservatore osservatore;
+
+    public ElencoAssunzioni() {
+        this(null);
+    }
+
+    public ElencoAssunzioni(Osservatore osservatore) {
+        this.osservatore = osservatore;
+    }
+
+    /**
+     * Numero di assunzioni del farmaco registrate nel giorno indicato.
+     */
+    public int conta(String farmaco, LocalDate data) {
+        return conta(farmaco, data.toEpochDay());
+    }
+
+    /**
+     * @param giorno giorno come epoch day
+     */
+    public int conta(String farmaco, long giorno) {
+        Map<Long, int[]> blocchi = conteggi.get(farmaco);
+        if (blocchi == null) return 0;
+        int[] blocco = blocchi.get(giorno >> BIT_BLOCCO);
+        return blocco == null ? 0 : blocco[(int) (giorno & (GIORNI_PER_BLOCCO - 1))];
+    }
+
+    /**
+     * Primo e ultimo giorno (epoch day) dei blocchi con assunzioni del farmaco: ogni giorno con
+     * assunzioni è compreso tra i due. Null se il farmaco non ha mai avuto assunzioni.
+     */
+    public long[] periodoIndicizzato(String farmaco) {
+        Map<Long, int[]> blocchi = conteggi.get(farmaco);
+        if (blocchi == null || blocchi.isEmpty()) return null;
+        long primo = Long.MAX_VALUE;
+        long ultimo = Long.MIN_VALUE;
+        for (long blocco : blocchi.keySet()) {
+            primo = Math.min(primo, blocco);
+            ultimo = Math.max(ultimo, blocco);
+        }
+        return new long[]{primo << BIT_BLOCCO, ((ultimo + 1) << BIT_BLOCCO) - 1};
+    }
+
+    @Override
+    public Assunzione get(int indice) {
+        return assunzioni.get(indice);
+    }
+
+    @Override
+    public int size() {
+        return assunzioni.size();
+    }
+
+    @Override
+    public void add(int indice, Assunzione assunzione) {
+        assunzioni.add(indice, assunzione);
+        aggiorna(assunzione, 1);
+        modCount++;
+    }
+
+    @Override
+    public Assunzione set(int indice, Assunzione assunzione) {
+        Assunzione precedente = assunzioni.set(indice, assunzione);
+        aggiorna(precedente, -1);
+        aggiorna(assunzione, 1);
+        return precedente;
+    }
+
+    @Override
+    public Assunzione remove(int indice) {
+        Assunzione rimossa = assunzioni.remove(indice);
+        aggiorna(rimossa, -1);
+        modCount++;
+        return rimossa;
+    }
+
+    @Override
+    public void clear() {
+        assunzioni.clear();
+        conteggi.clear();
+        modCount++;
+        if (osservatore != null) osservatore.svuotato();
+    }
+
+    private void aggiorna(Assunzione assunzione, int delta) {
+        if (assunzione == null || assunzione.getData() == null) return;
+        long giorno = assunzione.getData().toEpochDay();
+        int[] blocco = conteggi.computeIfAbsent(assunzione.getFarmaco(), f -> new HashMap<>())
+                .computeIfAbsent(giorno >> BIT_BLOCCO, b -> new int[GIORNI_PER_BLOCCO]);
+        int conteggio = blocco[(int) (giorno & (GIORNI_PER_BLOCCO - 1))] += delta;
+        if (osservatore != null) osservatore.conteggioCambiato(assunzione.getFarmaco(), giorno, conteggio);
+    }
+}
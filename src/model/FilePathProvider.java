@@ -6,7 +6,13 @@ package model;
  */
 public class FilePathProvider {
 
-    private static final String RESOURCES_PATH = "src/resources/";
+    private static final String DEFAULT_RESOURCES_PATH = "src/resources/";
+
+    /**
+     * Formato di memorizzazione delle rilevazioni: testo CSV oppure binario colonnare
+     * (una colonna per campo, adatto ad analisi su milioni di rilevazioni).
+     */
+    public enum FormatoRilevazioni { CSV, COLONNARE }
 
     private final String utenti;
     private final String schedeFile;
@@ -16,24 +22,67 @@ public class FilePathProvider {
     private final String eventiCliniciFile;
     private final String terapieConcomitantiFile;
     private final String schedeClinicheFile;
+    private final String rilevazioniColonnareFile;
+    private final String snapshotFile;
+    private final String journalSnapshotFile;
+    private final String configurazioneArchiviazione;
+    private final String registroNotificheFile;
+    private final String cursoriNotificheFile;
+    private final String episodiNotificatiFile;
+    private final FormatoRilevazioni formatoRilevazioni;
 
     public FilePathProvider() {
-        this.schedeFile = RESOURCES_PATH + "schede_cliniche.csv";
-        this.rilevazioniFile = RESOURCES_PATH + "rilevazioni.csv";
-        this.terapieFile = RESOURCES_PATH + "terapie.csv";
-        this.assunzioniFile = RESOURCES_PATH + "assunzioni.csv";
-        this.eventiCliniciFile = RESOURCES_PATH + "eventi_clinici.csv";
-        this.terapieConcomitantiFile = RESOURCES_PATH + "terapie_concomitanti.csv";
-        this.utenti = RESOURCES_PATH + "utenti.csv";
-        this.schedeClinicheFile = RESOURCES_PATH + "schede_cliniche.csv";
+        this(DEFAULT_RESOURCES_PATH);
+    }
+
+    /**
+     * Crea un provider che risolve tutti i file dati nella directory indicata.
+     */
+    public FilePathProvider(String resourcesPath) {
+        this(resourcesPath, FormatoRilevazioni.CSV);
+    }
+
+    /**
+     * Crea un provider che risolve tutti i file dati nella directory indicata,
+     * con le rilevazioni nel formato scelto.
+     */
+    public FilePathProvider(String resourcesPath, FormatoRilevazioni formatoRilevazioni) {
+        String base = resourcesPath.endsWith("/") ? resourcesPath : resourcesPath + "/";
+        this.formatoRilevazioni = formatoRilevazioni;
+        this.schedeFile = base + "schede_cliniche.csv";
+        this.rilevazioniFile = base + "rilevazioni.csv";
+        this.rilevazioniColonnareFile = base + "rilevazioni.col";
+        this.terapieFile = base + "terapie.csv";
+        this.assunzioniFile = base + "assunzioni.csv";
+        this.eventiCliniciFile = base + "eventi_clinici.csv";
+        this.terapieConcomitantiFile = base + "terapie_concomitanti.csv";
+        this.utenti = base + "utenti.csv";
+        this.schedeClinicheFile = base + "schede_cliniche.csv";
+        this.snapshotFile = base + "modello.snap";
+        this.journalSnapshotFile = base + "modello.wal";
+        this.configurazioneArchiviazione = base + "archiviazione.properties";
+        this.registroNotificheFile = base + "notifiche.log";
+        this.cursoriNotificheFile = base + "notifiche_cursori.csv";
+        this.episodiNotificatiFile = base + "episodi_notificati.csv";
     }
 
     public String getSchedeFile() {
         return schedeFile;
     }
 
+    /**
+     * File delle rilevazioni nel formato configurato.
+     */
     public String getRilevazioniFile() {
-        return rilevazioniFile;
+        return getRilevazioniFile(formatoRilevazioni);
+    }
+
+    public String getRilevazioniFile(FormatoRilevazioni formato) {
+        return formato == FormatoRilevazioni.COLONNARE ? rilevazioniColonnareFile : rilevazioniFile;
+    }
+
+    public FormatoRilevazioni getFormatoRilevazioni() {
+        return formatoRilevazioni;
     }
 
     public String getTerapieFile() {
@@ -57,4 +106,46 @@ public class FilePathProvider {
     public String getSchedeClinicheFile() {
         return schedeClinicheFile;
     }
-}
\ No newline at end of file
+
+    /**
+     * Snapshot binario dell'intero modello, usato per l'avvio rapido.
+     */
+    public String getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Journal delle modifiche successive allo snapshot.
+     */
+    public String getJournalSnapshotFile() {
+        return journalSnapshotFile;
+    }
+
+    /**
+     * Configurazione opzionale del backend di archiviazione dei dati dei pazienti.
+     */
+    public String getConfigurazioneArchiviazione() {
+        return configurazioneArchiviazione;
+    }
+
+    /**
+     * Registro persistente delle notifiche ai diabetologi.
+     */
+    public String getRegistroNotificheFile() {
+        return registroNotificheFile;
+    }
+
+    /**
+     * Posizioni di lettura del registro delle notifiche, una per lettore.
+     */
+    public String getCursoriNotificheFile() {
+        return cursoriNotificheFile;
+    }
+
+    /**
+     * Episodi di assunzioni mancanti già notificati, con la loro scadenza.
+     */
+    public String getEpisodiNotificatiFile() {
+        return episodiNotificatiFile;
+    }
+}
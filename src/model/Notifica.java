@@ -0,0 +1,75 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * Notifica per il diabetologo, accodata in {@link AppState} dalle sessioni dei pazienti e dal
+ * controllo periodico dell'aderenza. Il testo mostrato viene composto solo alla consegna.
+ */
+public sealed interface Notifica
+        permits Notifica.AssunzioniMancanti, Notifica.GlicemiaFuoriRange, Notifica.AndamentoGlicemico {
+
+    int pazienteId();
+
+    String messaggio();
+
+    /**
+     * Assunzioni di un farmaco non registrate per più giorni consecutivi.
+     */
+    record AssunzioniMancanti(int pazienteId, String nome, String cognome, String farmaco, int giorni)
+            implements Notifica {
+        @Override
+        public String messaggio() {
+            return String.format(
+                    "Il paziente %s %s non ha registrato le assunzioni del farmaco \"%s\" per %d giorni consecutivi.",
+                    nome, cognome, farmaco, giorni
+            );
+        }
+    }
+
+    /**
+     * Rilevazione di glicemia fuori dall'intervallo consigliato.
+     */
+    record GlicemiaFuoriRange(int pazienteId, String nome, String cognome, int valore, String tipoPasto,
+                              LocalDate data) implements Notifica {
+        @Override
+        public String messaggio() {
+            return String.format(
+                    "Il paziente %s %s ha registrato un valore di glicemia %d mg/dL (%s) il %s.",
+                    nome, cognome, valore, tipoPasto, data
+            );
+        }
+    }
+
+    /**
+     * Andamento glicemico anomalo rilevato su più rilevazioni; valore, tipo di pasto e data
+     * sono quelli della rilevazione che ha completato la regola.
+     */
+    record AndamentoGlicemico(int pazienteId, String nome, String cognome, Regola regola, int valore,
+                              String tipoPasto, LocalDate data) implements Notifica {
+
+        public enum Regola {
+            IPOGLICEMIE_RIPETUTE("ipoglicemie ripetute nelle ultime 24 ore"),
+            IPERGLICEMIE_POST_PASTO("iperglicemie post-prandiali consecutive"),
+            RIALZO_PROGRESSIVO("glicemia in aumento a ogni rilevazione dello stesso pasto");
+
+            private final String descrizione;
+
+            Regola(String descrizione) {
+                this.descrizione = descrizione;
+            }
+
+            public String getDescrizione() {
+                return descrizione;
+            }
+        }
+
+        @Override
+        public String messaggio() {
+            return String.format(
+                    "Il paziente %s %s presenta %s (ultima rilevazione %d mg/dL, %s, %s).",
+                    nome, cognome, regola.getDescrizione(), valore, tipoPasto, data
+            );
+        }
+    }
+}
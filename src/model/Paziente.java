@@ -1,17 +1,22 @@
 package model;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class Paziente extends Utente {
     private int medicoId;
     private Diabetologo medico;
-    private List<Rilevazione> rilevazioni= new ArrayList<>();;
+    private final SerieGlicemica serieGlicemica = new SerieGlicemica();
     private List<Terapia> terapie = new ArrayList<>();
-    private List<Assunzione> assunzioni = new ArrayList<>();
+    private final ElencoAssunzioni assunzioni = new ElencoAssunzioni(new AggiornamentoStorici());
     private SchedaClinica schedaClinica = new SchedaClinica();
     private List<EventoClinico> eventiClinici = new ArrayList<>();
     private List<TerapiaConcomitante> terapieConcomitanti = new ArrayList<>();
+    // Finché nessuno storico è stato richiesto l'osservatore non legge le terapie: durante il
+    // caricamento parallelo terapie e assunzioni vengono popolate da thread diversi
+    private volatile boolean storiciRichiesti;
 
     public Paziente(int id, String nome, String cognome, String email, String password) {
         super(id, nome, cognome, email, password);
@@ -29,7 +34,20 @@ public class Paziente extends Utente {
     public List<Terapia> getTerapie() {return terapie;}
     public List<Assunzione> getAssunzioni() {return assunzioni;}
 
-    public List<Rilevazione> getRilevazioni() { return rilevazioni; }
+    /**
+     * Numero di assunzioni del farmaco registrate nel giorno, tramite l'indice dell'elenco.
+     */
+    public int contaAssunzioni(String farmaco, LocalDate data) {
+        return assunzioni.conta(farmaco, data);
+    }
+
+    /**
+     * Vista a oggetti della serie glicemica: i get restituiscono copie, quindi una
+     * rilevazione va modificata con set e non con i setter dell'oggetto.
+     */
+    public List<Rilevazione> getRilevazioni() { return serieGlicemica.comeLista(); }
+
+    public SerieGlicemica getSerieGlicemica() { return serieGlicemica; }
 
     public SchedaClinica getSchedaClinica() {
         return schedaClinica;
@@ -37,6 +55,15 @@ public class Paziente extends Utente {
 
     public void setSchedaClinica(SchedaClinica schedaClinica) {
         this.schedaClinica = schedaClinica;
+        serieGlicemica.setSoglie(schedaClinica == null
+                ? SoglieGlicemiche.PREDEFINITE : schedaClinica.getSoglieGlicemiche());
+    }
+
+    /**
+     * Intervalli obiettivo della glicemia impostati dal medico nella scheda clinica.
+     */
+    public SoglieGlicemiche getSoglieGlicemiche() {
+        return serieGlicemica.getSoglie();
     }
 
     public List<EventoClinico> getEventiClinici() {
@@ -58,8 +85,30 @@ public class Paziente extends Utente {
         terapieConcomitanti.remove(t);
     }
 
+    /**
+     * Storico giornaliero dell'aderenza alla terapia, costruito dalle assunzioni alla prima
+     * richiesta e poi aggiornato a ogni assunzione aggiunta o rimossa.
+     */
+    public StoricoAderenza getStoricoAderenza(Terapia terapia) {
+        storiciRichiesti = true;
+        StoricoAderenza storico = terapia.getStoricoAderenza();
+        if (storico != null) return storico;
+
+        storico = new StoricoAderenza(terapia.getDataInizio(), terapia.getDataFine());
+        long[] periodo = assunzioni.periodoIndicizzato(terapia.getFarmaco());
+        if (periodo != null) {
+            long da = Math.max(periodo[0], terapia.getDataInizio().toEpochDay());
+            long a = Math.min(periodo[1], terapia.getDataFine().toEpochDay());
+            for (long giorno = da; giorno <= a; giorno++) {
+                storico.imposta(giorno, assunzioni.conta(terapia.getFarmaco(), giorno) >= terapia.getAssunzioniGiornaliere());
+            }
+        }
+        terapia.setStoricoAderenza(storico);
+        return storico;
+    }
+
     public void aggiungiRilevazione(Rilevazione r) {
-        rilevazioni.add(r);
+        serieGlicemica.aggiungi(r);
     }
 
     public void aggiungiTerapia(Terapia t) {
@@ -70,6 +119,30 @@ public class Paziente extends Utente {
         assunzioni.add(a);
     }
 
+    /**
+     * Riporta le variazioni dei conteggi delle assunzioni negli storici già costruiti; prima
+     * della prima richiesta di uno storico non c'è nulla da aggiornare.
+     */
+    private final class AggiornamentoStorici implements ElencoAssunzioni.Osservatore {
+        @Override
+        public void conteggioCambiato(String farmaco, long giorno, int conteggio) {
+            if (!storiciRichiesti) return;
+            for (Terapia terapia : terapie) {
+                StoricoAderenza storico = terapia.getStoricoAderenza();
+                if (storico != null && Objects.equals(farmaco, terapia.getFarmaco())) {
+                    storico.imposta(giorno, conteggio >= terapia.getAssunzioniGiornaliere());
+                }
+            }
+        }
+
+        @Override
+        public void svuotato() {
+            // Ricostruiti alla prossima richiesta
+            if (!storiciRichiesti) return;
+            terapie.forEach(t -> t.setStoricoAderenza(null));
+        }
+    }
+
     @Override
     public String getType() {
         return "Paziente";
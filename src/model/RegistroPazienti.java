@@ -0,0 +1,143 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Indice dei pazienti per ID con chiavi int primitive (open addressing, linear probing).
+ * Evita il boxing degli ID e la ricostruzione di una Map a ogni caricamento.
+ * Non è thread-safe: le modifiche vanno fatte su una copia da pubblicare al termine.
+ */
+public class RegistroPazienti {
+
+    private static final int CAPACITA_MINIMA = 16;
+
+    private int[] chiavi;
+    private Paziente[] valori;
+    private int size;
+
+    public RegistroPazienti() {
+        this(CAPACITA_MINIMA);
+    }
+
+    public RegistroPazienti(int attesi) {
+        int capacita = CAPACITA_MINIMA;
+        while (capacita < attesi * 2) capacita <<= 1;
+        chiavi = new int[capacita];
+        valori = new Paziente[capacita];
+    }
+
+    /**
+     * Costruisce il registro con i pazienti presenti nella lista di utenti.
+     */
+    public static RegistroPazienti da(List<? extends Utente> utenti) {
+        RegistroPazienti registro = new RegistroPazienti(utenti.size());
+        for (Utente utente : utenti) {
+            if (utente instanceof Paziente paziente) {
+                registro.registra(paziente);
+            }
+        }
+        return registro;
+    }
+
+    public Paziente get(int id) {
+        int mask = chiavi.length - 1;
+        for (int i = indice(id, mask); valori[i] != null; i = (i + 1) & mask) {
+            if (chiavi[i] == id) return valori[i];
+        }
+        return null;
+    }
+
+    public boolean contiene(int id) {
+        return get(id) != null;
+    }
+
+    /**
+     * Inserisce o sostituisce il paziente con lo stesso ID.
+     */
+    public void registra(Paziente paziente) {
+        if ((size + 1) * 2 > chiavi.length) ridimensiona(chiavi.length << 1);
+
+        int id = paziente.getId();
+        int mask = chiavi.length - 1;
+        int i = indice(id, mask);
+        while (valori[i] != null) {
+            if (chiavi[i] == id) {
+                valori[i] = paziente;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        chiavi[i] = id;
+        valori[i] = paziente;
+        size++;
+    }
+
+    public Paziente rimuovi(int id) {
+        int mask = chiavi.length - 1;
+        int i = indice(id, mask);
+        while (valori[i] != null && chiavi[i] != id) i = (i + 1) & mask;
+        if (valori[i] == null) return null;
+
+        Paziente rimosso = valori[i];
+        valori[i] = null;
+        size--;
+
+        // Backward shift: ricompatta la sequenza di probing senza tombstone
+        int libero = i;
+        for (int j = (i + 1) & mask; valori[j] != null; j = (j + 1) & mask) {
+            int ideale = indice(chiavi[j], mask);
+            boolean daSpostare = libero <= j ? (ideale <= libero || ideale > j) : (ideale <= libero && ideale > j);
+            if (daSpostare) {
+                chiavi[libero] = chiavi[j];
+                valori[libero] = valori[j];
+                valori[j] = null;
+                libero = j;
+            }
+        }
+        return rimosso;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(Consumer<Paziente> azione) {
+        for (Paziente paziente : valori) {
+            if (paziente != null) azione.accept(paziente);
+        }
+    }
+
+    public List<Paziente> getPazienti() {
+        List<Paziente> pazienti = new ArrayList<>(size);
+        forEach(pazienti::add);
+        return pazienti;
+    }
+
+    public RegistroPazienti copia() {
+        RegistroPazienti copia = new RegistroPazienti(size + 1);
+        forEach(copia::registra);
+        return copia;
+    }
+
+    private void ridimensiona(int capacita) {
+        int[] vecchieChiavi = chiavi;
+        Paziente[] vecchiValori = valori;
+        chiavi = new int[capacita];
+        valori = new Paziente[capacita];
+        size = 0;
+        for (int i = 0; i < vecchiValori.length; i++) {
+            if (vecchiValori[i] != null) registra(vecchiValori[i]);
+        }
+    }
+
+    private static int indice(int id, int mask) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
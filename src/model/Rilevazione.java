@@ -1,19 +1,48 @@
 package model;
 
 import java.time.LocalDate;
+import java.util.Objects;
 
+/**
+ * Rilevazione glicemica. Il tipo di pasto è un {@link TipoPasto}; un'etichetta non prevista
+ * (dati importati) viene conservata così com'è e {@link #getTipo()} restituisce null.
+ */
 public class Rilevazione {
 
     private LocalDate data;
-    private String tipoPasto; // "Prima colazione", "Dopo pranzo", ecc.
+    private TipoPasto tipo;
+    private String altroTipoPasto; // solo se tipo è null
     private int valore;       // mg/dL
-    private boolean fuoriRange;
+    private final SoglieGlicemiche soglie;
+    private SoglieGlicemiche.Fascia fascia;
 
+    public Rilevazione(LocalDate data, TipoPasto tipo, int valore) {
+        this(data, tipo, valore, SoglieGlicemiche.PREDEFINITE);
+    }
+
+    /**
+     * Rilevazione classificata con gli intervalli obiettivo del paziente.
+     */
+    public Rilevazione(LocalDate data, TipoPasto tipo, int valore, SoglieGlicemiche soglie) {
+        this.data = data;
+        this.tipo = Objects.requireNonNull(tipo, "tipo");
+        this.valore = valore;
+        this.soglie = soglie;
+        this.fascia = soglie.fascia(getCodicePasto(), valore);
+    }
+
+    /**
+     * @param tipoPasto etichetta del tipo di pasto, senza distinzione tra maiuscole e minuscole
+     */
     public Rilevazione(LocalDate data, String tipoPasto, int valore) {
+        this(data, tipoPasto, valore, SoglieGlicemiche.PREDEFINITE);
+    }
+
+    public Rilevazione(LocalDate data, String tipoPasto, int valore, SoglieGlicemiche soglie) {
         this.data = data;
-        this.tipoPasto = tipoPasto;
         this.valore = valore;
-        this.fuoriRange = calcolaFuoriRange();
+        this.soglie = soglie;
+        setTipoPasto(tipoPasto);
     }
 
     // --- Metodi di accesso ---
@@ -25,13 +54,30 @@ public class Rilevazione {
         this.data = data;
     }
 
+    /**
+     * @return il tipo di pasto, o null se l'etichetta non è tra quelle previste
+     */
+    public TipoPasto getTipo() {
+        return tipo;
+    }
+
+    public void setTipo(TipoPasto tipo) {
+        this.tipo = Objects.requireNonNull(tipo, "tipo");
+        this.altroTipoPasto = null;
+        this.fascia = soglie.fascia(getCodicePasto(), valore);
+    }
+
+    /**
+     * Etichetta del tipo di pasto: quella di {@link #getTipo()}, o l'etichetta non prevista.
+     */
     public String getTipoPasto() {
-        return tipoPasto;
+        return tipo != null ? tipo.getEtichetta() : altroTipoPasto;
     }
 
     public void setTipoPasto(String tipoPasto) {
-        this.tipoPasto = tipoPasto;
-        this.fuoriRange = calcolaFuoriRange();
+        this.tipo = TipoPasto.daEtichetta(tipoPasto);
+        this.altroTipoPasto = tipo == null ? tipoPasto : null;
+        this.fascia = soglie.fascia(getCodicePasto(), valore);
     }
 
     public int getValore() {
@@ -40,26 +86,52 @@ public class Rilevazione {
 
     public void setValore(int valore) {
         this.valore = valore;
-        this.fuoriRange = calcolaFuoriRange();
+        this.fascia = soglie.fascia(getCodicePasto(), valore);
+    }
+
+    /**
+     * Codice a un byte di {@link #getTipo()}, {@link TipoPasto#SCONOSCIUTO} per le etichette non previste.
+     */
+    public byte getCodicePasto() {
+        return tipo != null ? tipo.getCodice() : TipoPasto.SCONOSCIUTO;
+    }
+
+    /**
+     * Chiave per ordinare le rilevazioni per data e pasto, vedi {@link TipoPasto#chiaveOrdinamento}.
+     */
+    public long getChiaveOrdinamento() {
+        return TipoPasto.chiaveOrdinamento(data.toEpochDay(), getCodicePasto());
+    }
+
+    /**
+     * Fascia del valore negli intervalli obiettivo usati alla creazione della rilevazione.
+     */
+    public SoglieGlicemiche.Fascia getFascia() {
+        return fascia;
     }
 
     public boolean isFuoriRange() {
-        return fuoriRange;
+        return fascia != SoglieGlicemiche.Fascia.IN_RANGE;
     }
 
-    // --- Logica per determinare se il valore è fuori range ---
-    private boolean calcolaFuoriRange() {
-        if (tipoPasto.toLowerCase().contains("prima")) {
-            return valore < 80 || valore > 130;
-        } else if (tipoPasto.toLowerCase().contains("dopo")) {
-            return valore > 130; // invece di 180
-        }
-        return false;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Rilevazione that)) return false;
+        return valore == that.valore
+                && Objects.equals(data, that.data)
+                && tipo == that.tipo
+                && Objects.equals(altroTipoPasto, that.altroTipoPasto);
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(data, tipo, altroTipoPasto, valore);
+    }
 
     @Override
     public String toString() {
-        return data + " - " + tipoPasto + ": " + valore + " mg/dL" + (fuoriRange ? " ⚠" : "");
+        return data + " - " + getTipoPasto() + ": " + valore + " mg/dL" + (isFuoriRange() ? " ⚠" : "");
     }
 }
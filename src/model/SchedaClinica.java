@@ -4,17 +4,23 @@ public class SchedaClinica {
     private String fattoriRischio;
     private String pregressePatologie;
     private String comorbidita;
+    // Senza setter: il paziente le riceve con setSchedaClinica
+    private final SoglieGlicemiche soglieGlicemiche;
 
     public SchedaClinica() {
-        this.fattoriRischio = "";
-        this.pregressePatologie = "";
-        this.comorbidita = "";
+        this("", "", "");
     }
 
     public SchedaClinica(String fattoriRischio, String pregressePatologie, String comorbidita) {
+        this(fattoriRischio, pregressePatologie, comorbidita, SoglieGlicemiche.PREDEFINITE);
+    }
+
+    public SchedaClinica(String fattoriRischio, String pregressePatologie, String comorbidita,
+                         SoglieGlicemiche soglieGlicemiche) {
         this.fattoriRischio = fattoriRischio;
         this.pregressePatologie = pregressePatologie;
         this.comorbidita = comorbidita;
+        this.soglieGlicemiche = soglieGlicemiche;
     }
 
     public String getFattoriRischio() {
@@ -41,10 +47,15 @@ public class SchedaClinica {
         this.comorbidita = comorbidita;
     }
 
+    public SoglieGlicemiche getSoglieGlicemiche() {
+        return soglieGlicemiche;
+    }
+
     @Override
     public String toString() {
         return "Fattori di rischio: " + fattoriRischio +
                 " | Pregresse patologie: " + pregressePatologie +
-                " | Comorbidità: " + comorbidita;
+                " | Comorbidità: " + comorbidita +
+                " | Obiettivi glicemici: " + soglieGlicemiche;
     }
 }
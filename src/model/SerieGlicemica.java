@@ -0,0 +1,272 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Serie delle rilevazioni glicemiche di un paziente in forma compatta: tre array paralleli
+ * (giorno come epoch day, codice del tipo pasto, valore in mg/dL) invece di un oggetto
+ * Rilevazione con LocalDate e String per ogni lettura, circa 7 byte per rilevazione.
+ * I codici del tipo pasto sono quelli di {@link TipoPasto}; le etichette non previste
+ * ricevono un codice locale alla serie, così la conversione resta senza perdita.
+ * Non è thread-safe.
+ */
+public class SerieGlicemica {
+
+    private static final int CAPACITA_INIZIALE = 16;
+    private static final int[] GIORNI_VUOTI = {};
+    private static final byte[] PASTI_VUOTI = {};
+    private static final short[] VALORI_VUOTI = {};
+
+    private int size;
+    private int[] giorni = GIORNI_VUOTI;
+    private byte[] pasti = PASTI_VUOTI;
+    private short[] valori = VALORI_VUOTI;
+    private List<String> altriTipiPasto; // codici da TipoPasto.ETICHETTE.size() + 1 in poi
+    private SoglieGlicemiche soglie = SoglieGlicemiche.PREDEFINITE;
+
+    private final Vista vista = new Vista();
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public SoglieGlicemiche getSoglie() {
+        return soglie;
+    }
+
+    /**
+     * Intervalli obiettivo con cui vengono classificate le rilevazioni lette dalla serie.
+     */
+    public void setSoglie(SoglieGlicemiche soglie) {
+        this.soglie = Objects.requireNonNull(soglie);
+    }
+
+    /**
+     * Vista a oggetti della serie, per la UI e per il codice esistente. Ogni {@code get}
+     * crea una nuova Rilevazione: le modifiche all'oggetto restituito non si riflettono
+     * sulla serie, vanno fatte con {@code set}.
+     */
+    public List<Rilevazione> comeLista() {
+        return vista;
+    }
+
+    // ============ LETTURA ============
+
+    public int giorno(int indice) {
+        Objects.checkIndex(indice, size);
+        return giorni[indice];
+    }
+
+    public LocalDate data(int indice) {
+        return LocalDate.ofEpochDay(giorno(indice));
+    }
+
+    public byte codicePasto(int indice) {
+        Objects.checkIndex(indice, size);
+        return pasti[indice];
+    }
+
+    public String tipoPasto(int indice) {
+        return etichetta(codicePasto(indice));
+    }
+
+    public int valore(int indice) {
+        Objects.checkIndex(indice, size);
+        return valori[indice];
+    }
+
+    public Rilevazione rilevazione(int indice) {
+        byte codice = codicePasto(indice);
+        TipoPasto tipo = TipoPasto.daCodice(codice);
+        return tipo != null
+                ? new Rilevazione(data(indice), tipo, valore(indice), soglie)
+                : new Rilevazione(data(indice), etichetta(codice), valore(indice), soglie);
+    }
+
+    public long chiaveOrdinamento(int indice) {
+        return TipoPasto.chiaveOrdinamento(giorno(indice), codiceStandard(codicePasto(indice)));
+    }
+
+    /**
+     * Indici delle rilevazioni dalla più recente: giorno decrescente e, nello stesso giorno,
+     * dall'ultimo pasto al primo; a parità di giorno e pasto resta l'ordine di inserimento.
+     * Ordina un array di long (chiave nei bit alti, indice complementato nei 32 bassi).
+     */
+    public int[] indiciPiuRecenti() {
+        long[] ordinati = new long[size];
+        for (int i = 0; i < size; i++) {
+            ordinati[i] = chiaveOrdinamento(i) << 32 | (0xFFFFFFFFL - i);
+        }
+        Arrays.sort(ordinati);
+        int[] indici = new int[size];
+        for (int i = 0; i < size; i++) {
+            indici[i] = (int) (0xFFFFFFFFL - (ordinati[size - 1 - i] & 0xFFFFFFFFL));
+        }
+        return indici;
+    }
+
+    public SoglieGlicemiche.Fascia fascia(int indice) {
+        return soglie.fascia(codiceStandard(codicePasto(indice)), valore(indice));
+    }
+
+    // ============ SCRITTURA ============
+
+    public void aggiungi(Rilevazione rilevazione) {
+        inserisci(size, rilevazione);
+    }
+
+    /**
+     * Accoda una rilevazione già codificata.
+     *
+     * @param codicePasto codice di {@link TipoPasto}
+     */
+    public void aggiungi(int giorno, byte codicePasto, short valore) {
+        if (codicePasto < 1 || codicePasto > TipoPasto.ETICHETTE.size()) {
+            throw new IllegalArgumentException("Codice tipo pasto non valido: " + codicePasto);
+        }
+        assicuraCapacita(size + 1);
+        giorni[size] = giorno;
+        pasti[size] = codicePasto;
+        valori[size] = valore;
+        size++;
+    }
+
+    public void inserisci(int indice, Rilevazione rilevazione) {
+        Objects.checkIndex(indice, size + 1);
+        int giorno = (int) rilevazione.getData().toEpochDay();
+        byte codice = codifica(rilevazione);
+        short valore = valoreShort(rilevazione.getValore());
+
+        assicuraCapacita(size + 1);
+        int daSpostare = size - indice;
+        if (daSpostare > 0) {
+            System.arraycopy(giorni, indice, giorni, indice + 1, daSpostare);
+            System.arraycopy(pasti, indice, pasti, indice + 1, daSpostare);
+            System.arraycopy(valori, indice, valori, indice + 1, daSpostare);
+        }
+        giorni[indice] = giorno;
+        pasti[indice] = codice;
+        valori[indice] = valore;
+        size++;
+    }
+
+    public Rilevazione imposta(int indice, Rilevazione rilevazione) {
+        Rilevazione precedente = rilevazione(indice);
+        giorni[indice] = (int) rilevazione.getData().toEpochDay();
+        pasti[indice] = codifica(rilevazione);
+        valori[indice] = valoreShort(rilevazione.getValore());
+        return precedente;
+    }
+
+    public Rilevazione rimuovi(int indice) {
+        Rilevazione rimossa = rilevazione(indice);
+        int daSpostare = size - indice - 1;
+        if (daSpostare > 0) {
+            System.arraycopy(giorni, indice + 1, giorni, indice, daSpostare);
+            System.arraycopy(pasti, indice + 1, pasti, indice, daSpostare);
+            System.arraycopy(valori, indice + 1, valori, indice, daSpostare);
+        }
+        size--;
+        return rimossa;
+    }
+
+    public void svuota() {
+        size = 0;
+        giorni = GIORNI_VUOTI;
+        pasti = PASTI_VUOTI;
+        valori = VALORI_VUOTI;
+        altriTipiPasto = null;
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private void assicuraCapacita(int richiesta) {
+        if (richiesta <= giorni.length) return;
+        int capacita = Math.max(CAPACITA_INIZIALE, Math.max(richiesta, giorni.length + (giorni.length >> 1)));
+        giorni = Arrays.copyOf(giorni, capacita);
+        pasti = Arrays.copyOf(pasti, capacita);
+        valori = Arrays.copyOf(valori, capacita);
+    }
+
+    private byte codifica(Rilevazione rilevazione) {
+        if (rilevazione.getTipo() != null) return rilevazione.getCodicePasto();
+
+        String etichetta = Objects.requireNonNull(rilevazione.getTipoPasto(), "tipoPasto");
+        if (altriTipiPasto == null) altriTipiPasto = new ArrayList<>(2);
+        int posizione = altriTipiPasto.indexOf(etichetta);
+        if (posizione < 0) {
+            posizione = altriTipiPasto.size();
+            if (TipoPasto.ETICHETTE.size() + 1 + posizione > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Troppi tipi pasto non standard: " + etichetta);
+            }
+            altriTipiPasto.add(etichetta);
+        }
+        return (byte) (TipoPasto.ETICHETTE.size() + 1 + posizione);
+    }
+
+    private String etichetta(byte codice) {
+        int standard = TipoPasto.ETICHETTE.size();
+        return codice <= standard ? TipoPasto.etichetta(codice) : altriTipiPasto.get(codice - standard - 1);
+    }
+
+    private static byte codiceStandard(byte codice) {
+        return codice <= TipoPasto.ETICHETTE.size() ? codice : TipoPasto.SCONOSCIUTO;
+    }
+
+    private static short valoreShort(int valore) {
+        if (valore < Short.MIN_VALUE || valore > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Valore glicemico fuori range: " + valore);
+        }
+        return (short) valore;
+    }
+
+    /**
+     * Vista List&lt;Rilevazione&gt; modificabile sulla serie.
+     */
+    private final class Vista extends AbstractList<Rilevazione> implements RandomAccess {
+
+        @Override
+        public Rilevazione get(int index) {
+            return rilevazione(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Rilevazione set(int index, Rilevazione element) {
+            return imposta(index, element);
+        }
+
+        @Override
+        public void add(int index, Rilevazione element) {
+            inserisci(index, element);
+            modCount++;
+        }
+
+        @Override
+        public Rilevazione remove(int index) {
+            Rilevazione rimossa = rimuovi(index);
+            modCount++;
+            return rimossa;
+        }
+
+        @Override
+        public void clear() {
+            svuota();
+            modCount++;
+        }
+    }
+}
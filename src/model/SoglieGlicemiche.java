@@ -0,0 +1,141 @@
+package model;
+
+import java.util.Objects;
+
+/**
+ * Intervalli obiettivo della glicemia di un paziente, impostati dal diabetologo: minimo e massimo
+ * prima dei pasti, massimo dopo i pasti. Alla costruzione gli intervalli vengono compilati in una
+ * tabella codice pasto × valore, così classificazione ({@link Rilevazione#isFuoriRange()}) e
+ * colore delle righe nelle dashboard sono un solo accesso ad array e restano coerenti tra la
+ * vista del paziente e quella del medico.
+ * <p>
+ * Sopra il massimo la fascia è {@link Fascia#ALTA} fino a {@value #MARGINE_ALTA} mg/dL oltre il
+ * massimo, poi {@link Fascia#MOLTO_ALTA} fino a {@value #SOGLIA_GRAVE} mg/dL e {@link Fascia#GRAVE}
+ * oltre. I tipi di pasto non riconosciuti (codice 0) sono sempre in range. Immutabile.
+ */
+public final class SoglieGlicemiche {
+
+    public static final int MARGINE_ALTA = 50;
+    public static final int SOGLIA_GRAVE = 250;
+
+    /** Valore massimo distinto dalla tabella: i valori superiori cadono nell'ultima colonna. */
+    static final int VALORE_MASSIMO = 1023;
+
+    private static final int BIT_VALORE = 10;
+    private static final Fascia[] FASCE = Fascia.values();
+
+    /** Soglie usate finché il medico non ne imposta altre: 80-130 prima dei pasti, 130 dopo. */
+    public static final SoglieGlicemiche PREDEFINITE = new SoglieGlicemiche(80, 130, 130);
+
+    public enum Fascia {
+        BASSA("deepskyblue"),
+        IN_RANGE("lightgreen"),
+        ALTA("khaki"),
+        MOLTO_ALTA("orange"),
+        GRAVE("tomato");
+
+        private final String colore;
+
+        Fascia(String colore) {
+            this.colore = colore;
+        }
+
+        public String getColore() {
+            return colore;
+        }
+    }
+
+    private final int minimoPrimaPasto;
+    private final int massimoPrimaPasto;
+    private final int massimoDopoPasto;
+
+    // Indice: codice pasto << BIT_VALORE | valore; contenuto: ordinale della fascia
+    private final byte[] tabella = new byte[(TipoPasto.ETICHETTE.size() + 1) << BIT_VALORE];
+
+    public SoglieGlicemiche(int minimoPrimaPasto, int massimoPrimaPasto, int massimoDopoPasto) {
+        if (minimoPrimaPasto < 0 || minimoPrimaPasto > massimoPrimaPasto
+                || massimoPrimaPasto > VALORE_MASSIMO || massimoDopoPasto <= 0 || massimoDopoPasto > VALORE_MASSIMO) {
+            throw new IllegalArgumentException(String.format(
+                    "Intervalli glicemici non validi: prima dei pasti %d-%d, dopo i pasti fino a %d",
+                    minimoPrimaPasto, massimoPrimaPasto, massimoDopoPasto));
+        }
+        this.minimoPrimaPasto = minimoPrimaPasto;
+        this.massimoPrimaPasto = massimoPrimaPasto;
+        this.massimoDopoPasto = massimoDopoPasto;
+        compila();
+    }
+
+    public int getMinimoPrimaPasto() {
+        return minimoPrimaPasto;
+    }
+
+    public int getMassimoPrimaPasto() {
+        return massimoPrimaPasto;
+    }
+
+    public int getMassimoDopoPasto() {
+        return massimoDopoPasto;
+    }
+
+    /**
+     * @param codicePasto codice di {@link TipoPasto}; i codici non previsti sono trattati come 0
+     */
+    public Fascia fascia(byte codicePasto, int valore) {
+        int riga = codicePasto < 0 || codicePasto > TipoPasto.ETICHETTE.size() ? 0 : codicePasto;
+        int colonna = Math.max(0, Math.min(valore, VALORE_MASSIMO));
+        return FASCE[tabella[riga << BIT_VALORE | colonna]];
+    }
+
+    public Fascia fascia(String tipoPasto, int valore) {
+        return fascia(TipoPasto.codice(tipoPasto), valore);
+    }
+
+    public boolean isFuoriRange(byte codicePasto, int valore) {
+        return fascia(codicePasto, valore) != Fascia.IN_RANGE;
+    }
+
+    // ============ PRIVATE HELPERS ============
+
+    private void compila() {
+        for (TipoPasto tipo : TipoPasto.values()) {
+            int codice = tipo.getCodice();
+            boolean primaPasto = tipo.isPrimaPasto();
+            int minimo = primaPasto ? minimoPrimaPasto : 0;
+            int massimo = primaPasto ? massimoPrimaPasto : massimoDopoPasto;
+            for (int valore = 0; valore <= VALORE_MASSIMO; valore++) {
+                tabella[codice << BIT_VALORE | valore] = (byte) classifica(valore, minimo, massimo).ordinal();
+            }
+        }
+        for (int valore = 0; valore <= VALORE_MASSIMO; valore++) {
+            tabella[valore] = (byte) Fascia.IN_RANGE.ordinal();
+        }
+    }
+
+    private static Fascia classifica(int valore, int minimo, int massimo) {
+        if (valore < minimo) return Fascia.BASSA;
+        if (valore <= massimo) return Fascia.IN_RANGE;
+        if (valore <= massimo + MARGINE_ALTA) return Fascia.ALTA;
+        if (valore <= Math.max(SOGLIA_GRAVE, massimo + MARGINE_ALTA)) return Fascia.MOLTO_ALTA;
+        return Fascia.GRAVE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SoglieGlicemiche that)) return false;
+        return minimoPrimaPasto == that.minimoPrimaPasto
+                && massimoPrimaPasto == that.massimoPrimaPasto
+                && massimoDopoPasto == that.massimoDopoPasto;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(minimoPrimaPasto, massimoPrimaPasto, massimoDopoPasto);
+    }
+
+    @Override
+    public String toString() {
+        return "Prima dei pasti: " + minimoPrimaPasto + "-" + massimoPrimaPasto
+                + " mg/dL | Dopo i pasti: fino a " + massimoDopoPasto + " mg/dL";
+    }
+}
@@ -0,0 +1,98 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+
+/**
+ * Storico giornaliero dell'aderenza a una terapia: un bit per giorno di terapia, a 1 se in quel
+ * giorno le assunzioni registrate hanno raggiunto quelle prescritte. Il bit 0 è il giorno di inizio.
+ * <p>
+ * Viene mantenuto dal {@link Paziente} a ogni assunzione aggiunta o rimossa, così sequenze di
+ * giorni mancanti, percentuali di aderenza e mappe per calendario si ottengono con operazioni
+ * sui bit invece di riscandire le assunzioni. I giorni fuori dal periodo di terapia non contano.
+ * Non è thread-safe.
+ */
+public class StoricoAderenza {
+
+    private final long primoGiorno;
+    private final int giorniTerapia;
+    private final BitSet completi = new BitSet();
+
+    StoricoAderenza(LocalDate inizio, LocalDate fine) {
+        this.primoGiorno = inizio.toEpochDay();
+        this.giorniTerapia = (int) Math.max(0, fine.toEpochDay() - primoGiorno + 1);
+    }
+
+    void imposta(long giorno, boolean completo) {
+        long indice = giorno - primoGiorno;
+        if (indice < 0 || indice >= giorniTerapia) return;
+        completi.set((int) indice, completo);
+    }
+
+    public boolean isCompleto(LocalDate giorno) {
+        long indice = giorno.toEpochDay() - primoGiorno;
+        return indice >= 0 && indice < giorniTerapia && completi.get((int) indice);
+    }
+
+    /**
+     * Giorni incompleti consecutivi che terminano nel giorno indicato (incluso), senza risalire
+     * prima dell'inizio della terapia; 0 se il giorno è completo o fuori dal periodo di terapia.
+     */
+    public int mancantiConsecutivi(LocalDate fino) {
+        long indice = fino.toEpochDay() - primoGiorno;
+        if (indice < 0 || indice >= giorniTerapia) return 0;
+        return (int) indice - completi.previousSetBit((int) indice);
+    }
+
+    /**
+     * Sequenza più lunga di giorni incompleti consecutivi nell'intervallo (limitato al periodo di terapia).
+     */
+    public int sequenzaMancanteMassima(LocalDate da, LocalDate a) {
+        int[] limiti = limiti(da, a);
+        if (limiti == null) return 0;
+
+        int massima = 0;
+        int precedente = limiti[0] - 1;
+        for (int i = completi.nextSetBit(limiti[0]); i >= 0 && i <= limiti[1]; i = completi.nextSetBit(i + 1)) {
+            massima = Math.max(massima, i - precedente - 1);
+            precedente = i;
+        }
+        return Math.max(massima, limiti[1] - precedente);
+    }
+
+    /**
+     * Percentuale di giorni completi nell'intervallo (limitato al periodo di terapia), 0 se vuoto.
+     */
+    public double percentuale(LocalDate da, LocalDate a) {
+        int[] limiti = limiti(da, a);
+        if (limiti == null) return 0;
+        int giorni = limiti[1] - limiti[0] + 1;
+        return completi.get(limiti[0], limiti[1] + 1).cardinality() * 100.0 / giorni;
+    }
+
+    /**
+     * Mappa dei giorni completi nell'intervallo: il bit i corrisponde al giorno {@code da + i}.
+     * I giorni fuori dal periodo di terapia sono a 0.
+     */
+    public BitSet mappa(LocalDate da, LocalDate a) {
+        BitSet mappa = new BitSet();
+        int[] limiti = limiti(da, a);
+        if (limiti == null) return mappa;
+        int spostamento = (int) (primoGiorno + limiti[0] - da.toEpochDay());
+        BitSet periodo = completi.get(limiti[0], limiti[1] + 1);
+        for (int i = periodo.nextSetBit(0); i >= 0; i = periodo.nextSetBit(i + 1)) {
+            mappa.set(i + spostamento);
+        }
+        return mappa;
+    }
+
+    /**
+     * Indici dei bit dell'intervallo ristretto al periodo di terapia, null se non si sovrappongono.
+     */
+    private int[] limiti(LocalDate da, LocalDate a) {
+        long inizio = Math.max(0, da.toEpochDay() - primoGiorno);
+        long fine = Math.min(giorniTerapia - 1L, a.toEpochDay() - primoGiorno);
+        if (inizio > fine) return null;
+        return new int[]{(int) inizio, (int) fine};
+    }
+}
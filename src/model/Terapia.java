@@ -16,6 +16,9 @@ public class Terapia {
     public enum Stato { ATTIVA, IN_PAUSA, TERMINATA }
     private Stato stato;
 
+    // Costruito e aggiornato dal Paziente a partire dalle sue assunzioni
+    private StoricoAderenza storicoAderenza;
+
 
     public Terapia(String farmaco, int assunzioniGiornaliere, double quantitaPerAssunzione,
                    String indicazioni, LocalDate dataInizio, LocalDate dataFine,  Stato stato, int medicoId) {
@@ -72,6 +75,14 @@ public class Terapia {
         }
     }
 
+    StoricoAderenza getStoricoAderenza() {
+        return storicoAderenza;
+    }
+
+    void setStoricoAderenza(StoricoAderenza storicoAderenza) {
+        this.storicoAderenza = storicoAderenza;
+    }
+
     public boolean isAttiva() {
         aggiornaStatoAutomatico();
         return stato == Stato.ATTIVA;
@@ -0,0 +1,111 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tipo di pasto di una rilevazione, nell'ordine della giornata. Il codice a un byte (posizione
+ * a partire da 1, 0 per un tipo non riconosciuto) è quello salvato in {@link SerieGlicemica},
+ * nello snapshot e nell'archivio colonnare; l'etichetta è quella dei CSV e della UI. I metodi
+ * statici convertono tra etichetta e codice per i formati che non passano dall'enum.
+ * <p>
+ * {@link #chiaveOrdinamento} combina giorno e codice in un long: l'ordine naturale delle chiavi
+ * è l'ordine cronologico delle rilevazioni, e i tipi non riconosciuti vengono prima dei pasti
+ * dello stesso giorno.
+ */
+public enum TipoPasto {
+    PRIMA_COLAZIONE("Prima colazione", true),
+    DOPO_COLAZIONE("Dopo colazione", false),
+    PRIMA_PRANZO("Prima pranzo", true),
+    DOPO_PRANZO("Dopo pranzo", false),
+    PRIMA_CENA("Prima cena", true),
+    DOPO_CENA("Dopo cena", false);
+
+    public static final byte SCONOSCIUTO = 0;
+
+    private static final int BIT_CODICE = 3;
+    private static final TipoPasto[] VALORI = values();
+
+    /** Etichette dei tipi previsti, nell'ordine dei codici. */
+    public static final List<String> ETICHETTE = Arrays.stream(VALORI).map(TipoPasto::getEtichetta).toList();
+
+    private final String etichetta;
+    private final boolean primaPasto;
+
+    TipoPasto(String etichetta, boolean primaPasto) {
+        this.etichetta = etichetta;
+        this.primaPasto = primaPasto;
+    }
+
+    public byte getCodice() {
+        return (byte) (ordinal() + 1);
+    }
+
+    public String getEtichetta() {
+        return etichetta;
+    }
+
+    public boolean isPrimaPasto() {
+        return primaPasto;
+    }
+
+    /**
+     * @return il tipo con l'etichetta data, senza distinzione tra maiuscole e minuscole, o null
+     */
+    public static TipoPasto daEtichetta(String etichetta) {
+        if (etichetta == null) return null;
+        String valore = etichetta.trim();
+        for (TipoPasto tipo : VALORI) {
+            if (tipo.etichetta.equalsIgnoreCase(valore)) return tipo;
+        }
+        return null;
+    }
+
+    /**
+     * @return il tipo con il codice dato, o null per {@link #SCONOSCIUTO} e i codici non previsti
+     */
+    public static TipoPasto daCodice(byte codice) {
+        return codice < 1 || codice > VALORI.length ? null : VALORI[codice - 1];
+    }
+
+    /**
+     * @return il codice del tipo con l'etichetta data, {@link #SCONOSCIUTO} se non è prevista
+     */
+    public static byte codice(String etichetta) {
+        TipoPasto tipo = daEtichetta(etichetta);
+        return tipo == null ? SCONOSCIUTO : tipo.getCodice();
+    }
+
+    /**
+     * @throws IllegalArgumentException per {@link #SCONOSCIUTO} e i codici non previsti
+     */
+    public static String etichetta(byte codice) {
+        TipoPasto tipo = daCodice(codice);
+        if (tipo == null) {
+            throw new IllegalArgumentException("Codice tipo pasto non valido: " + codice);
+        }
+        return tipo.etichetta;
+    }
+
+    /**
+     * Posizione del pasto del giorno indicato nella sequenza di tutti i pasti (sei al giorno):
+     * la distanza tra due posizioni è il numero di pasti che le separano.
+     */
+    public long progressivo(long giorno) {
+        return giorno * VALORI.length + ordinal();
+    }
+
+    /**
+     * Chiave di ordinamento di una rilevazione: giorno (epoch day) nei bit alti, codice del pasto
+     * nei tre bit bassi. I codici oltre quelli previsti contano come {@link #SCONOSCIUTO}.
+     */
+    public static long chiaveOrdinamento(long giorno, byte codice) {
+        int pasto = codice < 1 || codice > VALORI.length ? SCONOSCIUTO : codice;
+        return giorno << BIT_CODICE | pasto;
+    }
+
+    @Override
+    public String toString() {
+        return etichetta;
+    }
+}
@@ -0,0 +1,117 @@
+import model.AppState;
+import model.BusNotifiche;
+import model.Notifica;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppStateTest {
+
+    private final AppState appState = AppState.getInstance();
+
+    @Test
+    @DisplayName("Test notifiche accodate da più thread e prelevate senza perdite")
+    void testProduttoriConcorrenti() throws InterruptedException {
+        // Arrange
+        String diabetologoId = "concorrenti";
+        int produttori = 8;
+        int perProduttore = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(produttori);
+        CountDownLatch via = new CountDownLatch(1);
+
+        // Act - i produttori accodano mentre il consumatore preleva
+        for (int p = 0; p < produttori; p++) {
+            int base = p * perProduttore;
+            executor.submit(() -> {
+                via.await();
+                for (int i = 0; i < perProduttore; i++) {
+                    appState.aggiungiNotificaAssunzione(diabetologoId,
+                            new Notifica.AssunzioniMancanti(base + i, "Nome", "Cognome", "Insulina", 3));
+                }
+                return null;
+            });
+        }
+        List<Notifica.AssunzioniMancanti> prelevate = new ArrayList<>();
+        via.countDown();
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            prelevate.addAll(appState.prelevaAssunzioniMancanti(diabetologoId));
+        }
+        prelevate.addAll(appState.prelevaAssunzioniMancanti(diabetologoId));
+
+        // Assert
+        Set<Integer> pazienti = new HashSet<>();
+        prelevate.forEach(n -> pazienti.add(n.pazienteId()));
+        assertEquals(produttori * perProduttore, prelevate.size());
+        assertEquals(produttori * perProduttore, pazienti.size());
+        assertEquals(0, appState.contaNotifichePendenti(diabetologoId));
+    }
+
+    @Test
+    @DisplayName("Test coda limitata: scartate le notifiche più vecchie oltre la capacità")
+    void testCodaLimitata() {
+        // Arrange
+        String diabetologoId = "capacita";
+        long scartatePrima = appState.getNotificheScartate();
+        int eccedenza = 5;
+
+        // Act
+        for (int i = 0; i < AppState.CAPACITA_CODA + eccedenza; i++) {
+            appState.aggiungiNotificaGlicemia(diabetologoId,
+                    new Notifica.GlicemiaFuoriRange(i, "Mario", "Rossi", 200, "Prima colazione", LocalDate.of(2024, 1, 1)));
+        }
+        int pendenti = appState.contaNotifichePendenti(diabetologoId);
+        List<String> messaggi = appState.prelevaNotificheGlicemia(diabetologoId);
+
+        // Assert
+        assertEquals(AppState.CAPACITA_CODA, pendenti);
+        assertEquals(eccedenza, appState.getNotificheScartate() - scartatePrima);
+        assertEquals(AppState.CAPACITA_CODA, messaggi.size());
+        assertEquals("Il paziente Mario Rossi ha registrato un valore di glicemia 200 mg/dL (Prima colazione) il 2024-01-01.",
+                messaggi.get(0));
+        assertTrue(appState.prelevaGlicemieFuoriRange(diabetologoId).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test consegna a blocchi alle dashboard iscritte tramite il loro executor")
+    void testConsegnaABlocchi() {
+        // Arrange - executor manuale al posto del thread JavaFX
+        String diabetologoId = "iscritto";
+        List<Runnable> programmate = new ArrayList<>();
+        List<List<Notifica>> ricevute = new ArrayList<>();
+        BusNotifiche.Sottoscrizione sottoscrizione =
+                appState.getBusNotifiche().sottoscrivi(diabetologoId, programmate::add, ricevute::add);
+
+        // Act - 50 notifiche prima che l'executor esegua la consegna
+        for (int i = 0; i < 50; i++) {
+            appState.aggiungiNotificaAssunzione(diabetologoId,
+                    new Notifica.AssunzioniMancanti(i, "Mario", "Rossi", "Insulina", 3));
+        }
+        programmate.remove(0).run();
+        appState.aggiungiNotificaGlicemia(diabetologoId,
+                new Notifica.GlicemiaFuoriRange(1, "Mario", "Rossi", 60, "Prima colazione", LocalDate.of(2024, 1, 1)));
+        sottoscrizione.annulla();
+        appState.aggiungiNotificaGlicemia(diabetologoId,
+                new Notifica.GlicemiaFuoriRange(2, "Mario", "Rossi", 60, "Prima colazione", LocalDate.of(2024, 1, 1)));
+        programmate.forEach(Runnable::run);
+
+        // Assert - una sola consegna per il primo blocco, nulla dopo l'annullamento
+        assertEquals(1, ricevute.size());
+        assertEquals(50, ricevute.get(0).size());
+        assertEquals(49, ricevute.get(0).get(49).pazienteId());
+        assertFalse(appState.getBusNotifiche().haIscritti(diabetologoId));
+        appState.prelevaAssunzioniMancanti(diabetologoId);
+        appState.prelevaGlicemieFuoriRange(diabetologoId);
+    }
+}
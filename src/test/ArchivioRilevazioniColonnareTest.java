@@ -0,0 +1,95 @@
+import controller.ArchivioRilevazioniColonnare;
+import controller.DataController;
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+class ArchivioRilevazioniColonnareTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path csvFile;
+    private Path colFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        csvFile = tempDir.resolve("rilevazioni.csv");
+        colFile = tempDir.resolve("rilevazioni.col");
+        Files.write(csvFile, List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,Prima colazione,120",
+                "2,2024-01-15,Dopo cena,190",
+                "1,2024-01-16,Dopo pranzo,150",
+                "2,2024-01-17,Merenda,100"
+        ));
+    }
+
+    @Test
+    @DisplayName("Test conversione da CSV e scansione di una sola colonna")
+    void testConversioneEScansioneColonna() throws IOException {
+        // Act
+        int convertite = ArchivioRilevazioniColonnare.converti(csvFile.toString(), colFile.toString());
+        ArchivioRilevazioniColonnare archivio = ArchivioRilevazioniColonnare.apri(colFile.toString());
+
+        // Assert - il tipo pasto sconosciuto viene scartato
+        assertEquals(3, convertite);
+        assertEquals(3, archivio.size());
+        assertEquals(4 + 4 + 4 + 3 * (4 + 4 + 1 + 2), Files.size(colFile));
+
+        ShortBuffer valori = archivio.valori();
+        int massimo = 0;
+        for (int i = 0; i < valori.limit(); i++) massimo = Math.max(massimo, valori.get(i));
+        assertEquals(190, massimo);
+
+        IntBuffer giorni = archivio.giorni();
+        assertEquals(LocalDate.of(2024, 1, 16).toEpochDay(), giorni.get(2));
+        assertEquals(TipoPasto.codice("Dopo cena"), archivio.codiciPasto().get(1));
+
+        Rilevazione prima = archivio.rilevazione(0);
+        assertEquals(LocalDate.of(2024, 1, 15), prima.getData());
+        assertEquals("Prima colazione", prima.getTipoPasto());
+        assertEquals(120, prima.getValore());
+    }
+
+    @Test
+    @DisplayName("Test caricamento e salvataggio nel formato colonnare")
+    void testDataControllerColonnare() throws IOException {
+        // Arrange
+        ArchivioRilevazioniColonnare.converti(csvFile.toString(), colFile.toString());
+        FilePathProvider paths = new FilePathProvider(tempDir.toString(), FilePathProvider.FormatoRilevazioni.COLONNARE);
+        DataController controller = new DataController(paths, DataController.ModalitaPersistenza.JOURNAL);
+        Paziente paziente1 = new Paziente(1, "Anna", "Verdi", "anna@test.com", "pass", 100);
+        Paziente paziente2 = new Paziente(2, "Marco", "Neri", "marco@test.com", "pass", 100);
+        List<Utente> utenti = new ArrayList<>(List.of(paziente1, paziente2));
+
+        // Act
+        int caricate = controller.caricaRilevazioni(paths.getRilevazioniFile(), utenti);
+        Rilevazione nuova = new Rilevazione(LocalDate.of(2024, 1, 18), "Prima cena", 95);
+        paziente1.aggiungiRilevazione(nuova);
+        controller.registraRilevazione(paziente1, nuova);
+
+        // Assert
+        assertEquals(3, caricate);
+        assertFalse(Files.exists(tempDir.resolve("rilevazioni.col.journal")));
+        assertEquals(4, ArchivioRilevazioniColonnare.apri(colFile.toString()).size());
+
+        controller.caricaDatiPaziente(paziente1);
+        assertEquals(List.of(120, 150, 95), paziente1.getRilevazioni().stream().map(Rilevazione::getValore).toList());
+        controller.caricaDatiPaziente(paziente2);
+        assertEquals(1, paziente2.getRilevazioni().size());
+    }
+}
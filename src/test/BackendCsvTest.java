@@ -0,0 +1,90 @@
+import controller.ArchivioEntita;
+import controller.BackendArchiviazione;
+import controller.BackendCsv;
+import controller.DataController;
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackendCsvTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FilePathProvider filePathProvider;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.write(tempDir.resolve("rilevazioni.csv"), List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,Prima colazione,120",
+                "2,2024-01-15,Pranzo,150",
+                "1,2024-01-16,Spuntino,135",
+                "1,2024-02-01,Dopo cena,170"
+        ));
+        filePathProvider = new FilePathProvider(tempDir.toString());
+    }
+
+    @Test
+    @DisplayName("Test caricamento per paziente e per periodo dal backend CSV")
+    void testCaricaPazienteEPeriodo() {
+        // Arrange
+        ArchivioEntita<Rilevazione> rilevazioni = new BackendCsv(filePathProvider).rilevazioni();
+
+        // Act
+        List<Rilevazione> tutte = rilevazioni.caricaPaziente(1);
+        List<Rilevazione> gennaio = rilevazioni.caricaPeriodo(1, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+
+        // Assert
+        assertEquals(List.of(120, 135, 170), tutte.stream().map(Rilevazione::getValore).toList());
+        assertEquals(List.of(120, 135), gennaio.stream().map(Rilevazione::getValore).toList());
+    }
+
+    @Test
+    @DisplayName("Test aggiunta, eliminazione e salvataggio in blocco senza toccare gli altri pazienti")
+    void testAggiungiEliminaSalva() {
+        // Arrange
+        ArchivioEntita<Rilevazione> rilevazioni = new BackendCsv(filePathProvider).rilevazioni();
+        Rilevazione spuntino = rilevazioni.caricaPaziente(1).get(1);
+
+        // Act
+        rilevazioni.aggiungi(1, new Rilevazione(LocalDate.of(2024, 2, 2), "Pranzo", 140));
+        rilevazioni.elimina(1, spuntino);
+        rilevazioni.salva(Map.of(2, List.of()));
+
+        // Assert
+        assertEquals(List.of(120, 170, 140), rilevazioni.caricaPaziente(1).stream().map(Rilevazione::getValore).toList());
+        assertTrue(rilevazioni.caricaPaziente(2).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test DataController sui CSV senza archiviazione.properties e migrazione tra backend")
+    void testBackendConfiguratoEMigrazione() throws IOException {
+        // Arrange
+        Path destinazioneDir = Files.createDirectory(tempDir.resolve("destinazione"));
+        Files.write(destinazioneDir.resolve("rilevazioni.csv"), List.of("pazienteId,data,tipoPasto,valore"));
+        FilePathProvider destinazione = new FilePathProvider(destinazioneDir.toString());
+        Paziente paziente = new Paziente(1, "Anna", "Verdi", "anna@test.com", "pass789");
+
+        // Act
+        BackendArchiviazione.migra(BackendArchiviazione.configurato(filePathProvider),
+                BackendArchiviazione.configurato(destinazione), List.of(paziente));
+        DataController dataController = new DataController(destinazione, DataController.ModalitaPersistenza.RISCRITTURA);
+        dataController.caricaDatiPaziente(paziente);
+
+        // Assert
+        assertFalse(dataController.isBackendEsterno());
+        assertEquals(List.of(120, 135, 170), paziente.getRilevazioni().stream().map(Rilevazione::getValore).toList());
+    }
+}
@@ -0,0 +1,122 @@
+import controller.ArchivioEntita;
+import controller.BackendArchiviazione;
+import controller.BackendCsv;
+import controller.BackendJdbc;
+import controller.DataController;
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackendJdbcTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String url;
+
+    @BeforeEach
+    void setUp() {
+        url = "jdbc:h2:file:" + tempDir.resolve("diabete").toAbsolutePath();
+    }
+
+    @Test
+    @DisplayName("Test salvataggio in blocco, caricamento per paziente e per periodo su H2")
+    void testSalvaECarica() {
+        // Arrange
+        ArchivioEntita<Terapia> terapie = BackendJdbc.per(url, "sa", "").terapie();
+        Terapia insulina = terapia("Insulina", null, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+        Terapia metformina = terapia("Metformina", "Dopo cena", LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31));
+
+        // Act
+        terapie.salva(Map.of(1, List.of(insulina, metformina), 2, List.of(metformina)));
+        List<Terapia> febbraioMarzo = terapie.caricaPeriodo(1, LocalDate.of(2024, 2, 1), LocalDate.of(2024, 3, 5));
+
+        // Assert
+        List<Terapia> paziente1 = terapie.caricaPaziente(1);
+        assertEquals(List.of("Insulina", "Metformina"), paziente1.stream().map(Terapia::getFarmaco).toList());
+        assertNull(paziente1.get(0).getIndicazioni());
+        assertEquals(LocalDate.of(2024, 3, 31), paziente1.get(1).getDataFine());
+        assertEquals(List.of("Metformina"), febbraioMarzo.stream().map(Terapia::getFarmaco).toList());
+
+        // Act - il salvataggio in blocco sostituisce solo i pazienti indicati
+        terapie.salva(Map.of(1, List.of()));
+
+        // Assert
+        assertTrue(terapie.caricaPaziente(1).isEmpty());
+        assertEquals(1, terapie.caricaPaziente(2).size());
+    }
+
+    @Test
+    @DisplayName("Test aggiunta ed eliminazione della prima entità uguale, anche con campi null")
+    void testAggiungiElimina() {
+        // Arrange
+        ArchivioEntita<Assunzione> assunzioni = BackendJdbc.per(url, "sa", "").assunzioni();
+        Assunzione mattina = new Assunzione(LocalDate.of(2024, 1, 15), LocalTime.of(8, 0), "Insulina", 10.0);
+        Assunzione sera = new Assunzione(LocalDate.of(2024, 1, 15), LocalTime.of(20, 0), "Insulina", 10.0);
+        ArchivioEntita<Terapia> terapie = BackendJdbc.per(url, "sa", "").terapie();
+        Terapia senzaIndicazioni = terapia("Insulina", null, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+
+        // Act
+        assunzioni.aggiungi(1, mattina);
+        assunzioni.aggiungi(1, sera);
+        assunzioni.aggiungi(1, mattina);
+        assunzioni.elimina(1, mattina);
+        assunzioni.elimina(1, new Assunzione(LocalDate.of(2024, 1, 16), LocalTime.of(8, 0), "Insulina", 10.0));
+        assunzioni.aggiungi(1, new Assunzione(LocalDate.of(2024, 1, 16), LocalTime.of(8, 0), "Metformina", 500.0));
+        terapie.aggiungi(1, senzaIndicazioni);
+        terapie.elimina(1, senzaIndicazioni);
+
+        // Assert - eliminata solo la prima assunzione uguale; quella mancante non cambia nulla
+        assertEquals(List.of(LocalTime.of(20, 0), LocalTime.of(8, 0), LocalTime.of(8, 0)),
+                assunzioni.caricaPaziente(1).stream().map(Assunzione::getOra).toList());
+        assertEquals(List.of("Insulina", "Insulina", "Metformina"),
+                assunzioni.caricaPaziente(1).stream().map(Assunzione::getFarmaco).toList());
+        assertTrue(terapie.caricaPaziente(1).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test migrazione dai CSV a H2, riapertura del database e DataController sul backend JDBC")
+    void testMigrazioneERiapertura() throws IOException {
+        // Arrange
+        Files.write(tempDir.resolve("rilevazioni.csv"), List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,Prima colazione,120",
+                "2,2024-01-15,Dopo pranzo,150",
+                "1,2024-02-01,Dopo cena,170"
+        ));
+        FilePathProvider filePathProvider = new FilePathProvider(tempDir.toString());
+        List<Paziente> pazienti = List.of(
+                new Paziente(1, "Anna", "Verdi", "anna@test.com", "pass789"),
+                new Paziente(2, "Marco", "Neri", "marco@test.com", "pass000"));
+
+        // Act - migrazione, poi un secondo URL sullo stesso database ne verifica le tabelle esistenti
+        BackendArchiviazione.migra(new BackendCsv(filePathProvider), BackendJdbc.per(url, "sa", ""), pazienti);
+        Files.delete(tempDir.resolve("rilevazioni.csv"));
+        Files.write(tempDir.resolve("archiviazione.properties"), List.of(
+                "backend=jdbc", "jdbc.url=" + url + ";IFEXISTS=TRUE", "jdbc.utente=sa", "jdbc.password="));
+        DataController dataController = new DataController(filePathProvider, DataController.ModalitaPersistenza.RISCRITTURA);
+        Paziente paziente = new Paziente(1, "Anna", "Verdi", "anna@test.com", "pass789");
+        dataController.caricaDatiPaziente(paziente);
+
+        // Assert
+        assertTrue(dataController.isBackendEsterno());
+        assertEquals(List.of(120, 170), paziente.getRilevazioni().stream().map(Rilevazione::getValore).toList());
+        assertEquals("Dopo cena", paziente.getRilevazioni().get(1).getTipoPasto());
+    }
+
+    private static Terapia terapia(String farmaco, String indicazioni, LocalDate inizio, LocalDate fine) {
+        return new Terapia(farmaco, 2, 10.0, indicazioni, inizio, fine, Terapia.Stato.ATTIVA, 900);
+    }
+}
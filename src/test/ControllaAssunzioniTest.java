@@ -148,6 +148,51 @@ class ControllaAssunzioniTest {
         assertFalse(controller.wasAlertShown(), "Non dovrebbero essere mostrati alert per terapie terminate");
     }
 
+    @Test
+    @DisplayName("Indice delle assunzioni: 5 anni di 4 assunzioni al giorno, conteggi per ricerca")
+    void testIndiceAssunzioni_CinqueAnni() {
+        // Arrange: 4 assunzioni di insulina al giorno per 5 anni
+        LocalDate inizio = dataOggi.minusYears(5);
+        int giorni = (int) (dataOggi.toEpochDay() - inizio.toEpochDay()) + 1;
+        for (int g = 0; g < giorni; g++) {
+            for (int ora = 8; ora < 24; ora += 4) {
+                pazienteTest.aggiungiAssunzione(new Assunzione(inizio.plusDays(g), LocalTime.of(ora, 0), FARMACO_INSULINA, 10.0));
+            }
+        }
+        pazienteTest.getAssunzioni().remove(pazienteTest.getAssunzioni().size() - 1);
+        addCompleteAssunzioniForDate(dataOggi.minusDays(1));
+
+        // Act: conteggio per ogni giorno con l'indice e con la scansione della lista
+        long inizioIndice = System.nanoTime();
+        long totaleIndice = 0;
+        for (int g = 0; g < giorni; g++) {
+            totaleIndice += pazienteTest.contaAssunzioni(FARMACO_INSULINA, inizio.plusDays(g));
+        }
+        long durataIndice = System.nanoTime() - inizioIndice;
+
+        long inizioScansione = System.nanoTime();
+        long totaleScansione = 0;
+        for (int g = 0; g < giorni; g++) {
+            LocalDate giorno = inizio.plusDays(g);
+            totaleScansione += pazienteTest.getAssunzioni().stream()
+                    .filter(a -> a.getFarmaco().equals(FARMACO_INSULINA) && a.getData().equals(giorno))
+                    .count();
+        }
+        long durataScansione = System.nanoTime() - inizioScansione;
+        System.out.printf("Conteggi su %d assunzioni: indice %d ms, scansione %d ms%n",
+                pazienteTest.getAssunzioni().size(), durataIndice / 1_000_000, durataScansione / 1_000_000);
+
+        // Assert
+        assertEquals(totaleScansione, totaleIndice);
+        assertEquals(3, pazienteTest.contaAssunzioni(FARMACO_INSULINA, dataOggi));
+        assertEquals(7, pazienteTest.contaAssunzioni(FARMACO_INSULINA, dataOggi.minusDays(1)));
+        assertEquals(2, pazienteTest.contaAssunzioni(FARMACO_METFORMINA, dataOggi.minusDays(1)));
+        assertEquals(0, pazienteTest.contaAssunzioni(FARMACO_INSULINA, inizio.minusDays(1)));
+
+        pazienteTest.getAssunzioni().clear();
+        assertEquals(0, pazienteTest.contaAssunzioni(FARMACO_INSULINA, dataOggi));
+    }
+
     private void addCompleteAssunzioniForDate(LocalDate data) {
         // Assunzioni complete per insulina (3 al giorno)
         pazienteTest.aggiungiAssunzione(new Assunzione(data, LocalTime.of(8, 0), FARMACO_INSULINA, 10.0));
@@ -0,0 +1,81 @@
+import controller.CsvFieldScanner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+class CsvFieldScannerTest {
+
+    private CsvFieldScanner scanner;
+
+    @BeforeEach
+    void setUp() {
+        scanner = new CsvFieldScanner();
+    }
+
+    @Test
+    @DisplayName("Test lettura campi tipizzati con spazi")
+    void testCampiTipizzati() {
+        scanner.reset(" 12 , 2024-01-15 ,Prima colazione, 120 ,-3.25,08:30");
+
+        assertEquals(6, scanner.contaCampi());
+        assertEquals(12, scanner.nextInt());
+        assertEquals(LocalDate.of(2024, 1, 15), scanner.nextDate());
+        assertEquals("Prima colazione", scanner.nextString());
+        assertEquals(120, scanner.nextInt());
+        assertEquals(-3.25, scanner.nextDouble());
+        assertEquals(LocalTime.of(8, 30), scanner.nextTime());
+        assertFalse(scanner.hasNext());
+    }
+
+    @Test
+    @DisplayName("Test double con la stessa precisione di Double.parseDouble")
+    void testDouble() {
+        String[] valori = {"0.1", "500.0", "1234.0", "0.3", "123456789.123", "1e3", "12345678901234567.5", "7"};
+        for (String valore : valori) {
+            assertEquals(Double.parseDouble(valore), scanner.reset(valore).nextDouble(), valore);
+        }
+        assertThrows(NumberFormatException.class, () -> scanner.reset("abc").nextDouble());
+        assertThrows(NumberFormatException.class, () -> scanner.reset("-").nextDouble());
+    }
+
+    @Test
+    @DisplayName("Test orari con secondi e nanosecondi")
+    void testOrari() {
+        assertEquals(LocalTime.of(18, 31, 1, 525354700), scanner.reset("18:31:01.525354700").nextTime());
+        assertEquals(LocalTime.of(18, 31, 1, 500_000_000), scanner.reset("18:31:01.5").nextTime());
+        assertEquals(LocalTime.of(7, 5, 9), scanner.reset("07:05:09").nextTime());
+        assertNull(scanner.reset("").nextTime());
+    }
+
+    @Test
+    @DisplayName("Test campi tra virgolette con virgole e virgolette interne")
+    void testCampiQuotati() {
+        scanner.reset("1,\"Dopo i pasti, con acqua\",\"detto \"\"piano\"\"\",");
+
+        assertEquals(4, scanner.contaCampi());
+        assertEquals(1, scanner.nextInt());
+        assertEquals("Dopo i pasti, con acqua", scanner.nextString());
+        assertEquals("detto \"piano\"", scanner.nextString());
+        assertTrue(scanner.nextIsEmpty());
+    }
+
+    @Test
+    @DisplayName("Test quote e rilettura")
+    void testQuoteRoundTrip() {
+        String[] valori = {"semplice", "con, virgola", "con \"virgolette\"", " spazio iniziale", ""};
+        for (String valore : valori) {
+            String riga = "7," + CsvFieldScanner.quote(valore) + ",fine";
+            scanner.reset(riga);
+            assertEquals(7, scanner.nextInt());
+            assertEquals(valore, scanner.nextString(), riga);
+            assertEquals("fine", scanner.nextString());
+        }
+        assertEquals("semplice", CsvFieldScanner.quote("semplice"));
+        assertEquals("riga uno riga due", CsvFieldScanner.quote("riga uno\nriga due"));
+    }
+}
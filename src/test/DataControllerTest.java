@@ -1,4 +1,5 @@
 import controller.DataController;
+import controller.ScritturaAtomica;
 import model.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -316,32 +317,63 @@ class DataControllerTest {
     }
 
     @Test
-    @DisplayName("Test createPazientiMap con reflection")
-    void testCreatePazientiMap() {
-        try {
-            // Accesso al metodo privato createPazientiMap
-            java.lang.reflect.Method method = DataController.class
-                    .getDeclaredMethod("createPazientiMap", List.class);
-            method.setAccessible(true);
-
-            // Act
-            @SuppressWarnings("unchecked")
-            Map<Integer, Paziente> pazientiMap = (Map<Integer, Paziente>) method.invoke(dataController, utentiTest);
+    @DisplayName("Test registro pazienti indicizzato per ID")
+    void testRegistroPazienti() {
+        // Act
+        RegistroPazienti registro = RegistroPazienti.da(utentiTest);
 
-            // Assert
-            assertEquals(2, pazientiMap.size()); // Solo i pazienti
-            assertTrue(pazientiMap.containsKey(1));
-            assertTrue(pazientiMap.containsKey(2));
-            assertFalse(pazientiMap.containsKey(100)); // Non contiene medici
+        // Assert
+        assertEquals(2, registro.size()); // Solo i pazienti
+        assertTrue(registro.contiene(1));
+        assertTrue(registro.contiene(2));
+        assertFalse(registro.contiene(100)); // Non contiene medici
 
-            Paziente paziente1 = pazientiMap.get(1);
-            assertNotNull(paziente1);
-            assertEquals("Anna", paziente1.getNome());
-            assertEquals("Verdi", paziente1.getCognome());
+        Paziente paziente1 = registro.get(1);
+        assertNotNull(paziente1);
+        assertEquals("Anna", paziente1.getNome());
+        assertEquals("Verdi", paziente1.getCognome());
 
-        } catch (Exception e) {
-            fail("Errore nell'accesso al metodo privato createPazientiMap: " + e.getMessage());
+        // Inserimenti oltre la capacità iniziale e rimozioni
+        for (int id = 1000; id < 1100; id++) {
+            registro.registra(new Paziente(id, "Nome" + id, "Cognome", id + "@test.com", "pwd", 100));
+        }
+        assertEquals(102, registro.size());
+        for (int id = 1000; id < 1100; id += 2) {
+            assertNotNull(registro.rimuovi(id));
+        }
+        assertEquals(52, registro.size());
+        for (int id = 1000; id < 1100; id++) {
+            assertEquals(id % 2 == 1, registro.contiene(id), "ID " + id);
         }
+        assertEquals("Anna", registro.get(1).getNome());
+    }
+
+    @Test
+    @DisplayName("Test registro condiviso costruito da caricaUtenti")
+    void testRegistroCondivisoDaCaricaUtenti() throws IOException {
+        // Arrange
+        Path utentiFile = tempDir.resolve("utenti_registro.csv");
+        Files.write(utentiFile, List.of(
+                "id,tipo,nome,cognome,email,password,medicoId",
+                "100,Diabetologo,Mario,Rossi,mario@test.com,pass123",
+                "1,Paziente,Anna,Verdi,anna@test.com,pass789,100"
+        ));
+        Path rilevazioniFile = tempDir.resolve("rilevazioni_registro.csv");
+        Files.write(rilevazioniFile, List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,Prima colazione,120"
+        ));
+
+        // Act
+        List<Utente> utenti = dataController.caricaUtenti(utentiFile.toString());
+        int caricate = dataController.caricaRilevazioni(rilevazioniFile.toString(), utenti);
+
+        // Assert
+        Paziente paziente = DataController.trovaPaziente(1);
+        assertNotNull(paziente);
+        assertSame(utenti.get(1), paziente);
+        assertEquals(1, caricate);
+        assertEquals(1, paziente.getRilevazioni().size());
     }
 
     @Test
@@ -397,4 +429,331 @@ class DataControllerTest {
         assertEquals(1, utenti.size()); // Solo l'utente valido dovrebbe essere caricato
         assertEquals("Luigi", utenti.get(0).getNome());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test modalità journal: append, tombstone e compattazione")
+    void testModalitaJournal() throws IOException {
+        // Arrange
+        Path rilevazioniFile = tempDir.resolve("rilevazioni.csv");
+        Files.write(rilevazioniFile, List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,Prima colazione,120",
+                "2,2024-01-16,Prima colazione,110"
+        ));
+        DataController journalController = new DataController(
+                new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.JOURNAL);
+        Paziente paziente1 = (Paziente) utentiTest.get(2);
+        Rilevazione esistente = new Rilevazione(LocalDate.of(2024, 1, 15), "Prima colazione", 120);
+        Rilevazione nuova = new Rilevazione(LocalDate.of(2024, 1, 16), "Dopo pranzo", 150);
+
+        // Act
+        journalController.registraRilevazione(paziente1, nuova);
+        journalController.eliminaRilevazione(paziente1, esistente);
+
+        // Assert - il file canonico non viene riscritto
+        assertEquals(3, Files.readAllLines(rilevazioniFile).size());
+        assertTrue(Files.exists(tempDir.resolve("rilevazioni.csv.journal")));
+
+        // Il caricamento applica il journal
+        journalController.caricaRilevazioni(rilevazioniFile.toString(), utentiTest);
+        assertEquals(1, paziente1.getRilevazioni().size());
+        assertEquals(150, paziente1.getRilevazioni().get(0).getValore());
+
+        // La compattazione riporta il journal nel CSV
+        journalController.compattaJournal();
+        assertFalse(Files.exists(tempDir.resolve("rilevazioni.csv.journal")));
+        assertEquals(List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "2,2024-01-16,Prima colazione,110",
+                "1,2024-01-16,Dopo pranzo,150"
+        ), Files.readAllLines(rilevazioniFile));
+    }
+
+    @Test
+    @DisplayName("Test salvataggio e caricamento di campi con virgole")
+    void testCampiConVirgole() throws IOException {
+        // Arrange
+        DataController tempController = new DataController(
+                new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.RISCRITTURA);
+        Paziente paziente1 = (Paziente) utentiTest.get(2);
+        paziente1.aggiungiTerapia(new Terapia("Metformina", 2, 500.0, "Dopo i pasti, con acqua",
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), Terapia.Stato.ATTIVA, 100));
+
+        // Act
+        tempController.salvaTerapie(List.of(paziente1));
+        paziente1.getTerapie().clear();
+        tempController.caricaTerapie(tempDir.resolve("terapie.csv").toString(), utentiTest);
+
+        // Assert
+        assertEquals(1, paziente1.getTerapie().size());
+        assertEquals("Dopo i pasti, con acqua", paziente1.getTerapie().get(0).getIndicazioni());
+        assertEquals(100, paziente1.getTerapie().get(0).getMedicoId());
+    }
+
+    @Test
+    @DisplayName("Test caricamento parallelo di un file rilevazioni di grandi dimensioni")
+    void testCaricaRilevazioniFileGrande() throws IOException {
+        // Arrange - file oltre la soglia di mappatura, con un tombstone nel journal
+        Path rilevazioniFile = tempDir.resolve("rilevazioni.csv");
+        LocalDate inizio = LocalDate.of(2000, 1, 1);
+        int righe = 400_000;
+        try (BufferedWriter bw = Files.newBufferedWriter(rilevazioniFile)) {
+            bw.write("pazienteId,data,tipoPasto,valore");
+            bw.newLine();
+            for (int i = 0; i < righe; i++) {
+                bw.write((i % 2 + 1) + "," + inizio.plusDays(i / 2) + ",Prima colazione," + (70 + i % 200));
+                bw.newLine();
+            }
+        }
+        assertTrue(Files.size(rilevazioniFile) > 8L * 1024 * 1024);
+        Files.write(tempDir.resolve("rilevazioni.csv.journal"), List.of(
+                "-1," + inizio + ",Prima colazione,70",
+                "+1,2099-01-01,Dopo cena,150"
+        ));
+        Paziente paziente1 = (Paziente) utentiTest.get(2);
+        Paziente paziente2 = (Paziente) utentiTest.get(3);
+
+        // Act
+        int caricate = dataController.caricaRilevazioni(rilevazioniFile.toString(), utentiTest);
+
+        // Assert - ordine del file preservato, tombstone e aggiunte del journal applicati
+        assertEquals(righe, caricate);
+        assertEquals(righe / 2, paziente1.getRilevazioni().size());
+        assertEquals(righe / 2, paziente2.getRilevazioni().size());
+        assertEquals(inizio.plusDays(1), paziente1.getRilevazioni().get(0).getData());
+        assertEquals(LocalDate.of(2099, 1, 1), paziente1.getRilevazioni().get(righe / 2 - 1).getData());
+        for (int i = 1; i < righe / 2; i++) {
+            assertEquals(inizio.plusDays(i), paziente2.getRilevazioni().get(i).getData());
+        }
+    }
+
+    @Test
+    @DisplayName("Test caricamento dei soli dati di un paziente tramite indice")
+    void testCaricaDatiPaziente() throws IOException {
+        // Arrange
+        Files.write(tempDir.resolve("rilevazioni.csv"), List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,Prima colazione,120",
+                "2,2024-01-15,Prima colazione,99",
+                "1,2024-01-16,Dopo pranzo,150"
+        ));
+        Files.write(tempDir.resolve("terapie.csv"), List.of(
+                "pazienteId,farmaco,assunzioniGiornaliere,quantitaPerAssunzione,indicazioni,dataInizio,dataFine,stato,medicoId",
+                "2,Insulina,3,10.0,Prima dei pasti,2024-01-01,2024-12-31,ATTIVA,200",
+                "1,Metformina,2,500.0,Dopo i pasti,2024-01-01,2024-12-31,ATTIVA,100"
+        ));
+        Files.write(tempDir.resolve("schede_cliniche.csv"), List.of(
+                "pazienteId,fattoriRischio,pregressePatologie,comorbidita",
+                "1,Fumo,Nessuna,Ipertensione"
+        ));
+        DataController journalController = new DataController(
+                new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.JOURNAL);
+        Paziente paziente1 = (Paziente) utentiTest.get(2);
+        Paziente paziente2 = (Paziente) utentiTest.get(3);
+
+        // Act
+        journalController.caricaDatiPaziente(paziente1);
+
+        // Assert - solo le righe del paziente, nell'ordine del file
+        assertEquals(2, paziente1.getRilevazioni().size());
+        assertEquals(120, paziente1.getRilevazioni().get(0).getValore());
+        assertEquals(150, paziente1.getRilevazioni().get(1).getValore());
+        assertEquals(1, paziente1.getTerapie().size());
+        assertEquals("Metformina", paziente1.getTerapie().get(0).getFarmaco());
+        assertEquals("Fumo", paziente1.getSchedaClinica().getFattoriRischio());
+        assertTrue(paziente2.getRilevazioni().isEmpty());
+
+        // Le modifiche nel journal e le riscritture del file sono visibili al caricamento successivo
+        journalController.eliminaRilevazione(paziente1, paziente1.getRilevazioni().get(0));
+        journalController.registraRilevazione(paziente1, new Rilevazione(LocalDate.of(2024, 1, 17), "Dopo cena", 170));
+        journalController.caricaDatiPaziente(paziente1);
+        assertEquals(List.of(150, 170), paziente1.getRilevazioni().stream().map(Rilevazione::getValore).toList());
+
+        journalController.caricaDatiPaziente(paziente2);
+        paziente2.aggiungiRilevazione(new Rilevazione(LocalDate.of(2024, 1, 18), "Prima cena", 88));
+        journalController.salvaRilevazioni(List.of(paziente2));
+        journalController.caricaDatiPaziente(paziente1);
+        journalController.caricaDatiPaziente(paziente2);
+        assertEquals(List.of(150, 170), paziente1.getRilevazioni().stream().map(Rilevazione::getValore).toList());
+        assertEquals(2, paziente2.getRilevazioni().size());
+    }
+
+    @Test
+    @DisplayName("Test salvataggio tramite indice per paziente")
+    void testSalvataggioConIndice() throws IOException {
+        // Arrange
+        Path rilevazioniFile = tempDir.resolve("rilevazioni.csv");
+        Files.write(rilevazioniFile, List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,Prima colazione,120",
+                "2,2024-01-15,Prima colazione,99",
+                "1,2024-01-16,Dopo pranzo,150",
+                "2,2024-01-16,Dopo cena,140"
+        ));
+        DataController tempController = new DataController(
+                new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.RISCRITTURA);
+        Paziente paziente1 = (Paziente) utentiTest.get(2);
+        Paziente paziente2 = (Paziente) utentiTest.get(3);
+        tempController.caricaDatiPaziente(paziente1);
+
+        // Act
+        paziente1.aggiungiRilevazione(new Rilevazione(LocalDate.of(2024, 1, 17), "Dopo cena", 170));
+        tempController.salvaRilevazioni(List.of(paziente1));
+
+        // Assert - righe degli altri pazienti copiate nell'ordine originale, paziente modificato in fondo
+        assertEquals(List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "2,2024-01-15,Prima colazione,99",
+                "2,2024-01-16,Dopo cena,140",
+                "1,2024-01-15,Prima colazione,120",
+                "1,2024-01-16,Dopo pranzo,150",
+                "1,2024-01-17,Dopo cena,170"
+        ), Files.readAllLines(rilevazioniFile));
+        assertTrue(Files.exists(tempDir.resolve("rilevazioni.csv.idx")));
+
+        // L'indice aggiornato punta alle nuove posizioni
+        tempController.caricaDatiPaziente(paziente1);
+        tempController.caricaDatiPaziente(paziente2);
+        assertEquals(List.of(120, 150, 170), paziente1.getRilevazioni().stream().map(Rilevazione::getValore).toList());
+        assertEquals(List.of(99, 140), paziente2.getRilevazioni().stream().map(Rilevazione::getValore).toList());
+    }
+
+    @Test
+    @DisplayName("Test salvataggio atomico con fsync: nessun file temporaneo residuo")
+    void testSalvataggioAtomicoConFsync() throws IOException {
+        // Arrange
+        Path terapieFile = tempDir.resolve("terapie.csv");
+        Files.write(terapieFile, List.of(
+                "pazienteId,farmaco,assunzioniGiornaliere,quantitaPerAssunzione,indicazioni,dataInizio,dataFine,stato,medicoId",
+                "2,Insulina,3,10.0,Prima dei pasti,2024-01-01,2024-12-31,ATTIVA,200"
+        ));
+        DataController tempController = new DataController(
+                new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.RISCRITTURA);
+        Paziente paziente1 = (Paziente) utentiTest.get(2);
+        paziente1.aggiungiTerapia(new Terapia("Metformina", 2, 500.0, "Dopo i pasti",
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 6, 30), Terapia.Stato.ATTIVA, 100));
+
+        // Act
+        ScritturaAtomica.configura(ScritturaAtomica.Durabilita.FSYNC);
+        try {
+            tempController.salvaTerapie(List.of(paziente1));
+        } finally {
+            ScritturaAtomica.configura(ScritturaAtomica.Durabilita.NESSUNA);
+        }
+
+        // Assert
+        List<String> righe = Files.readAllLines(terapieFile);
+        assertEquals(3, righe.size());
+        assertTrue(righe.get(1).startsWith("2,Insulina"));
+        assertTrue(righe.get(2).startsWith("1,Metformina"));
+        assertFalse(Files.exists(tempDir.resolve("terapie.csv.tmp")));
+    }
+
+    @Test
+    @DisplayName("Test partizioni mensili: query per intervallo e salvataggio solo dei mesi toccati")
+    void testPartizioniMensili() throws IOException {
+        // Arrange
+        Files.write(tempDir.resolve("rilevazioni.csv"), List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,Prima colazione,120",
+                "2,2024-01-20,Pranzo,99",
+                "1,2024-02-03,Spuntino,135",
+                "1,2024-03-10,Dopo cena,170"
+        ));
+        DataController tempController = new DataController(
+                new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.JOURNAL);
+        Paziente paziente1 = (Paziente) utentiTest.get(2);
+
+        // Act
+        int partizioni = tempController.partizionaPerMese();
+        List<Rilevazione> febbraio = tempController.caricaRilevazioni(1, LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29));
+        tempController.caricaDatiPaziente(paziente1);
+        paziente1.getRilevazioni().remove(1);
+        tempController.salvaRilevazioni(List.of(paziente1));
+        Rilevazione aprile = new Rilevazione(LocalDate.of(2024, 4, 2), "Pranzo", 140);
+        paziente1.aggiungiRilevazione(aprile);
+        tempController.registraRilevazione(paziente1, aprile);
+
+        // Assert
+        assertEquals(3, partizioni);
+        assertFalse(Files.exists(tempDir.resolve("rilevazioni.csv")));
+        assertEquals(List.of(135), febbraio.stream().map(Rilevazione::getValore).toList());
+        assertEquals(List.of("pazienteId,data,tipoPasto,valore"), Files.readAllLines(tempDir.resolve("rilevazioni/2024-02.csv")));
+        assertTrue(Files.exists(tempDir.resolve("rilevazioni/2024-04.csv.journal")));
+        assertEquals(List.of(120, 170, 140), tempController.caricaRilevazioni(1, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31))
+                .stream().map(Rilevazione::getValore).toList());
+        assertEquals(List.of(99), tempController.caricaRilevazioni(2, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31))
+                .stream().map(Rilevazione::getValore).toList());
+    }
+
+    @Test
+    @DisplayName("Test partizionamento annullato con una riga senza data valida")
+    void testPartizioniRigaSenzaData() throws IOException {
+        // Arrange
+        List<String> righe = List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,Prima colazione,120",
+                "1,15/02/2024,Dopo pranzo,135"
+        );
+        Files.write(tempDir.resolve("rilevazioni.csv"), righe);
+        DataController tempController = new DataController(
+                new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.JOURNAL);
+
+        // Act
+        int partizioni = tempController.partizionaPerMese();
+
+        // Assert - il file originale resta intatto e non viene creata la cartella
+        assertEquals(0, partizioni);
+        assertEquals(righe, Files.readAllLines(tempDir.resolve("rilevazioni.csv")));
+        assertFalse(Files.exists(tempDir.resolve("rilevazioni")));
+
+        // Act - su file già partizionato un salvataggio con una riga senza data non tocca le partizioni
+        Files.write(tempDir.resolve("rilevazioni.csv"), righe.subList(0, 2));
+        assertEquals(1, tempController.partizionaPerMese());
+        tempController.salvaRighe(DataController.TipoEntita.RILEVAZIONI,
+                Map.of(1, List.of("1,,Prima colazione,90")));
+
+        // Assert
+        assertEquals(righe.subList(0, 2), Files.readAllLines(tempDir.resolve("rilevazioni/2024-01.csv")));
+    }
+
+    @Test
+    @DisplayName("Test tombstone applicato a righe scritte a mano in forma diversa da quella del programma")
+    void testTombstoneRigheNonCanoniche() throws IOException {
+        // Arrange - quantità senza decimali, ora con i secondi, tipo pasto in minuscolo
+        Files.write(tempDir.resolve("assunzioni.csv"), List.of(
+                "pazienteId,data,ora,farmaco,quantita",
+                "1,2024-01-15,08:00:00,Insulina,12",
+                "1,2024-01-15,20:00,Insulina,12.0"
+        ));
+        Files.write(tempDir.resolve("rilevazioni.csv"), List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,prima colazione,120",
+                "2,2024-01-15,prima colazione,120"
+        ));
+        DataController journalController = new DataController(
+                new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.JOURNAL);
+        Paziente paziente1 = (Paziente) utentiTest.get(2);
+        journalController.caricaDatiPaziente(paziente1);
+
+        // Act
+        journalController.eliminaAssunzione(paziente1, paziente1.getAssunzioni().get(0));
+        journalController.eliminaRilevazione(paziente1, paziente1.getRilevazioni().get(0));
+
+        // Assert - le righe eliminate non tornano, né per paziente né nel caricamento completo
+        Paziente ricaricato = new Paziente(1, "Anna", "Verdi", "anna@test.com", "pass789", 100);
+        journalController.caricaDatiPaziente(ricaricato);
+        assertEquals(List.of(LocalTime.of(20, 0)), ricaricato.getAssunzioni().stream().map(Assunzione::getOra).toList());
+        assertTrue(ricaricato.getRilevazioni().isEmpty());
+
+        Paziente anna = new Paziente(1, "Anna", "Verdi", "anna@test.com", "pass789", 100);
+        Paziente marco = new Paziente(2, "Marco", "Neri", "marco@test.com", "pass000", 200);
+        journalController.caricaRilevazioni(tempDir.resolve("rilevazioni.csv").toString(), List.of(anna, marco));
+        assertTrue(anna.getRilevazioni().isEmpty());
+        assertEquals(1, marco.getRilevazioni().size());
+
+        journalController.compattaJournal();
+        assertEquals(List.of("pazienteId,data,ora,farmaco,quantita", "1,2024-01-15,20:00,Insulina,12.0"),
+                Files.readAllLines(tempDir.resolve("assunzioni.csv")));
+    }
+}
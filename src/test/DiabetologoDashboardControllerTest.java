@@ -290,7 +290,7 @@ class DiabetologoDashboardControllerTest {
     }
 
     private boolean isGlicemiaFuoriRange(Rilevazione rilevazione) {
-        boolean isPrePasto = rilevazione.getTipoPasto().toLowerCase().contains("prima");
+        boolean isPrePasto = rilevazione.getTipo() != null && rilevazione.getTipo().isPrimaPasto();
         int valore = rilevazione.getValore();
 
         if (isPrePasto) {
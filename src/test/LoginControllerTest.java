@@ -0,0 +1,134 @@
+import controller.LoginController;
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class LoginControllerTest {
+
+    private LoginController loginController;
+
+    @BeforeEach
+    void setUp() {
+        List<Utente> utenti = new ArrayList<>();
+        utenti.add(new Diabetologo(100, "Mario", "Rossi", "Mario.Rossi@Test.com", "pass123"));
+        utenti.add(new Paziente(1, "Anna", "Verdi", "anna@test.com", "pass789", 100));
+        loginController = new LoginController(utenti);
+    }
+
+    @Test
+    @DisplayName("Test login con email case-insensitive")
+    void testLoginEmailCaseInsensitive() {
+        Utente utente = loginController.login("  mario.rossi@TEST.com ", "pass123");
+
+        assertNotNull(utente);
+        assertEquals(100, utente.getId());
+    }
+
+    @Test
+    @DisplayName("Test login con password errata")
+    void testLoginPasswordErrata() {
+        assertNull(loginController.login("anna@test.com", "PASS789"));
+        assertNull(loginController.login("sconosciuto@test.com", "pass789"));
+    }
+
+    @Test
+    @DisplayName("Test registrazione utente aggiorna l'indice email")
+    void testRegistraUtente() {
+        Paziente nuovo = new Paziente(2, "Marco", "Neri", "marco@test.com", "pass000", 100);
+
+        assertFalse(loginController.esisteUtente("marco@test.com"));
+        assertTrue(loginController.registraUtente(nuovo));
+        assertTrue(loginController.esisteUtente("MARCO@test.com"));
+        assertSame(nuovo, loginController.login("marco@test.com", "pass000"));
+
+        // Email già presente
+        assertFalse(loginController.registraUtente(
+                new Paziente(3, "Altro", "Utente", "Marco@Test.com", "x", 100)));
+        assertEquals(3, loginController.getUtenti().size());
+    }
+
+    @Test
+    @DisplayName("Benchmark login con 100.000 utenti")
+    void testBenchmarkLogin100kUtenti() {
+        final int numeroUtenti = 100_000;
+        List<Utente> utenti = new ArrayList<>(numeroUtenti);
+        for (int i = 0; i < numeroUtenti; i++) {
+            utenti.add(new Paziente(i, "Nome" + i, "Cognome" + i, "utente" + i + "@clinica.it", "pwd" + i, 0));
+        }
+
+        Logger logger = Logger.getLogger(LoginController.class.getName());
+        Level livelloPrecedente = logger.getLevel();
+        logger.setLevel(Level.WARNING); // evita un log INFO per ogni login
+        try {
+            LoginController controller = new LoginController(utenti);
+
+            // Warm-up
+            for (int i = 0; i < 20_000; i++) {
+                controller.login("utente" + i + "@clinica.it", "pwd" + i);
+            }
+
+            long inizio = System.nanoTime();
+            for (int i = 0; i < numeroUtenti; i++) {
+                Utente utente = controller.login("UTENTE" + i + "@clinica.it", "pwd" + i);
+                assertEquals(i, utente.getId());
+            }
+            long nanosPerLogin = (System.nanoTime() - inizio) / numeroUtenti;
+
+            System.out.println("Login con " + numeroUtenti + " utenti: " + nanosPerLogin + " ns/login");
+            // Con la ricerca lineare servivano in media 50.000 confronti per login
+            assertTrue(nanosPerLogin < 50_000, "Login troppo lento: " + nanosPerLogin + " ns");
+        } finally {
+            logger.setLevel(livelloPrecedente);
+        }
+    }
+
+    @Test
+    @DisplayName("Test storico dell'aderenza dopo il caricamento parallelo di terapie e assunzioni")
+    void testStoricoAderenzaDopoCaricamentoParallelo(@TempDir Path tempDir) throws IOException {
+        // Arrange - 200 pazienti con 5 terapie da 30 giorni, assunzioni complete nei giorni pari
+        LocalDate inizio = LocalDate.of(2025, 1, 1);
+        List<String> utenti = new ArrayList<>(List.of("id,type,nome,cognome,email,password,medicoId",
+                "1000,Diabetologo,Luigi,Bianchi,dottore@test.com,abcd,"));
+        List<String> terapie = new ArrayList<>(List.of(
+                "pazienteId,farmaco,assunzioniGiornaliere,quantitaPerAssunzione,indicazioni,dataInizio,dataFine,stato,medicoId"));
+        List<String> assunzioni = new ArrayList<>(List.of("pazienteId,data,ora,farmaco,quantita"));
+        for (int p = 1; p <= 200; p++) {
+            utenti.add(p + ",Paziente,Nome" + p + ",Cognome" + p + ",p" + p + "@test.com,pwd,1000");
+            for (int f = 0; f < 5; f++) {
+                terapie.add(p + ",Farmaco" + f + ",1,10.0,," + inizio + "," + inizio.plusDays(29) + ",ATTIVA,1000");
+                for (int giorno = 0; giorno < 30; giorno += 2) {
+                    assunzioni.add(p + "," + inizio.plusDays(giorno) + ",08:00,Farmaco" + f + ",10.0");
+                }
+            }
+        }
+        Files.write(tempDir.resolve("utenti.csv"), utenti);
+        Files.write(tempDir.resolve("terapie.csv"), terapie);
+        Files.write(tempDir.resolve("assunzioni.csv"), assunzioni);
+
+        // Act
+        LoginController controller = new LoginController(new FilePathProvider(tempDir.toString()), true, false, false);
+
+        // Assert - ogni storico vede tutte le assunzioni caricate
+        BitSet attesa = new BitSet();
+        for (int giorno = 0; giorno < 30; giorno += 2) attesa.set(giorno);
+        Paziente paziente = (Paziente) controller.login("p137@test.com", "pwd");
+        assertEquals(5, paziente.getTerapie().size());
+        for (Terapia terapia : paziente.getTerapie()) {
+            assertEquals(attesa, paziente.getStoricoAderenza(terapia).mappa(inizio, inizio.plusDays(29)));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import controller.DataController;
+import controller.MotoreAderenza;
+import model.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MotoreAderenzaTest {
+
+    private static final LocalDate OGGI = LocalDate.now();
+
+    private final MotoreAderenza motore = new MotoreAderenza();
+
+    @AfterEach
+    void tearDown() {
+        motore.chiudi();
+    }
+
+    @Test
+    @DisplayName("Test esiti per terapia: assunzioni di oggi e giorni consecutivi mancanti")
+    void testValuta() {
+        // Arrange
+        Paziente paziente = paziente(1, 900);
+        paziente.aggiungiTerapia(new Terapia("Metformina", 1, 500.0, "Dopo cena",
+                OGGI.minusDays(2), OGGI.plusDays(30), Terapia.Stato.ATTIVA, 900));
+        paziente.aggiungiTerapia(new Terapia("Aspirina", 1, 100.0, "Mattino",
+                OGGI.minusDays(30), OGGI.plusDays(30), Terapia.Stato.TERMINATA, 900));
+        paziente.aggiungiAssunzione(new Assunzione(OGGI, LocalTime.of(8, 0), "Insulina", 10.0));
+        paziente.aggiungiAssunzione(new Assunzione(OGGI, LocalTime.of(20, 0), "Metformina", 500.0));
+
+        // Act
+        List<MotoreAderenza.Esito> esiti = MotoreAderenza.valuta(paziente, OGGI);
+
+        // Assert - insulina: 1 di 3 oggi, nessuna nei 3 giorni precedenti; metformina iniziata da 2 giorni
+        assertEquals(2, esiti.size());
+        assertEquals(1, esiti.get(0).assunzioniOggi());
+        assertTrue(esiti.get(0).incompletaOggi());
+        assertTrue(esiti.get(0).giorniMancanti());
+        assertFalse(esiti.get(1).incompletaOggi());
+        assertFalse(esiti.get(1).giorniMancanti());
+    }
+
+    @Test
+    @DisplayName("Test controllo parallelo di 100.000 pazienti con notifiche ai medici")
+    void testControllaTuttiCentomilaPazienti() {
+        // Arrange - un paziente su 10 senza assunzioni negli ultimi 3 giorni
+        int numeroPazienti = 100_000;
+        List<Paziente> pazienti = new ArrayList<>(numeroPazienti);
+        for (int id = 1; id <= numeroPazienti; id++) {
+            Paziente paziente = paziente(id, 900 + id % 2);
+            if (id % 10 != 0) {
+                for (int giorno = 0; giorno <= MotoreAderenza.GIORNI_CONSECUTIVI_MANCANTI; giorno++) {
+                    for (int ora = 8; ora <= 20; ora += 6) {
+                        paziente.aggiungiAssunzione(new Assunzione(OGGI.minusDays(giorno), LocalTime.of(ora, 0), "Insulina", 10.0));
+                    }
+                }
+            }
+            pazienti.add(paziente);
+        }
+        AppState.getInstance().prelevaNotificheAssunzioni("900");
+        AppState.getInstance().prelevaNotificheAssunzioni("901");
+        long scartatePrima = AppState.getInstance().getNotificheScartate();
+
+        // Act
+        MotoreAderenza.Metriche metriche = motore.controllaTutti(pazienti, OGGI);
+        System.out.println("Controllo aderenza: " + metriche);
+
+        // Assert
+        assertEquals(numeroPazienti, metriche.pazienti());
+        assertEquals(numeroPazienti, metriche.terapieAttive());
+        assertEquals(numeroPazienti / 10, metriche.notifiche());
+        assertSame(metriche, motore.getUltimeMetriche());
+        // La coda del medico trattiene solo le notifiche più recenti
+        List<String> notifiche = AppState.getInstance().prelevaNotificheAssunzioni("900");
+        assertEquals(AppState.CAPACITA_CODA, notifiche.size());
+        assertEquals(numeroPazienti / 10 - AppState.CAPACITA_CODA, AppState.getInstance().getNotificheScartate() - scartatePrima);
+        assertTrue(notifiche.get(notifiche.size() - 1).contains("Nome100000 Cognome100000"));
+        assertTrue(AppState.getInstance().prelevaNotificheAssunzioni("901").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test una sola notifica per episodio di giorni mancanti, anche con controlli ripetuti")
+    void testDeduplicazioneEpisodi() {
+        // Arrange - nessuna assunzione da 5 giorni
+        Paziente paziente = paziente(200_001, 902);
+        Terapia terapia = paziente.getTerapie().get(0);
+        for (int ora = 8; ora <= 20; ora += 6) {
+            paziente.aggiungiAssunzione(new Assunzione(OGGI.minusDays(6), LocalTime.of(ora, 0), "Insulina", 10.0));
+        }
+        AppState.getInstance().prelevaNotificheAssunzioni("902");
+
+        // Act - il controllo eseguito molte volte nella stessa giornata
+        int notifiche = 0;
+        for (int i = 0; i < 1000; i++) {
+            notifiche += motore.controllaTutti(List.of(paziente), OGGI).notifiche();
+        }
+        MotoreAderenza.Esito esito = MotoreAderenza.valuta(paziente, OGGI).get(0);
+
+        // Assert
+        assertEquals(1, notifiche);
+        assertEquals(1, AppState.getInstance().prelevaNotificheAssunzioni("902").size());
+        assertEquals(OGGI.minusDays(5), esito.inizioEpisodio());
+        assertFalse(MotoreAderenza.daNotificare(esito, OGGI));
+
+        // Act - giornate complete oggi e domani: le mancanze successive sono un nuovo episodio
+        for (int giorno = 0; giorno <= 1; giorno++) {
+            for (int ora = 8; ora <= 20; ora += 6) {
+                paziente.aggiungiAssunzione(new Assunzione(OGGI.plusDays(giorno), LocalTime.of(ora, 0), "Insulina", 10.0));
+            }
+        }
+        MotoreAderenza.Esito nuovo = MotoreAderenza.valuta(paziente, OGGI.plusDays(5)).get(0);
+
+        // Assert
+        assertEquals(terapia, nuovo.terapia());
+        assertEquals(OGGI.plusDays(2), nuovo.inizioEpisodio());
+        assertTrue(MotoreAderenza.daNotificare(nuovo, OGGI.plusDays(5)));
+        assertFalse(MotoreAderenza.daNotificare(nuovo, OGGI.plusDays(6)));
+    }
+
+    @Test
+    @DisplayName("Test episodio di 40 giorni visto dalla dashboard e dal controllo sull'archivio: una notifica")
+    void testEpisodioLungoDashboardEArchivio(@TempDir Path tempDir) throws IOException {
+        // Arrange - ultima giornata completa 41 giorni fa, prima della finestra riletta dall'archivio
+        List<String> terapie = new ArrayList<>(List.of(
+                "pazienteId,farmaco,assunzioniGiornaliere,quantitaPerAssunzione,indicazioni,dataInizio,dataFine,stato,medicoId"));
+        List<String> assunzioni = new ArrayList<>(List.of("pazienteId,data,ora,farmaco,quantita"));
+        List<Paziente> pazienti = List.of(paziente(200_002, 904), paziente(200_003, 904));
+        for (Paziente paziente : pazienti) {
+            terapie.add(paziente.getId() + ",Insulina,3,10.0,Prima dei pasti," + OGGI.minusDays(60) + ","
+                    + OGGI.plusDays(60) + ",ATTIVA,904");
+            for (int ora = 8; ora <= 20; ora += 6) {
+                paziente.aggiungiAssunzione(new Assunzione(OGGI.minusDays(41), LocalTime.of(ora, 0), "Insulina", 10.0));
+                assunzioni.add(paziente.getId() + "," + OGGI.minusDays(41) + "," + LocalTime.of(ora, 0) + ",Insulina,10.0");
+            }
+        }
+        Files.write(tempDir.resolve("terapie.csv"), terapie);
+        Files.write(tempDir.resolve("assunzioni.csv"), assunzioni);
+        MotoreAderenza archivio = new MotoreAderenza(
+                new DataController(new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.JOURNAL), 2);
+        AppState.getInstance().prelevaNotificheAssunzioni("904");
+
+        try {
+            // Act - primo paziente: prima la dashboard, poi il controllo; secondo paziente al contrario
+            MotoreAderenza.Esito dashboard = MotoreAderenza.valuta(pazienti.get(0), OGGI).get(0);
+            boolean primaDashboard = MotoreAderenza.daNotificare(dashboard, OGGI);
+            int primoControllo = archivio.controllaTutti(List.of(pazienti.get(0)), OGGI).notifiche();
+            int secondoControllo = archivio.controllaTutti(List.of(pazienti.get(1)), OGGI).notifiche();
+            boolean secondaDashboard = MotoreAderenza.daNotificare(MotoreAderenza.valuta(pazienti.get(1), OGGI).get(0), OGGI);
+            int giornoDopo = archivio.controllaTutti(pazienti, OGGI.plusDays(1)).notifiche();
+            boolean dashboardGiornoDopo = MotoreAderenza.daNotificare(
+                    MotoreAderenza.valuta(pazienti.get(0), OGGI.plusDays(1)).get(0), OGGI.plusDays(1));
+
+            // Assert - una notifica per paziente in tutto
+            assertEquals(OGGI.minusDays(40), dashboard.inizioEpisodio());
+            assertTrue(primaDashboard);
+            assertEquals(0, primoControllo);
+            assertEquals(1, secondoControllo);
+            assertFalse(secondaDashboard);
+            assertEquals(0, giornoDopo);
+            assertFalse(dashboardGiornoDopo);
+            assertEquals(1, AppState.getInstance().prelevaNotificheAssunzioni("904").size());
+        } finally {
+            archivio.chiudi();
+        }
+    }
+
+    @Test
+    @DisplayName("Test episodi notificati conservati su file dopo il riavvio")
+    void testEpisodiNotificatiDopoRiavvio(@TempDir Path tempDir) throws IOException {
+        // Arrange - nessuna assunzione da 5 giorni
+        Paziente paziente = paziente(200_004, 906);
+        for (int ora = 8; ora <= 20; ora += 6) {
+            paziente.aggiungiAssunzione(new Assunzione(OGGI.minusDays(6), LocalTime.of(ora, 0), "Insulina", 10.0));
+        }
+        String file = tempDir.resolve("episodi_notificati.csv").toString();
+        Files.write(tempDir.resolve("episodi_notificati.csv"), List.of("123,1", "troncat"));
+
+        try {
+            // Act - notifica, poi riavvio simulato riaprendo l'archivio il giorno dopo
+            MotoreAderenza.apriArchivioEpisodi(file, OGGI);
+            boolean primaDelRiavvio = MotoreAderenza.daNotificare(MotoreAderenza.valuta(paziente, OGGI).get(0), OGGI);
+            MotoreAderenza.apriArchivioEpisodi(file, OGGI.plusDays(1));
+            boolean dopoIlRiavvio = MotoreAderenza.daNotificare(
+                    MotoreAderenza.valuta(paziente, OGGI.plusDays(1)).get(0), OGGI.plusDays(1));
+            List<String> righe = Files.readAllLines(tempDir.resolve("episodi_notificati.csv"));
+            MotoreAderenza.apriArchivioEpisodi(tempDir.resolve("vuoto.csv").toString(), OGGI.plusDays(1));
+            boolean senzaArchivio = MotoreAderenza.daNotificare(
+                    MotoreAderenza.valuta(paziente, OGGI.plusDays(1)).get(0), OGGI.plusDays(1));
+
+            // Assert - righe scadute e troncate scartate alla riapertura, proroga accodata
+            assertTrue(primaDelRiavvio);
+            assertFalse(dopoIlRiavvio);
+            assertEquals(2, righe.size());
+            assertTrue(righe.get(1).endsWith("," + OGGI.plusDays(1 + MotoreAderenza.SCADENZA_EPISODIO_GIORNI).toEpochDay()));
+            assertTrue(senzaArchivio);
+        } finally {
+            MotoreAderenza.chiudiTutti();
+        }
+    }
+
+    private static Paziente paziente(int id, int medicoId) {
+        Paziente paziente = new Paziente(id, "Nome" + id, "Cognome" + id, "p" + id + "@test.com", "pass", medicoId);
+        paziente.aggiungiTerapia(new Terapia("Insulina", 3, 10.0, "Prima dei pasti",
+                OGGI.minusDays(60), OGGI.plusDays(60), Terapia.Stato.ATTIVA, medicoId));
+        return paziente;
+    }
+}
@@ -0,0 +1,98 @@
+import controller.MotoreRegoleGlicemia;
+import model.*;
+import model.Notifica.AndamentoGlicemico.Regola;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MotoreRegoleGlicemiaTest {
+
+    private static final LocalDate GIORNO = LocalDate.of(2024, 3, 1);
+
+    private final MotoreRegoleGlicemia motore = new MotoreRegoleGlicemia();
+    private Paziente paziente;
+
+    @BeforeEach
+    void setUp() {
+        paziente = new Paziente(1, "Mario", "Rossi", "mario@test.com", "pass", 900);
+    }
+
+    @Test
+    @DisplayName("Test tre ipoglicemie entro 24 ore: allarme solo se nella finestra")
+    void testIpoglicemieRipetute() {
+        // Arrange & Act - due ipoglicemie il primo giorno, la terza due giorni dopo (fuori finestra)
+        List<Regola> regole = new ArrayList<>();
+        regole.addAll(regole(registra(GIORNO, TipoPasto.PRIMA_COLAZIONE, 60)));
+        regole.addAll(regole(registra(GIORNO, TipoPasto.PRIMA_CENA, 65)));
+        regole.addAll(regole(registra(GIORNO.plusDays(2), TipoPasto.PRIMA_COLAZIONE, 62)));
+        assertTrue(regole.isEmpty());
+
+        // Act - altre due nello stesso giorno: tre entro sei pasti
+        regole.addAll(regole(registra(GIORNO.plusDays(2), TipoPasto.PRIMA_PRANZO, 64)));
+        regole.addAll(regole(registra(GIORNO.plusDays(2), TipoPasto.PRIMA_CENA, 66)));
+
+        // Assert
+        assertEquals(List.of(Regola.IPOGLICEMIE_RIPETUTE), regole);
+    }
+
+    @Test
+    @DisplayName("Test iperglicemie post-prandiali consecutive e rialzo progressivo allo stesso pasto")
+    void testIperglicemieERialzo() {
+        // Arrange - cinque post-prandiali fuori range, interrotte una volta da un valore normale
+        int[] valori = {190, 200, 120, 185, 195, 205, 210};
+        List<Regola> regole = new ArrayList<>();
+        for (int i = 0; i < valori.length; i++) {
+            regole.addAll(regole(registra(GIORNO.plusDays(i), TipoPasto.DOPO_CENA, valori[i])));
+        }
+        regole.addAll(regole(registra(GIORNO.plusDays(7), TipoPasto.DOPO_CENA, 215)));
+
+        // Assert - la quinta consecutiva è all'ottavo giorno; il rialzo 120→185→195→205 al sesto
+        assertEquals(List.of(Regola.RIALZO_PROGRESSIVO, Regola.IPERGLICEMIE_POST_PASTO), regole);
+    }
+
+    @Test
+    @DisplayName("Test riproduzione dello storico: stessi allarmi della valutazione in streaming")
+    void testRigioca() {
+        // Arrange - un anno di rilevazioni con ipoglicemie e rialzi periodici
+        List<Notifica> inStreaming = new ArrayList<>();
+        for (int giorno = 0; giorno < 365; giorno++) {
+            for (TipoPasto pasto : TipoPasto.values()) {
+                int valore = giorno % 30 == 0 && pasto.isPrimaPasto() ? 60 : 100 + (giorno % 7) * 10;
+                inStreaming.addAll(registra(GIORNO.plusDays(giorno), pasto, valore));
+            }
+        }
+        // Rilevazione inserita in ritardo: solo la notifica del valore fuori range
+        List<Notifica> ritardo = registra(GIORNO.plusDays(10), TipoPasto.PRIMA_COLAZIONE, 50);
+
+        // Act
+        paziente.getRilevazioni().remove(paziente.getRilevazioni().size() - 1);
+        List<Notifica> rigiocate = MotoreRegoleGlicemia.rigioca(paziente);
+
+        // Assert
+        assertEquals(inStreaming, rigiocate);
+        assertTrue(inStreaming.stream().anyMatch(n -> n instanceof Notifica.AndamentoGlicemico a
+                && a.regola() == Regola.IPOGLICEMIE_RIPETUTE));
+        assertEquals(1, ritardo.size());
+        assertInstanceOf(Notifica.GlicemiaFuoriRange.class, ritardo.get(0));
+    }
+
+    private List<Notifica> registra(LocalDate data, TipoPasto tipoPasto, int valore) {
+        Rilevazione rilevazione = new Rilevazione(data, tipoPasto, valore);
+        paziente.aggiungiRilevazione(rilevazione);
+        return motore.valuta(paziente, rilevazione);
+    }
+
+    private static List<Regola> regole(List<Notifica> notifiche) {
+        List<Regola> regole = new ArrayList<>();
+        for (Notifica notifica : notifiche) {
+            if (notifica instanceof Notifica.AndamentoGlicemico a) regole.add(a.regola());
+        }
+        return regole;
+    }
+}
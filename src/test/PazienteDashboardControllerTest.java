@@ -2,12 +2,19 @@ import model.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
+import controller.DataController;
+import controller.MotoreRegoleGlicemia;
 import controller.PazienteDashboardController;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.List;
 
 class PazienteDashboardControllerTest {
 
@@ -258,4 +265,33 @@ class PazienteDashboardControllerTest {
                         !oggi.isAfter(t.getDataFine()));
         assertFalse(ibuprofenoValido);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test sessione paziente con gli obiettivi glicemici impostati dal medico")
+    void testCaricamentoObiettiviGlicemici(@TempDir Path tempDir) throws IOException {
+        // Arrange - obiettivi personalizzati: 100-140 prima dei pasti, fino a 180 dopo
+        Files.write(tempDir.resolve("rilevazioni.csv"), List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "456,2024-01-15,Dopo pranzo,170",
+                "456,2024-01-15,Prima cena,95"
+        ));
+        Files.write(tempDir.resolve("schede_cliniche.csv"), List.of(
+                "pazienteId,fattoriRischio,pregressePatologie,comorbidita,glicemiaPrimaPastoMin,glicemiaPrimaPastoMax,glicemiaDopoPastoMax",
+                "456,,,,100,140,180"
+        ));
+        PazienteDashboardController sessione = new PazienteDashboardController(
+                new DataController(new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.JOURNAL));
+
+        // Act
+        sessione.caricaDatiPaziente(paziente);
+        List<Rilevazione> rilevazioni = paziente.getRilevazioni();
+
+        // Assert - stessa classificazione della dashboard del medico
+        assertEquals(new SoglieGlicemiche(100, 140, 180), paziente.getSoglieGlicemiche());
+        assertEquals(SoglieGlicemiche.Fascia.IN_RANGE, rilevazioni.get(0).getFascia());
+        assertEquals(SoglieGlicemiche.Fascia.BASSA, rilevazioni.get(1).getFascia());
+        Rilevazione nuova = new Rilevazione(LocalDate.of(2024, 1, 16), "Dopo cena", 175);
+        paziente.aggiungiRilevazione(nuova);
+        assertTrue(new MotoreRegoleGlicemia().valuta(paziente, nuova).isEmpty());
+    }
+}
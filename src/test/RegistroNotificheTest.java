@@ -0,0 +1,125 @@
+import controller.RegistroNotifiche;
+import model.FilePathProvider;
+import model.Notifica;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegistroNotificheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FilePathProvider filePathProvider;
+
+    @BeforeEach
+    void setUp() {
+        filePathProvider = new FilePathProvider(tempDir.toString());
+    }
+
+    @Test
+    @DisplayName("Test notifiche e cursori dei lettori conservati dopo la riapertura del registro")
+    void testPersistenzaECursori() throws IOException {
+        // Arrange - 25 notifiche al diabetologo 900, una al 901
+        try (RegistroNotifiche registro = new RegistroNotifiche(filePathProvider)) {
+            for (int i = 0; i < 25; i++) {
+                registro.aggiungi("900", new Notifica.AssunzioniMancanti(i, "Mario, detto \"Super\"", "Rossi", "Insulina", 3));
+            }
+            registro.aggiungi("901", new Notifica.GlicemiaFuoriRange(7, "Anna", "Bianchi", 210, "Dopo pranzo", LocalDate.of(2024, 3, 5)));
+
+            // Act - il primo lettore legge una pagina
+            List<RegistroNotifiche.Voce> pagina = registro.nonLette("finestra-1", "900", 10);
+            registro.segnaLette("finestra-1", pagina.get(pagina.size() - 1).offset());
+        }
+
+        // Assert - dopo la riapertura ogni lettore riprende dal proprio cursore
+        try (RegistroNotifiche registro = new RegistroNotifiche(filePathProvider)) {
+            assertEquals(25, registro.conta("900"));
+            assertEquals(15, registro.contaNonLette("finestra-1", "900"));
+            assertEquals(25, registro.contaNonLette("finestra-2", "900"));
+
+            List<RegistroNotifiche.Voce> successive = registro.nonLette("finestra-1", "900", 10);
+            assertEquals(10, successive.get(0).notifica().pazienteId());
+            assertEquals("Mario, detto \"Super\"", ((Notifica.AssunzioniMancanti) successive.get(0).notifica()).nome());
+
+            RegistroNotifiche.Voce glicemia = registro.nonLette("finestra-1", "901", 10).get(0);
+            assertEquals(25, glicemia.offset());
+            assertEquals(new Notifica.GlicemiaFuoriRange(7, "Anna", "Bianchi", 210, "Dopo pranzo", LocalDate.of(2024, 3, 5)),
+                    glicemia.notifica());
+
+            // Il cursore non torna indietro
+            registro.segnaLette("finestra-1", 3);
+            assertEquals(10, registro.getCursore("finestra-1"));
+        }
+    }
+
+    @Test
+    @DisplayName("Test storico a pagine all'indietro e ultima riga troncata scartata")
+    void testStoricoERigaTroncata() throws IOException {
+        // Arrange
+        try (RegistroNotifiche registro = new RegistroNotifiche(filePathProvider)) {
+            for (int i = 0; i < 12; i++) {
+                registro.aggiungi("900", new Notifica.AssunzioniMancanti(i, "Mario", "Rossi", "Insulina", 3));
+            }
+        }
+        // Interruzione durante la scrittura di una notifica
+        Files.writeString(Path.of(filePathProvider.getRegistroNotificheFile()), "900,17000",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (RegistroNotifiche registro = new RegistroNotifiche(filePathProvider)) {
+            // Act
+            List<RegistroNotifiche.Voce> recenti = registro.storico("900", Long.MAX_VALUE, 5);
+            List<RegistroNotifiche.Voce> precedenti = registro.storico("900", recenti.get(recenti.size() - 1).offset(), 5);
+            long offsetNuova = registro.aggiungi("900", new Notifica.AssunzioniMancanti(99, "Mario", "Rossi", "Insulina", 3));
+
+            // Assert
+            assertEquals(List.of(11L, 10L, 9L, 8L, 7L), recenti.stream().map(RegistroNotifiche.Voce::offset).toList());
+            assertEquals(List.of(6L, 5L, 4L, 3L, 2L), precedenti.stream().map(RegistroNotifiche.Voce::offset).toList());
+            assertEquals(12, offsetNuova);
+            assertEquals(99, registro.pagina("900", 12, 5).get(0).notifica().pazienteId());
+        }
+    }
+
+    @Test
+    @DisplayName("Test finestre dello stesso diabetologo con cursori indipendenti e cursore del medico persistente")
+    void testLettoriInMemoria() throws IOException {
+        try (RegistroNotifiche registro = new RegistroNotifiche(filePathProvider)) {
+            // Arrange - due finestre aperte per il diabetologo 900
+            for (int i = 0; i < 6; i++) {
+                registro.aggiungi("900", new Notifica.AssunzioniMancanti(i, "Mario", "Rossi", "Insulina", 3));
+            }
+            registro.apriLettore("diabetologo-900-a", "diabetologo-900");
+            registro.apriLettore("diabetologo-900-b", "diabetologo-900");
+
+            // Act - la prima finestra legge quattro notifiche
+            registro.segnaLette("diabetologo-900-a", 3);
+
+            // Assert - la seconda finestra non perde le sue
+            assertEquals(2, registro.contaNonLette("diabetologo-900-a", "900"));
+            assertEquals(6, registro.contaNonLette("diabetologo-900-b", "900"));
+            assertEquals(4, registro.getCursore("diabetologo-900"));
+            registro.chiudiLettore("diabetologo-900-a");
+            registro.chiudiLettore("diabetologo-900-b");
+        }
+
+        // Dopo la riapertura una nuova finestra parte dal cursore del medico
+        try (RegistroNotifiche registro = new RegistroNotifiche(filePathProvider)) {
+            registro.apriLettore("diabetologo-900-c", "diabetologo-900");
+            assertEquals(2, registro.contaNonLette("diabetologo-900-c", "900"));
+            assertEquals(0, registro.getCursore("diabetologo-900-a"));
+            assertFalse(Files.readString(Path.of(filePathProvider.getCursoriNotificheFile()))
+                    .contains("diabetologo-900-a"));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import controller.DataController;
+import controller.SalvataggioDifferito;
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SalvataggioDifferitoTest {
+
+    @TempDir
+    Path tempDir;
+
+    private DataController dataController;
+    private Paziente paziente;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.write(tempDir.resolve("rilevazioni.csv"), List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "2,2024-01-15,Prima colazione,99"
+        ));
+        dataController = new DataController(
+                new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.RISCRITTURA);
+        paziente = new Paziente(1, "Anna", "Verdi", "anna@test.com", "pass789", 100);
+    }
+
+    @Test
+    @DisplayName("Test salvataggi ripetuti raggruppati in una sola scrittura al flush")
+    void testSalvataggiRaggruppati() throws IOException {
+        // Arrange - finestra lunga: nessuna scrittura prima del flush
+        SalvataggioDifferito salvataggio = new SalvataggioDifferito(dataController, 60_000);
+        Rilevazione prima = new Rilevazione(LocalDate.of(2024, 1, 16), "Dopo pranzo", 150);
+        Rilevazione seconda = new Rilevazione(LocalDate.of(2024, 1, 17), "Dopo cena", 170);
+
+        // Act
+        paziente.aggiungiRilevazione(prima);
+        salvataggio.registraRilevazione(paziente, prima);
+        paziente.aggiungiRilevazione(seconda);
+        salvataggio.registraRilevazione(paziente, seconda);
+        paziente.getRilevazioni().remove(prima);
+        salvataggio.eliminaRilevazione(paziente, prima);
+
+        // Assert
+        assertEquals(1, salvataggio.getScrittureInSospeso());
+        assertEquals(2, Files.readAllLines(tempDir.resolve("rilevazioni.csv")).size());
+
+        salvataggio.chiudi();
+        assertEquals(0, salvataggio.getScrittureInSospeso());
+        assertEquals(List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "2,2024-01-15,Prima colazione,99",
+                "1,2024-01-17,Dopo cena,170"
+        ), Files.readAllLines(tempDir.resolve("rilevazioni.csv")));
+    }
+
+    @Test
+    @DisplayName("Test operazioni di journal applicate alla riga già in coda")
+    void testJournalSuRigheInCoda() throws IOException {
+        // Arrange
+        DataController journalController = new DataController(
+                new FilePathProvider(tempDir.toString()), DataController.ModalitaPersistenza.JOURNAL);
+        SalvataggioDifferito salvataggio = new SalvataggioDifferito(journalController, 60_000);
+        Assunzione assunzione = new Assunzione(LocalDate.of(2024, 1, 15), LocalTime.of(8, 0), "Metformina", 500);
+
+        // Act - un'assunzione singola va nel journal, dopo uno snapshot viene fusa con esso
+        salvataggio.salva(DataController.TipoEntita.ASSUNZIONI, paziente);
+        paziente.aggiungiAssunzione(assunzione);
+        salvataggio.registraAssunzione(paziente, assunzione);
+        salvataggio.flush();
+
+        // Assert
+        assertEquals(0, salvataggio.getScrittureInSospeso());
+        Paziente ricaricato = new Paziente(1, "Anna", "Verdi", "anna@test.com", "pass789", 100);
+        journalController.caricaAssunzioni(tempDir.resolve("assunzioni.csv").toString(), List.of(ricaricato));
+        assertEquals(1, ricaricato.getAssunzioni().size());
+        assertEquals("Metformina", ricaricato.getAssunzioni().get(0).getFarmaco());
+        salvataggio.chiudi();
+    }
+
+    @Test
+    @DisplayName("Test richieste rimesse in coda dopo una scrittura non riuscita")
+    void testScritturaFallitaRimessaInCoda() throws IOException {
+        // Arrange - il file delle rilevazioni non è scrivibile (al suo posto c'è una cartella)
+        SalvataggioDifferito salvataggio = new SalvataggioDifferito(dataController, 60_000);
+        Path file = tempDir.resolve("rilevazioni.csv");
+        Files.delete(file);
+        Files.createDirectory(file);
+        Rilevazione rilevazione = new Rilevazione(LocalDate.of(2024, 1, 16), "Dopo pranzo", 150);
+        paziente.aggiungiRilevazione(rilevazione);
+        salvataggio.registraRilevazione(paziente, rilevazione);
+
+        // Act
+        salvataggio.flush();
+
+        // Assert - niente perso: la richiesta resta in sospeso
+        assertEquals(1, salvataggio.getScrittureFallite());
+        assertEquals(1, salvataggio.getScrittureInSospeso());
+
+        // Act - il file torna disponibile
+        Files.delete(file);
+        Files.write(file, List.of("pazienteId,data,tipoPasto,valore"));
+        salvataggio.chiudi();
+
+        // Assert
+        assertEquals(0, salvataggio.getScrittureInSospeso());
+        assertEquals(List.of("pazienteId,data,tipoPasto,valore", "1,2024-01-16,Dopo pranzo,150"),
+                Files.readAllLines(file));
+    }
+}
@@ -0,0 +1,85 @@
+import model.Paziente;
+import model.Rilevazione;
+import model.SerieGlicemica;
+import model.TipoPasto;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+class SerieGlicemicaTest {
+
+    @Test
+    @DisplayName("Test vista a oggetti della serie glicemica")
+    void testVistaRilevazioni() {
+        // Arrange
+        Paziente paziente = new Paziente(1, "Anna", "Verdi", "anna@test.com", "pass", 100);
+        List<Rilevazione> rilevazioni = paziente.getRilevazioni();
+        Rilevazione colazione = new Rilevazione(LocalDate.of(2024, 1, 15), "Prima colazione", 120);
+        Rilevazione pranzo = new Rilevazione(LocalDate.of(2024, 1, 15), "Dopo pranzo", 150);
+        Rilevazione cena = new Rilevazione(LocalDate.of(2024, 1, 16), "Dopo cena", 170);
+
+        // Act
+        paziente.aggiungiRilevazione(colazione);
+        rilevazioni.add(pranzo);
+        rilevazioni.add(0, cena);
+        boolean rimossa = rilevazioni.remove(new Rilevazione(LocalDate.of(2024, 1, 15), "Dopo pranzo", 150));
+
+        // Assert - gli oggetti restituiti sono copie uguali per valore
+        assertTrue(rimossa);
+        assertEquals(List.of(cena, colazione), rilevazioni);
+        assertNotSame(cena, rilevazioni.get(0));
+        assertEquals(LocalDate.of(2024, 1, 16).toEpochDay(), paziente.getSerieGlicemica().giorno(0));
+
+        rilevazioni.set(1, new Rilevazione(LocalDate.of(2024, 1, 15), "Prima colazione", 95));
+        assertEquals(95, paziente.getSerieGlicemica().valore(1));
+
+        rilevazioni.clear();
+        assertTrue(paziente.getSerieGlicemica().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test tipi pasto non standard e valori fuori range")
+    void testTipiPastoNonStandard() {
+        // Arrange
+        SerieGlicemica serie = new SerieGlicemica();
+
+        // Act
+        serie.aggiungi(new Rilevazione(LocalDate.of(2024, 2, 1), "Merenda", 140));
+        serie.aggiungi(new Rilevazione(LocalDate.of(2024, 2, 1), "Prima cena", 100));
+
+        // Assert
+        assertEquals("Merenda", serie.tipoPasto(0));
+        assertEquals("Prima cena", serie.tipoPasto(1));
+        assertNull(serie.rilevazione(0).getTipo());
+        assertEquals(TipoPasto.PRIMA_COLAZIONE, new Rilevazione(LocalDate.of(2024, 2, 1), "Prima colazione", 90).getTipo());
+        assertThrows(IllegalArgumentException.class,
+                () -> serie.aggiungi(new Rilevazione(LocalDate.of(2024, 2, 2), "Dopo cena", 40_000)));
+        assertEquals(2, serie.size());
+    }
+
+    @Test
+    @DisplayName("Test ordinamento dalla rilevazione più recente tramite chiavi per giorno e pasto")
+    void testIndiciPiuRecenti() {
+        // Arrange
+        SerieGlicemica serie = new SerieGlicemica();
+        serie.aggiungi(new Rilevazione(LocalDate.of(2024, 1, 15), "Prima colazione", 120));
+        serie.aggiungi(new Rilevazione(LocalDate.of(2024, 1, 16), "Prima colazione", 110));
+        serie.aggiungi(new Rilevazione(LocalDate.of(2024, 1, 16), "Dopo cena", 170));
+        serie.aggiungi(new Rilevazione(LocalDate.of(2024, 1, 16), "Merenda", 130));
+        serie.aggiungi(new Rilevazione(LocalDate.of(2024, 1, 15), "Prima colazione", 125));
+        serie.aggiungi(new Rilevazione(LocalDate.of(1969, 12, 31), "Dopo pranzo", 140));
+
+        // Act
+        int[] indici = serie.indiciPiuRecenti();
+
+        // Assert - giorno decrescente, ultimo pasto prima, tipi non riconosciuti in fondo al giorno
+        assertArrayEquals(new int[]{2, 1, 3, 0, 4, 5}, indici);
+        assertEquals(TipoPasto.DOPO_CENA, serie.rilevazione(2).getTipo());
+        assertNull(serie.rilevazione(3).getTipo());
+        assertTrue(serie.chiaveOrdinamento(5) < serie.chiaveOrdinamento(0));
+    }
+}
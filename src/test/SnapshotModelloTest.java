@@ -0,0 +1,131 @@
+import controller.DataController;
+import controller.SnapshotModello;
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotModelloTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FilePathProvider filePathProvider;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.write(tempDir.resolve("utenti.csv"), List.of(
+                "id,tipo,nome,cognome,email,password,medicoId",
+                "100,Diabetologo,Mario,Rossi,mario@test.com,pass123",
+                "1,Paziente,Anna,Verdi,anna@test.com,pass789,100"
+        ));
+        Files.write(tempDir.resolve("rilevazioni.csv"), List.of(
+                "pazienteId,data,tipoPasto,valore",
+                "1,2024-01-15,Prima colazione,120",
+                "1,2024-01-16,Spuntino,135"
+        ));
+        Files.write(tempDir.resolve("terapie.csv"), List.of(
+                "pazienteId,farmaco,assunzioniGiornaliere,quantitaPerAssunzione,indicazioni,dataInizio,dataFine,stato,medicoId",
+                "1,Insulina,3,10.0,\"Prima dei pasti, sempre\",2024-01-01,2024-12-31,ATTIVA,100"
+        ));
+        filePathProvider = new FilePathProvider(tempDir.toString());
+
+        // Modello caricato dai CSV e salvato come snapshot
+        DataController dataController = new DataController(filePathProvider, DataController.ModalitaPersistenza.RISCRITTURA);
+        List<Utente> utenti = dataController.caricaUtenti(filePathProvider.getUtenti());
+        dataController.caricaRilevazioni(filePathProvider.getRilevazioniFile(), utenti);
+        dataController.caricaTerapie(filePathProvider.getTerapieFile(), utenti);
+        dataController.scriviSnapshot(utenti);
+    }
+
+    @Test
+    @DisplayName("Test avvio da snapshot con replay del journal delle modifiche")
+    void testCaricaDaSnapshotConJournal() {
+        // Arrange - modifiche successive allo snapshot, sia a riscrittura sia a journal
+        DataController journalController = new DataController(filePathProvider, DataController.ModalitaPersistenza.JOURNAL);
+        Paziente paziente = (Paziente) journalController.caricaDaSnapshot().get(1);
+        Rilevazione nuova = new Rilevazione(LocalDate.of(2024, 1, 17), "Dopo cena", 170);
+        paziente.aggiungiRilevazione(nuova);
+        journalController.registraRilevazione(paziente, nuova);
+        paziente.getTerapie().clear();
+        journalController.salvaTerapie(List.of(paziente));
+
+        // Act
+        List<Utente> utenti = new DataController(filePathProvider, DataController.ModalitaPersistenza.RISCRITTURA)
+                .caricaDaSnapshot();
+
+        // Assert
+        assertNotNull(utenti);
+        assertEquals(2, utenti.size());
+        Paziente ricaricato = (Paziente) utenti.get(1);
+        assertEquals(List.of(120, 135, 170), ricaricato.getRilevazioni().stream().map(Rilevazione::getValore).toList());
+        assertEquals("Spuntino", ricaricato.getRilevazioni().get(1).getTipoPasto());
+        assertTrue(ricaricato.getTerapie().isEmpty());
+        assertNotNull(ricaricato.getMedico());
+        assertTrue(Files.exists(tempDir.resolve("modello.wal")));
+    }
+
+    @Test
+    @DisplayName("Test compattazione del journal in un nuovo snapshot")
+    void testCompattazione() {
+        // Arrange
+        DataController dataController = new DataController(filePathProvider, DataController.ModalitaPersistenza.RISCRITTURA);
+        Paziente paziente = (Paziente) dataController.caricaDaSnapshot().get(1);
+        paziente.aggiungiRilevazione(new Rilevazione(LocalDate.of(2024, 1, 17), "Dopo cena", 170));
+        dataController.salvaRilevazioni(List.of(paziente));
+
+        // Act
+        boolean compattato = SnapshotModello.per(filePathProvider).compatta();
+
+        // Assert
+        assertTrue(compattato);
+        assertFalse(Files.exists(tempDir.resolve("modello.wal")));
+        Paziente ricaricato = (Paziente) dataController.caricaDaSnapshot().get(1);
+        assertEquals(3, ricaricato.getRilevazioni().size());
+        assertEquals("Prima dei pasti, sempre", ricaricato.getTerapie().get(0).getIndicazioni());
+    }
+
+    @Test
+    @DisplayName("Test snapshot ignorato dopo una modifica esterna ai CSV")
+    void testSnapshotNonAllineato() throws IOException {
+        // Arrange
+        Files.write(tempDir.resolve("rilevazioni.csv"), List.of("1,2024-01-18,Dopo pranzo,160"),
+                StandardOpenOption.APPEND);
+
+        // Act
+        List<Utente> utenti = new DataController(filePathProvider, DataController.ModalitaPersistenza.RISCRITTURA)
+                .caricaDaSnapshot();
+
+        // Assert
+        assertNull(utenti);
+    }
+
+    @Test
+    @DisplayName("Test record del journal senza i timbri di una scrittura concorrente non ancora registrata")
+    void testScritturaConcorrenteNonRegistrata() throws IOException {
+        // Arrange - una terapia scritta nel CSV il cui record non arriva al journal (crash)
+        DataController dataController = new DataController(filePathProvider, DataController.ModalitaPersistenza.RISCRITTURA);
+        Paziente paziente = (Paziente) dataController.caricaDaSnapshot().get(1);
+        Files.write(tempDir.resolve("terapie.csv"),
+                List.of("1,Metformina,2,500.0,,2024-01-01,2024-12-31,ATTIVA,100"), StandardOpenOption.APPEND);
+
+        // Act - una scrittura registrata di un altro tipo
+        paziente.aggiungiRilevazione(new Rilevazione(LocalDate.of(2024, 1, 17), "Dopo cena", 170));
+        dataController.salvaRilevazioni(List.of(paziente));
+        List<Utente> utenti = new DataController(filePathProvider, DataController.ModalitaPersistenza.RISCRITTURA)
+                .caricaDaSnapshot();
+
+        // Assert - il record non copre le terapie: lo snapshot resta non allineato
+        assertNull(utenti);
+    }
+}
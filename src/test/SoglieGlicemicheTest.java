@@ -0,0 +1,65 @@
+import model.Paziente;
+import model.Rilevazione;
+import model.SchedaClinica;
+import model.SoglieGlicemiche;
+import model.SoglieGlicemiche.Fascia;
+import model.TipoPasto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SoglieGlicemicheTest {
+
+    @Test
+    @DisplayName("Test soglie predefinite: 80-130 prima dei pasti, fino a 130 dopo")
+    void testSogliePredefinite() {
+        // Arrange
+        SoglieGlicemiche soglie = SoglieGlicemiche.PREDEFINITE;
+
+        // Act & Assert
+        assertEquals(Fascia.BASSA, soglie.fascia("Prima colazione", 79));
+        assertEquals(Fascia.IN_RANGE, soglie.fascia("Prima colazione", 80));
+        assertEquals(Fascia.IN_RANGE, soglie.fascia("prima cena", 130));
+        assertEquals(Fascia.ALTA, soglie.fascia("Prima pranzo", 180));
+        assertEquals(Fascia.MOLTO_ALTA, soglie.fascia("Prima pranzo", 250));
+        assertEquals(Fascia.GRAVE, soglie.fascia("Dopo cena", 5000));
+        assertEquals(Fascia.IN_RANGE, soglie.fascia("Dopo pranzo", 40));
+        assertEquals(Fascia.ALTA, soglie.fascia("Dopo pranzo", 131));
+        assertEquals(Fascia.IN_RANGE, soglie.fascia(TipoPasto.SCONOSCIUTO, 400));
+        assertTrue(new Rilevazione(LocalDate.now(), "Dopo colazione", 150).isFuoriRange());
+        assertFalse(new Rilevazione(LocalDate.now(), "Prima colazione", 100).isFuoriRange());
+    }
+
+    @Test
+    @DisplayName("Test obiettivi del paziente applicati alle rilevazioni della serie")
+    void testSogliePaziente() {
+        // Arrange
+        Paziente paziente = new Paziente(1, "Mario", "Rossi", "mario@test.com", "pass", 900);
+        paziente.aggiungiRilevazione(new Rilevazione(LocalDate.now(), "Dopo pranzo", 170));
+        paziente.aggiungiRilevazione(new Rilevazione(LocalDate.now(), "Prima cena", 95));
+        assertTrue(paziente.getRilevazioni().get(0).isFuoriRange());
+
+        // Act - il medico alza il massimo post-prandiale e il minimo pre-prandiale
+        paziente.setSchedaClinica(new SchedaClinica("", "", "", new SoglieGlicemiche(100, 140, 180)));
+        Rilevazione dopoPranzo = paziente.getRilevazioni().get(0);
+        Rilevazione primaCena = paziente.getRilevazioni().get(1);
+
+        // Assert
+        assertEquals(Fascia.IN_RANGE, dopoPranzo.getFascia());
+        assertEquals(Fascia.BASSA, primaCena.getFascia());
+        primaCena.setValore(120);
+        assertFalse(primaCena.isFuoriRange());
+        assertEquals(Fascia.IN_RANGE, paziente.getSerieGlicemica().fascia(0));
+    }
+
+    @Test
+    @DisplayName("Test intervalli non validi rifiutati")
+    void testSoglieNonValide() {
+        assertThrows(IllegalArgumentException.class, () -> new SoglieGlicemiche(130, 80, 180));
+        assertThrows(IllegalArgumentException.class, () -> new SoglieGlicemiche(80, 130, 0));
+        assertThrows(IllegalArgumentException.class, () -> new SoglieGlicemiche(-1, 130, 180));
+    }
+}
@@ -0,0 +1,97 @@
+import controller.MotoreAderenza;
+import model.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StoricoAderenzaTest {
+
+    private static final LocalDate OGGI = LocalDate.now();
+
+    @Test
+    @DisplayName("Test storico costruito dalle assunzioni e aggiornato a ogni aggiunta e rimozione")
+    void testAggiornamentoIncrementale() {
+        // Arrange - terapia di 2 assunzioni al giorno iniziata 9 giorni fa, completa nei primi 5 giorni
+        Paziente paziente = new Paziente(1, "Mario", "Rossi", "mario@test.com", "pass", 900);
+        Terapia terapia = new Terapia("Insulina", 2, 10.0, "Prima dei pasti",
+                OGGI.minusDays(9), OGGI.plusDays(20), Terapia.Stato.ATTIVA, 900);
+        paziente.aggiungiTerapia(terapia);
+        for (int giorno = 9; giorno >= 5; giorno--) {
+            registra(paziente, OGGI.minusDays(giorno), 2);
+        }
+
+        // Act
+        StoricoAderenza storico = paziente.getStoricoAderenza(terapia);
+
+        // Assert - giorni da oggi-4 a ieri incompleti
+        assertTrue(storico.isCompleto(OGGI.minusDays(5)));
+        assertFalse(storico.isCompleto(OGGI.minusDays(4)));
+        assertEquals(4, storico.mancantiConsecutivi(OGGI.minusDays(1)));
+        assertEquals(5 * 100.0 / 9, storico.percentuale(OGGI.minusDays(9), OGGI.minusDays(1)), 0.001);
+        assertEquals(4, storico.sequenzaMancanteMassima(OGGI.minusDays(30), OGGI.minusDays(1)));
+
+        // Act - l'assunzione che completa l'altro ieri spezza la sequenza, la sua rimozione la ripristina
+        registra(paziente, OGGI.minusDays(2), 2);
+        assertEquals(1, storico.mancantiConsecutivi(OGGI.minusDays(1)));
+        assertEquals(2, storico.sequenzaMancanteMassima(OGGI.minusDays(30), OGGI.minusDays(1)));
+        paziente.getAssunzioni().remove(paziente.getAssunzioni().size() - 1);
+        assertEquals(4, storico.mancantiConsecutivi(OGGI.minusDays(1)));
+
+        // Assert - con lo svuotamento lo storico viene ricostruito alla richiesta successiva
+        paziente.getAssunzioni().clear();
+        StoricoAderenza ricostruito = paziente.getStoricoAderenza(terapia);
+        assertNotSame(storico, ricostruito);
+        assertEquals(0.0, ricostruito.percentuale(OGGI.minusDays(9), OGGI));
+    }
+
+    @Test
+    @DisplayName("Test mappa per calendario e giorni fuori dal periodo di terapia")
+    void testMappaEPeriodoTerapia() {
+        // Arrange - terapia iniziata 3 giorni fa, completa l'altro ieri
+        Paziente paziente = new Paziente(1, "Mario", "Rossi", "mario@test.com", "pass", 900);
+        Terapia terapia = new Terapia("Metformina", 1, 500.0, "Dopo cena",
+                OGGI.minusDays(3), OGGI.plusDays(20), Terapia.Stato.ATTIVA, 900);
+        paziente.aggiungiTerapia(terapia);
+        registra(paziente, OGGI.minusDays(2), 1);
+        registra(paziente, OGGI.minusDays(10), 1);
+
+        // Act
+        StoricoAderenza storico = paziente.getStoricoAderenza(terapia);
+        BitSet mappa = storico.mappa(OGGI.minusDays(6), OGGI);
+
+        // Assert - solo il bit dell'altro ieri; l'assunzione prima dell'inizio non conta
+        assertEquals(1, mappa.cardinality());
+        assertTrue(mappa.get(4));
+        assertFalse(storico.isCompleto(OGGI.minusDays(10)));
+        assertEquals(1, storico.mancantiConsecutivi(OGGI.minusDays(3)));
+        assertEquals(25.0, storico.percentuale(OGGI.minusDays(30), OGGI));
+        assertEquals(0, storico.mancantiConsecutivi(OGGI.minusDays(10)));
+    }
+
+    @Test
+    @DisplayName("Test giorni consecutivi mancanti configurabili nel motore di aderenza")
+    void testValutaGiorniConfigurabili() {
+        // Arrange - ultimi 4 giorni senza assunzioni
+        Paziente paziente = new Paziente(1, "Mario", "Rossi", "mario@test.com", "pass", 900);
+        paziente.aggiungiTerapia(new Terapia("Insulina", 1, 10.0, "Prima dei pasti",
+                OGGI.minusDays(20), OGGI.plusDays(20), Terapia.Stato.ATTIVA, 900));
+        registra(paziente, OGGI.minusDays(5), 1);
+
+        // Act & Assert
+        assertTrue(MotoreAderenza.valuta(paziente, OGGI).get(0).giorniMancanti());
+        assertTrue(MotoreAderenza.valuta(paziente, OGGI, 4).get(0).giorniMancanti());
+        assertFalse(MotoreAderenza.valuta(paziente, OGGI, 5).get(0).giorniMancanti());
+    }
+
+    private static void registra(Paziente paziente, LocalDate giorno, int assunzioni) {
+        for (int i = 0; i < assunzioni; i++) {
+            String farmaco = paziente.getTerapie().get(0).getFarmaco();
+            paziente.aggiungiAssunzione(new Assunzione(giorno, LocalTime.of(8 + i * 6, 0), farmaco, 10.0));
+        }
+    }
+}